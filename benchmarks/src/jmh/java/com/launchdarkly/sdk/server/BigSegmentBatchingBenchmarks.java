@@ -0,0 +1,137 @@
+package com.launchdarkly.sdk.server;
+
+import com.launchdarkly.sdk.server.BigSegmentStoreWrapper.BigSegmentsQueryResult;
+import com.launchdarkly.sdk.server.integrations.BigSegmentsConfigurationBuilder;
+import com.launchdarkly.sdk.server.interfaces.BigSegmentStoreStatusProvider.Status;
+import com.launchdarkly.sdk.server.interfaces.BigSegmentStoreStatusProvider.StatusListener;
+import com.launchdarkly.sdk.server.interfaces.BigSegmentsConfiguration;
+import com.launchdarkly.sdk.server.subsystems.BigSegmentStore;
+import com.launchdarkly.sdk.server.subsystems.BigSegmentStoreTypes.Membership;
+import com.launchdarkly.sdk.server.subsystems.BigSegmentStoreTypes.StoreMetadata;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.launchdarkly.sdk.server.TestComponents.nullLogger;
+import static com.launchdarkly.sdk.server.subsystems.BigSegmentStoreTypes.createMembershipFromSegmentRefs;
+
+/**
+ * These benchmarks compare Big Segment membership queries made one user at a time with queries that are
+ * combined into batches (see {@link BigSegmentsConfigurationBuilder#batchWindow(Duration)}), when many
+ * threads are evaluating flags for users who are not in the cache, as happens after a deploy. The store is
+ * an in-process fake that adds a fixed latency to every round trip, whether it is for one user or many.
+ * <p>
+ * The "storeQueries" counter reports the number of round trips made during each iteration. The benchmark
+ * mode is sample time, so that the results include the added latency of waiting for a batch to fill; the
+ * default mode in build.gradle overrides this, so run these with {@code -bm sample}.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BigSegmentBatchingBenchmarks {
+  @State(Scope.Benchmark)
+  public static class BenchmarkInputs {
+    // Initialization of the wrapper does not count as part of a benchmark.
+    @Param({"0", "1000"})
+    public int batchWindowMicros;
+
+    @Param({"1000"})
+    public int latencyMicros;
+
+    LatencyInjectingBigSegmentStore store;
+    ScheduledExecutorService executor;
+    BigSegmentStoreWrapper wrapper;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      store = new LatencyInjectingBigSegmentStore(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+      executor = Executors.newSingleThreadScheduledExecutor();
+      // The user cache is disabled so that every query is a cache miss
+      BigSegmentsConfiguration config = Components.bigSegments(context -> store)
+          .userCacheSize(0)
+          .statusPollInterval(Duration.ofMinutes(1))
+          .batchWindow(Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(batchWindowMicros)))
+          .build(TestComponents.clientContext(TestValues.SDK_KEY, new LDConfig.Builder().build()));
+      EventBroadcasterImpl<StatusListener, Status> statusBroadcaster =
+          EventBroadcasterImpl.forBigSegmentStoreStatus(executor, nullLogger);
+      wrapper = new BigSegmentStoreWrapper(config, statusBroadcaster, executor, nullLogger);
+      store.roundTrips.set(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      wrapper.close();
+      executor.shutdown();
+    }
+  }
+
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class QueryCounter {
+    public long storeQueries;
+  }
+
+  @Benchmark
+  @Threads(32)
+  public BigSegmentsQueryResult queryUncachedUsers(BenchmarkInputs inputs, QueryCounter counter) {
+    BigSegmentsQueryResult result = inputs.wrapper.getUserMembership(
+        "user" + ThreadLocalRandom.current().nextInt(1000000));
+    counter.storeQueries += inputs.store.roundTrips.getAndSet(0);
+    return result;
+  }
+
+  private static final class LatencyInjectingBigSegmentStore implements BigSegmentStore {
+    private final long latencyNanos;
+    final AtomicLong roundTrips = new AtomicLong();
+
+    LatencyInjectingBigSegmentStore(long latencyNanos) {
+      this.latencyNanos = latencyNanos;
+    }
+
+    @Override
+    public Membership getMembership(String userHash) {
+      return getMemberships(Collections.singleton(userHash)).get(userHash);
+    }
+
+    @Override
+    public Map<String, Membership> getMemberships(Collection<String> userHashes) {
+      roundTrips.incrementAndGet();
+      LockSupport.parkNanos(latencyNanos);
+      Map<String, Membership> ret = new HashMap<>();
+      for (String userHash: userHashes) {
+        ret.put(userHash, createMembershipFromSegmentRefs(Collections.singleton("segment1"), null));
+      }
+      return ret;
+    }
+
+    @Override
+    public StoreMetadata getMetadata() {
+      return new StoreMetadata(System.currentTimeMillis());
+    }
+
+    @Override
+    public void close() {}
+  }
+}
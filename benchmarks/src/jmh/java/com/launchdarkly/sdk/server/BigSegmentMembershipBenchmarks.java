@@ -0,0 +1,116 @@
+package com.launchdarkly.sdk.server;
+
+import com.launchdarkly.sdk.server.DataModelPreprocessing.SegmentPreprocessed;
+import com.launchdarkly.sdk.server.subsystems.BigSegmentStoreTypes.Membership;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.launchdarkly.sdk.server.subsystems.BigSegmentStoreTypes.createMembershipFromSegmentRefs;
+
+/**
+ * These benchmarks compare Big Segment memberships in the form that stores return them, a map of segment
+ * references, with the compact bitset form that BigSegmentStoreWrapper caches. During setup, the heap
+ * space retained per user by each form is printed; the benchmark itself measures a membership check as
+ * the evaluator does it, by segment reference for the map form and by the ordinal that was resolved for
+ * the segment for the compact form.
+ */
+public class BigSegmentMembershipBenchmarks {
+  static final int USER_COUNT = 10000;
+  static final int REQUEST_COUNT = 1 << 16;
+
+  @State(Scope.Thread)
+  public static class BenchmarkInputs {
+    // Initialization of the things in BenchmarkInputs does not count as part of a benchmark.
+    @Param({"map", "compact"})
+    public String membershipType;
+
+    @Param({"200"})
+    public int segmentCount;
+
+    // The number of segments that each user is included in; each is also excluded from a quarter as many
+    @Param({"20"})
+    public int segmentsPerUser;
+
+    Membership[] memberships;
+    String[] segmentRefs;
+    SegmentPreprocessed[] segments;
+    int[] requestUsers;
+    int[] requestSegments;
+    int nextRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      segmentRefs = new String[segmentCount];
+      segments = new SegmentPreprocessed[segmentCount];
+      BigSegmentRefOrdinals ordinals = new BigSegmentRefOrdinals();
+      for (int i = 0; i < segmentCount; i++) {
+        segmentRefs[i] = String.format("segment%04d.g1", i);
+        segments[i] = new SegmentPreprocessed(segmentRefs[i]);
+        ordinals.ordinalFor(segmentRefs[i]);
+      }
+
+      Random random = new Random(0);
+      List<List<String>> included = new ArrayList<>(), excluded = new ArrayList<>();
+      for (int u = 0; u < USER_COUNT; u++) {
+        included.add(randomRefs(random, segmentsPerUser));
+        excluded.add(randomRefs(random, segmentsPerUser / 4));
+      }
+      long heapBefore = usedHeap();
+      memberships = new Membership[USER_COUNT];
+      for (int u = 0; u < USER_COUNT; u++) {
+        Membership m = createMembershipFromSegmentRefs(included.get(u), excluded.get(u));
+        memberships[u] = membershipType.equals("map") ? m : CompactBigSegmentMembership.fromMembership(m, ordinals);
+      }
+      System.out.printf("%nHeap retained per user by %s membership with %d of %d segments: %d bytes%n",
+          membershipType, segmentsPerUser, segmentCount, (usedHeap() - heapBefore) / USER_COUNT);
+
+      requestUsers = new int[REQUEST_COUNT];
+      requestSegments = new int[REQUEST_COUNT];
+      for (int i = 0; i < REQUEST_COUNT; i++) {
+        requestUsers[i] = random.nextInt(USER_COUNT);
+        requestSegments[i] = random.nextInt(segmentCount);
+      }
+    }
+
+    private List<String> randomRefs(Random random, int count) {
+      // Each reference is a separate string instance, as it would be if it had been read from a database
+      List<String> ret = new ArrayList<>();
+      for (int i = 0; i < count; i++) {
+        ret.add(new String(segmentRefs[random.nextInt(segmentCount)]));
+      }
+      return ret;
+    }
+  }
+
+  @Benchmark
+  public Boolean checkMembership(BenchmarkInputs inputs) {
+    int i = inputs.nextRequest++ & (REQUEST_COUNT - 1);
+    Membership m = inputs.memberships[inputs.requestUsers[i]];
+    int segment = inputs.requestSegments[i];
+    if (m instanceof CompactBigSegmentMembership) {
+      CompactBigSegmentMembership compact = (CompactBigSegmentMembership)m;
+      int ordinal = compact.ordinalOf(inputs.segments[segment]);
+      return ordinal < 0 ? null : compact.checkMembership(ordinal);
+    }
+    return m.checkMembership(inputs.segmentRefs[segment]);
+  }
+
+  private static long usedHeap() {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+}
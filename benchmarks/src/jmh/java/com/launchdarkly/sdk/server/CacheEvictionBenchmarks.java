@@ -0,0 +1,218 @@
+package com.launchdarkly.sdk.server;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.launchdarkly.logging.LDLogger;
+import com.launchdarkly.logging.Logs;
+import com.launchdarkly.sdk.LDValue;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.KeyedItems;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.SerializedItemDescriptor;
+import com.launchdarkly.sdk.server.subsystems.PersistentDataStore;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.launchdarkly.sdk.server.DataModel.FEATURES;
+import static com.launchdarkly.sdk.server.ModelBuilders.flagBuilder;
+
+/**
+ * These benchmarks compare the hit ratio of the size-bounded cache that {@link PersistentDataStoreWrapper}
+ * uses when {@code cacheMaximumWeight} is set with that of a plain LRU cache with the same weight limit.
+ * Flags are requested with a Zipfian distribution, as flag evaluations typically are, with occasional
+ * bursts of one-time keys. The "hits" and "misses" counters show how many requests were answered from
+ * the cache and how many had to query the persistent store.
+ */
+public class CacheEvictionBenchmarks {
+  static final int FLAG_COUNT = 10000;
+  static final int REQUEST_COUNT = 1 << 20;
+  static final int SCAN_INTERVAL = 10000;
+  static final int SCAN_LENGTH = 1000;
+
+  @State(Scope.Thread)
+  public static class BenchmarkInputs {
+    // Initialization of the things in BenchmarkInputs does not count as part of a benchmark.
+    @Param({"lru", "tinylfu"})
+    public String engine;
+
+    // Each cached flag has an estimated weight of roughly 500 bytes, so these allow about 2% and 20% of
+    // the flags to be cached.
+    @Param({"100000", "1000000"})
+    public long maximumWeight;
+
+    @Param({"0.8", "1.0"})
+    public double zipfExponent;
+
+    CountingPersistentDataStore store;
+    ScheduledExecutorService executor;
+    PersistentDataStoreWrapper wrapper;
+    LoadingCache<String, ItemDescriptor> lruCache;
+    String[] requests;
+    int nextRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      store = new CountingPersistentDataStore();
+      if (engine.equals("tinylfu")) {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        wrapper = new PersistentDataStoreWrapper(store,
+            new PersistentDataStoreWrapper.Options().cacheTtl(Duration.ofMillis(-1)).cacheMaximumWeight(maximumWeight),
+            status -> {}, executor, LDLogger.withAdapter(Logs.none(), ""));
+      } else {
+        lruCache = CacheBuilder.newBuilder()
+            .maximumWeight(maximumWeight)
+            .weigher((String key, ItemDescriptor item) -> estimateWeight(key, item))
+            .build(new CacheLoader<String, ItemDescriptor>() {
+              @Override
+              public ItemDescriptor load(String key) {
+                SerializedItemDescriptor s = store.get(FEATURES, key);
+                return FEATURES.deserialize(s.getSerializedItem());
+              }
+            });
+      }
+      requests = makeRequests(zipfExponent);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      if (wrapper != null) {
+        wrapper.close();
+        executor.shutdown();
+      }
+    }
+  }
+
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class HitCounter {
+    public long hits;
+    public long misses;
+  }
+
+  @Benchmark
+  public ItemDescriptor zipfianGet(BenchmarkInputs inputs, HitCounter counter) throws Exception {
+    String key = inputs.requests[inputs.nextRequest++ & (REQUEST_COUNT - 1)];
+    long queriesBefore = inputs.store.getCount;
+    ItemDescriptor result = inputs.wrapper != null ? inputs.wrapper.get(FEATURES, key) :
+      inputs.lruCache.get(key);
+    if (inputs.store.getCount == queriesBefore) {
+      counter.hits++;
+    } else {
+      counter.misses++;
+    }
+    return result;
+  }
+
+  // This is the same estimate that PersistentDataStoreWrapper uses, so that both caches hold about the
+  // same number of flags.
+  private static int estimateWeight(String key, ItemDescriptor item) {
+    return 200 + key.length() * 2 + FEATURES.serialize(item).length() * 2;
+  }
+
+  // Produces a sequence of keys where flag i is requested with probability proportional to
+  // 1/(i+1)^exponent, interrupted every SCAN_INTERVAL requests by SCAN_LENGTH requests for flags that
+  // are otherwise rarely used.
+  private static String[] makeRequests(double exponent) {
+    double[] cumulative = new double[FLAG_COUNT];
+    double total = 0;
+    for (int i = 0; i < FLAG_COUNT; i++) {
+      total += 1 / Math.pow(i + 1, exponent);
+      cumulative[i] = total;
+    }
+    Random random = new Random(0);
+    String[] requests = new String[REQUEST_COUNT];
+    int nextScanFlag = FLAG_COUNT / 2;
+    for (int i = 0; i < REQUEST_COUNT; i++) {
+      int flag;
+      if (i % SCAN_INTERVAL < SCAN_LENGTH) {
+        flag = nextScanFlag;
+        nextScanFlag = nextScanFlag + 1 < FLAG_COUNT ? nextScanFlag + 1 : FLAG_COUNT / 2;
+      } else {
+        double target = random.nextDouble() * total;
+        int low = 0, high = FLAG_COUNT - 1;
+        while (low < high) {
+          int mid = (low + high) >>> 1;
+          if (cumulative[mid] < target) {
+            low = mid + 1;
+          } else {
+            high = mid;
+          }
+        }
+        flag = low;
+      }
+      requests[i] = flagKey(flag);
+    }
+    return requests;
+  }
+
+  private static String flagKey(int i) {
+    return String.format("flag%05d", i);
+  }
+
+  // A persistent store that holds FLAG_COUNT flags of the same size in memory, and counts queries.
+  // It is only used from one thread.
+  private static final class CountingPersistentDataStore implements PersistentDataStore {
+    private final Map<String, SerializedItemDescriptor> flags = new HashMap<>();
+    long getCount;
+
+    CountingPersistentDataStore() {
+      for (int i = 0; i < FLAG_COUNT; i++) {
+        String key = flagKey(i);
+        ItemDescriptor item = new ItemDescriptor(1, flagBuilder(key).version(1).on(true)
+            .variations(LDValue.of(true), LDValue.of(false)).fallthroughVariation(0).offVariation(1).build());
+        flags.put(key, new SerializedItemDescriptor(1, false, FEATURES.serialize(item)));
+      }
+    }
+
+    @Override
+    public void init(FullDataSet<SerializedItemDescriptor> allData) {
+    }
+
+    @Override
+    public SerializedItemDescriptor get(DataKind kind, String key) {
+      getCount++;
+      return kind == FEATURES ? flags.get(key) : null;
+    }
+
+    @Override
+    public KeyedItems<SerializedItemDescriptor> getAll(DataKind kind) {
+      return new KeyedItems<>(kind == FEATURES ? flags.entrySet() : null);
+    }
+
+    @Override
+    public boolean upsert(DataKind kind, String key, SerializedItemDescriptor item) {
+      return false;
+    }
+
+    @Override
+    public boolean isInitialized() {
+      return true;
+    }
+
+    @Override
+    public boolean isStoreAvailable() {
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+  }
+}
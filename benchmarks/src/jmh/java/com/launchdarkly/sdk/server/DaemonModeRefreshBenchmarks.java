@@ -0,0 +1,136 @@
+package com.launchdarkly.sdk.server;
+
+import com.launchdarkly.sdk.LDValue;
+import com.launchdarkly.sdk.server.DataModel.VersionedData;
+import com.launchdarkly.sdk.server.PersistentDataStoreEvaluationBenchmarks.FakePersistentDataStore;
+import com.launchdarkly.sdk.server.integrations.PersistentDataStoreBuilder;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.KeyedItems;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.SerializedItemDescriptor;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.launchdarkly.sdk.server.DataModel.FEATURES;
+import static com.launchdarkly.sdk.server.ModelBuilders.flagBuilder;
+import static com.launchdarkly.sdk.server.PersistentDataStoreEvaluationBenchmarks.serializeAll;
+import static com.launchdarkly.sdk.server.TestValues.BASIC_CONTEXT;
+import static com.launchdarkly.sdk.server.TestValues.SDK_KEY;
+
+/**
+ * These benchmarks compare the usual per-item caching of a persistent data store with bulk refresh mode
+ * (see {@link PersistentDataStoreBuilder#bulkRefresh(Duration)}), in daemon mode, for an application that
+ * evaluates many different flags. The store is an in-process fake that adds a fixed latency to every query.
+ * <p>
+ * The "storeQueries" counter reports the number of store queries made during each iteration, including
+ * those made by background threads; divided by the iteration time, that is the load the SDK puts on the
+ * database. The benchmark mode is sample time, so that the results include the p99 evaluation latency,
+ * which for per-item caching is dominated by the evaluations that find an expired item and have to wait
+ * for the store. The default mode in build.gradle overrides this, so run these with {@code -bm sample}.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DaemonModeRefreshBenchmarks {
+  @State(Scope.Benchmark)
+  public static class BenchmarkInputs {
+    // Initialization of the client does not count as part of a benchmark.
+    @Param({"perKey", "bulk"})
+    public String cacheMode;
+
+    @Param({"5000"})
+    public int flagCount;
+
+    @Param({"500"})
+    public int latencyMicros;
+
+    @Param({"200"})
+    public int cacheMillis;
+
+    FakePersistentDataStore store;
+    LDClient client;
+    String[] flagKeys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      flagKeys = new String[flagCount];
+      for (int i = 0; i < flagCount; i++) {
+        flagKeys[i] = "flag" + i;
+      }
+      store = new FakePersistentDataStore(TimeUnit.MICROSECONDS.toNanos(latencyMicros), true);
+      store.init(makeTestData(flagKeys));
+      PersistentDataStoreBuilder storeBuilder = Components.persistentDataStore(context -> store)
+          .cacheTime(Duration.ofMillis(cacheMillis));
+      if (cacheMode.equals("bulk")) {
+        storeBuilder.bulkRefresh(Duration.ofMillis(cacheMillis));
+      }
+      LDConfig config = new LDConfig.Builder()
+          .dataSource(Components.externalUpdatesOnly())
+          .dataStore(storeBuilder)
+          .events(Components.noEvents())
+          .logging(Components.noLogging())
+          .build();
+      client = new LDClient(SDK_KEY, config);
+      for (String key: flagKeys) {
+        client.boolVariation(key, BASIC_CONTEXT, false); // fills the cache before we start measuring
+      }
+      store.roundTrips.set(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      client.close();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class ThreadState {
+    int nextFlag;
+  }
+
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class QueryCounter {
+    public long storeQueries;
+  }
+
+  @Benchmark
+  public boolean evaluateManyFlags(BenchmarkInputs inputs, ThreadState state, QueryCounter counter) throws Exception {
+    String key = inputs.flagKeys[state.nextFlag];
+    state.nextFlag = (state.nextFlag + 1) % inputs.flagKeys.length;
+    boolean result = inputs.client.boolVariation(key, BASIC_CONTEXT, false);
+    counter.storeQueries += inputs.store.roundTrips.getAndSet(0);
+    return result;
+  }
+
+  private static FullDataSet<SerializedItemDescriptor> makeTestData(String[] flagKeys) {
+    List<VersionedData> flags = new ArrayList<>();
+    for (String key: flagKeys) {
+      flags.add(flagBuilder(key).version(1).on(true)
+          .variations(LDValue.of(true), LDValue.of(false))
+          .fallthroughVariation(0)
+          .offVariation(1)
+          .build());
+    }
+    List<Map.Entry<DataKind, KeyedItems<SerializedItemDescriptor>>> allData = new ArrayList<>();
+    allData.add(new AbstractMap.SimpleEntry<>(FEATURES, serializeAll(FEATURES, flags)));
+    return new FullDataSet<>(allData);
+  }
+}
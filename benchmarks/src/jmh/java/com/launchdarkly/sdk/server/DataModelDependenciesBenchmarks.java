@@ -0,0 +1,110 @@
+package com.launchdarkly.sdk.server;
+
+import com.launchdarkly.sdk.server.DataModel.FeatureFlag;
+import com.launchdarkly.sdk.server.DataModel.Segment;
+import com.launchdarkly.sdk.server.DataModelDependencies.DependencyTracker;
+import com.launchdarkly.sdk.server.DataModelDependencies.KindAndKey;
+import com.launchdarkly.sdk.server.DataStoreTestTypes.DataBuilder;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static com.launchdarkly.sdk.server.DataModel.FEATURES;
+import static com.launchdarkly.sdk.server.DataModel.SEGMENTS;
+import static com.launchdarkly.sdk.server.ModelBuilders.clauseMatchingSegment;
+import static com.launchdarkly.sdk.server.ModelBuilders.flagBuilder;
+import static com.launchdarkly.sdk.server.ModelBuilders.prerequisite;
+import static com.launchdarkly.sdk.server.ModelBuilders.ruleBuilder;
+import static com.launchdarkly.sdk.server.ModelBuilders.segmentBuilder;
+
+/**
+ * These benchmarks cover the dependency ordering and tracking that is done whenever the SDK receives a full
+ * data set or an individual update, at a range of data set sizes.
+ */
+public class DataModelDependenciesBenchmarks {
+  @State(Scope.Thread)
+  public static class BenchmarkInputs {
+    // Initialization of the things in BenchmarkInputs does not count as part of a benchmark.
+    @Param({"1000", "10000", "100000"})
+    public int flagCount;
+
+    FullDataSet<ItemDescriptor> allData;
+    DependencyTracker populatedTracker;
+    FeatureFlag updatedFlag;
+    Random random;
+
+    @Setup
+    public void setUp() {
+      // Every 10th flag is a prerequisite of the next 9, so there are many short prerequisite chains;
+      // every flag also references one of the segments.
+      int segmentCount = Math.max(1, flagCount / 100);
+      Segment[] segments = new Segment[segmentCount];
+      for (int i = 0; i < segmentCount; i++) {
+        segments[i] = segmentBuilder("segment" + i).version(1).build();
+      }
+      FeatureFlag[] flags = new FeatureFlag[flagCount];
+      for (int i = 0; i < flagCount; i++) {
+        flags[i] = makeFlag(i, 1);
+      }
+      allData = new DataBuilder().addAny(SEGMENTS, segments).addAny(FEATURES, flags).build();
+
+      populatedTracker = new DependencyTracker();
+      populatedTracker.updateDependenciesFromFullDataSet(allData);
+
+      updatedFlag = makeFlag(flagCount / 2, 2);
+      random = new Random();
+    }
+
+    private FeatureFlag makeFlag(int i, int version) {
+      ModelBuilders.FlagBuilder builder = flagBuilder("flag" + i).version(version)
+          .rules(ruleBuilder().clauses(clauseMatchingSegment("segment" + (i % Math.max(1, flagCount / 100)))).build());
+      if (i % 10 != 0) {
+        builder.prerequisites(prerequisite("flag" + (i - i % 10), 0));
+      }
+      return builder.build();
+    }
+  }
+
+  @Benchmark
+  public FullDataSet<ItemDescriptor> sortAllCollections(BenchmarkInputs inputs) throws Exception {
+    return DataModelDependencies.sortAllCollections(inputs.allData);
+  }
+
+  @Benchmark
+  public DependencyTracker buildDependencyTrackerFromFullDataSet(BenchmarkInputs inputs) throws Exception {
+    DependencyTracker tracker = new DependencyTracker();
+    tracker.updateDependenciesFromFullDataSet(inputs.allData);
+    return tracker;
+  }
+
+  @Benchmark
+  public DependencyTracker updateDependencyTrackerFromUnchangedFullDataSet(BenchmarkInputs inputs) throws Exception {
+    inputs.populatedTracker.updateDependenciesFromFullDataSet(inputs.allData);
+    return inputs.populatedTracker;
+  }
+
+  @Benchmark
+  public DependencyTracker updateDependencyTrackerForSingleItem(BenchmarkInputs inputs) throws Exception {
+    inputs.populatedTracker.updateDependenciesFrom(FEATURES, inputs.updatedFlag.getKey(),
+        new ItemDescriptor(inputs.updatedFlag.getVersion(), inputs.updatedFlag));
+    return inputs.populatedTracker;
+  }
+
+  @Benchmark
+  public Set<KindAndKey> computeAffectedItemsForSegment(BenchmarkInputs inputs) throws Exception {
+    Set<KindAndKey> affectedItems = new HashSet<>();
+    int segmentCount = Math.max(1, inputs.flagCount / 100);
+    inputs.populatedTracker.addAffectedItems(affectedItems,
+        new KindAndKey(SEGMENTS, "segment" + inputs.random.nextInt(segmentCount)));
+    return affectedItems;
+  }
+}
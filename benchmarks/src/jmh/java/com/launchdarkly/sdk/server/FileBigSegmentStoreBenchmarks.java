@@ -0,0 +1,101 @@
+package com.launchdarkly.sdk.server;
+
+import com.google.common.hash.Hashing;
+import com.launchdarkly.sdk.server.integrations.FileData;
+import com.launchdarkly.sdk.server.subsystems.BigSegmentStore;
+import com.launchdarkly.sdk.server.subsystems.BigSegmentStoreTypes.Membership;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * These benchmarks measure membership queries against the file-based Big Segment store, for users who
+ * are in one of the segments and for users who are in none of them; the latter are usually answered by
+ * the Bloom filters alone.
+ */
+public class FileBigSegmentStoreBenchmarks {
+  static final int REQUEST_COUNT = 1 << 14;
+
+  @State(Scope.Thread)
+  public static class BenchmarkInputs {
+    // Initialization of the things in BenchmarkInputs does not count as part of a benchmark.
+    @Param({"20"})
+    public int segmentCount;
+
+    @Param({"100000"})
+    public int usersPerSegment;
+
+    Path dir;
+    BigSegmentStore store;
+    String[] memberHashes;
+    String[] nonMemberHashes;
+    int nextRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+      dir = Files.createTempDirectory("ld-big-segment-benchmark");
+      Random random = new Random(0);
+      memberHashes = new String[REQUEST_COUNT];
+      for (int s = 0; s < segmentCount; s++) {
+        List<String> users = new ArrayList<>();
+        for (int u = 0; u < usersPerSegment; u++) {
+          users.add(userHash("seg" + s + "user" + u));
+        }
+        for (int i = s; i < REQUEST_COUNT; i += segmentCount) {
+          memberHashes[i] = users.get(random.nextInt(usersPerSegment));
+        }
+        Collections.sort(users);
+        Files.write(dir.resolve("segment" + s + ".g1.included"), users, UTF_8);
+      }
+      nonMemberHashes = new String[REQUEST_COUNT];
+      for (int i = 0; i < REQUEST_COUNT; i++) {
+        nonMemberHashes[i] = userHash("nonmember" + i);
+      }
+      store = FileData.bigSegmentStore().directory(dir)
+          .build(TestComponents.clientContext(TestValues.SDK_KEY, new LDConfig.Builder().build()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      store.close();
+      try (Stream<Path> files = Files.walk(dir)) {
+        for (Path p: files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+          Files.delete(p);
+        }
+      }
+    }
+
+    private static String userHash(String userKey) {
+      return Base64.getEncoder().encodeToString(Hashing.sha256().hashString(userKey, UTF_8).asBytes());
+    }
+  }
+
+  @Benchmark
+  public Membership queryMember(BenchmarkInputs inputs) {
+    return inputs.store.getMembership(inputs.memberHashes[inputs.nextRequest++ & (REQUEST_COUNT - 1)]);
+  }
+
+  @Benchmark
+  public Membership queryNonMember(BenchmarkInputs inputs) {
+    return inputs.store.getMembership(inputs.nonMemberHashes[inputs.nextRequest++ & (REQUEST_COUNT - 1)]);
+  }
+}
@@ -0,0 +1,145 @@
+package com.launchdarkly.sdk.server;
+
+import com.launchdarkly.logging.LDLogger;
+import com.launchdarkly.logging.Logs;
+import com.launchdarkly.sdk.LDValue;
+import com.launchdarkly.sdk.server.DataModel.FeatureFlag;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.KeyedItems;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.SerializedItemDescriptor;
+import com.launchdarkly.sdk.server.subsystems.PersistentDataStore;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.launchdarkly.sdk.server.DataModel.FEATURES;
+import static com.launchdarkly.sdk.server.ModelBuilders.flagBuilder;
+
+/**
+ * These benchmarks measure the cost of writing and reading one flag through {@link PersistentDataStoreWrapper},
+ * with and without compression of serialized items, for a small flag and for a flag with many individual
+ * targets. Caching is disabled so that every read deserializes the stored item. The "storedChars" counter
+ * reports the size of the stored representation of the flag.
+ */
+public class ItemCompressionBenchmarks {
+  static final String FLAG_KEY = "flag";
+  static final int COMPRESSION_MINIMUM_LENGTH = 1000;
+
+  @State(Scope.Thread)
+  public static class BenchmarkInputs {
+    // Initialization of the things in BenchmarkInputs does not count as part of a benchmark.
+    @Param({"false", "true"})
+    public boolean compression;
+
+    // The number of user keys targeted by the flag. A flag with 20000 keys is about 300 KB of JSON.
+    @Param({"0", "20000"})
+    public int targetCount;
+
+    MapPersistentDataStore store;
+    ScheduledExecutorService executor;
+    PersistentDataStoreWrapper wrapper;
+    ItemDescriptor flag;
+    int nextVersion = 1;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      store = new MapPersistentDataStore();
+      executor = Executors.newSingleThreadScheduledExecutor();
+      wrapper = new PersistentDataStoreWrapper(store, new PersistentDataStoreWrapper.Options()
+          .cacheTtl(Duration.ZERO).compressionMinimumLength(compression ? COMPRESSION_MINIMUM_LENGTH : 0), status -> {}, executor, LDLogger.withAdapter(Logs.none(), ""));
+      flag = new ItemDescriptor(1, makeFlag(targetCount));
+      wrapper.upsert(FEATURES, FLAG_KEY, flag);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      wrapper.close();
+      executor.shutdown();
+    }
+  }
+
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class SizeCounter {
+    public long storedChars;
+  }
+
+  @Benchmark
+  public ItemDescriptor readFlag(BenchmarkInputs inputs) {
+    return inputs.wrapper.get(FEATURES, FLAG_KEY);
+  }
+
+  @Benchmark
+  public void writeFlag(BenchmarkInputs inputs, SizeCounter counter) {
+    // The version must increase each time, or the store would not accept the update
+    int version = ++inputs.nextVersion;
+    inputs.wrapper.upsert(FEATURES, FLAG_KEY, new ItemDescriptor(version, inputs.flag.getItem()));
+    counter.storedChars += inputs.store.items.get(FLAG_KEY).getSerializedItem().length();
+  }
+
+  private static FeatureFlag makeFlag(int targetCount) {
+    String[] keys = new String[targetCount];
+    for (int i = 0; i < targetCount; i++) {
+      keys[i] = "user-" + Integer.toHexString(i * 7919) + "-" + i;
+    }
+    return flagBuilder(FLAG_KEY).version(1).on(true)
+        .variations(LDValue.of(true), LDValue.of(false)).fallthroughVariation(0).offVariation(1)
+        .addTarget(1, keys).build();
+  }
+
+  // A persistent store that holds flags in a map, and does not check versions. It is only used from one thread.
+  private static final class MapPersistentDataStore implements PersistentDataStore {
+    final Map<String, SerializedItemDescriptor> items = new HashMap<>();
+
+    @Override
+    public void init(FullDataSet<SerializedItemDescriptor> allData) {
+    }
+
+    @Override
+    public SerializedItemDescriptor get(DataKind kind, String key) {
+      return kind == FEATURES ? items.get(key) : null;
+    }
+
+    @Override
+    public KeyedItems<SerializedItemDescriptor> getAll(DataKind kind) {
+      return new KeyedItems<>(kind == FEATURES ? items.entrySet() : null);
+    }
+
+    @Override
+    public boolean upsert(DataKind kind, String key, SerializedItemDescriptor item) {
+      if (kind == FEATURES) {
+        items.put(key, item);
+      }
+      return true;
+    }
+
+    @Override
+    public boolean isInitialized() {
+      return true;
+    }
+
+    @Override
+    public boolean isStoreAvailable() {
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package com.launchdarkly.sdk.server;
+
+import com.launchdarkly.sdk.LDContext;
+import com.launchdarkly.sdk.server.DataModel.FeatureFlag;
+import com.launchdarkly.sdk.server.DataModel.VersionedData;
+import com.launchdarkly.sdk.server.integrations.LocalDisk;
+import com.launchdarkly.sdk.server.integrations.PersistentDataStoreBuilder;
+import com.launchdarkly.sdk.server.subsystems.ComponentConfigurer;
+import com.launchdarkly.sdk.server.subsystems.DataStore;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.KeyedItems;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.SerializedItemDescriptor;
+import com.launchdarkly.sdk.server.subsystems.PersistentDataStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.launchdarkly.sdk.server.DataModel.FEATURES;
+import static com.launchdarkly.sdk.server.PersistentDataStoreEvaluationBenchmarks.serializeAll;
+import static com.launchdarkly.sdk.server.TestComponents.clientContext;
+import static com.launchdarkly.sdk.server.TestComponents.initedDataStore;
+import static com.launchdarkly.sdk.server.TestComponents.specificComponent;
+import static com.launchdarkly.sdk.server.TestUtil.upsertFlag;
+import static com.launchdarkly.sdk.server.TestValues.BOOLEAN_FLAG_KEY;
+import static com.launchdarkly.sdk.server.TestValues.FLAG_WITH_PREREQ_KEY;
+import static com.launchdarkly.sdk.server.TestValues.SDK_KEY;
+import static com.launchdarkly.sdk.server.TestValues.makeTestFlags;
+
+/**
+ * These benchmarks compare flag evaluations when the flags are in the default in-memory store with
+ * evaluations when they are in the local disk store, both with the SDK's usual cache in front of it and
+ * with no caching, so that every evaluation reads from the store's memory-mapped files.
+ */
+public class LocalDiskDataStoreBenchmarks {
+  @State(Scope.Thread)
+  public static class BenchmarkInputs {
+    // Initialization of the things in BenchmarkInputs does not count as part of a benchmark.
+    @Param({"memory", "localDiskCached", "localDiskUncached"})
+    public String storeType;
+
+    Path directory;
+    LDClient client;
+    LDContext context;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+      ComponentConfigurer<DataStore> storeConfig;
+      if (storeType.equals("memory")) {
+        DataStore dataStore = initedDataStore();
+        for (FeatureFlag flag: makeTestFlags()) {
+          upsertFlag(dataStore, flag);
+        }
+        storeConfig = specificComponent(dataStore);
+      } else {
+        directory = Files.createTempDirectory("ld-benchmark");
+        try (PersistentDataStore core = LocalDisk.dataStore().directory(directory)
+            .build(clientContext(SDK_KEY, new LDConfig.Builder().build()))) {
+          core.init(makeSerializedTestData());
+        }
+        PersistentDataStoreBuilder builder = Components.persistentDataStore(LocalDisk.dataStore().directory(directory));
+        storeConfig = storeType.equals("localDiskCached") ? builder : builder.noCaching();
+      }
+
+      LDConfig config = new LDConfig.Builder()
+          .dataStore(storeConfig)
+          .events(Components.noEvents())
+          .dataSource(Components.externalUpdatesOnly())
+          .logging(Components.noLogging())
+          .build();
+      client = new LDClient(SDK_KEY, config);
+      context = LDContext.create("userkey");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      client.close();
+      if (directory != null) {
+        try (Stream<Path> files = Files.walk(directory)) {
+          for (Path p: files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+            Files.delete(p);
+          }
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  public boolean boolVariationForSimpleFlag(BenchmarkInputs inputs) throws Exception {
+    return inputs.client.boolVariation(BOOLEAN_FLAG_KEY, inputs.context, false);
+  }
+
+  @Benchmark
+  public boolean boolVariationForFlagWithPrereq(BenchmarkInputs inputs) throws Exception {
+    return inputs.client.boolVariation(FLAG_WITH_PREREQ_KEY, inputs.context, false);
+  }
+
+  private static FullDataSet<SerializedItemDescriptor> makeSerializedTestData() {
+    List<VersionedData> flags = new ArrayList<>(makeTestFlags());
+    Map.Entry<DataKind, KeyedItems<SerializedItemDescriptor>> features =
+        new AbstractMap.SimpleEntry<>(FEATURES, serializeAll(FEATURES, flags));
+    return new FullDataSet<>(Collections.singletonList(features));
+  }
+}
@@ -0,0 +1,117 @@
+package com.launchdarkly.sdk.server;
+
+import com.launchdarkly.logging.LDLogger;
+import com.launchdarkly.sdk.LDValue;
+import com.launchdarkly.sdk.server.DataModel.FeatureFlag;
+import com.launchdarkly.sdk.server.DataStoreTestTypes.DataBuilder;
+import com.launchdarkly.sdk.server.subsystems.DataStore;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Random;
+
+import static com.launchdarkly.sdk.server.DataModel.FEATURES;
+import static com.launchdarkly.sdk.server.ModelBuilders.clause;
+import static com.launchdarkly.sdk.server.ModelBuilders.flagBuilder;
+import static com.launchdarkly.sdk.server.ModelBuilders.ruleBuilder;
+import static com.launchdarkly.sdk.server.ModelBuilders.target;
+
+/**
+ * These benchmarks compare queries for flags in the default in-memory store with queries for the same
+ * flags in the off-heap store, where only the most recently used flags are kept as parsed objects.
+ * Queries are spread evenly over a "hot set" of flags, which may be smaller or larger than the off-heap
+ * store's cache. During setup, the heap space retained by each store is printed, so that the cost in
+ * query time can be weighed against the memory saved.
+ */
+public class OffHeapDataStoreBenchmarks {
+  static final int FLAG_COUNT = 20000;
+  static final int REQUEST_COUNT = 1 << 16;
+  static final int HOT_ITEM_CACHE_SIZE = 1000;
+
+  @State(Scope.Thread)
+  public static class BenchmarkInputs {
+    // Initialization of the things in BenchmarkInputs does not count as part of a benchmark.
+    @Param({"memory", "offHeap"})
+    public String storeType;
+
+    // The first is small enough to fit in the off-heap store's cache, and the second is not.
+    @Param({"500", "5000"})
+    public int hotSetSize;
+
+    DataStore store;
+    String[] requests;
+    int nextRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      long heapBefore = usedHeap();
+      store = storeType.equals("memory") ? new InMemoryDataStore() :
+        new OffHeapDataStore(null, HOT_ITEM_CACHE_SIZE, LDLogger.none());
+      store.init(makeData());
+      System.out.printf("%nHeap retained by %s store with %d flags: %d bytes%n",
+          storeType, FLAG_COUNT, usedHeap() - heapBefore);
+
+      Random random = new Random(0);
+      requests = new String[REQUEST_COUNT];
+      for (int i = 0; i < REQUEST_COUNT; i++) {
+        requests[i] = flagKey(random.nextInt(hotSetSize));
+      }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+      store.close();
+    }
+  }
+
+  @Benchmark
+  public ItemDescriptor getFlag(BenchmarkInputs inputs) throws Exception {
+    return inputs.store.get(FEATURES, inputs.requests[inputs.nextRequest++ & (REQUEST_COUNT - 1)]);
+  }
+
+  private static FullDataSet<ItemDescriptor> makeData() {
+    DataBuilder data = new DataBuilder();
+    for (int i = 0; i < FLAG_COUNT; i++) {
+      data.addAny(FEATURES, makeFlag(i));
+    }
+    return data.build();
+  }
+
+  // Each flag has a few targets and rules, so that it is roughly the size of a typical real flag.
+  private static FeatureFlag makeFlag(int i) {
+    String key = flagKey(i);
+    return flagBuilder(key).version(1).on(true)
+        .variations(LDValue.of(true), LDValue.of(false))
+        .targets(target(0, "user-a-" + i, "user-b-" + i, "user-c-" + i))
+        .rules(
+            ruleBuilder().id(key + "-rule1").variation(0)
+              .clauses(clause("email", DataModel.Operator.endsWith, LDValue.of("@example.com"))).build(),
+            ruleBuilder().id(key + "-rule2").variation(1)
+              .clauses(clause("country", DataModel.Operator.in, LDValue.of("us"), LDValue.of("ca"))).build())
+        .fallthroughVariation(0).offVariation(1)
+        .build();
+  }
+
+  private static String flagKey(int i) {
+    return String.format("flag%05d", i);
+  }
+
+  private static long usedHeap() {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+}
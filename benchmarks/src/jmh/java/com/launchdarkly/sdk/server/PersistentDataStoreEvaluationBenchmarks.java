@@ -0,0 +1,225 @@
+package com.launchdarkly.sdk.server;
+
+import com.launchdarkly.sdk.LDValue;
+import com.launchdarkly.sdk.server.DataModel.FeatureFlag;
+import com.launchdarkly.sdk.server.DataModel.VersionedData;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.KeyedItems;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.SerializedItemDescriptor;
+import com.launchdarkly.sdk.server.subsystems.PersistentDataStore;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.launchdarkly.sdk.server.DataModel.FEATURES;
+import static com.launchdarkly.sdk.server.DataModel.SEGMENTS;
+import static com.launchdarkly.sdk.server.ModelBuilders.clauseMatchingSegment;
+import static com.launchdarkly.sdk.server.ModelBuilders.flagBuilder;
+import static com.launchdarkly.sdk.server.ModelBuilders.prerequisite;
+import static com.launchdarkly.sdk.server.ModelBuilders.ruleBuilder;
+import static com.launchdarkly.sdk.server.ModelBuilders.segmentBuilder;
+import static com.launchdarkly.sdk.server.TestValues.BASIC_CONTEXT;
+import static com.launchdarkly.sdk.server.TestValues.SDK_KEY;
+
+/**
+ * These benchmarks measure a single evaluation, with a cold cache, of a flag that has several levels of
+ * prerequisites and segment references, when the flag data is in a persistent data store. The store is
+ * an in-process fake that adds a fixed latency to every query, to simulate a network round trip; the
+ * "roundTrips" counter reports how many queries each evaluation needed.
+ */
+public class PersistentDataStoreEvaluationBenchmarks {
+  static final String ROOT_FLAG_KEY = "root";
+  static final int PREREQUISITE_COUNT = 3;
+
+  @State(Scope.Thread)
+  public static class BenchmarkInputs {
+    // If false, the fake store uses the default PersistentDataStore.getMany, which does one get per key.
+    @Param({"false", "true"})
+    public boolean multiGet;
+
+    @Param({"1000"})
+    public int latencyMicros;
+
+    FakePersistentDataStore store;
+    LDClient client;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+      // Initialization of the client does not count as part of a benchmark. A new client is created for
+      // every invocation so that the SDK's cache is always cold.
+      store = new FakePersistentDataStore(TimeUnit.MICROSECONDS.toNanos(latencyMicros), multiGet);
+      store.init(makeTestData());
+      LDConfig config = new LDConfig.Builder()
+          .dataSource(Components.externalUpdatesOnly())
+          .dataStore(Components.persistentDataStore(context -> store))
+          .events(Components.noEvents())
+          .logging(Components.noLogging())
+          .build();
+      client = new LDClient(SDK_KEY, config);
+      client.isInitialized(); // makes sure the store's initialized state is cached before we start counting
+      store.roundTrips.set(0);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+      client.close();
+    }
+  }
+
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class RoundTripCounter {
+    public long roundTrips;
+  }
+
+  @Benchmark
+  public boolean evaluateFlagWithDependencies(BenchmarkInputs inputs, RoundTripCounter counter) throws Exception {
+    boolean result = inputs.client.boolVariation(ROOT_FLAG_KEY, BASIC_CONTEXT, false);
+    counter.roundTrips += inputs.store.roundTrips.get();
+    return result;
+  }
+
+  // The root flag has PREREQUISITE_COUNT prerequisites; each of those has its own prerequisite, and
+  // every flag has a rule referencing a segment of its own.
+  private static FullDataSet<SerializedItemDescriptor> makeTestData() {
+    List<VersionedData> flags = new ArrayList<>();
+    List<VersionedData> segments = new ArrayList<>();
+    DataModel.Prerequisite[] rootPrereqs = new DataModel.Prerequisite[PREREQUISITE_COUNT];
+    for (int i = 0; i < PREREQUISITE_COUNT; i++) {
+      String prereqKey = "prereq" + i;
+      String secondLevelKey = "prereq" + i + "-prereq";
+      rootPrereqs[i] = prerequisite(prereqKey, 0);
+      flags.add(makeFlag(prereqKey, segments).prerequisites(prerequisite(secondLevelKey, 0)).build());
+      flags.add(makeFlag(secondLevelKey, segments).build());
+    }
+    flags.add(makeFlag(ROOT_FLAG_KEY, segments).prerequisites(rootPrereqs).build());
+
+    List<Map.Entry<DataKind, KeyedItems<SerializedItemDescriptor>>> allData = new ArrayList<>();
+    allData.add(new AbstractMap.SimpleEntry<>(FEATURES, serializeAll(FEATURES, flags)));
+    allData.add(new AbstractMap.SimpleEntry<>(SEGMENTS, serializeAll(SEGMENTS, segments)));
+    return new FullDataSet<>(allData);
+  }
+
+  private static ModelBuilders.FlagBuilder makeFlag(String key, List<VersionedData> segments) {
+    String segmentKey = key + "-segment";
+    segments.add(segmentBuilder(segmentKey).version(1).build());
+    return flagBuilder(key).version(1).on(true)
+        .variations(LDValue.of(true), LDValue.of(false))
+        .fallthroughVariation(0)
+        .offVariation(1)
+        .rules(ruleBuilder().variation(1).clauses(clauseMatchingSegment(segmentKey)).build());
+  }
+
+  static KeyedItems<SerializedItemDescriptor> serializeAll(DataKind kind, List<VersionedData> items) {
+    List<Map.Entry<String, SerializedItemDescriptor>> serializedItems = new ArrayList<>();
+    for (VersionedData item: items) {
+      String json = kind.serialize(new ItemDescriptor(item.getVersion(), item));
+      serializedItems.add(new AbstractMap.SimpleEntry<>(item.getKey(),
+          new SerializedItemDescriptor(item.getVersion(), false, json)));
+    }
+    return new KeyedItems<>(serializedItems);
+  }
+
+  // This is also used by DaemonModeRefreshBenchmarks.
+  static final class FakePersistentDataStore implements PersistentDataStore {
+    final AtomicLong roundTrips = new AtomicLong();
+    private final long latencyNanos;
+    private final boolean multiGet;
+    private final Map<DataKind, Map<String, SerializedItemDescriptor>> data = new ConcurrentHashMap<>();
+    private volatile boolean inited;
+
+    FakePersistentDataStore(long latencyNanos, boolean multiGet) {
+      this.latencyNanos = latencyNanos;
+      this.multiGet = multiGet;
+    }
+
+    private void roundTrip() {
+      roundTrips.incrementAndGet();
+      LockSupport.parkNanos(latencyNanos);
+    }
+
+    @Override
+    public void init(FullDataSet<SerializedItemDescriptor> allData) {
+      data.clear();
+      for (Map.Entry<DataKind, KeyedItems<SerializedItemDescriptor>> e0: allData.getData()) {
+        Map<String, SerializedItemDescriptor> items = new ConcurrentHashMap<>();
+        for (Map.Entry<String, SerializedItemDescriptor> e1: e0.getValue().getItems()) {
+          items.put(e1.getKey(), e1.getValue());
+        }
+        data.put(e0.getKey(), items);
+      }
+      inited = true;
+    }
+
+    @Override
+    public SerializedItemDescriptor get(DataKind kind, String key) {
+      roundTrip();
+      Map<String, SerializedItemDescriptor> items = data.get(kind);
+      return items == null ? null : items.get(key);
+    }
+
+    @Override
+    public KeyedItems<SerializedItemDescriptor> getMany(DataKind kind, Iterable<String> keys) {
+      if (!multiGet) {
+        return PersistentDataStore.super.getMany(kind, keys);
+      }
+      roundTrip();
+      Map<String, SerializedItemDescriptor> items = data.get(kind);
+      List<Map.Entry<String, SerializedItemDescriptor>> results = new ArrayList<>();
+      for (String key: keys) {
+        SerializedItemDescriptor item = items == null ? null : items.get(key);
+        if (item != null) {
+          results.add(new AbstractMap.SimpleEntry<>(key, item));
+        }
+      }
+      return new KeyedItems<>(results);
+    }
+
+    @Override
+    public KeyedItems<SerializedItemDescriptor> getAll(DataKind kind) {
+      roundTrip();
+      Map<String, SerializedItemDescriptor> items = data.get(kind);
+      return new KeyedItems<>(items == null ? null : new ArrayList<>(items.entrySet()));
+    }
+
+    @Override
+    public boolean upsert(DataKind kind, String key, SerializedItemDescriptor item) {
+      roundTrip();
+      data.computeIfAbsent(kind, k -> new ConcurrentHashMap<>()).put(key, item);
+      return true;
+    }
+
+    @Override
+    public boolean isInitialized() {
+      roundTrip();
+      return inited;
+    }
+
+    @Override
+    public boolean isStoreAvailable() {
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package com.launchdarkly.sdk.server;
+
+import com.launchdarkly.sdk.LDValue;
+import com.launchdarkly.sdk.server.DataModel.FeatureFlag;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import static com.launchdarkly.sdk.server.DataModel.FEATURES;
+import static com.launchdarkly.sdk.server.ModelBuilders.flagBuilder;
+
+/**
+ * These benchmarks compare the JSON format that persistent data stores normally use for flags with the
+ * binary format of {@link BinaryItemFormat}, for encoding and decoding a single flag. The "storedChars"
+ * counter reports the size of the encoded flag.
+ * <p>
+ * The "rules" flag has many rules with similar clauses, which is where the binary format's string table
+ * helps the most; the "targets" flag is mostly a long list of unique user keys.
+ */
+public class SerializationFormatBenchmarks {
+  @State(Scope.Thread)
+  public static class BenchmarkInputs {
+    // Initialization of the things in BenchmarkInputs does not count as part of a benchmark.
+    @Param({"json", "binary"})
+    public String format;
+
+    @Param({"rules", "targets"})
+    public String flagShape;
+
+    ItemDescriptor flag;
+    String encodedFlag;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      FeatureFlag f = flagShape.equals("rules") ? makeFlagWithRules(100) : makeFlagWithTargets(5000);
+      flag = new ItemDescriptor(f.getVersion(), f);
+      encodedFlag = encode(this);
+    }
+  }
+
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class SizeCounter {
+    public long storedChars;
+  }
+
+  @Benchmark
+  public String encodeFlag(BenchmarkInputs inputs, SizeCounter counter) {
+    String s = encode(inputs);
+    counter.storedChars += s.length();
+    return s;
+  }
+
+  @Benchmark
+  public ItemDescriptor decodeFlag(BenchmarkInputs inputs) {
+    return inputs.format.equals("binary") ? BinaryItemFormat.decode(FEATURES, inputs.encodedFlag) :
+      FEATURES.deserialize(inputs.encodedFlag);
+  }
+
+  private static String encode(BenchmarkInputs inputs) {
+    return inputs.format.equals("binary") ? BinaryItemFormat.encode(inputs.flag.getItem()) :
+      FEATURES.serialize(inputs.flag);
+  }
+
+  private static FeatureFlag makeFlagWithRules(int ruleCount) {
+    ModelBuilders.FlagBuilder builder = flagBuilder("rules-flag").version(1).on(true)
+        .variations(LDValue.of(true), LDValue.of(false)).fallthroughVariation(0).offVariation(1);
+    for (int i = 0; i < ruleCount; i++) {
+      builder.addRule("rule" + i, i % 2,
+          "{\"attribute\":\"email\",\"op\":\"endsWith\",\"values\":[\"@example" + i + ".com\"]}",
+          "{\"contextKind\":\"user\",\"attribute\":\"country\",\"op\":\"in\",\"values\":[\"us\",\"ca\",\"gb\"]}");
+    }
+    return builder.build();
+  }
+
+  private static FeatureFlag makeFlagWithTargets(int targetCount) {
+    String[] keys = new String[targetCount];
+    for (int i = 0; i < targetCount; i++) {
+      keys[i] = "user-" + Integer.toHexString(i * 7919) + "-" + i;
+    }
+    return flagBuilder("targets-flag").version(1).on(true)
+        .variations(LDValue.of(true), LDValue.of(false)).fallthroughVariation(0).offVariation(1)
+        .addTarget(0, keys).build();
+  }
+}
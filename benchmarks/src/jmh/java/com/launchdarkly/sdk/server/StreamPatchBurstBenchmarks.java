@@ -0,0 +1,127 @@
+package com.launchdarkly.sdk.server;
+
+import com.launchdarkly.sdk.server.integrations.StreamingDataSourceBuilder;
+import com.launchdarkly.sdk.server.interfaces.FlagChangeEvent;
+import com.launchdarkly.sdk.server.interfaces.FlagChangeListener;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static com.launchdarkly.sdk.server.TestValues.SDK_KEY;
+
+/**
+ * These benchmarks measure how long it takes for a burst of stream "patch" events to be applied to the
+ * in-memory store, with and without {@link StreamingDataSourceBuilder#batchUpdates(Duration, int)}. The
+ * burst is replayed from a local mock stream server, so the timing includes SSE parsing and JSON
+ * deserialization but no real network latency.
+ */
+public class StreamPatchBurstBenchmarks {
+  static final int FLAG_COUNT = 1000;
+  static final int PATCH_COUNT = 1000;
+  static final String LAST_FLAG_KEY = "burst-end";
+
+  @State(Scope.Thread)
+  public static class BenchmarkInputs {
+    // A batch window of zero means batching is disabled.
+    @Param({"0", "10"})
+    public int batchWindowMillis;
+
+    final String streamBody;
+    MockWebServer server;
+    LDClient client;
+    CountDownLatch burstApplied;
+
+    public BenchmarkInputs() {
+      streamBody = makeRecordedBurst();
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() throws IOException {
+      // Initialization of the client does not count as part of a benchmark. The client's stream request
+      // is held by the mock server until the benchmark method enqueues the response.
+      server = new MockWebServer();
+      server.start();
+      LDConfig config = new LDConfig.Builder()
+          .serviceEndpoints(Components.serviceEndpoints().streaming(server.url("/").uri()))
+          .dataSource(Components.streamingDataSource()
+              .batchUpdates(Duration.ofMillis(batchWindowMillis), StreamingDataSourceBuilder.DEFAULT_BATCH_MAX_ITEMS))
+          .events(Components.noEvents())
+          .logging(Components.noLogging())
+          .startWait(Duration.ZERO)
+          .build();
+      client = new LDClient(SDK_KEY, config);
+      burstApplied = new CountDownLatch(1);
+      client.getFlagTracker().addFlagChangeListener(new FlagChangeListener() {
+        @Override
+        public void onFlagChange(FlagChangeEvent event) {
+          if (event.getKey().equals(LAST_FLAG_KEY)) {
+            burstApplied.countDown();
+          }
+        }
+      });
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+      client.close();
+      server.shutdown();
+    }
+  }
+
+  @Benchmark
+  public void applyPatchBurst(BenchmarkInputs inputs) throws Exception {
+    inputs.server.enqueue(new MockResponse()
+        .setHeader("Content-Type", "text/event-stream")
+        .setChunkedBody(inputs.streamBody, 4096));
+    if (!inputs.burstApplied.await(10, TimeUnit.SECONDS)) {
+      throw new RuntimeException("timed out waiting for stream updates to be applied");
+    }
+  }
+
+  // Builds a stream that starts with a "put" of FLAG_COUNT flags, followed by PATCH_COUNT "patch" events
+  // spread across those flags, and finally a patch that creates LAST_FLAG_KEY so we know when we're done.
+  private static String makeRecordedBurst() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("event: put\ndata: {\"data\":{\"flags\":{");
+    for (int i = 0; i < FLAG_COUNT; i++) {
+      if (i > 0) {
+        sb.append(",");
+      }
+      sb.append("\"").append(flagKey(i)).append("\":").append(flagJson(flagKey(i), 1));
+    }
+    sb.append("},\"segments\":{}}}\n\n");
+    for (int i = 0; i < PATCH_COUNT; i++) {
+      String key = flagKey(i % FLAG_COUNT);
+      appendPatch(sb, key, 2 + i / FLAG_COUNT);
+    }
+    appendPatch(sb, LAST_FLAG_KEY, 1);
+    return sb.toString();
+  }
+
+  private static void appendPatch(StringBuilder sb, String key, int version) {
+    sb.append("event: patch\ndata: {\"path\":\"/flags/").append(key).append("\",\"data\":")
+      .append(flagJson(key, version)).append("}\n\n");
+  }
+
+  private static String flagKey(int i) {
+    return "flag" + i;
+  }
+
+  private static String flagJson(String key, int version) {
+    return "{\"key\":\"" + key + "\",\"version\":" + version +
+        ",\"on\":true,\"variations\":[true,false],\"fallthrough\":{\"variation\":0},\"offVariation\":1}";
+  }
+}
@@ -0,0 +1,121 @@
+package com.launchdarkly.sdk.server;
+
+import com.launchdarkly.sdk.server.subsystems.BigSegmentStore;
+import com.launchdarkly.sdk.server.subsystems.BigSegmentStoreTypes.Membership;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Combines concurrent Big Segment membership queries for different users into calls to
+ * {@link BigSegmentStore#getMemberships(java.util.Collection)}.
+ * <p>
+ * There is no background thread. The first caller to add a user to an empty batch waits for up to the
+ * batch window for other callers to add theirs, then takes the batch and queries the store on behalf of
+ * all of them; if a batch fills up before then, the caller that filled it queries the store immediately.
+ * A caller that asks for a user who is already in an open or running batch waits for that result instead
+ * of adding the user again.
+ */
+final class BigSegmentMembershipBatcher {
+  private final BigSegmentStore store;
+  private final long batchWindowNanos;
+  private final int maxBatchSize;
+  private final Object lock = new Object();
+  private Map<String, CompletableFuture<Membership>> openBatch = new HashMap<>();
+  private final Map<String, CompletableFuture<Membership>> runningQueries = new HashMap<>();
+
+  BigSegmentMembershipBatcher(BigSegmentStore store, Duration batchWindow, int maxBatchSize) {
+    this.store = store;
+    this.batchWindowNanos = batchWindow.toNanos();
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /**
+   * Returns the membership for a user hash, or null if the store has none, blocking until the batch
+   * that it is part of has been queried. If the store query fails, its exception is rethrown.
+   *
+   * @param userHash the hashed user key
+   * @return the membership or null
+   */
+  Membership getMembership(String userHash) {
+    CompletableFuture<Membership> result;
+    Map<String, CompletableFuture<Membership>> batchToWaitFor = null;
+    Map<String, CompletableFuture<Membership>> batchToRun = null;
+    synchronized (lock) {
+      result = openBatch.get(userHash);
+      if (result == null) {
+        result = runningQueries.get(userHash);
+      }
+      if (result == null) {
+        result = new CompletableFuture<>();
+        if (openBatch.isEmpty()) {
+          batchToWaitFor = openBatch;
+        }
+        openBatch.put(userHash, result);
+        if (openBatch.size() >= maxBatchSize) {
+          batchToRun = takeOpenBatch();
+          batchToWaitFor = null;
+          lock.notifyAll();
+        }
+      }
+    }
+    if (batchToWaitFor != null) {
+      batchToRun = waitForBatch(batchToWaitFor);
+    }
+    if (batchToRun != null) {
+      runBatch(batchToRun);
+    }
+    try {
+      return result.join();
+    } catch (CompletionException e) {
+      throw e.getCause() instanceof RuntimeException ? (RuntimeException)e.getCause() : e;
+    }
+  }
+
+  // Waits until the batch window has passed or someone else has taken the batch because it was full.
+  // Returns the batch if it is still ours to run.
+  private Map<String, CompletableFuture<Membership>> waitForBatch(Map<String, CompletableFuture<Membership>> batch) {
+    long deadline = System.nanoTime() + batchWindowNanos;
+    synchronized (lock) {
+      long remaining;
+      while (openBatch == batch && (remaining = deadline - System.nanoTime()) > 0) {
+        try {
+          TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+      return openBatch == batch ? takeOpenBatch() : null;
+    }
+  }
+
+  // Called with the lock held.
+  private Map<String, CompletableFuture<Membership>> takeOpenBatch() {
+    Map<String, CompletableFuture<Membership>> batch = openBatch;
+    openBatch = new HashMap<>();
+    runningQueries.putAll(batch);
+    return batch;
+  }
+
+  private void runBatch(Map<String, CompletableFuture<Membership>> batch) {
+    try {
+      Map<String, Membership> memberships = store.getMemberships(batch.keySet());
+      for (Map.Entry<String, CompletableFuture<Membership>> e: batch.entrySet()) {
+        e.getValue().complete(memberships == null ? null : memberships.get(e.getKey()));
+      }
+    } catch (RuntimeException | Error e) {
+      for (CompletableFuture<Membership> f: batch.values()) {
+        f.completeExceptionally(e);
+      }
+    } finally {
+      synchronized (lock) {
+        runningQueries.keySet().removeAll(batch.keySet());
+      }
+    }
+  }
+}
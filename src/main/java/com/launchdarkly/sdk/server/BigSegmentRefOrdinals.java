@@ -0,0 +1,107 @@
+package com.launchdarkly.sdk.server;
+
+import com.launchdarkly.sdk.server.DataModelPreprocessing.SegmentPreprocessed;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns a small integer ordinal to each Big Segment reference (such as "segkey.g42") that a
+ * {@link BigSegmentStoreWrapper} knows about, so that a user's membership can be stored as bitsets
+ * indexed by ordinal; see {@link CompactBigSegmentMembership}.
+ * <p>
+ * Within one instance, references are only added, and an ordinal never changes once it is assigned.
+ * The wrapper replaces its instance with a new one, built from the segments that currently exist,
+ * whenever a full data set has been received and some of the known references are no longer in use;
+ * that is how references for deleted segments and old generations are dropped.
+ */
+final class BigSegmentRefOrdinals {
+  private final ConcurrentHashMap<String, Integer> ordinals = new ConcurrentHashMap<>();
+  private final Object lock = new Object();
+  private volatile String[] refs = new String[0];
+
+  /**
+   * Returns the ordinal of a segment reference, assigning a new one if necessary.
+   *
+   * @param segmentRef the segment reference
+   * @return the ordinal
+   */
+  int ordinalFor(String segmentRef) {
+    Integer ordinal = ordinals.get(segmentRef);
+    if (ordinal != null) {
+      return ordinal;
+    }
+    synchronized (lock) {
+      ordinal = ordinals.get(segmentRef);
+      if (ordinal == null) {
+        String[] newRefs = Arrays.copyOf(refs, refs.length + 1);
+        newRefs[refs.length] = segmentRef;
+        // Publish the reference before the ordinal, so that anyone who sees the ordinal can find it
+        refs = newRefs;
+        ordinal = newRefs.length - 1;
+        ordinals.put(segmentRef, ordinal);
+      }
+      return ordinal;
+    }
+  }
+
+  /**
+   * Returns the ordinal of a segment reference, or -1 if it is not known.
+   *
+   * @param segmentRef the segment reference
+   * @return the ordinal or -1
+   */
+  int ordinalIfKnown(String segmentRef) {
+    Integer ordinal = ordinals.get(segmentRef);
+    return ordinal == null ? -1 : ordinal;
+  }
+
+  /**
+   * Returns the ordinal of a preprocessed segment's reference, or -1 if it is not known. The result is
+   * remembered in the segment, so that evaluations do not have to hash the reference string as long as
+   * this instance is in use.
+   *
+   * @param segment the preprocessed segment data
+   * @return the ordinal or -1
+   */
+  int ordinalIfKnown(SegmentPreprocessed segment) {
+    ResolvedOrdinal resolved = segment.bigSegmentOrdinal;
+    if (resolved != null && resolved.ordinals == this) {
+      return resolved.ordinal;
+    }
+    int ordinal = ordinalIfKnown(segment.bigSegmentRef);
+    if (ordinal >= 0) { // an unknown reference might be added later, so we don't remember that
+      segment.bigSegmentOrdinal = new ResolvedOrdinal(this, ordinal);
+    }
+    return ordinal;
+  }
+
+  /**
+   * Returns all of the known segment references, indexed by ordinal. The array must not be modified.
+   *
+   * @return the known references
+   */
+  String[] knownRefs() {
+    return refs;
+  }
+
+  /**
+   * Returns the number of known segment references.
+   *
+   * @return the number of references
+   */
+  int size() {
+    return refs.length;
+  }
+
+  // The ordinal of a segment reference in a specific BigSegmentRefOrdinals instance.
+  static final class ResolvedOrdinal {
+    final BigSegmentRefOrdinals ordinals;
+    final int ordinal;
+
+    ResolvedOrdinal(BigSegmentRefOrdinals ordinals, int ordinal) {
+      this.ordinals = ordinals;
+      this.ordinal = ordinal;
+    }
+  }
+}
@@ -20,21 +20,33 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.Base64;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-
-import static com.launchdarkly.sdk.server.subsystems.BigSegmentStoreTypes.createMembershipFromSegmentRefs;
+import java.util.concurrent.atomic.AtomicReference;
 
 class BigSegmentStoreWrapper implements Closeable {
+  private static final BigSegmentsQueryResult STORE_ERROR_RESULT =
+      new BigSegmentsQueryResult(null, BigSegmentsStatus.STORE_ERROR);
+
   private final BigSegmentStore store;
   private final Duration staleAfter;
   private final ScheduledFuture<?> pollFuture;
-  private final LoadingCache<String, Membership> cache;
+  private final LoadingCache<String, CachedMembership> cache;
+  private final long userCacheTimeNanos;
+  private final CacheRefreshAhead<String> refreshAhead; // null if cached states are only reloaded on expiry
+  private final BigSegmentMembershipBatcher batcher; // null if queries are not batched
   private final EventBroadcasterImpl<StatusListener, Status> statusProvider;
+  private final ScheduledExecutorService sharedExecutor;
+  private final Set<String> conversionsInProgress = ConcurrentHashMap.newKeySet();
   private final LDLogger logger;
-  private final Object statusLock = new Object();
-  private Status lastStatus;
+  // Replaced by updateSegmentRefs() when references are no longer in use; see BigSegmentRefOrdinals
+  private volatile BigSegmentRefOrdinals ordinals = new BigSegmentRefOrdinals();
+  // Read on every evaluation that involves a Big Segment, so we use an atomic reference rather than a lock
+  private final AtomicReference<Status> lastStatus = new AtomicReference<>();
 
   BigSegmentStoreWrapper(BigSegmentsConfiguration config,
                          EventBroadcasterImpl<StatusListener, Status> statusProvider,
@@ -43,18 +55,31 @@ class BigSegmentStoreWrapper implements Closeable {
     this.store = config.getStore();
     this.staleAfter = config.getStaleAfter();
     this.statusProvider = statusProvider;
+    this.sharedExecutor = sharedExecutor;
     this.logger = logger;
+    this.batcher = config.getBatchWindow() == null || config.getBatchWindow().isZero() ? null :
+      new BigSegmentMembershipBatcher(store, config.getBatchWindow(), config.getMaxBatchSize());
 
-    CacheLoader<String, Membership> loader = new CacheLoader<String, Membership>() {
+    Duration userCacheTime = config.getUserCacheTime();
+    Duration staleWhileRevalidate = config.getUserCacheStaleWhileRevalidate() == null ? Duration.ZERO :
+      config.getUserCacheStaleWhileRevalidate();
+    this.userCacheTimeNanos = userCacheTime.toNanos();
+    // Refreshing in the background only makes sense if states are cached at all. A stale-while-revalidate
+    // time on its own is the same as refreshing ahead with a window of zero, at the moment of expiry.
+    this.refreshAhead = userCacheTime.isZero() ||
+        (config.getUserCacheRefreshAheadRatio() <= 0 && staleWhileRevalidate.isZero()) ? null :
+        new CacheRefreshAhead<>(userCacheTime, config.getUserCacheRefreshAheadRatio(), this::refreshMembership,
+            sharedExecutor);
+
+    CacheLoader<String, CachedMembership> loader = new CacheLoader<String, CachedMembership>() {
       @Override
-      public Membership load(@NonNull String key) {
-        Membership membership = queryMembership(key);
-        return membership == null ? createMembershipFromSegmentRefs(null, null) : membership;
+      public CachedMembership load(@NonNull String key) {
+        return newCachedMembership(queryMembership(key));
       }
     };
     this.cache = CacheBuilder.newBuilder()
         .maximumSize(config.getUserCacheSize())
-        .expireAfterWrite(config.getUserCacheTime())
+        .expireAfterWrite(refreshAhead == null ? userCacheTime : userCacheTime.plus(staleWhileRevalidate))
         .build(loader);
 
     this.pollFuture = sharedExecutor.scheduleAtFixedRate(this::pollStoreAndUpdateStatus,
@@ -77,29 +102,161 @@ class BigSegmentStoreWrapper implements Closeable {
    * it converts the user key into the hash string used by the BigSegmentStore, queries the store,
    * and caches the result. The returned status value indicates whether the query succeeded, and
    * whether the result (regardless of whether it was from a new query or the cache) should be
-   * considered "stale".
+   * considered "stale". A cached state that is older than the user cache time, which can only be
+   * returned if stale-while-revalidate is enabled, is also considered stale.
+   * <p>
+   * If background refreshing is enabled and the cached state is due for a refresh, this starts
+   * reloading it on the shared executor without waiting for the result. Similarly, if the segment
+   * references have been rebuilt since the state was cached, it is converted to use the new ones on the
+   * shared executor; until then, the state that we have is still correct for the references it covers.
+   * <p>
+   * The returned object may be shared with other callers, so it must not be modified.
    *
    * @param userKey the (unhashed) user key
    * @return the query result
    */
   BigSegmentsQueryResult getUserMembership(String userKey) {
-    BigSegmentsQueryResult ret = new BigSegmentsQueryResult();
+    return getUserMembership(userKey, null);
+  }
+
+  /**
+   * Called by the evaluator when it needs the Big Segment membership state for a user in order to
+   * evaluate a specific Big Segment. This is the same as {@link #getUserMembership(String)}, except
+   * that it first adds the segment reference to the known ones if necessary; and if the cached state
+   * was loaded before the reference was known, so that it does not cover it, it queries the store again.
+   *
+   * @param userKey the (unhashed) user key
+   * @param segmentRef the segment reference that the result must cover
+   * @return the query result
+   */
+  BigSegmentsQueryResult getUserMembership(String userKey, String segmentRef) {
     try {
-      ret.membership = cache.get(userKey);
-      ret.status = getStatus().isStale() ? BigSegmentsStatus.STALE : BigSegmentsStatus.HEALTHY;
+      long now = System.nanoTime();
+      if (segmentRef != null) {
+        ordinals.ordinalFor(segmentRef);
+      }
+      CachedMembership cached = cache.get(userKey);
+      boolean mustReload = segmentRef != null && !cached.membership.covers(segmentRef);
+      if (refreshAhead == null && userCacheTimeNanos > 0 && now - cached.loadTime >= userCacheTimeNanos) {
+        // Converting a state to new ordinals is a write to the cache, so the cache's own expiry doesn't
+        // apply to a converted state; it still shouldn't be used for longer than the user cache time
+        mustReload = true;
+      }
+      if (mustReload) {
+        // Only the first caller that sees this state removes it; then the cache's loader makes sure that,
+        // however many callers need to reload it, there is only one query for the user at a time.
+        cache.asMap().remove(userKey, cached);
+        cached = cache.get(userKey);
+      } else if (cached.membership.getOrdinals() != ordinals) {
+        convertMembershipInBackground(userKey);
+      }
+      boolean expired = false;
+      if (refreshAhead != null) {
+        refreshAhead.refreshIfDue(userKey, cached.refreshTime, now);
+        expired = now - cached.loadTime >= userCacheTimeNanos;
+      }
+      return expired || getStatus().isStale() ? cached.staleResult : cached.healthyResult;
     } catch (Exception e) {
       logger.error("Big Segment store returned error: {}", e.toString());
       logger.debug(e.toString(), e);
-      ret.membership = null;
-      ret.status = BigSegmentsStatus.STORE_ERROR;
+      return STORE_ERROR_RESULT;
+    }
+  }
+
+  // Called on the shared executor by refreshAhead. If the query fails, we keep the cached state, which
+  // will expire as usual.
+  private void refreshMembership(String userKey) {
+    try {
+      cache.put(userKey, newCachedMembership(queryMembership(userKey)));
+    } catch (RuntimeException e) {
+      logger.warn("Big Segment store returned error while refreshing cached state: {}", e.toString());
+      logger.debug(e.toString(), e);
+    }
+  }
+
+  private void convertMembershipInBackground(String userKey) {
+    if (!conversionsInProgress.add(userKey)) {
+      return;
+    }
+    try {
+      sharedExecutor.execute(() -> {
+        try {
+          convertMembership(userKey);
+        } finally {
+          conversionsInProgress.remove(userKey);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // the executor has been shut down because the SDK is closing
+      conversionsInProgress.remove(userKey);
+    }
+  }
+
+  // Converts a cached state to the current segment reference ordinals, which does not need a query. If
+  // the state has been replaced in the meantime, we leave the new one alone.
+  private void convertMembership(String userKey) {
+    CachedMembership cached = cache.getIfPresent(userKey);
+    BigSegmentRefOrdinals current = ordinals;
+    if (cached != null && cached.membership.getOrdinals() != current) {
+      cache.asMap().replace(userKey, cached, cached.withMembership(cached.membership.withOrdinals(current)));
+    }
+  }
+
+  /**
+   * Called when a full data set has been received, with the references of all the Big Segments in it.
+   * If any of the known references are no longer in use, this replaces the ordinals with new ones for
+   * just the current references; cached states are converted to the new ordinals the next time they
+   * are read. Otherwise, any new references are added to the current ordinals.
+   *
+   * @param segmentRefs the current segment references
+   */
+  synchronized void updateSegmentRefs(Set<String> segmentRefs) {
+    BigSegmentRefOrdinals current = ordinals;
+    String[] knownRefs = current.knownRefs();
+    boolean anyUnused = false;
+    for (String ref: knownRefs) {
+      if (!segmentRefs.contains(ref)) {
+        anyUnused = true;
+        break;
+      }
+    }
+    if (!anyUnused) {
+      for (String ref: segmentRefs) {
+        current.ordinalFor(ref);
+      }
+      return;
     }
-    return ret;
+    // References that are still in use keep their relative order, so that a cached state that covered
+    // them still covers them after it is converted
+    BigSegmentRefOrdinals newOrdinals = new BigSegmentRefOrdinals();
+    for (String ref: knownRefs) {
+      if (segmentRefs.contains(ref)) {
+        newOrdinals.ordinalFor(ref);
+      }
+    }
+    for (String ref: segmentRefs) {
+      newOrdinals.ordinalFor(ref);
+    }
+    ordinals = newOrdinals;
+  }
+
+  // package-private for testing
+  BigSegmentRefOrdinals getSegmentRefOrdinals() {
+    return ordinals;
+  }
+
+  private CachedMembership newCachedMembership(Membership membership) {
+    long now = System.nanoTime();
+    return new CachedMembership(
+        CompactBigSegmentMembership.fromMembership(membership, ordinals),
+        now,
+        refreshAhead == null ? 0 : refreshAhead.nextRefreshTime(now));
   }
 
   private Membership queryMembership(String userKey) {
     String hash = hashForUserKey(userKey);
     logger.debug("Querying Big Segment state for user hash {}", hash);
-    return store.getMembership(hash);
+    return batcher == null ? store.getMembership(hash) : batcher.getMembership(hash);
   }
 
   /**
@@ -116,10 +273,7 @@ class BigSegmentStoreWrapper implements Closeable {
    * @return the store status
    */
   Status getStatus() {
-    Status ret;
-    synchronized (statusLock) {
-      ret = lastStatus;
-    }
+    Status ret = lastStatus.get();
     if (ret != null) {
       return ret;
     }
@@ -139,11 +293,7 @@ class BigSegmentStoreWrapper implements Closeable {
       logger.debug(e.toString(), e);
     }
     Status newStatus = new Status(storeAvailable, storeStale);
-    Status oldStatus;
-    synchronized (this.statusLock) {
-      oldStatus = this.lastStatus;
-      this.lastStatus = newStatus;
-    }
+    Status oldStatus = lastStatus.getAndSet(newStatus);
     if (!newStatus.equals(oldStatus)) {
       logger.debug("Big Segment store status changed from {} to {}", oldStatus, newStatus);
       statusProvider.broadcast(newStatus);
@@ -160,8 +310,39 @@ class BigSegmentStoreWrapper implements Closeable {
     return Base64.getEncoder().encodeToString(encodedDigest);
   }
 
+  // The value type of the user cache. loadTime is the System.nanoTime() value when the state was
+  // queried, and refreshTime is the value after which we should refresh it in the background, if
+  // refresh-ahead or stale-while-revalidate is enabled. The query results for both possible statuses
+  // are created up front, so that a cache hit does not allocate anything.
+  private static final class CachedMembership {
+    final BigSegmentsQueryResult healthyResult;
+    final BigSegmentsQueryResult staleResult;
+    final CompactBigSegmentMembership membership;
+    final long loadTime;
+    final long refreshTime;
+
+    CachedMembership(CompactBigSegmentMembership membership, long loadTime, long refreshTime) {
+      this.healthyResult = new BigSegmentsQueryResult(membership, BigSegmentsStatus.HEALTHY);
+      this.staleResult = new BigSegmentsQueryResult(membership, BigSegmentsStatus.STALE);
+      this.membership = membership;
+      this.loadTime = loadTime;
+      this.refreshTime = refreshTime;
+    }
+
+    CachedMembership withMembership(CompactBigSegmentMembership newMembership) {
+      return new CachedMembership(newMembership, loadTime, refreshTime);
+    }
+  }
+
   static class BigSegmentsQueryResult {
     Membership membership;
     BigSegmentsStatus status;
+
+    BigSegmentsQueryResult() {}
+
+    BigSegmentsQueryResult(Membership membership, BigSegmentsStatus status) {
+      this.membership = membership;
+      this.status = status;
+    }
   }
 }
@@ -0,0 +1,631 @@
+package com.launchdarkly.sdk.server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.launchdarkly.sdk.server.DataModel.FeatureFlag;
+import com.launchdarkly.sdk.server.DataModel.Segment;
+import com.launchdarkly.sdk.server.DataModel.VersionedData;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
+import com.launchdarkly.sdk.server.subsystems.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.launchdarkly.sdk.server.DataModel.FEATURES;
+import static com.launchdarkly.sdk.server.DataModel.SEGMENTS;
+import static com.launchdarkly.sdk.server.JsonHelpers.gsonInstance;
+
+/**
+ * A compact binary encoding of flags and segments, which {@link PersistentDataStoreWrapper} can use
+ * instead of JSON when writing to a persistent data store.
+ * <p>
+ * The encoding has the same structure as the JSON representation of the item, so it does not need to be
+ * changed when properties are added to the data model. Each property name and string value that occurs
+ * more than once is stored once, in a string table at the start of the item, and referred to by its index
+ * after that; numbers and lengths are stored as variable-length integers. Decoding goes through
+ * {@link BinaryJsonReader}, which presents the encoded data to Gson as a stream of JSON tokens, so the
+ * data model classes are deserialized by the same type adapters as for JSON but without parsing any text.
+ * <p>
+ * The {@link com.launchdarkly.sdk.server.subsystems.PersistentDataStore} interface represents items as
+ * strings, so an encoded item is {@link #PREFIX} followed by the Base64 encoding of these bytes:
+ * <ul>
+ * <li> the format version, currently 1 </li>
+ * <li> the number of strings in the string table, followed by each string as a length and the UTF-8 bytes </li>
+ * <li> the item's value </li>
+ * </ul>
+ * A value is a one-byte tag followed by data that depends on the tag: nothing for null and booleans, a
+ * zigzag-encoded integer, an eight-byte double, a string reference, or for an array or object the
+ * number of elements followed by the elements (each preceded by its name, for an object). A string
+ * reference is either a string table index plus one, or zero followed by a length and the UTF-8 bytes.
+ * <p>
+ * This is much smaller than JSON for items with many rules or clauses, since those repeat the same
+ * property names. It is not smaller for items that consist mostly of unique strings, such as a flag with
+ * a long list of targeted user keys, because of the overhead of Base64.
+ * <p>
+ * {@link #isEncoded(String)} can distinguish this from JSON, so items in either format can be read.
+ */
+final class BinaryItemFormat {
+  static final String PREFIX = "ld-bin:";
+  static final int FORMAT_VERSION = 1;
+
+  static final int TAG_NULL = 0;
+  static final int TAG_FALSE = 1;
+  static final int TAG_TRUE = 2;
+  static final int TAG_INT = 3;
+  static final int TAG_DOUBLE = 4;
+  static final int TAG_STRING = 5;
+  static final int TAG_ARRAY = 6;
+  static final int TAG_OBJECT = 7;
+
+  private BinaryItemFormat() {}
+
+  /**
+   * Returns true if the item's kind is one that can be encoded in this format.
+   *
+   * @param kind the data kind
+   * @return true if the kind is supported
+   */
+  static boolean supportsKind(DataKind kind) {
+    return kind == FEATURES || kind == SEGMENTS;
+  }
+
+  /**
+   * Returns true if a stored value is in this format rather than JSON.
+   *
+   * @param stored the stored value
+   * @return true if it is a binary-encoded item
+   */
+  static boolean isEncoded(String stored) {
+    return stored != null && stored.startsWith(PREFIX);
+  }
+
+  /**
+   * Encodes a flag or segment.
+   *
+   * @param item the item
+   * @return the encoded item
+   */
+  static String encode(Object item) {
+    return PREFIX + Base64.getEncoder().encodeToString(encodeToBytes(item));
+  }
+
+  /**
+   * Encodes a flag or segment, without the prefix and Base64 encoding that {@link #encode(Object)} adds
+   * to make it a string.
+   *
+   * @param item the item
+   * @return the encoded item
+   */
+  static byte[] encodeToBytes(Object item) {
+    JsonElement tree = gsonInstance().toJsonTree(item);
+    // Only strings that occur more than once go in the string table; others are written where they are used.
+    Map<String, Integer> stringIndexes = new HashMap<>();
+    countStrings(tree, stringIndexes);
+    ByteArrayOutputStream strings = new ByteArrayOutputStream();
+    int tableSize = 0;
+    for (Map.Entry<String, Integer> e: stringIndexes.entrySet()) {
+      if (e.getValue() > 1) {
+        e.setValue(tableSize++);
+        writeStringBytes(strings, e.getKey());
+      } else {
+        e.setValue(-1);
+      }
+    }
+    ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+    writeValue(tree, body, stringIndexes);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream(strings.size() + body.size() + 8);
+    out.write(FORMAT_VERSION);
+    writeVarint(out, tableSize);
+    out.write(strings.toByteArray(), 0, strings.size());
+    out.write(body.toByteArray(), 0, body.size());
+    return out.toByteArray();
+  }
+
+  /**
+   * Decodes a flag or segment.
+   *
+   * @param kind the data kind, which must be one for which {@link #supportsKind(DataKind)} is true
+   * @param stored the encoded item
+   * @return the item descriptor
+   * @throws SerializationException if the data is not valid
+   */
+  static ItemDescriptor decode(DataKind kind, String stored) {
+    byte[] data;
+    try {
+      data = Base64.getDecoder().decode(stored.substring(PREFIX.length()));
+    } catch (RuntimeException e) {
+      throw new SerializationException(e);
+    }
+    return decodeFromBytes(kind, data);
+  }
+
+  /**
+   * Decodes a flag or segment that was encoded with {@link #encodeToBytes(Object)}.
+   *
+   * @param kind the data kind, which must be one for which {@link #supportsKind(DataKind)} is true
+   * @param data the encoded item
+   * @return the item descriptor
+   * @throws SerializationException if the data is not valid
+   */
+  static ItemDescriptor decodeFromBytes(DataKind kind, byte[] data) {
+    Class<? extends VersionedData> itemClass;
+    if (kind == FEATURES) {
+      itemClass = FeatureFlag.class;
+    } else if (kind == SEGMENTS) {
+      itemClass = Segment.class;
+    } else {
+      throw new IllegalArgumentException("unsupported data kind");
+    }
+    VersionedData o;
+    try {
+      o = gsonInstance().fromJson(new BinaryJsonReader(data), itemClass);
+    } catch (IOException | RuntimeException e) {
+      // A variety of unchecked exceptions can be thrown from Gson; treat them all the same
+      throw new SerializationException(e);
+    }
+    if (o == null) {
+      throw new SerializationException(new IllegalStateException("encoded item was null"));
+    }
+    return o.isDeleted() ? ItemDescriptor.deletedItem(o.getVersion()) : new ItemDescriptor(o.getVersion(), o);
+  }
+
+  private static void countStrings(JsonElement value, Map<String, Integer> counts) {
+    if (value.isJsonObject()) {
+      for (Map.Entry<String, JsonElement> e: value.getAsJsonObject().entrySet()) {
+        counts.merge(e.getKey(), 1, Integer::sum);
+        countStrings(e.getValue(), counts);
+      }
+    } else if (value.isJsonArray()) {
+      for (JsonElement e: value.getAsJsonArray()) {
+        countStrings(e, counts);
+      }
+    } else if (value.isJsonPrimitive() && value.getAsJsonPrimitive().isString()) {
+      counts.merge(value.getAsString(), 1, Integer::sum);
+    }
+  }
+
+  private static void writeValue(JsonElement value, ByteArrayOutputStream body, Map<String, Integer> stringIndexes) {
+    if (value.isJsonNull()) {
+      body.write(TAG_NULL);
+    } else if (value.isJsonObject()) {
+      JsonObject o = value.getAsJsonObject();
+      body.write(TAG_OBJECT);
+      writeVarint(body, o.size());
+      for (Map.Entry<String, JsonElement> e: o.entrySet()) {
+        writeStringRef(body, e.getKey(), stringIndexes);
+        writeValue(e.getValue(), body, stringIndexes);
+      }
+    } else if (value.isJsonArray()) {
+      JsonArray a = value.getAsJsonArray();
+      body.write(TAG_ARRAY);
+      writeVarint(body, a.size());
+      for (JsonElement e: a) {
+        writeValue(e, body, stringIndexes);
+      }
+    } else {
+      JsonPrimitive p = value.getAsJsonPrimitive();
+      if (p.isBoolean()) {
+        body.write(p.getAsBoolean() ? TAG_TRUE : TAG_FALSE);
+      } else if (p.isNumber()) {
+        Number number = p.getAsNumber();
+        double d = number.doubleValue();
+        boolean isInteger = number instanceof Integer || number instanceof Long ||
+            (d == Math.rint(d) && Math.abs(d) < (1L << 53));
+        if (isInteger) {
+          long n = number instanceof Integer || number instanceof Long ? number.longValue() : (long)d;
+          body.write(TAG_INT);
+          writeVarint(body, (n << 1) ^ (n >> 63));
+        } else {
+          body.write(TAG_DOUBLE);
+          long bits = Double.doubleToLongBits(d);
+          for (int shift = 56; shift >= 0; shift -= 8) {
+            body.write((int)(bits >>> shift));
+          }
+        }
+      } else {
+        body.write(TAG_STRING);
+        writeStringRef(body, p.getAsString(), stringIndexes);
+      }
+    }
+  }
+
+  // A string reference is either zero followed by the string itself, or the string's table index plus one.
+  private static void writeStringRef(ByteArrayOutputStream body, String s, Map<String, Integer> stringIndexes) {
+    int index = stringIndexes.get(s);
+    if (index < 0) {
+      body.write(0);
+      writeStringBytes(body, s);
+    } else {
+      writeVarint(body, index + 1);
+    }
+  }
+
+  private static void writeStringBytes(ByteArrayOutputStream out, String s) {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    writeVarint(out, bytes.length);
+    out.write(bytes, 0, bytes.length);
+  }
+
+  private static void writeVarint(ByteArrayOutputStream out, long value) {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int)((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int)value);
+  }
+
+  /**
+   * A {@link JsonReader} that reads the binary encoding instead of JSON text.
+   * <p>
+   * This overrides every public method of {@code JsonReader} that reads data, in the same way that
+   * Gson's own reader for {@link JsonElement} trees does. It does not support lenient parsing or
+   * {@link #getPath()}, which we have no need for.
+   */
+  static final class BinaryJsonReader extends JsonReader {
+    private static final Reader UNREADABLE_READER = new Reader() {
+      @Override
+      public int read(char[] buffer, int offset, int count) throws IOException {
+        throw new AssertionError();
+      }
+
+      @Override
+      public void close() throws IOException {
+        throw new AssertionError();
+      }
+    };
+
+    private final byte[] data;
+    private final String[] strings;
+    private int pos;
+    // For each array or object that we are inside of, the number of elements not yet read, and whether it is
+    // an object. For an object, nameRead says whether the name of the current property has been read.
+    private int[] remaining = new int[16];
+    private boolean[] isObject = new boolean[16];
+    private int depth = 0;
+    private boolean nameRead = false;
+    private boolean finished = false;
+
+    BinaryJsonReader(byte[] data) throws IOException {
+      super(UNREADABLE_READER);
+      this.data = data;
+      if (data.length == 0 || data[0] != FORMAT_VERSION) {
+        throw new IOException("unsupported binary data format version: " + (data.length == 0 ? "none" : data[0]));
+      }
+      pos = 1;
+      int count = readLength();
+      strings = new String[count];
+      for (int i = 0; i < count; i++) {
+        strings[i] = readStringBytes();
+      }
+    }
+
+    @Override
+    public JsonToken peek() throws IOException {
+      if (depth == 0) {
+        return finished ? JsonToken.END_DOCUMENT : tokenForTag(peekTag());
+      }
+      if (remaining[depth - 1] == 0) {
+        return isObject[depth - 1] ? JsonToken.END_OBJECT : JsonToken.END_ARRAY;
+      }
+      if (isObject[depth - 1] && !nameRead) {
+        return JsonToken.NAME;
+      }
+      return tokenForTag(peekTag());
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+      JsonToken token = peek();
+      return token != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY && token != JsonToken.END_DOCUMENT;
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+      beginContainer(TAG_ARRAY, JsonToken.BEGIN_ARRAY);
+    }
+
+    @Override
+    public void endArray() throws IOException {
+      endContainer(JsonToken.END_ARRAY);
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+      beginContainer(TAG_OBJECT, JsonToken.BEGIN_OBJECT);
+    }
+
+    @Override
+    public void endObject() throws IOException {
+      endContainer(JsonToken.END_OBJECT);
+    }
+
+    @Override
+    public String nextName() throws IOException {
+      expect(JsonToken.NAME);
+      nameRead = true;
+      return readStringRef();
+    }
+
+    @Override
+    public String nextString() throws IOException {
+      JsonToken token = peek();
+      String ret;
+      switch (token) {
+      case STRING:
+        pos++;
+        ret = readStringRef();
+        break;
+      case NUMBER:
+        ret = data[pos] == TAG_INT ? String.valueOf(readIntValue()) : String.valueOf(readDoubleValue());
+        break;
+      default:
+        throw unexpected(JsonToken.STRING, token);
+      }
+      valueRead();
+      return ret;
+    }
+
+    @Override
+    public boolean nextBoolean() throws IOException {
+      expect(JsonToken.BOOLEAN);
+      boolean ret = data[pos++] == TAG_TRUE;
+      valueRead();
+      return ret;
+    }
+
+    @Override
+    public void nextNull() throws IOException {
+      expect(JsonToken.NULL);
+      pos++;
+      valueRead();
+    }
+
+    @Override
+    public double nextDouble() throws IOException {
+      double ret = peek() == JsonToken.STRING ? Double.parseDouble(nextStringValue()) : readNumber();
+      valueRead();
+      return ret;
+    }
+
+    @Override
+    public long nextLong() throws IOException {
+      long ret;
+      if (peek() == JsonToken.STRING) {
+        ret = Long.parseLong(nextStringValue());
+      } else {
+        double d = readNumber();
+        ret = (long)d;
+        if (ret != d) {
+          throw new NumberFormatException("Expected a long but was " + d);
+        }
+      }
+      valueRead();
+      return ret;
+    }
+
+    @Override
+    public int nextInt() throws IOException {
+      int ret;
+      if (peek() == JsonToken.STRING) {
+        ret = Integer.parseInt(nextStringValue());
+      } else {
+        double d = readNumber();
+        ret = (int)d;
+        if (ret != d) {
+          throw new NumberFormatException("Expected an int but was " + d);
+        }
+      }
+      valueRead();
+      return ret;
+    }
+
+    @Override
+    public void skipValue() throws IOException {
+      if (peek() == JsonToken.NAME) {
+        nextName();
+        return;
+      }
+      if (!hasNext()) {
+        throw new IllegalStateException("Expected a value but was " + peek());
+      }
+      skipEncodedValue();
+      valueRead();
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    @Override
+    public String getPath() {
+      return "$";
+    }
+
+    @Override
+    public String toString() {
+      return getClass().getSimpleName();
+    }
+
+    private int peekTag() throws IOException {
+      checkAvailable(1);
+      return data[pos];
+    }
+
+    private static JsonToken tokenForTag(int tag) throws IOException {
+      switch (tag) {
+      case TAG_NULL:
+        return JsonToken.NULL;
+      case TAG_FALSE:
+      case TAG_TRUE:
+        return JsonToken.BOOLEAN;
+      case TAG_INT:
+      case TAG_DOUBLE:
+        return JsonToken.NUMBER;
+      case TAG_STRING:
+        return JsonToken.STRING;
+      case TAG_ARRAY:
+        return JsonToken.BEGIN_ARRAY;
+      case TAG_OBJECT:
+        return JsonToken.BEGIN_OBJECT;
+      default:
+        throw new IOException("invalid binary data: unknown tag " + tag);
+      }
+    }
+
+    private void beginContainer(int tag, JsonToken token) throws IOException {
+      expect(token);
+      pos++;
+      int count = readLength();
+      if (depth == remaining.length) {
+        remaining = Arrays.copyOf(remaining, depth * 2);
+        isObject = Arrays.copyOf(isObject, depth * 2);
+      }
+      remaining[depth] = count;
+      isObject[depth] = tag == TAG_OBJECT;
+      depth++;
+      nameRead = false;
+    }
+
+    private void endContainer(JsonToken token) throws IOException {
+      expect(token);
+      depth--;
+      valueRead();
+    }
+
+    private void valueRead() {
+      if (depth == 0) {
+        finished = true;
+      } else {
+        remaining[depth - 1]--;
+        nameRead = false;
+      }
+    }
+
+    private void expect(JsonToken expected) throws IOException {
+      JsonToken actual = peek();
+      if (actual != expected) {
+        throw unexpected(expected, actual);
+      }
+    }
+
+    private IllegalStateException unexpected(JsonToken expected, JsonToken actual) {
+      return new IllegalStateException("Expected " + expected + " but was " + actual);
+    }
+
+    private String nextStringValue() throws IOException {
+      pos++;
+      return readStringRef();
+    }
+
+    private double readNumber() throws IOException {
+      JsonToken token = peek();
+      if (token != JsonToken.NUMBER) {
+        throw unexpected(JsonToken.NUMBER, token);
+      }
+      return data[pos] == TAG_INT ? readIntValue() : readDoubleValue();
+    }
+
+    private long readIntValue() throws IOException {
+      pos++;
+      long n = readVarint();
+      return (n >>> 1) ^ -(n & 1);
+    }
+
+    private double readDoubleValue() throws IOException {
+      pos++;
+      checkAvailable(8);
+      long bits = 0;
+      for (int i = 0; i < 8; i++) {
+        bits = (bits << 8) | (data[pos++] & 0xFF);
+      }
+      return Double.longBitsToDouble(bits);
+    }
+
+    private void skipEncodedValue() throws IOException {
+      int tag = peekTag();
+      pos++;
+      switch (tag) {
+      case TAG_INT:
+        readVarint();
+        break;
+      case TAG_STRING:
+        readStringRef();
+        break;
+      case TAG_DOUBLE:
+        checkAvailable(8);
+        pos += 8;
+        break;
+      case TAG_ARRAY:
+      case TAG_OBJECT:
+        int count = readLength();
+        for (int i = 0; i < count; i++) {
+          if (tag == TAG_OBJECT) {
+            readStringRef();
+          }
+          skipEncodedValue();
+        }
+        break;
+      default:
+        tokenForTag(tag); // throws an exception if the tag is invalid
+      }
+    }
+
+    private String readStringRef() throws IOException {
+      int ref = readLength();
+      if (ref == 0) {
+        return readStringBytes();
+      }
+      if (ref > strings.length) {
+        throw new IOException("invalid binary data: string index out of range");
+      }
+      return strings[ref - 1];
+    }
+
+    private String readStringBytes() throws IOException {
+      int length = readLength();
+      checkAvailable(length);
+      String s = new String(data, pos, length, StandardCharsets.UTF_8);
+      pos += length;
+      return s;
+    }
+
+    private int readLength() throws IOException {
+      long n = readVarint();
+      if (n > Integer.MAX_VALUE) {
+        throw new IOException("invalid binary data: length out of range");
+      }
+      return (int)n;
+    }
+
+    private long readVarint() throws IOException {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        checkAvailable(1);
+        byte b = data[pos++];
+        value |= (long)(b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IOException("invalid binary data: malformed integer");
+    }
+
+    private void checkAvailable(int count) throws IOException {
+      if (count > data.length - pos) {
+        throw new IOException("invalid binary data: unexpected end");
+      }
+    }
+  }
+}
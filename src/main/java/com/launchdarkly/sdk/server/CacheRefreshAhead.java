@@ -0,0 +1,86 @@
+package com.launchdarkly.sdk.server;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Schedules background refreshes of cache entries before they expire, at randomized times.
+ * <p>
+ * When a cache is populated all at once, as it is when the data store is initialized, every entry
+ * would otherwise expire at the same moment and then be reloaded in one burst of queries. Instead,
+ * each time a value is written to the cache, the cache owner calls {@link #nextRefreshTime(long)} to
+ * get a random time within the last part of the TTL, and stores it with the value. The first read
+ * after that time calls {@link #refreshIfDue(Object, long, long)}, which starts a refresh on the
+ * executor; the reader gets the current value without waiting. Only one refresh at a time is started
+ * for any given key.
+ * <p>
+ * This class is package-private and is used by {@link PersistentDataStoreWrapper} and
+ * {@link BigSegmentStoreWrapper}.
+ */
+final class CacheRefreshAhead<K> {
+  private final long ttlNanos;
+  private final long windowNanos;
+  private final Consumer<K> refreshAction;
+  private final Executor executor;
+  private final DoubleSupplier random;
+  private final Set<K> refreshesInProgress = ConcurrentHashMap.newKeySet();
+
+  CacheRefreshAhead(Duration ttl, double windowRatio, Consumer<K> refreshAction, Executor executor) {
+    this(ttl, windowRatio, refreshAction, executor, () -> ThreadLocalRandom.current().nextDouble());
+  }
+
+  CacheRefreshAhead(Duration ttl, double windowRatio, Consumer<K> refreshAction, Executor executor,
+      DoubleSupplier random) {
+    this.ttlNanos = ttl.toNanos();
+    this.windowNanos = (long)(ttlNanos * Math.min(1.0, Math.max(0.0, windowRatio)));
+    this.refreshAction = refreshAction;
+    this.executor = executor;
+    this.random = random;
+  }
+
+  /**
+   * Returns the time at which a value that was written at the specified time should be refreshed.
+   * This is a random point within the refresh window at the end of the TTL.
+   *
+   * @param now the current time, as returned by {@link System#nanoTime()}
+   * @return the refresh time, in the same terms
+   */
+  long nextRefreshTime(long now) {
+    return now + ttlNanos - (long)(windowNanos * random.getAsDouble());
+  }
+
+  /**
+   * Starts a background refresh of the specified key if its refresh time has passed and it is not
+   * already being refreshed.
+   *
+   * @param key the cache key
+   * @param refreshTime the refresh time that was stored with the current value
+   * @param now the current time, as returned by {@link System#nanoTime()}
+   * @return true if a refresh was started
+   */
+  boolean refreshIfDue(K key, long refreshTime, long now) {
+    if (now - refreshTime < 0 || !refreshesInProgress.add(key)) {
+      return false;
+    }
+    try {
+      executor.execute(() -> {
+        try {
+          refreshAction.accept(key);
+        } finally {
+          refreshesInProgress.remove(key);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // the executor has been shut down because the SDK is closing
+      refreshesInProgress.remove(key);
+      return false;
+    }
+    return true;
+  }
+}
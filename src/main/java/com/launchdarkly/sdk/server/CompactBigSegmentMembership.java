@@ -0,0 +1,182 @@
+package com.launchdarkly.sdk.server;
+
+import com.launchdarkly.sdk.server.DataModelPreprocessing.SegmentPreprocessed;
+import com.launchdarkly.sdk.server.subsystems.BigSegmentStoreTypes.Membership;
+
+import java.util.Arrays;
+
+/**
+ * A {@link Membership} that stores a user's Big Segment inclusions and exclusions as a pair of bitsets,
+ * indexed by the ordinals from a {@link BigSegmentRefOrdinals}.
+ * <p>
+ * BigSegmentStoreWrapper converts every membership that it gets from the store into this form before
+ * caching it. That takes much less memory than the map of segment references that stores usually return,
+ * and lets the evaluator check membership with a bit test against the ordinal that was resolved for the
+ * segment, instead of hashing the reference string.
+ * <p>
+ * A compact membership only covers the references that were known when it was built, which are the
+ * ones with the lowest ordinals. It has no information about any that were added later.
+ */
+final class CompactBigSegmentMembership implements Membership {
+  private static final long[] NO_BITS = new long[0];
+
+  private final long[] included;
+  private final long[] excluded;
+  private final BigSegmentRefOrdinals ordinals;
+  private final int knownCount;
+
+  private CompactBigSegmentMembership(long[] included, long[] excluded, BigSegmentRefOrdinals ordinals,
+      int knownCount) {
+    this.included = included;
+    this.excluded = excluded;
+    this.ordinals = ordinals;
+    this.knownCount = knownCount;
+  }
+
+  /**
+   * Converts a membership to the compact form by querying it for every segment reference that is
+   * currently known.
+   *
+   * @param membership the original membership; null is equivalent to an empty one
+   * @param ordinals the segment reference ordinals to use
+   * @return the compact membership
+   */
+  static CompactBigSegmentMembership fromMembership(Membership membership, BigSegmentRefOrdinals ordinals) {
+    if (membership instanceof CompactBigSegmentMembership &&
+        ((CompactBigSegmentMembership)membership).ordinals == ordinals) {
+      return (CompactBigSegmentMembership)membership;
+    }
+    String[] knownRefs = ordinals.knownRefs();
+    return build(membership, knownRefs, knownRefs.length, ordinals);
+  }
+
+  /**
+   * Converts this membership to use a different set of ordinals, without querying the store again. The
+   * result only covers the new references that this membership also covered, up to the first one that
+   * it did not; segment references that have been dropped from the new ordinals are not carried over.
+   *
+   * @param newOrdinals the new segment reference ordinals
+   * @return the converted membership
+   */
+  CompactBigSegmentMembership withOrdinals(BigSegmentRefOrdinals newOrdinals) {
+    if (newOrdinals == ordinals) {
+      return this;
+    }
+    String[] newRefs = newOrdinals.knownRefs();
+    int count = 0;
+    while (count < newRefs.length && covers(newRefs[count])) {
+      count++;
+    }
+    return build(this, newRefs, count, newOrdinals);
+  }
+
+  private static CompactBigSegmentMembership build(Membership membership, String[] refs, int count,
+      BigSegmentRefOrdinals ordinals) {
+    long[] included = null, excluded = null;
+    for (int i = 0; membership != null && i < count; i++) {
+      Boolean result = membership.checkMembership(refs[i]);
+      if (result == null) {
+        continue;
+      }
+      if (result.booleanValue()) {
+        included = setBit(included, i, count);
+      } else {
+        excluded = setBit(excluded, i, count);
+      }
+    }
+    return new CompactBigSegmentMembership(trim(included), trim(excluded), ordinals, count);
+  }
+
+  /**
+   * Returns the segment reference ordinals that this membership was built with.
+   *
+   * @return the ordinals
+   */
+  BigSegmentRefOrdinals getOrdinals() {
+    return ordinals;
+  }
+
+  /**
+   * Returns true if this membership has information about the specified segment reference, that is,
+   * if the reference was known when the membership was built.
+   *
+   * @param segmentRef the segment reference
+   * @return true if the reference is covered
+   */
+  boolean covers(String segmentRef) {
+    int ordinal = ordinals.ordinalIfKnown(segmentRef);
+    return ordinal >= 0 && ordinal < knownCount;
+  }
+
+  /**
+   * Returns the ordinal of a preprocessed segment's reference, or -1 if this membership does not
+   * cover it.
+   *
+   * @param segment the preprocessed segment data
+   * @return the ordinal or -1
+   */
+  int ordinalOf(SegmentPreprocessed segment) {
+    int ordinal = ordinals.ordinalIfKnown(segment);
+    return ordinal < knownCount ? ordinal : -1;
+  }
+
+  /**
+   * Tests whether the user is included in or excluded from the segment with the specified ordinal.
+   * This is equivalent to {@link #checkMembership(String)}.
+   *
+   * @param ordinal the ordinal of the segment reference, from {@link #ordinalOf(SegmentPreprocessed)}
+   * @return true if included, false if excluded, null if neither
+   */
+  Boolean checkMembership(int ordinal) {
+    if (testBit(included, ordinal)) {
+      return Boolean.TRUE;
+    }
+    return testBit(excluded, ordinal) ? Boolean.FALSE : null;
+  }
+
+  @Override
+  public Boolean checkMembership(String segmentRef) {
+    int ordinal = ordinals.ordinalIfKnown(segmentRef);
+    return ordinal < 0 || ordinal >= knownCount ? null : checkMembership(ordinal);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof CompactBigSegmentMembership)) {
+      return false;
+    }
+    CompactBigSegmentMembership other = (CompactBigSegmentMembership)o;
+    return ordinals == other.ordinals && knownCount == other.knownCount &&
+        Arrays.equals(included, other.included) && Arrays.equals(excluded, other.excluded);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(included) * 31 + Arrays.hashCode(excluded);
+  }
+
+  private static long[] setBit(long[] words, int index, int bitCount) {
+    if (words == null) {
+      words = new long[(bitCount + 63) >>> 6];
+    }
+    words[index >>> 6] |= 1L << index;
+    return words;
+  }
+
+  private static boolean testBit(long[] words, int index) {
+    int word = index >>> 6;
+    return word < words.length && (words[word] & (1L << index)) != 0;
+  }
+
+  // Drops the trailing zero words, since a user is usually in only a few of the segments.
+  private static long[] trim(long[] words) {
+    if (words == null) {
+      return NO_BITS;
+    }
+    int length = words.length;
+    while (length > 0 && words[length - 1] == 0) {
+      length--;
+    }
+    return length == 0 ? NO_BITS : length == words.length ? words : Arrays.copyOf(words, length);
+  }
+}
@@ -9,20 +9,27 @@ import com.launchdarkly.sdk.server.ComponentsImpl.HttpConfigurationBuilderImpl;
 import com.launchdarkly.sdk.server.ComponentsImpl.InMemoryDataStoreFactory;
 import com.launchdarkly.sdk.server.ComponentsImpl.LoggingConfigurationBuilderImpl;
 import com.launchdarkly.sdk.server.ComponentsImpl.NullDataSourceFactory;
+import com.launchdarkly.sdk.server.ComponentsImpl.OffHeapDataStoreBuilderImpl;
 import com.launchdarkly.sdk.server.ComponentsImpl.PersistentDataStoreBuilderImpl;
 import com.launchdarkly.sdk.server.ComponentsImpl.PollingDataSourceBuilderImpl;
 import com.launchdarkly.sdk.server.ComponentsImpl.ServiceEndpointsBuilderImpl;
+import com.launchdarkly.sdk.server.ComponentsImpl.SharedFileDataSourceBuilderImpl;
+import com.launchdarkly.sdk.server.ComponentsImpl.SharedFileDataStoreBuilderImpl;
 import com.launchdarkly.sdk.server.ComponentsImpl.StreamingDataSourceBuilderImpl;
 import com.launchdarkly.sdk.server.ComponentsImpl.WrapperInfoBuilderImpl;
 import com.launchdarkly.sdk.server.integrations.ApplicationInfoBuilder;
 import com.launchdarkly.sdk.server.integrations.BigSegmentsConfigurationBuilder;
+import com.launchdarkly.sdk.server.integrations.DataSnapshotBuilder;
 import com.launchdarkly.sdk.server.integrations.EventProcessorBuilder;
 import com.launchdarkly.sdk.server.integrations.HooksConfigurationBuilder;
 import com.launchdarkly.sdk.server.integrations.HttpConfigurationBuilder;
 import com.launchdarkly.sdk.server.integrations.LoggingConfigurationBuilder;
+import com.launchdarkly.sdk.server.integrations.OffHeapDataStoreBuilder;
 import com.launchdarkly.sdk.server.integrations.PersistentDataStoreBuilder;
 import com.launchdarkly.sdk.server.integrations.PollingDataSourceBuilder;
 import com.launchdarkly.sdk.server.integrations.ServiceEndpointsBuilder;
+import com.launchdarkly.sdk.server.integrations.SharedFileDataSourceBuilder;
+import com.launchdarkly.sdk.server.integrations.SharedFileDataStoreBuilder;
 import com.launchdarkly.sdk.server.integrations.StreamingDataSourceBuilder;
 import com.launchdarkly.sdk.server.integrations.WrapperInfoBuilder;
 import com.launchdarkly.sdk.server.interfaces.HttpAuthentication;
@@ -33,6 +40,8 @@ import com.launchdarkly.sdk.server.subsystems.DataStore;
 import com.launchdarkly.sdk.server.subsystems.EventProcessor;
 import com.launchdarkly.sdk.server.subsystems.PersistentDataStore;
 
+import java.nio.file.Path;
+
 import static com.launchdarkly.sdk.server.ComponentsImpl.NOOP_EVENT_PROCESSOR_FACTORY;
 
 /**
@@ -86,6 +95,28 @@ public abstract class Components {
     return new BigSegmentsConfigurationBuilder(storeConfigurer);
   }
 
+  /**
+   * Returns a configuration builder for local snapshots of flag data.
+   * <p>
+   * Snapshots let the SDK start evaluating flags with the last known values before it has connected
+   * to LaunchDarkly. After configuring this object, use
+   * {@link LDConfig.Builder#dataSnapshot(ComponentConfigurer)} to store it in your SDK configuration:
+   *
+   * <pre><code>
+   *     LDConfig config = new LDConfig.Builder()
+   *         .dataSnapshot(Components.dataSnapshot(Paths.get("/var/cache/myapp/flags.snapshot")))
+   *         .build();
+   * </code></pre>
+   *
+   * @param filePath the location of the snapshot file
+   * @return a {@link DataSnapshotBuilder}
+   * @since 7.5.0
+   * @see DataSnapshotBuilder
+   */
+  public static DataSnapshotBuilder dataSnapshot(Path filePath) {
+    return new DataSnapshotBuilder(filePath);
+  }
+
   /**
    * Returns a configuration object for using the default in-memory implementation of a data store.
    * <p>
@@ -100,6 +131,36 @@ public abstract class Components {
     return InMemoryDataStoreFactory.INSTANCE;
   }
 
+  /**
+   * Returns a configuration builder for a data store that keeps flag data outside of the Java heap.
+   * <p>
+   * This is an alternative to the default in-memory data store for environments with so many flags
+   * or segments that keeping them all in memory as parsed objects is too expensive. See
+   * {@link OffHeapDataStoreBuilder} for details.
+   *
+   * @return a builder
+   * @see LDConfig.Builder#dataStore(ComponentConfigurer)
+   * @since 7.5.0
+   */
+  public static OffHeapDataStoreBuilder offHeapDataStore() {
+    return new OffHeapDataStoreBuilderImpl();
+  }
+
+  /**
+   * Returns a configuration builder for a data store that shares flag data with other processes on the
+   * same host through a memory-mapped file.
+   * <p>
+   * This must be used together with {@link #sharedFileDataSource()}. See {@link SharedFileDataSourceBuilder}
+   * for details.
+   *
+   * @return a builder
+   * @see LDConfig.Builder#dataStore(ComponentConfigurer)
+   * @since 7.5.0
+   */
+  public static SharedFileDataStoreBuilder sharedFileDataStore() {
+    return new SharedFileDataStoreBuilderImpl();
+  }
+
   /**
    * Returns a configuration builder for some implementation of a persistent data store.
    * <p>
@@ -232,6 +293,28 @@ public abstract class Components {
   static PollingDataSourceBuilderImpl pollingDataSourceInternal() {
     return new PollingDataSourceBuilderImpl();
   }
+
+  /**
+   * Returns a configurable factory for a data source that shares one connection to LaunchDarkly among
+   * all of the processes on the same host that use the same shared file.
+   * <p>
+   * One of the processes is elected as the leader and uses the data source configured with
+   * {@link SharedFileDataSourceBuilder#leaderDataSource(ComponentConfigurer)}; the others read the data
+   * that it publishes. This must be used together with {@link #sharedFileDataStore()}:
+   * <pre><code>
+   *     LDConfig config = new LDConfig.Builder()
+   *         .dataSource(Components.sharedFileDataSource())
+   *         .dataStore(Components.sharedFileDataStore())
+   *         .build();
+   * </code></pre>
+   *
+   * @return a builder for setting shared data source properties
+   * @see LDConfig.Builder#dataSource(ComponentConfigurer)
+   * @since 7.5.0
+   */
+  public static SharedFileDataSourceBuilder sharedFileDataSource() {
+    return new SharedFileDataSourceBuilderImpl();
+  }
   
   /**
    * Returns a configuration object that disables a direct connection with LaunchDarkly for feature flag updates.
@@ -16,9 +16,12 @@ import com.launchdarkly.sdk.server.integrations.EventProcessorBuilder;
 import com.launchdarkly.sdk.server.integrations.HooksConfigurationBuilder;
 import com.launchdarkly.sdk.server.integrations.HttpConfigurationBuilder;
 import com.launchdarkly.sdk.server.integrations.LoggingConfigurationBuilder;
+import com.launchdarkly.sdk.server.integrations.OffHeapDataStoreBuilder;
 import com.launchdarkly.sdk.server.integrations.PersistentDataStoreBuilder;
 import com.launchdarkly.sdk.server.integrations.PollingDataSourceBuilder;
 import com.launchdarkly.sdk.server.integrations.ServiceEndpointsBuilder;
+import com.launchdarkly.sdk.server.integrations.SharedFileDataSourceBuilder;
+import com.launchdarkly.sdk.server.integrations.SharedFileDataStoreBuilder;
 import com.launchdarkly.sdk.server.integrations.StreamingDataSourceBuilder;
 import com.launchdarkly.sdk.server.integrations.WrapperInfoBuilder;
 import com.launchdarkly.sdk.server.interfaces.DataSourceStatusProvider;
@@ -68,6 +71,52 @@ abstract class ComponentsImpl {
     }
   }
 
+  static final class OffHeapDataStoreBuilderImpl extends OffHeapDataStoreBuilder implements DiagnosticDescription {
+    @Override
+    public DataStore build(ClientContext context) {
+      return new OffHeapDataStore(directory, hotItemCacheSize,
+          context.getBaseLogger().subLogger(Loggers.DATA_STORE_LOGGER_NAME));
+    }
+
+    @Override
+    public LDValue describeConfiguration(ClientContext clientContext) {
+      return LDValue.of("offHeap");
+    }
+  }
+
+  static final class SharedFileDataStoreBuilderImpl extends SharedFileDataStoreBuilder implements DiagnosticDescription {
+    @Override
+    public DataStore build(ClientContext context) {
+      return new SharedFileDataStore(file != null ? file : SharedFileDataStore.defaultFile(context.getSdkKey()),
+          hotItemCacheSize, context.getBaseLogger().subLogger(Loggers.DATA_STORE_LOGGER_NAME));
+    }
+
+    @Override
+    public LDValue describeConfiguration(ClientContext clientContext) {
+      return LDValue.of("sharedFile");
+    }
+  }
+
+  static final class SharedFileDataSourceBuilderImpl extends SharedFileDataSourceBuilder implements DiagnosticDescription {
+    @Override
+    public DataSource build(ClientContext context) {
+      return new SharedFileDataSource(
+          file != null ? file : SharedFileDataStore.defaultFile(context.getSdkKey()),
+          leaderDataSource,
+          context,
+          ClientContextImpl.get(context).sharedExecutor,
+          pollInterval,
+          context.getBaseLogger().subLogger(Loggers.DATA_SOURCE_LOGGER_NAME));
+    }
+
+    @Override
+    public LDValue describeConfiguration(ClientContext clientContext) {
+      // Describe the leader's data source, since that's the one that connects to LaunchDarkly
+      return leaderDataSource instanceof DiagnosticDescription ?
+          ((DiagnosticDescription)leaderDataSource).describeConfiguration(clientContext) : LDValue.ofNull();
+    }
+  }
+
   static final EventProcessor NOOP_EVENT_PROCESSOR = new NoOpEventProcessor();
   static final ComponentConfigurer<EventProcessor> NOOP_EVENT_PROCESSOR_FACTORY = context -> NOOP_EVENT_PROCESSOR;
   
@@ -143,6 +192,10 @@ abstract class ComponentsImpl {
           streamUri,
           payloadFilter,
           initialReconnectDelay,
+          batchWindow,
+          batchMaxItems,
+          pipelineQueueCapacity,
+          ClientContextImpl.get(context).sharedExecutor,
           logger);
     }
 
@@ -186,6 +239,7 @@ abstract class ComponentsImpl {
           toHttpProperties(context.getHttp()),
           pollUri,
           payloadFilter,
+          DataSourceUpdatesImpl.storeUsesOriginalJson(context.getDataSourceUpdateSink()),
           logger);
 
       return new PollingProcessor(
@@ -385,11 +439,24 @@ abstract class ComponentsImpl {
     @Override
     public DataStore build(ClientContext context) {
       PersistentDataStore core = persistentDataStoreConfigurer.build(context);
+      PersistentDataStoreWrapper.Options options = new PersistentDataStoreWrapper.Options()
+          .cacheTtl(cacheTime)
+          .staleValuesPolicy(staleValuesPolicy)
+          .recordCacheStats(recordCacheStats)
+          .cacheMaximumWeight(cacheMaximumWeight)
+          .cacheRefreshAheadRatio(cacheRefreshAheadRatio)
+          .compressionMinimumLength(compressionMinimumLength)
+          .serializationFormat(serializationFormat)
+          .writeBehindInterval(writeBehindInterval)
+          .initChunkSize(initChunkSize)
+          .initParallelism(initParallelism)
+          .bulkRefreshInterval(bulkRefreshInterval)
+          .readTimeout(readTimeout)
+          .maxConcurrentReads(maxConcurrentReads)
+          .hedgeDelay(hedgeDelay);
       return new PersistentDataStoreWrapper(
           core,
-          cacheTime,
-          staleValuesPolicy,
-          recordCacheStats,
+          options,
           context.getDataStoreUpdateSink(),
           ClientContextImpl.get(context).sharedExecutor,
           context.getBaseLogger().subLogger(Loggers.DATA_STORE_LOGGER_NAME));
@@ -9,6 +9,7 @@ import com.launchdarkly.sdk.server.DataModelPreprocessing.ClausePreprocessed;
 import com.launchdarkly.sdk.server.DataModelPreprocessing.FlagPreprocessed;
 import com.launchdarkly.sdk.server.DataModelPreprocessing.FlagRulePreprocessed;
 import com.launchdarkly.sdk.server.DataModelPreprocessing.PrerequisitePreprocessed;
+import com.launchdarkly.sdk.server.DataModelPreprocessing.SegmentPreprocessed;
 import com.launchdarkly.sdk.server.DataModelPreprocessing.TargetPreprocessed;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
@@ -101,7 +102,8 @@ public abstract class DataModel {
   private static String serializeItem(ItemDescriptor item) {
     Object o = item.getItem();
     if (o != null) {
-      return JsonHelpers.serialize(o);
+      String originalJson = DataModelSerialization.getOriginalJson(item);
+      return originalJson != null ? originalJson : JsonHelpers.serialize(o);
     }
     return "{\"version\":" + item.getVersion() + ",\"deleted\":true}";
   }
@@ -162,6 +164,9 @@ public abstract class DataModel {
     }
 
     transient FlagPreprocessed preprocessed;
+
+    // The JSON text that this flag was parsed from, if we were able to capture it; see DataModelSerialization
+    transient String originalJson;
     
     // We need this so Gson doesn't complain in certain java environments that restrict unsafe allocation
     FeatureFlag() {}
@@ -507,6 +512,11 @@ public abstract class DataModel {
     private ContextKind unboundedContextKind;
     private Integer generation;
 
+    transient SegmentPreprocessed preprocessed;
+
+    // The JSON text that this segment was parsed from, if we were able to capture it; see DataModelSerialization
+    transient String originalJson;
+
     Segment() {}
 
     Segment(String key,
@@ -1,9 +1,8 @@
 package com.launchdarkly.sdk.server;
 
-import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
-import com.google.common.collect.Iterables;
 import com.launchdarkly.sdk.LDValue;
 import com.launchdarkly.sdk.server.DataModel.Operator;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
@@ -11,15 +10,16 @@ import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.KeyedItems;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiConsumer;
 
-import static com.google.common.collect.Iterables.concat;
 import static com.google.common.collect.Iterables.isEmpty;
-import static com.google.common.collect.Iterables.transform;
 import static com.launchdarkly.sdk.server.DataModel.FEATURES;
 import static com.launchdarkly.sdk.server.DataModel.SEGMENTS;
 import static java.util.Collections.emptyList;
@@ -73,46 +73,63 @@ abstract class DataModelDependencies {
    * @return the flags and/or segments that this item depends on
    */
   public static Set<KindAndKey> computeDependenciesFrom(DataKind fromKind, ItemDescriptor fromItem) {
-    if (fromItem == null || fromItem.getItem() == null) {
+    ImmutableSet.Builder<KindAndKey> builder = ImmutableSet.builder();
+    if (!forEachDependencyFrom(fromKind, fromItem, (kind, key) -> builder.add(new KindAndKey(kind, key)))) {
       return emptySet();
     }
+    return builder.build();
+  }
+  
+  /**
+   * Calls the visitor for each immediate dependency of the given item, without creating any intermediate
+   * collections. A dependency may be visited more than once if it is referenced more than once.
+   * 
+   * @param fromKind the item's kind
+   * @param fromItem the item descriptor
+   * @param visitor receives the kind and key of each dependency
+   * @return true if there were any dependencies
+   */
+  private static boolean forEachDependencyFrom(DataKind fromKind, ItemDescriptor fromItem,
+      BiConsumer<DataKind, String> visitor) {
+    if (fromItem == null || fromItem.getItem() == null) {
+      return false;
+    }
+    boolean found = false;
     if (fromKind == FEATURES) {
       DataModel.FeatureFlag flag = (DataModel.FeatureFlag)fromItem.getItem();
-      
-      Iterable<String> prereqFlagKeys = transform(flag.getPrerequisites(), p -> p.getKey());
-      
-      Iterable<String> segmentKeys = concat(
-            transform(
-                flag.getRules(),
-                rule -> segmentKeysFromClauses(rule.getClauses()))
-          );
-      
-      return ImmutableSet.copyOf(
-          concat(kindAndKeys(FEATURES, prereqFlagKeys), kindAndKeys(SEGMENTS, segmentKeys))
-          );
+      for (DataModel.Prerequisite p: flag.getPrerequisites()) {
+        visitor.accept(FEATURES, p.getKey());
+        found = true;
+      }
+      for (DataModel.Rule rule: flag.getRules()) {
+        found |= forEachSegmentKeyFromClauses(rule.getClauses(), visitor);
+      }
     } else if (fromKind == SEGMENTS) {
       DataModel.Segment segment = (DataModel.Segment)fromItem.getItem();
-      
-      Iterable<String> nestedSegmentKeys = concat(
-            transform(
-                segment.getRules(),
-                rule -> segmentKeysFromClauses(rule.getClauses())));
-      return ImmutableSet.copyOf(kindAndKeys(SEGMENTS, nestedSegmentKeys));
+      for (DataModel.SegmentRule rule: segment.getRules()) {
+        found |= forEachSegmentKeyFromClauses(rule.getClauses(), visitor);
+      }
     }
-    return emptySet();
-  }
-  
-  private static Iterable<KindAndKey> kindAndKeys(DataKind kind, Iterable<String> keys) {
-    return transform(keys, key -> new KindAndKey(kind, key));
+    return found;
   }
   
-  private static Iterable<String> segmentKeysFromClauses(Iterable<DataModel.Clause> clauses) {
-    return concat(Iterables.<DataModel.Clause, Iterable<String>>transform(
-        clauses,
-        clause -> clause.getOp() == Operator.segmentMatch ?
-            transform(clause.getValues(), LDValue::stringValue) :
-            emptyList()
-        ));
+  private static boolean forEachSegmentKeyFromClauses(List<DataModel.Clause> clauses,
+      BiConsumer<DataKind, String> visitor) {
+    boolean found = false;
+    if (clauses != null) {
+      for (DataModel.Clause clause: clauses) {
+        if (clause.getOp() == Operator.segmentMatch && clause.getValues() != null) {
+          for (LDValue value: clause.getValues()) {
+            String key = value.stringValue();
+            if (key != null) {
+              visitor.accept(SEGMENTS, key);
+              found = true;
+            }
+          }
+        }
+      }
+    }
+    return found;
   }
   
   /**
@@ -132,44 +149,71 @@ abstract class DataModelDependencies {
     return new FullDataSet<>(builder.build().entrySet());
   }
   
+  // This is a depth-first topological sort that uses an explicit stack rather than recursion, so that a long
+  // chain of prerequisites can't overflow the call stack. Items are identified by their position in the input.
+  // Items that are not involved in any dependencies stay in the same relative order as in the input.
   private static KeyedItems<ItemDescriptor> sortCollection(DataKind kind, KeyedItems<ItemDescriptor> input) {
     if (!isDependencyOrdered(kind) || isEmpty(input.getItems())) {
       return input;
     }
     
-    Map<String, ItemDescriptor> remainingItems = new HashMap<>();
+    List<Map.Entry<String, ItemDescriptor>> entries = new ArrayList<>();
     for (Map.Entry<String, ItemDescriptor> e: input.getItems()) {
-      remainingItems.put(e.getKey(), e.getValue());
+      entries.add(e);
+    }
+    int count = entries.size();
+    Map<String, Integer> ordinals = new HashMap<>(count * 2);
+    for (int i = 0; i < count; i++) {
+      ordinals.put(entries.get(i).getKey(), i); // if a key appears more than once, the last one wins
     }
-    ImmutableMap.Builder<String, ItemDescriptor> builder = ImmutableMap.builder();
-    // Note, ImmutableMap guarantees that the iteration order will be the same as the builder insertion order
     
-    while (!remainingItems.isEmpty()) {
-      // pick a random item that hasn't been updated yet
-      for (Map.Entry<String, ItemDescriptor> entry: remainingItems.entrySet()) {
-        addWithDependenciesFirst(kind, entry.getKey(), entry.getValue(), remainingItems, builder);
-        break;
+    byte[] states = new byte[count];
+    int[] stack = new int[count];
+    int[] nextPrerequisite = new int[count];
+    for (int i = 0; i < count; i++) {
+      if (ordinals.get(entries.get(i).getKey()) != i) {
+        states[i] = DONE; // superseded by a later item with the same key
       }
     }
     
-    return new KeyedItems<>(builder.build().entrySet());
-  }
-  
-  private static void addWithDependenciesFirst(DataKind kind,
-      String key,
-      ItemDescriptor item,
-      Map<String, ItemDescriptor> remainingItems,
-      ImmutableMap.Builder<String, ItemDescriptor> builder) {
-    remainingItems.remove(key);  // we won't need to visit this item again
-    for (KindAndKey dependency: computeDependenciesFrom(kind, item)) {
-      if (dependency.kind == kind) {
-        ItemDescriptor prereqItem = remainingItems.get(dependency.key);
-        if (prereqItem != null) {
-          addWithDependenciesFirst(kind, dependency.key, prereqItem, remainingItems, builder);
+    ImmutableList.Builder<Map.Entry<String, ItemDescriptor>> builder = ImmutableList.builder();
+    for (int root = 0; root < count; root++) {
+      if (states[root] != NOT_VISITED) {
+        continue;
+      }
+      int stackSize = 0;
+      stack[stackSize++] = root;
+      states[root] = VISITING;
+      while (stackSize > 0) {
+        int current = stack[stackSize - 1];
+        List<DataModel.Prerequisite> prereqs = prerequisitesOf(entries.get(current).getValue());
+        if (nextPrerequisite[current] < prereqs.size()) {
+          Integer prereqOrdinal = ordinals.get(prereqs.get(nextPrerequisite[current]++).getKey());
+          if (prereqOrdinal != null && states[prereqOrdinal] == NOT_VISITED) {
+            // a VISITING prerequisite means there's a cycle; we just ignore that edge
+            states[prereqOrdinal] = VISITING;
+            stack[stackSize++] = prereqOrdinal;
+          }
+        } else {
+          stackSize--;
+          states[current] = DONE;
+          builder.add(entries.get(current));
         }
       }
     }
-    builder.put(key, item);
+    
+    return new KeyedItems<>(builder.build());
+  }
+  
+  private static final byte NOT_VISITED = 0;
+  private static final byte VISITING = 1;
+  private static final byte DONE = 2;
+  
+  private static List<DataModel.Prerequisite> prerequisitesOf(ItemDescriptor item) {
+    if (item == null || item.getItem() == null) {
+      return emptyList();
+    }
+    return ((DataModel.FeatureFlag)item.getItem()).getPrerequisites();
   }
 
   private static boolean isDependencyOrdered(DataKind kind) {
@@ -195,10 +239,37 @@ abstract class DataModelDependencies {
   
   /**
    * Maintains a bidirectional dependency graph that can be updated whenever an item has changed.
+   * <p>
+   * Each flag or segment that has been seen, either as a dependent or as a dependency, is given an integer
+   * ordinal the first time it is seen, and the edges of the graph are stored as arrays of ordinals. A deleted
+   * item just has no outgoing edges; when a full data set is applied, the nodes of items that are not in it
+   * and that nothing depends on are removed, and the remaining nodes are renumbered.
+   * <p>
+   * Each public method is atomic, since a persistent data store that reports changes made by other
+   * processes can cause updates on a different thread from the data source.
    */
   static final class DependencyTracker {
-    private final Map<KindAndKey, Set<KindAndKey>> dependenciesFrom = new HashMap<>();
-    private final Map<KindAndKey, Set<KindAndKey>> dependenciesTo = new HashMap<>();
+    private static final int[] NO_ORDINALS = new int[0];
+    private static final int UNKNOWN_VERSION = Integer.MIN_VALUE;
+    
+    private final Map<DataKind, Map<String, Integer>> ordinals = new HashMap<>();
+    private final List<Node> nodes = new ArrayList<>();
+    private int generation = 0;
+    private int[] scratch = new int[16]; // reused for computing each item's dependencies
+    private int scratchCount;
+    
+    private static final class Node {
+      final KindAndKey kindAndKey;
+      int[] dependenciesFrom = NO_ORDINALS;  // ordinals of the items that this item depends on
+      int[] dependenciesTo = NO_ORDINALS;    // ordinals of the items that depend on this item
+      int dependenciesToCount = 0;           // the number of valid elements in dependenciesTo
+      int version = UNKNOWN_VERSION;         // the version that dependenciesFrom was computed from
+      int generation;                        // used to find items missing from a full data set
+      
+      Node(KindAndKey kindAndKey) {
+        this.kindAndKey = kindAndKey;
+      }
+    }
     
     /**
      * Updates the dependency graph when an item has changed. 
@@ -207,34 +278,53 @@ abstract class DataModelDependencies {
      * @param fromKey the changed item's key
      * @param fromItem the changed item
      */
-    public void updateDependenciesFrom(DataKind fromKind, String fromKey, ItemDescriptor fromItem) {
-      KindAndKey fromWhat = new KindAndKey(fromKind, fromKey);
-      Set<KindAndKey> updatedDependencies = computeDependenciesFrom(fromKind, fromItem); // never null
-      
-      Set<KindAndKey> oldDependencySet = dependenciesFrom.get(fromWhat);
-      if (oldDependencySet != null) {
-        for (KindAndKey oldDep: oldDependencySet) {
-          Set<KindAndKey> depsToThisOldDep = dependenciesTo.get(oldDep);
-          if (depsToThisOldDep != null) {
-            // COVERAGE: cannot cause this condition in unit tests, it should never be null 
-            depsToThisOldDep.remove(fromWhat);
+    public synchronized void updateDependenciesFrom(DataKind fromKind, String fromKey, ItemDescriptor fromItem) {
+      setDependencies(ordinalFor(fromKind, fromKey), fromKind, fromItem);
+    }
+    
+    /**
+     * Updates the dependency graph to match a full data set. This is equivalent to calling {@link #reset()}
+     * and then {@link #updateDependenciesFrom(DataKind, String, ItemDescriptor)} for every item, except that
+     * items whose version has not changed since they were last seen are not recomputed.
+     * 
+     * @param allData the new data set
+     */
+    public synchronized void updateDependenciesFromFullDataSet(FullDataSet<ItemDescriptor> allData) {
+      int thisGeneration = ++generation;
+      for (Map.Entry<DataKind, KeyedItems<ItemDescriptor>> e0: allData.getData()) {
+        DataKind kind = e0.getKey();
+        for (Map.Entry<String, ItemDescriptor> e1: e0.getValue().getItems()) {
+          int ordinal = ordinalFor(kind, e1.getKey());
+          Node node = nodes.get(ordinal);
+          node.generation = thisGeneration;
+          ItemDescriptor item = e1.getValue();
+          if (node.version == UNKNOWN_VERSION || item == null || node.version != item.getVersion()) {
+            setDependencies(ordinal, kind, item);
           }
         }
       }
-      dependenciesFrom.put(fromWhat, updatedDependencies);
-      for (KindAndKey newDep: updatedDependencies) {
-        Set<KindAndKey> depsToThisNewDep = dependenciesTo.get(newDep);
-        if (depsToThisNewDep == null) {
-          depsToThisNewDep = new HashSet<>();
-          dependenciesTo.put(newDep, depsToThisNewDep);
+      for (int ordinal = 0; ordinal < nodes.size(); ordinal++) {
+        Node node = nodes.get(ordinal);
+        if (node.generation != thisGeneration && node.version != UNKNOWN_VERSION) {
+          // this item isn't in the new data set, so it can't depend on anything
+          setDependencies(ordinal, node.kindAndKey.kind, null);
+        }
+      }
+      for (Node node: nodes) {
+        if (node.generation != thisGeneration && node.dependenciesToCount == 0) {
+          removeUnusedNodes(thisGeneration);
+          break;
         }
-        depsToThisNewDep.add(fromWhat);
       }
     }
     
-    public void reset() {
-      dependenciesFrom.clear();
-      dependenciesTo.clear();
+    public synchronized void reset() {
+      ordinals.clear();
+      nodes.clear();
+    }
+
+    synchronized int size() {
+      return nodes.size();
     }
     
     /**
@@ -244,16 +334,124 @@ abstract class DataModelDependencies {
      * @param itemsOut an existing set to be updated
      * @param initialModifiedItem an item that has been modified
      */
-    public void addAffectedItems(Set<KindAndKey> itemsOut, KindAndKey initialModifiedItem) {
-      if (!itemsOut.contains(initialModifiedItem)) {
-        itemsOut.add(initialModifiedItem);
-        Set<KindAndKey> affectedItems = dependenciesTo.get(initialModifiedItem);
-        if (affectedItems != null) {
-          for (KindAndKey affectedItem: affectedItems) {
-            addAffectedItems(itemsOut, affectedItem);
+    public synchronized void addAffectedItems(Set<KindAndKey> itemsOut, KindAndKey initialModifiedItem) {
+      if (!itemsOut.add(initialModifiedItem)) {
+        return;
+      }
+      Integer initialOrdinal = existingOrdinal(initialModifiedItem.kind, initialModifiedItem.key);
+      if (initialOrdinal == null) {
+        return;
+      }
+      // Items already in itemsOut have either been visited already, or are about to be, so itemsOut
+      // also serves as the visited set
+      int[] stack = new int[16];
+      int stackSize = 0;
+      stack[stackSize++] = initialOrdinal;
+      while (stackSize > 0) {
+        Node node = nodes.get(stack[--stackSize]);
+        for (int i = 0; i < node.dependenciesToCount; i++) {
+          int affectedOrdinal = node.dependenciesTo[i];
+          if (itemsOut.add(nodes.get(affectedOrdinal).kindAndKey)) {
+            if (stackSize == stack.length) {
+              stack = Arrays.copyOf(stack, stackSize * 2);
+            }
+            stack[stackSize++] = affectedOrdinal;
           }
         }
       }
     }
+    
+    private Integer existingOrdinal(DataKind kind, String key) {
+      Map<String, Integer> kindOrdinals = ordinals.get(kind);
+      return kindOrdinals == null ? null : kindOrdinals.get(key);
+    }
+    
+    private int ordinalFor(DataKind kind, String key) {
+      Map<String, Integer> kindOrdinals = ordinals.get(kind);
+      if (kindOrdinals == null) {
+        kindOrdinals = new HashMap<>();
+        ordinals.put(kind, kindOrdinals);
+      }
+      Integer ordinal = kindOrdinals.get(key);
+      if (ordinal == null) {
+        ordinal = nodes.size();
+        nodes.add(new Node(new KindAndKey(kind, key)));
+        kindOrdinals.put(key, ordinal);
+      }
+      return ordinal;
+    }
+    
+    private void setDependencies(int fromOrdinal, DataKind fromKind, ItemDescriptor fromItem) {
+      Node fromNode = nodes.get(fromOrdinal);
+      for (int oldDep: fromNode.dependenciesFrom) {
+        removeDependencyTo(nodes.get(oldDep), fromOrdinal);
+      }
+      
+      scratchCount = 0;
+      forEachDependencyFrom(fromKind, fromItem, this::addToScratch);
+      fromNode.dependenciesFrom = scratchCount == 0 ? NO_ORDINALS : Arrays.copyOf(scratch, scratchCount);
+      fromNode.version = fromItem == null ? UNKNOWN_VERSION : fromItem.getVersion();
+      
+      for (int newDep: fromNode.dependenciesFrom) {
+        Node depNode = nodes.get(newDep);
+        if (depNode.dependenciesToCount == depNode.dependenciesTo.length) {
+          depNode.dependenciesTo = Arrays.copyOf(depNode.dependenciesTo, Math.max(4, depNode.dependenciesToCount * 2));
+        }
+        depNode.dependenciesTo[depNode.dependenciesToCount++] = fromOrdinal;
+      }
+    }
+    
+    private void addToScratch(DataKind kind, String key) {
+      int ordinal = ordinalFor(kind, key);
+      for (int i = 0; i < scratchCount; i++) {
+        if (scratch[i] == ordinal) {
+          return; // the same dependency can be referenced more than once
+        }
+      }
+      if (scratchCount == scratch.length) {
+        scratch = Arrays.copyOf(scratch, scratchCount * 2);
+      }
+      scratch[scratchCount++] = ordinal;
+    }
+    
+    // Removes the nodes of items that are not in the current data set and that nothing depends on, and
+    // renumbers the rest. Such a node can't have any outgoing edges either, since those were removed when
+    // the data set was applied.
+    private void removeUnusedNodes(int currentGeneration) {
+      int[] newOrdinals = new int[nodes.size()];
+      List<Node> keptNodes = new ArrayList<>();
+      for (int ordinal = 0; ordinal < nodes.size(); ordinal++) {
+        Node node = nodes.get(ordinal);
+        Map<String, Integer> kindOrdinals = ordinals.get(node.kindAndKey.kind);
+        if (node.generation != currentGeneration && node.dependenciesToCount == 0) {
+          newOrdinals[ordinal] = -1;
+          kindOrdinals.remove(node.kindAndKey.key);
+        } else {
+          newOrdinals[ordinal] = keptNodes.size();
+          kindOrdinals.put(node.kindAndKey.key, keptNodes.size());
+          keptNodes.add(node);
+        }
+      }
+      for (Node node: keptNodes) {
+        for (int i = 0; i < node.dependenciesFrom.length; i++) {
+          node.dependenciesFrom[i] = newOrdinals[node.dependenciesFrom[i]];
+        }
+        for (int i = 0; i < node.dependenciesToCount; i++) {
+          node.dependenciesTo[i] = newOrdinals[node.dependenciesTo[i]];
+        }
+      }
+      nodes.clear();
+      nodes.addAll(keptNodes);
+    }
+
+    private static void removeDependencyTo(Node node, int ordinal) {
+      for (int i = 0; i < node.dependenciesToCount; i++) {
+        if (node.dependenciesTo[i] == ordinal) {
+          // order doesn't matter, so just move the last element into this slot
+          node.dependenciesTo[i] = node.dependenciesTo[--node.dependenciesToCount];
+          return;
+        }
+      }
+    }
   }
 }
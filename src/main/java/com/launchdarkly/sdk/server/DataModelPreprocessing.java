@@ -122,6 +122,16 @@ abstract class DataModelPreprocessing {
     }
   }
   
+  static final class SegmentPreprocessed {
+    final String bigSegmentRef;
+    // set by BigSegmentRefOrdinals the first time the reference is looked up in a given set of ordinals
+    volatile BigSegmentRefOrdinals.ResolvedOrdinal bigSegmentOrdinal;
+    
+    SegmentPreprocessed(String bigSegmentRef) {
+      this.bigSegmentRef = bigSegmentRef;
+    }
+  }
+  
   static final class ClausePreprocessed {
     final Set<LDValue> valuesSet;
     final List<ValueData> valuesExtra;
@@ -169,6 +179,11 @@ abstract class DataModelPreprocessing {
   }
   
   static void preprocessSegment(Segment s) {
+    // Precompute the segment reference that is used to look up a Big Segment in a user's membership,
+    // so that it does not have to be formatted for every evaluation.
+    if (s.isUnbounded() && s.getGeneration() != null) {
+      s.preprocessed = new SegmentPreprocessed(Evaluator.makeBigSegmentRef(s));
+    }
     List<SegmentRule> rules = s.getRules();
     int n = rules.size();
     for (int i = 0; i < n; i++) {
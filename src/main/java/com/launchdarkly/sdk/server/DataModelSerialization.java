@@ -3,6 +3,8 @@ package com.launchdarkly.sdk.server;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 import com.google.gson.TypeAdapter;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
@@ -73,6 +75,30 @@ abstract class DataModelSerialization {
     return item;
   }
 
+  /**
+   * Deserializes a data model object from JSON that was already parsed by Gson, and keeps the JSON text of
+   * the item along with it; see {@link #getOriginalJson(ItemDescriptor)}. The text is produced by writing
+   * out the parsed JSON tree, so it includes any properties that the SDK does not know about. It is only
+   * kept if the key and version in the JSON are the same as in the deserialized item.
+   * 
+   * @param kind the data kind
+   * @param parsedJson the parsed JSON
+   * @return the deserialized item
+   */
+  static VersionedData deserializeKeepingOriginalJson(DataKind kind, JsonElement parsedJson) throws SerializationException {
+    VersionedData item = deserializeFromParsedJson(kind, parsedJson);
+    if (item != null && parsedJson.isJsonObject()) {
+      JsonObject o = parsedJson.getAsJsonObject();
+      JsonElement key = o.get("key"), version = o.get("version");
+      if (key instanceof JsonPrimitive && key.getAsString().equals(item.getKey()) &&
+          version instanceof JsonPrimitive && ((JsonPrimitive)version).isNumber() &&
+          version.getAsNumber().doubleValue() == item.getVersion()) {
+        setOriginalJson(item, gsonInstance().toJson(parsedJson));
+      }
+    }
+    return item;
+  }
+
   /**
    * Deserializes a data model object from a Gson reader.
    * 
@@ -102,11 +128,27 @@ abstract class DataModelSerialization {
    * Deserializes a full set of flag/segment data from a standard JSON object representation
    * in the form {"flags": ..., "segments": ...} (which is used in both streaming and polling
    * responses).
+   * <p>
    * 
    * @param jr the JSON reader
    * @return the deserialized data
    */
   static FullDataSet<ItemDescriptor> parseFullDataSet(JsonReader jr) throws SerializationException {
+    return parseFullDataSet(jr, false);
+  }
+
+  /**
+   * Deserializes a full set of flag/segment data, optionally keeping the JSON text of each item along
+   * with the item; see {@link #deserializeKeepingOriginalJson(DataKind, JsonElement)}. That is only worth
+   * doing if the data store will write the items out as JSON, since each item has to be parsed into a
+   * JSON tree first.
+   * 
+   * @param jr the JSON reader
+   * @param keepOriginalJson true to keep the JSON text of each item
+   * @return the deserialized data
+   */
+  static FullDataSet<ItemDescriptor> parseFullDataSet(JsonReader jr, boolean keepOriginalJson)
+      throws SerializationException {
     ImmutableList.Builder<Map.Entry<String, ItemDescriptor>> flags = ImmutableList.builder();
     ImmutableList.Builder<Map.Entry<String, ItemDescriptor>> segments = ImmutableList.builder();
     
@@ -114,14 +156,17 @@ abstract class DataModelSerialization {
       jr.beginObject();
       while (jr.peek() != JsonToken.END_OBJECT) {
         String kindName = jr.nextName();
+        DataKind kind;
         Class<?> itemClass;
         ImmutableList.Builder<Map.Entry<String, ItemDescriptor>> listBuilder;
         switch (kindName) {
         case "flags":
+          kind = FEATURES;
           itemClass = DataModel.FeatureFlag.class;
           listBuilder = flags;
           break;
         case "segments":
+          kind = SEGMENTS;
           itemClass = DataModel.Segment.class;
           listBuilder = segments;
           break;
@@ -132,8 +177,12 @@ abstract class DataModelSerialization {
         jr.beginObject();
         while (jr.peek() != JsonToken.END_OBJECT) {
           String key = jr.nextName();
-          @SuppressWarnings("unchecked")
-          Object item = JsonHelpers.deserialize(jr, (Class<Object>)itemClass);
+          Object item;
+          if (keepOriginalJson) {
+            item = deserializeKeepingOriginalJson(kind, gsonInstance().fromJson(jr, JsonElement.class));
+          } else {
+            item = JsonHelpers.deserialize(jr, itemClass);
+          }
           listBuilder.add(new AbstractMap.SimpleEntry<>(key,
               new ItemDescriptor(((VersionedData)item).getVersion(), item)));
         }
@@ -153,6 +202,53 @@ abstract class DataModelSerialization {
     }
   }
   
+  /**
+   * Stores the JSON text that a flag or segment was parsed from, so that it can be reused if the item is
+   * written to a persistent data store instead of serializing the item again.
+   * 
+   * @param item a flag or segment
+   * @param json the original JSON text, or null
+   */
+  static void setOriginalJson(Object item, String json) {
+    if (item instanceof FeatureFlag) {
+      ((FeatureFlag)item).originalJson = json;
+    } else if (item instanceof Segment) {
+      ((Segment)item).originalJson = json;
+    }
+  }
+
+  /**
+   * Returns the JSON text that an item was parsed from, if it is known and the version of the item
+   * matches the version in the descriptor; otherwise null, meaning that the item must be serialized.
+   * 
+   * @param item an item descriptor
+   * @return the original JSON text or null
+   */
+  static String getOriginalJson(ItemDescriptor item) {
+    Object o = item.getItem();
+    String json = null;
+    if (o instanceof FeatureFlag) {
+      json = ((FeatureFlag)o).originalJson;
+    } else if (o instanceof Segment) {
+      json = ((Segment)o).originalJson;
+    }
+    return json != null && ((VersionedData)o).getVersion() == item.getVersion() ? json : null;
+  }
+
+  /**
+   * Discards the original JSON text of all items in a data set. This is done once the data has been
+   * given to the data store, so that we don't keep two copies of every item in memory.
+   * 
+   * @param allData the data set
+   */
+  static void releaseOriginalJson(FullDataSet<ItemDescriptor> allData) {
+    for (Map.Entry<DataKind, KeyedItems<ItemDescriptor>> e0: allData.getData()) {
+      for (Map.Entry<String, ItemDescriptor> e1: e0.getValue().getItems()) {
+        setOriginalJson(e1.getValue().getItem(), null);
+      }
+    }
+  }
+
   // Custom deserialization logic for Clause because the attribute field is treated differently
   // depending on the contextKind field (if contextKind is null, we always parse attribute as a
   // literal attribute name and not a reference).
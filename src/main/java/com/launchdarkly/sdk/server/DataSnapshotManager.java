@@ -0,0 +1,229 @@
+package com.launchdarkly.sdk.server;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.launchdarkly.logging.LDLogger;
+import com.launchdarkly.logging.LogValues;
+import com.launchdarkly.sdk.server.interfaces.DataSnapshotConfiguration;
+import com.launchdarkly.sdk.server.subsystems.DataStore;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.KeyedItems;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.launchdarkly.sdk.server.DataModel.ALL_DATA_KINDS;
+import static com.launchdarkly.sdk.server.DataModel.FEATURES;
+import static com.launchdarkly.sdk.server.DataModel.SEGMENTS;
+
+/**
+ * Reads and writes local snapshots of the SDK's flag data, as configured by
+ * {@link com.launchdarkly.sdk.server.integrations.DataSnapshotBuilder}.
+ * <p>
+ * The snapshot file is gzipped JSON in the form {"formatVersion":1,"data":{"flags":{...},"segments":{...}}},
+ * where "data" has the same schema as the data in a stream "put" event, so it can be read with
+ * {@link DataModelSerialization#parseFullDataSet(JsonReader)}. Deleted items are not included.
+ * <p>
+ * To avoid rewriting the file when nothing has changed, we keep a fingerprint of the keys and versions of
+ * all items in the last snapshot that was written or loaded.
+ */
+final class DataSnapshotManager implements Closeable {
+  static final int FORMAT_VERSION = 1;
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+  private final Path filePath;
+  private final Duration writeInterval;
+  private final DataStore store;
+  private final ScheduledExecutorService executor;
+  private final LDLogger logger;
+  private final Object writeLock = new Object();
+  private Long lastFingerprint = null; // guarded by writeLock
+  private volatile ScheduledFuture<?> writeTask = null;
+
+  DataSnapshotManager(
+      DataSnapshotConfiguration config,
+      DataStore store,
+      ScheduledExecutorService executor,
+      LDLogger logger
+      ) {
+    this.filePath = config.getFilePath();
+    this.writeInterval = config.getWriteInterval();
+    this.store = store;
+    this.executor = executor;
+    this.logger = logger;
+  }
+
+  /**
+   * Reads the snapshot file, if any.
+   *
+   * @return the snapshot data, or null if there is no usable snapshot
+   */
+  FullDataSet<ItemDescriptor> load() {
+    if (!Files.exists(filePath)) {
+      logger.info("No data snapshot found at {}", filePath);
+      return null;
+    }
+    FullDataSet<ItemDescriptor> data = null;
+    try (JsonReader jr = new JsonReader(new InputStreamReader(
+        new GZIPInputStream(Files.newInputStream(filePath)), StandardCharsets.UTF_8))) {
+      int formatVersion = 0;
+      jr.beginObject();
+      while (jr.hasNext()) {
+        switch (jr.nextName()) {
+        case "formatVersion":
+          formatVersion = jr.nextInt();
+          break;
+        case "data":
+          if (formatVersion == FORMAT_VERSION) {
+            data = DataModelSerialization.parseFullDataSet(jr);
+          } else {
+            jr.skipValue();
+          }
+          break;
+        default:
+          jr.skipValue();
+        }
+      }
+      jr.endObject();
+    } catch (Exception e) {
+      logger.warn("Unable to read data snapshot from {}: {}", filePath, LogValues.exceptionSummary(e));
+      logger.debug(LogValues.exceptionTrace(e));
+      return null;
+    }
+    if (data == null) {
+      logger.warn("Ignoring data snapshot at {} because it was written in an unsupported format", filePath);
+      return null;
+    }
+    synchronized (writeLock) {
+      lastFingerprint = fingerprint(data.getData());
+    }
+    logger.info("Loaded data snapshot from {}", filePath);
+    return data;
+  }
+
+  /**
+   * Starts writing snapshots periodically.
+   */
+  void start() {
+    writeTask = executor.scheduleWithFixedDelay(this::writeIfChanged,
+        writeInterval.toMillis(), writeInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Writes a snapshot of the current contents of the data store, unless the store is not initialized or
+   * its contents have not changed since the last snapshot.
+   */
+  void writeIfChanged() {
+    synchronized (writeLock) {
+      try {
+        if (!store.isInitialized()) {
+          return;
+        }
+        Map<DataKind, KeyedItems<ItemDescriptor>> allData = new LinkedHashMap<>();
+        for (DataKind kind: ALL_DATA_KINDS) {
+          allData.put(kind, store.getAll(kind));
+        }
+        long fingerprint = fingerprint(allData.entrySet());
+        if (lastFingerprint != null && lastFingerprint.longValue() == fingerprint) {
+          return;
+        }
+        write(allData);
+        lastFingerprint = fingerprint;
+        logger.debug("Wrote data snapshot to {}", filePath);
+      } catch (Exception e) {
+        logger.warn("Unable to write data snapshot to {}: {}", filePath, LogValues.exceptionSummary(e));
+        logger.debug(LogValues.exceptionTrace(e));
+      }
+    }
+  }
+
+  /**
+   * Stops the periodic task, and writes a final snapshot if the data has changed.
+   */
+  @Override
+  public void close() throws IOException {
+    ScheduledFuture<?> task = writeTask;
+    if (task != null) {
+      task.cancel(false);
+      writeTask = null;
+    }
+    writeIfChanged();
+  }
+
+  private void write(Map<DataKind, KeyedItems<ItemDescriptor>> allData) throws IOException {
+    Path parent = filePath.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    Path tempPath = filePath.resolveSibling(filePath.getFileName() + TEMP_FILE_SUFFIX);
+    try (JsonWriter jw = new JsonWriter(new OutputStreamWriter(
+        new GZIPOutputStream(Files.newOutputStream(tempPath)), StandardCharsets.UTF_8))) {
+      jw.beginObject();
+      jw.name("formatVersion").value(FORMAT_VERSION);
+      jw.name("data").beginObject();
+      for (Map.Entry<DataKind, KeyedItems<ItemDescriptor>> e0: allData.entrySet()) {
+        String propertyName = propertyNameForKind(e0.getKey());
+        if (propertyName == null) {
+          continue;
+        }
+        jw.name(propertyName).beginObject();
+        for (Map.Entry<String, ItemDescriptor> e1: e0.getValue().getItems()) {
+          if (e1.getValue().getItem() != null) {
+            jw.name(e1.getKey()).jsonValue(e0.getKey().serialize(e1.getValue()));
+          }
+        }
+        jw.endObject();
+      }
+      jw.endObject();
+      jw.endObject();
+    }
+    try {
+      Files.move(tempPath, filePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static String propertyNameForKind(DataKind kind) {
+    if (kind == FEATURES) {
+      return "flags";
+    } else if (kind == SEGMENTS) {
+      return "segments";
+    }
+    return null;
+  }
+
+  // Computes a value that depends on the kind, key, and version of every non-deleted item, regardless of
+  // the order of the items.
+  private static long fingerprint(Iterable<Map.Entry<DataKind, KeyedItems<ItemDescriptor>>> allData) {
+    long sum = 0;
+    for (Map.Entry<DataKind, KeyedItems<ItemDescriptor>> e0: allData) {
+      long kindHash = e0.getKey().getName().hashCode();
+      for (Map.Entry<String, ItemDescriptor> e1: e0.getValue().getItems()) {
+        if (e1.getValue().getItem() == null) {
+          continue;
+        }
+        long h = (kindHash * 31 + e1.getKey().hashCode()) * 0x9E3779B97F4A7C15L + e1.getValue().getVersion();
+        sum += h ^ (h >>> 31);
+      }
+    }
+    return sum;
+  }
+}
@@ -1,19 +1,30 @@
 package com.launchdarkly.sdk.server;
 
 import com.launchdarkly.sdk.server.interfaces.DataSourceStatusProvider;
+import com.launchdarkly.sdk.server.subsystems.DataSource;
 
 import java.time.Duration;
 
 final class DataSourceStatusProviderImpl implements DataSourceStatusProvider {
   private final EventBroadcasterImpl<DataSourceStatusProvider.StatusListener, DataSourceStatusProvider.Status> dataSourceStatusNotifier;
   private final DataSourceUpdatesImpl dataSourceUpdates;
+  private final DataSource dataSource;
 
   DataSourceStatusProviderImpl(
       EventBroadcasterImpl<StatusListener, Status> dataSourceStatusNotifier,
       DataSourceUpdatesImpl dataSourceUpdates
       ) {
+    this(dataSourceStatusNotifier, dataSourceUpdates, null);
+  }
+
+  DataSourceStatusProviderImpl(
+      EventBroadcasterImpl<StatusListener, Status> dataSourceStatusNotifier,
+      DataSourceUpdatesImpl dataSourceUpdates,
+      DataSource dataSource
+      ) {
     this.dataSourceStatusNotifier = dataSourceStatusNotifier;
     this.dataSourceUpdates = dataSourceUpdates;
+    this.dataSource = dataSource;
   }
 
   @Override
@@ -25,6 +36,14 @@ final class DataSourceStatusProviderImpl implements DataSourceStatusProvider {
   public boolean waitFor(State desiredState, Duration timeout) throws InterruptedException {
     return dataSourceUpdates.waitFor(desiredState, timeout);
   }
+
+  @Override
+  public PipelineStats getPipelineStats() {
+    if (dataSource instanceof StreamProcessor) {
+      return ((StreamProcessor)dataSource).getPipelineStats();
+    }
+    return null;
+  }
   
   @Override
   public void addStatusListener(StatusListener listener) {
@@ -1,10 +1,12 @@
 package com.launchdarkly.sdk.server;
 
 import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.launchdarkly.logging.LDLogger;
 import com.launchdarkly.logging.LogValues;
+import com.launchdarkly.sdk.server.DataModel.Segment;
 import com.launchdarkly.sdk.server.DataModelDependencies.KindAndKey;
 import com.launchdarkly.sdk.server.interfaces.DataSourceStatusProvider.ErrorInfo;
 import com.launchdarkly.sdk.server.interfaces.DataSourceStatusProvider.ErrorKind;
@@ -23,6 +25,7 @@ import com.launchdarkly.sdk.server.interfaces.FlagChangeListener;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.AbstractMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -36,6 +39,9 @@ import static com.google.common.collect.Iterables.concat;
 import static com.google.common.collect.Iterables.transform;
 import static com.launchdarkly.sdk.server.DataModel.ALL_DATA_KINDS;
 import static com.launchdarkly.sdk.server.DataModel.FEATURES;
+import static com.launchdarkly.sdk.server.DataModel.SEGMENTS;
+import static com.launchdarkly.sdk.server.DataModelSerialization.releaseOriginalJson;
+import static com.launchdarkly.sdk.server.DataModelSerialization.setOriginalJson;
 import static java.util.Collections.emptyMap;
 
 /**
@@ -43,12 +49,20 @@ import static java.util.Collections.emptyMap;
  * transformations before putting them into the data store; currently that just means sorting
  * the data set for init(). We also generate flag change events for any updates or deletions.
  * <p>
+ * If incremental init is enabled, then a full data set that arrives after the store has already been
+ * initialized is compared against the current store contents, and only the items that were added,
+ * changed, or removed are written, using upsert() rather than init().
+ * <p>
  * This component is also responsible for receiving updates to the data source status, broadcasting
  * them to any status listeners, and tracking the length of any period of sustained failure.
  * 
  * @since 4.11.0
  */
 final class DataSourceUpdatesImpl implements DataSourceUpdateSink {
+  // If more than this proportion of the items in a full data set would need to be written, incremental init
+  // falls back to a regular init, since a long series of upserts is more expensive than a single init.
+  private static final double MAX_INCREMENTAL_INIT_CHANGE_RATIO = 0.5;
+
   private final DataStore store;
   private final EventBroadcasterImpl<FlagChangeListener, FlagChangeEvent> flagChangeEventNotifier;
   private final EventBroadcasterImpl<StatusListener, Status> dataSourceStatusNotifier;
@@ -56,11 +70,15 @@ final class DataSourceUpdatesImpl implements DataSourceUpdateSink {
   private final DataStoreStatusProvider dataStoreStatusProvider;
   private final OutageTracker outageTracker;
   private final Object stateLock = new Object();
+  private final boolean incrementalInit;
   private final LDLogger logger;
   
   private volatile Status currentStatus;
   private volatile boolean lastStoreUpdateFailed = false;
+  private volatile boolean dependencyTrackerPopulated = false;
+  private volatile boolean dataFromSnapshot = false;
   volatile Consumer<String> onOutageErrorLog = null; // test instrumentation
+  volatile BigSegmentStoreWrapper bigSegmentStoreWrapper = null; // set by LDClient if Big Segments are configured
   
   DataSourceUpdatesImpl(
       DataStore store,
@@ -71,11 +89,26 @@ final class DataSourceUpdatesImpl implements DataSourceUpdateSink {
       Duration outageLoggingTimeout,
       LDLogger baseLogger
       ) {
+    this(store, dataStoreStatusProvider, flagChangeEventNotifier, dataSourceStatusNotifier, sharedExecutor,
+        outageLoggingTimeout, false, baseLogger);
+  }
+
+  DataSourceUpdatesImpl(
+      DataStore store,
+      DataStoreStatusProvider dataStoreStatusProvider,
+      EventBroadcasterImpl<FlagChangeListener, FlagChangeEvent> flagChangeEventNotifier,
+      EventBroadcasterImpl<StatusListener, Status> dataSourceStatusNotifier,
+      ScheduledExecutorService sharedExecutor,
+      Duration outageLoggingTimeout,
+      boolean incrementalInit,
+      LDLogger baseLogger
+      ) {
     this.store = store;
     this.flagChangeEventNotifier = flagChangeEventNotifier;
     this.dataSourceStatusNotifier = dataSourceStatusNotifier;
     this.dataStoreStatusProvider = dataStoreStatusProvider;
     this.outageTracker = new OutageTracker(sharedExecutor, outageLoggingTimeout);
+    this.incrementalInit = incrementalInit;
     this.logger = baseLogger.subLogger(Loggers.DATA_SOURCE_LOGGER_NAME);
     
     currentStatus = new Status(State.INITIALIZING, Instant.now(), null);
@@ -83,6 +116,27 @@ final class DataSourceUpdatesImpl implements DataSourceUpdateSink {
   
   @Override
   public boolean init(FullDataSet<ItemDescriptor> allData) {
+    try {
+      return applyInit(allData);
+    } finally {
+      // The data store has serialized the items by now if it was going to
+      releaseOriginalJson(allData);
+    }
+  }
+
+  private boolean applyInit(FullDataSet<ItemDescriptor> allData) {
+    if (incrementalInit) {
+      Boolean result = tryInitIncrementally(allData);
+      if (result != null) {
+        if (result.booleanValue()) {
+          updateBigSegmentRefs(allData);
+          dataFromSnapshot = false;
+        }
+        return result.booleanValue();
+      }
+      // else fall through to a full init
+    }
+
     Map<DataKind, Map<String, ItemDescriptor>> oldData = null;
 
     try {
@@ -111,6 +165,126 @@ final class DataSourceUpdatesImpl implements DataSourceUpdateSink {
       sendChangeEvents(computeChangedItemsForFullDataSet(oldData, fullDataSetToMap(allData)));
     }
     
+    updateBigSegmentRefs(allData);
+    dataFromSnapshot = false; // the next status update will reflect this
+    return true;
+  }
+
+  // package-private - called from LDClient at startup if a local snapshot was loaded. This is like init(),
+  // except that there can't be any flag change listeners yet, and the status is marked as being from a
+  // snapshot until the data source provides a full data set.
+  boolean initFromSnapshot(FullDataSet<ItemDescriptor> allData) {
+    try {
+      store.init(DataModelDependencies.sortAllCollections(allData));
+    } catch (RuntimeException e) {
+      logger.warn("Unable to store snapshot data: {}", LogValues.exceptionSummary(e));
+      logger.debug(LogValues.exceptionTrace(e));
+      return false;
+    }
+    updateDependencyTrackerFromFullDataSet(allData);
+    updateBigSegmentRefs(allData);
+    dataFromSnapshot = true;
+    updateStatus(getLastStatus().getState(), null);
+    return true;
+  }
+
+  // Attempts to apply a full data set as a minimal series of upserts. Returns null if this isn't possible
+  // or isn't worthwhile, in which case the caller should do a regular init instead; otherwise returns the
+  // same result that init() would.
+  private Boolean tryInitIncrementally(FullDataSet<ItemDescriptor> allData) {
+    Map<DataKind, Map<String, ItemDescriptor>> newDataMap = fullDataSetToMap(allData);
+    Map<DataKind, Map<String, ItemDescriptor>> changedItems = new HashMap<>();
+    Map<DataKind, Map<String, ItemDescriptor>> deletedPlaceholders = new HashMap<>();
+    FullDataSet<ItemDescriptor> updatedItems;
+    int totalItems = 0, totalChanges = 0;
+
+    try {
+      if (!store.isInitialized()) {
+        return null; // nothing to compare against - the first init must replace everything
+      }
+      Set<DataKind> allKinds = new HashSet<>(newDataMap.keySet());
+      for (DataKind kind: ALL_DATA_KINDS) {
+        allKinds.add(kind);
+      }
+      for (DataKind kind: allKinds) {
+        Map<String, ItemDescriptor> newItems = newDataMap.get(kind);
+        if (newItems == null) {
+          newItems = emptyMap();
+        }
+        Map<String, ItemDescriptor> oldItems = new HashMap<>();
+        for (Map.Entry<String, ItemDescriptor> e: store.getAll(kind).getItems()) {
+          oldItems.put(e.getKey(), e.getValue());
+        }
+        Map<String, ItemDescriptor> changedOfKind = new HashMap<>();
+        Map<String, ItemDescriptor> deletedOfKind = new HashMap<>();
+        for (Map.Entry<String, ItemDescriptor> e: newItems.entrySet()) {
+          ItemDescriptor oldItem = oldItems.get(e.getKey());
+          if (oldItem == null || oldItem.getVersion() < e.getValue().getVersion()) {
+            changedOfKind.put(e.getKey(), e.getValue());
+          } else if (oldItem.getVersion() > e.getValue().getVersion()) {
+            // An upsert can't replace an item with a lower version, but init() must; so we can't do this
+            // incrementally. This is unusual, since versions normally only increase.
+            return null;
+          }
+        }
+        for (Map.Entry<String, ItemDescriptor> e: oldItems.entrySet()) {
+          if (!newItems.containsKey(e.getKey()) && e.getValue().getItem() != null) {
+            // The item is no longer in the data set; replace it with a deleted item placeholder whose version
+            // is higher than the current one, so that the upsert will take effect.
+            deletedOfKind.put(e.getKey(), ItemDescriptor.deletedItem(e.getValue().getVersion() + 1));
+          }
+        }
+        if (!changedOfKind.isEmpty()) {
+          changedItems.put(kind, changedOfKind);
+        }
+        if (!deletedOfKind.isEmpty()) {
+          deletedPlaceholders.put(kind, deletedOfKind);
+        }
+        totalItems += newItems.size();
+        totalChanges += changedOfKind.size() + deletedOfKind.size();
+      }
+      if (totalChanges > totalItems * MAX_INCREMENTAL_INIT_CHANGE_RATIO) {
+        return null; // so much has changed that it's cheaper to just rewrite everything
+      }
+
+      // Apply the changed items in dependency order, and then the deletions, which is the same order that a
+      // data store has to use for a non-atomic init(). This is all one batch, so that a store that can apply a
+      // batch efficiently only has to do it once; a kind can appear twice in the batch, once for its changed
+      // items and once for its deletions.
+      ImmutableList.Builder<Map.Entry<DataKind, KeyedItems<ItemDescriptor>>> batch = ImmutableList.builder();
+      batch.addAll(DataModelDependencies.sortAllCollections(toFullDataSet(changedItems)).getData());
+      batch.addAll(toFullDataSet(deletedPlaceholders).getData());
+      updatedItems = store.upsertAll(new FullDataSet<>(batch.build()));
+      lastStoreUpdateFailed = false;
+    } catch (RuntimeException e) {
+      reportStoreFailure(e);
+      return false;
+    }
+
+    // If this is the first data set we've seen since startup, the dependency graph is still empty even though the
+    // store had data; in that case we build it from the whole data set, otherwise we only update the changed parts.
+    // Only the items that the store actually updated count as changes; if something else wrote a newer version
+    // of an item since we read the store, such as a deleted item placeholder, the store kept that version.
+    if (!dependencyTrackerPopulated) {
+      updateDependencyTrackerFromFullDataSet(allData);
+    } else {
+      for (Map.Entry<DataKind, KeyedItems<ItemDescriptor>> e0: updatedItems.getData()) {
+        for (Map.Entry<String, ItemDescriptor> e1: e0.getValue().getItems()) {
+          dependencyTracker.updateDependenciesFrom(e0.getKey(), e1.getKey(), e1.getValue());
+        }
+      }
+    }
+
+    if (hasFlagChangeEventListeners()) {
+      Set<KindAndKey> affectedItems = new HashSet<>();
+      for (Map.Entry<DataKind, KeyedItems<ItemDescriptor>> e0: updatedItems.getData()) {
+        for (Map.Entry<String, ItemDescriptor> e1: e0.getValue().getItems()) {
+          dependencyTracker.addAffectedItems(affectedItems, new KindAndKey(e0.getKey(), e1.getKey()));
+        }
+      }
+      sendChangeEvents(affectedItems);
+    }
+
     return true;
   }
 
@@ -123,6 +297,8 @@ final class DataSourceUpdatesImpl implements DataSourceUpdateSink {
     } catch (RuntimeException e) {
       reportStoreFailure(e);
       return false;
+    } finally {
+      setOriginalJson(item.getItem(), null);
     }
     
     if (successfullyUpdated) {
@@ -137,6 +313,75 @@ final class DataSourceUpdatesImpl implements DataSourceUpdateSink {
     return true;
   }
 
+  @Override
+  public boolean upsertAll(FullDataSet<ItemDescriptor> items) {
+    FullDataSet<ItemDescriptor> updatedItems;
+    try {
+      updatedItems = store.upsertAll(DataModelDependencies.sortAllCollections(items));
+      lastStoreUpdateFailed = false;
+    } catch (RuntimeException e) {
+      reportStoreFailure(e);
+      return false;
+    } finally {
+      releaseOriginalJson(items);
+    }
+    
+    for (Map.Entry<DataKind, KeyedItems<ItemDescriptor>> e0: updatedItems.getData()) {
+      for (Map.Entry<String, ItemDescriptor> e1: e0.getValue().getItems()) {
+        dependencyTracker.updateDependenciesFrom(e0.getKey(), e1.getKey(), e1.getValue());
+      }
+    }
+    if (hasFlagChangeEventListeners()) {
+      // Since the whole batch is computed together, a flag that is affected by several of the changes only
+      // gets a single change event.
+      Set<KindAndKey> affectedItems = new HashSet<>();
+      for (Map.Entry<DataKind, KeyedItems<ItemDescriptor>> e0: updatedItems.getData()) {
+        for (Map.Entry<String, ItemDescriptor> e1: e0.getValue().getItems()) {
+          dependencyTracker.addAffectedItems(affectedItems, new KindAndKey(e0.getKey(), e1.getKey()));
+        }
+      }
+      sendChangeEvents(affectedItems);
+    }
+    
+    return true;
+  }
+
+  // package-private - called via DataStoreUpdatesImpl when a persistent data store reports that another process
+  // has changed an item. The store has already been updated, so we only need to update the dependency graph and
+  // send change events. In daemon mode there is no data source, so the graph may never have been built; in that
+  // case we build it from the store the first time someone is listening for changes.
+  void itemChangedInStore(DataKind kind, String key, ItemDescriptor item) {
+    boolean hasListeners = hasFlagChangeEventListeners();
+    if (!dependencyTrackerPopulated && hasListeners) {
+      try {
+        Map<DataKind, KeyedItems<ItemDescriptor>> allData = new HashMap<>();
+        for (DataKind k: ALL_DATA_KINDS) {
+          allData.put(k, store.getAll(k));
+        }
+        updateDependencyTrackerFromFullDataSet(new FullDataSet<>(allData.entrySet()));
+      } catch (RuntimeException e) {
+        logger.warn("Unable to read data store to compute flag dependencies: {}", LogValues.exceptionSummary(e));
+      }
+    }
+    dependencyTracker.updateDependenciesFrom(kind, key, item);
+    if (hasListeners) {
+      Set<KindAndKey> affectedItems = new HashSet<>();
+      dependencyTracker.addAffectedItems(affectedItems, new KindAndKey(kind, key));
+      sendChangeEvents(affectedItems);
+    }
+  }
+
+  // package-private - used by our built-in data sources to decide whether to keep the JSON text of each item that
+  // they parse (see DataModelSerialization.deserializeKeepingOriginalJson). That costs an extra step in parsing,
+  // so it is only done if the data store will write the items out as JSON.
+  static boolean storeUsesOriginalJson(DataSourceUpdateSink dataSourceUpdates) {
+    if (dataSourceUpdates instanceof DataSourceUpdatesImpl) {
+      DataStore store = ((DataSourceUpdatesImpl)dataSourceUpdates).store;
+      return store instanceof PersistentDataStoreWrapper && ((PersistentDataStoreWrapper)store).usesOriginalJson();
+    }
+    return false;
+  }
+
   @Override
   public DataStoreStatusProvider getDataStoreStatusProvider() {
     return dataStoreStatusProvider;
@@ -157,11 +402,12 @@ final class DataSourceUpdatesImpl implements DataSourceUpdateSink {
         newState = State.INITIALIZING; // see comment on updateStatus in the DataSourceUpdates interface
       }
       
-      if (newState != oldStatus.getState() || newError != null) {
+      if (newState != oldStatus.getState() || newError != null || oldStatus.isFromSnapshot() != dataFromSnapshot) {
         currentStatus = new Status(
             newState,
             newState == currentStatus.getState() ? currentStatus.getStateSince() : Instant.now(),
-            newError == null ? currentStatus.getLastError() : newError
+            newError == null ? currentStatus.getLastError() : newError,
+            dataFromSnapshot
             );
         statusToBroadcast = currentStatus;
         stateLock.notifyAll();
@@ -219,16 +465,35 @@ final class DataSourceUpdatesImpl implements DataSourceUpdateSink {
   }
   
   private void updateDependencyTrackerFromFullDataSet(FullDataSet<ItemDescriptor> allData) {
-    dependencyTracker.reset();
+    dependencyTracker.updateDependenciesFromFullDataSet(allData);
+    dependencyTrackerPopulated = true;
+  }
+  
+  // Tells the Big Segment store wrapper which Big Segments currently exist, so that it can stop tracking
+  // the references of deleted segments and old generations.
+  private void updateBigSegmentRefs(FullDataSet<ItemDescriptor> allData) {
+    BigSegmentStoreWrapper wrapper = bigSegmentStoreWrapper;
+    if (wrapper == null) {
+      return;
+    }
+    Set<String> segmentRefs = new HashSet<>();
     for (Map.Entry<DataKind, KeyedItems<ItemDescriptor>> e0: allData.getData()) {
-      DataKind kind = e0.getKey();
+      if (e0.getKey() != SEGMENTS) {
+        continue;
+      }
       for (Map.Entry<String, ItemDescriptor> e1: e0.getValue().getItems()) {
-        String key = e1.getKey();
-        dependencyTracker.updateDependenciesFrom(kind, key, e1.getValue());
+        Object item = e1.getValue().getItem();
+        if (item instanceof Segment) {
+          Segment segment = (Segment)item;
+          if (segment.isUnbounded() && segment.getGeneration() != null) {
+            segmentRefs.add(Evaluator.makeBigSegmentRef(segment));
+          }
+        }
       }
     }
+    wrapper.updateSegmentRefs(segmentRefs);
   }
-  
+
   private Map<DataKind, Map<String, ItemDescriptor>> fullDataSetToMap(FullDataSet<ItemDescriptor> allData) {
     Map<DataKind, Map<String, ItemDescriptor>> ret = new HashMap<>();
     for (Map.Entry<DataKind, KeyedItems<ItemDescriptor>> e: allData.getData()) {
@@ -236,6 +501,14 @@ final class DataSourceUpdatesImpl implements DataSourceUpdateSink {
     }
     return ret;
   }
+
+  private static FullDataSet<ItemDescriptor> toFullDataSet(Map<DataKind, Map<String, ItemDescriptor>> itemsMap) {
+    ImmutableList.Builder<Map.Entry<DataKind, KeyedItems<ItemDescriptor>>> ret = ImmutableList.builder();
+    for (Map.Entry<DataKind, Map<String, ItemDescriptor>> e: itemsMap.entrySet()) {
+      ret.add(new AbstractMap.SimpleEntry<>(e.getKey(), new KeyedItems<>(e.getValue().entrySet())));
+    }
+    return new FullDataSet<>(ret.build());
+  }
   
   private Set<KindAndKey> computeChangedItemsForFullDataSet(Map<DataKind, Map<String, ItemDescriptor>> oldDataMap,
       Map<DataKind, Map<String, ItemDescriptor>> newDataMap) {
@@ -39,4 +39,19 @@ final class DataStoreStatusProviderImpl implements DataStoreStatusProvider {
   public CacheStats getCacheStats() {
     return store.getCacheStats();
   }
+
+  @Override
+  public WriteQueueStats getWriteQueueStats() {
+    return store.getWriteQueueStats();
+  }
+
+  @Override
+  public InitProgress getInitProgress() {
+    return store.getInitProgress();
+  }
+
+  @Override
+  public StoreReadStats getStoreReadStats() {
+    return store.getStoreReadStats();
+  }
 }
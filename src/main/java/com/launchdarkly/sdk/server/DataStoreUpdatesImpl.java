@@ -1,6 +1,8 @@
 package com.launchdarkly.sdk.server;
 
 import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
 import com.launchdarkly.sdk.server.subsystems.DataStoreUpdateSink;
 
 import java.util.concurrent.atomic.AtomicReference;
@@ -9,6 +11,8 @@ class DataStoreUpdatesImpl implements DataStoreUpdateSink {
   // package-private because it's convenient to use these from DataStoreStatusProviderImpl
   final EventBroadcasterImpl<DataStoreStatusProvider.StatusListener, DataStoreStatusProvider.Status> statusBroadcaster;
   final AtomicReference<DataStoreStatusProvider.Status> lastStatus;
+  // set by LDClient once it has created the DataSourceUpdatesImpl, which sends flag change events
+  volatile DataSourceUpdatesImpl dataSourceUpdates;
 
   DataStoreUpdatesImpl(
       EventBroadcasterImpl<DataStoreStatusProvider.StatusListener, DataStoreStatusProvider.Status> statusBroadcaster
@@ -26,4 +30,12 @@ class DataStoreUpdatesImpl implements DataStoreUpdateSink {
       }
     }
   }
+
+  @Override
+  public void itemChanged(DataKind kind, String key, ItemDescriptor item) {
+    DataSourceUpdatesImpl target = dataSourceUpdates;
+    if (target != null) {
+      target.itemChangedInStore(kind, key, item);
+    }
+  }
 }
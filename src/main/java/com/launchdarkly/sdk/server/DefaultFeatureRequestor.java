@@ -37,6 +37,7 @@ final class DefaultFeatureRequestor implements FeatureRequestor {
   final URI pollingUri;
   private final Headers headers;
   private final Path cacheDir;
+  private final boolean keepOriginalJson;
   private final LDLogger logger;
 
   /**
@@ -49,6 +50,23 @@ final class DefaultFeatureRequestor implements FeatureRequestor {
    * @param logger         to log with
    */
   DefaultFeatureRequestor(HttpProperties httpProperties, URI baseUri, @Nullable String payloadFilter, LDLogger logger) {
+    this(httpProperties, baseUri, payloadFilter, false, logger);
+  }
+
+  /**
+   * Creates a {@link DefaultFeatureRequestor}
+   * 
+   * @param httpProperties   that will be used
+   * @param baseUri          that will be used
+   * @param payloadFilter    identifier that will be used to filter objects in the
+   *                         payload, provide null for no filtering
+   * @param keepOriginalJson true to keep the JSON text of each item along with it,
+   *                         for a data store that writes items out as JSON
+   * @param logger           to log with
+   */
+  DefaultFeatureRequestor(HttpProperties httpProperties, URI baseUri, @Nullable String payloadFilter,
+      boolean keepOriginalJson, LDLogger logger) {
+    this.keepOriginalJson = keepOriginalJson;
     this.logger = logger;
 
     URI tempUri = HttpHelpers.concatenateUriPath(baseUri, StandardEndpoints.POLLING_REQUEST_PATH);
@@ -110,7 +128,7 @@ final class DefaultFeatureRequestor implements FeatureRequestor {
       }
 
       JsonReader jr = new JsonReader(response.body().charStream());
-      return parseFullDataSet(jr);
+      return parseFullDataSet(jr, keepOriginalJson);
     }
   }
 }
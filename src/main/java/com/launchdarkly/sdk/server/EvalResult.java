@@ -2,6 +2,7 @@ package com.launchdarkly.sdk.server;
 
 import com.launchdarkly.sdk.EvaluationDetail;
 import com.launchdarkly.sdk.EvaluationReason;
+import com.launchdarkly.sdk.EvaluationReason.BigSegmentsStatus;
 import com.launchdarkly.sdk.EvaluationReason.ErrorKind;
 import com.launchdarkly.sdk.LDValue;
 import com.launchdarkly.sdk.LDValueType;
@@ -22,6 +23,7 @@ final class EvalResult {
   private static final EvaluationDetail<Integer> WRONG_TYPE_INTEGER = wrongTypeWithValue((int)0);
   private static final EvaluationDetail<Double> WRONG_TYPE_DOUBLE = wrongTypeWithValue((double)0);
   private static final EvaluationDetail<String> WRONG_TYPE_STRING = wrongTypeWithValue((String)null);
+  private static final int BIG_SEGMENTS_STATUS_COUNT = BigSegmentsStatus.values().length;
   
   private final EvaluationDetail<LDValue> anyType;
   private final EvaluationDetail<Boolean> asBoolean;
@@ -29,6 +31,8 @@ final class EvalResult {
   private final EvaluationDetail<Double> asDouble;
   private final EvaluationDetail<String> asString;
   private final boolean forceReasonTracking;
+  // Copies of this result with each Big Segments status, created as needed; see withBigSegmentsStatus
+  private volatile EvalResult[] withBigSegmentsStatus;
 
   /**
    * Constructs an instance that wraps the specified EvaluationDetail and also precomputes
@@ -218,6 +222,31 @@ final class EvalResult {
     return newReason.equals(this.anyType.getReason()) ? this : new EvalResult(this, newReason);
   }
   
+  /**
+   * Returns a transformed copy of this EvalResult whose reason has the specified Big Segments status.
+   * <p>
+   * Most results come from the precomputed results in {@link DataModelPreprocessing}, which are shared by
+   * all evaluations of a flag, so the copy for each status is kept and reused rather than being created
+   * for every evaluation that involves a Big Segment. If two threads create a copy at the same time, one of
+   * them is simply discarded; that is safe because EvalResult is immutable.
+   *
+   * @param status the Big Segments status
+   * @return a transformed copy
+   */
+  public EvalResult withBigSegmentsStatus(BigSegmentsStatus status) {
+    EvalResult[] copies = withBigSegmentsStatus;
+    if (copies == null) {
+      copies = new EvalResult[BIG_SEGMENTS_STATUS_COUNT];
+      withBigSegmentsStatus = copies;
+    }
+    EvalResult ret = copies[status.ordinal()];
+    if (ret == null) {
+      ret = withReason(getReason().withBigSegmentsStatus(status));
+      copies[status.ordinal()] = ret;
+    }
+    return ret;
+  }
+  
   /**
    * Returns a transformed copy of this EvalResult with a different value for {@link #isForceReasonTracking()}.
    * @param newValue the new value for the property
@@ -98,7 +98,13 @@ class Evaluator {
     @Nullable
     Segment getSegment(String key);
 
-    BigSegmentStoreWrapper.BigSegmentsQueryResult getBigSegments(String key);
+    /**
+     * @param key the context key
+     * @param segmentRef the reference of the Big Segment being evaluated, which the result must cover;
+     *   see {@link BigSegmentStoreWrapper#getUserMembership(String, String)}
+     * @return the membership query result, or null if Big Segments are not configured
+     */
+    BigSegmentStoreWrapper.BigSegmentsQueryResult getBigSegments(String key, String segmentRef);
   }
 
   /**
@@ -150,9 +156,7 @@ class Evaluator {
       EvalResult result = evaluateInternal(flag, context, recorder, state);
 
       if (state.bigSegmentsStatus != null) {
-        return result.withReason(
-            result.getReason().withBigSegmentsStatus(state.bigSegmentsStatus)
-        );
+        return result.withBigSegmentsStatus(state.bigSegmentsStatus);
       }
       return result;
     } catch (EvaluationException e) {
@@ -470,8 +474,11 @@ class Evaluator {
       String key = matchContext.getKey();
       BigSegmentStoreTypes.Membership membershipData =
           state.bigSegmentsMembership == null ? null : state.bigSegmentsMembership.get(key);
-      if (membershipData == null) {
-        BigSegmentStoreWrapper.BigSegmentsQueryResult queryResult = getters.getBigSegments(key);
+      if (membershipData == null || !coversBigSegment(membershipData, segment)) {
+        // If we already have a membership state for this key, it was loaded before this segment was known
+        // and has nothing to say about it, so we have to query again
+        BigSegmentStoreWrapper.BigSegmentsQueryResult queryResult = getters.getBigSegments(key,
+            segment.preprocessed == null ? makeBigSegmentRef(segment) : segment.preprocessed.bigSegmentRef);
         if (queryResult == null) {
           // The SDK hasn't been configured to be able to use big segments
           state.bigSegmentsStatus = EvaluationReason.BigSegmentsStatus.NOT_CONFIGURED;
@@ -485,7 +492,7 @@ class Evaluator {
         }
       }
       Boolean membershipResult = membershipData == null ? null :
-          membershipData.checkMembership(makeBigSegmentRef(segment));
+          checkBigSegmentMembership(membershipData, segment);
       if (membershipResult != null) {
         return membershipResult.booleanValue();
       }
@@ -569,7 +576,28 @@ class Evaluator {
     return getValueForVariationOrRollout(flag, rule, context, null, reason);
   }
 
+  private static Boolean checkBigSegmentMembership(BigSegmentStoreTypes.Membership membership, Segment segment) {
+    if (segment.preprocessed == null) {
+      return membership.checkMembership(makeBigSegmentRef(segment));
+    }
+    if (membership instanceof CompactBigSegmentMembership) {
+      CompactBigSegmentMembership compact = (CompactBigSegmentMembership)membership;
+      int ordinal = compact.ordinalOf(segment.preprocessed);
+      return ordinal < 0 ? null : compact.checkMembership(ordinal);
+    }
+    return membership.checkMembership(segment.preprocessed.bigSegmentRef);
+  }
+
+  private static boolean coversBigSegment(BigSegmentStoreTypes.Membership membership, Segment segment) {
+    if (!(membership instanceof CompactBigSegmentMembership)) {
+      return true;
+    }
+    CompactBigSegmentMembership compact = (CompactBigSegmentMembership)membership;
+    return segment.preprocessed == null ? compact.covers(makeBigSegmentRef(segment)) :
+      compact.ordinalOf(segment.preprocessed) >= 0;
+  }
+
   static String makeBigSegmentRef(Segment segment) {
-    return String.format("%s.g%d", segment.getKey(), segment.getGeneration());
+    return segment.getKey() + ".g" + segment.getGeneration();
   }
 }
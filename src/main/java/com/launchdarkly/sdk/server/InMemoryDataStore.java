@@ -10,6 +10,7 @@ import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.KeyedItems;
 
 import java.io.IOException;
+import java.util.AbstractMap;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -94,6 +95,37 @@ class InMemoryDataStore implements DataStore {
     }
   }
 
+  @Override
+  public FullDataSet<ItemDescriptor> upsertAll(FullDataSet<ItemDescriptor> items) {
+    // Same logic as upsert(), except that we only rebuild the map for each affected kind once per batch.
+    synchronized (writeLock) {
+      Map<DataKind, Map<String, ItemDescriptor>> newData = new HashMap<>(this.allData);
+      ImmutableList.Builder<Map.Entry<DataKind, KeyedItems<ItemDescriptor>>> updated = ImmutableList.builder();
+      for (Map.Entry<DataKind, KeyedItems<ItemDescriptor>> e0: items.getData()) {
+        DataKind kind = e0.getKey();
+        Map<String, ItemDescriptor> existingItems = newData.get(kind);
+        Map<String, ItemDescriptor> newItems = existingItems == null ? new HashMap<>() : new HashMap<>(existingItems);
+        ImmutableList.Builder<Map.Entry<String, ItemDescriptor>> updatedOfKind = ImmutableList.builder();
+        boolean anyUpdated = false;
+        for (Map.Entry<String, ItemDescriptor> e1: e0.getValue().getItems()) {
+          ItemDescriptor oldItem = newItems.get(e1.getKey());
+          if (oldItem != null && oldItem.getVersion() >= e1.getValue().getVersion()) {
+            continue;
+          }
+          newItems.put(e1.getKey(), e1.getValue());
+          updatedOfKind.add(e1);
+          anyUpdated = true;
+        }
+        if (anyUpdated) {
+          newData.put(kind, ImmutableMap.copyOf(newItems));
+          updated.add(new AbstractMap.SimpleEntry<>(kind, new KeyedItems<>(updatedOfKind.build())));
+        }
+      }
+      this.allData = ImmutableMap.copyOf(newData); // replaces the entire map atomically
+      return new FullDataSet<>(updated.build());
+    }
+  }
+
   @Override
   public boolean isInitialized() {
     return initialized;
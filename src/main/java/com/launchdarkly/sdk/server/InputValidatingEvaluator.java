@@ -55,8 +55,8 @@ class InputValidatingEvaluator implements EvaluatorInterface {
         return InputValidatingEvaluator.getSegment(store, key);
       }
 
-      public BigSegmentStoreWrapper.BigSegmentsQueryResult getBigSegments(String key) {
-        return segmentStore == null ? null : segmentStore.getUserMembership(key);
+      public BigSegmentStoreWrapper.BigSegmentsQueryResult getBigSegments(String key, String segmentRef) {
+        return segmentStore == null ? null : segmentStore.getUserMembership(key, segmentRef);
       }
 
     }, logger);
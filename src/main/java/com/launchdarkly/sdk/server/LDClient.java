@@ -11,6 +11,7 @@ import com.launchdarkly.sdk.LDValueType;
 import com.launchdarkly.sdk.internal.http.HttpHelpers;
 import com.launchdarkly.sdk.server.interfaces.BigSegmentStoreStatusProvider;
 import com.launchdarkly.sdk.server.interfaces.BigSegmentsConfiguration;
+import com.launchdarkly.sdk.server.interfaces.DataSnapshotConfiguration;
 import com.launchdarkly.sdk.server.interfaces.DataSourceStatusProvider;
 import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider;
 import com.launchdarkly.sdk.server.interfaces.FlagChangeEvent;
@@ -20,6 +21,7 @@ import com.launchdarkly.sdk.server.interfaces.LDClientInterface;
 import com.launchdarkly.sdk.server.subsystems.DataSource;
 import com.launchdarkly.sdk.server.subsystems.DataSourceUpdateSink;
 import com.launchdarkly.sdk.server.subsystems.DataStore;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
 import com.launchdarkly.sdk.server.subsystems.EventProcessor;
 import org.apache.commons.codec.binary.Hex;
@@ -59,6 +61,7 @@ public final class LDClient implements LDClientInterface {
   private final BigSegmentStoreStatusProvider bigSegmentStoreStatusProvider;
   private final BigSegmentStoreWrapper bigSegmentStoreWrapper;
   private final DataSourceUpdateSink dataSourceUpdates;
+  private final DataSnapshotManager dataSnapshotManager;
   private final DataStoreStatusProviderImpl dataStoreStatusProvider;
   private final DataSourceStatusProviderImpl dataSourceStatusProvider;
   private final FlagTrackerImpl flagTracker;
@@ -230,14 +233,39 @@ public final class LDClient implements LDClientInterface {
         dataSourceStatusNotifier,
         sharedExecutor,
         context.getLogging().getLogDataSourceOutageAsErrorAfter(),
+        config.incrementalInit,
         baseLogger
     );
     this.dataSourceUpdates = dataSourceUpdates;
+    dataStoreUpdates.dataSourceUpdates = dataSourceUpdates;
+    dataSourceUpdates.bigSegmentStoreWrapper = bigSegmentStoreWrapper;
+
+    boolean loadedSnapshot = false;
+    if (config.dataSnapshot != null) {
+      DataSnapshotConfiguration snapshotConfig = config.dataSnapshot.build(context);
+      this.dataSnapshotManager = new DataSnapshotManager(snapshotConfig, dataStore, sharedExecutor,
+          baseLogger.subLogger(Loggers.DATA_SOURCE_LOGGER_NAME));
+      // If the store already has data, as a persistent store might, then that is at least as good as a snapshot
+      if (!dataStore.isInitialized()) {
+        FullDataSet<ItemDescriptor> snapshotData = dataSnapshotManager.load();
+        if (snapshotData != null) {
+          loadedSnapshot = dataSourceUpdates.initFromSnapshot(snapshotData);
+        }
+      }
+    } else {
+      this.dataSnapshotManager = null;
+    }
+
     this.dataSource = config.dataSource.build(context.withDataSourceUpdateSink(dataSourceUpdates));
-    this.dataSourceStatusProvider = new DataSourceStatusProviderImpl(dataSourceStatusNotifier, dataSourceUpdates);
+    this.dataSourceStatusProvider = new DataSourceStatusProviderImpl(dataSourceStatusNotifier, dataSourceUpdates, dataSource);
 
     Future<Void> startFuture = dataSource.start();
-    if (!config.startWait.isZero() && !config.startWait.isNegative()) {
+    if (dataSnapshotManager != null) {
+      dataSnapshotManager.start();
+    }
+    if (loadedSnapshot) {
+      baseLogger.info("Using data from snapshot; not waiting for LaunchDarkly client to start");
+    } else if (!config.startWait.isZero() && !config.startWait.isNegative()) {
       if (!(dataSource instanceof ComponentsImpl.NullDataSource)) {
         baseLogger.info("Waiting up to {} milliseconds for LaunchDarkly client to start...",
             config.startWait.toMillis());
@@ -463,6 +491,9 @@ public final class LDClient implements LDClientInterface {
   @Override
   public void close() throws IOException {
     baseLogger.info("Closing LaunchDarkly Client");
+    if (this.dataSnapshotManager != null) {
+      this.dataSnapshotManager.close(); // this may write a final snapshot, so it must happen before the store is closed
+    }
     this.dataStore.close();
     this.eventProcessor.close();
     this.dataSource.close();
@@ -8,6 +8,7 @@ import com.launchdarkly.sdk.server.integrations.ServiceEndpointsBuilder;
 import com.launchdarkly.sdk.server.integrations.WrapperInfoBuilder;
 import com.launchdarkly.sdk.server.interfaces.ApplicationInfo;
 import com.launchdarkly.sdk.server.interfaces.BigSegmentsConfiguration;
+import com.launchdarkly.sdk.server.interfaces.DataSnapshotConfiguration;
 import com.launchdarkly.sdk.server.interfaces.ServiceEndpoints;
 import com.launchdarkly.sdk.server.interfaces.WrapperInfo;
 import com.launchdarkly.sdk.server.subsystems.ComponentConfigurer;
@@ -33,12 +34,14 @@ public final class LDConfig {
 
   final ApplicationInfo applicationInfo;
   final ComponentConfigurer<BigSegmentsConfiguration> bigSegments;
+  final ComponentConfigurer<DataSnapshotConfiguration> dataSnapshot;
   final ComponentConfigurer<DataSource> dataSource;
   final ComponentConfigurer<DataStore> dataStore;
   final boolean diagnosticOptOut;
   final ComponentConfigurer<EventProcessor> events;
   final HookConfiguration hooks;
   final ComponentConfigurer<HttpConfiguration> http;
+  final boolean incrementalInit;
   final ComponentConfigurer<LoggingConfiguration> logging;
   final ServiceEndpoints serviceEndpoints;
   final boolean offline;
@@ -58,10 +61,12 @@ public final class LDConfig {
       builder.applicationInfoBuilder)
       .createApplicationInfo();
     this.bigSegments = builder.bigSegments == null ? Components.bigSegments(null) : builder.bigSegments;
+    this.dataSnapshot = builder.dataSnapshot;
     this.dataStore = builder.dataStore == null ? Components.inMemoryDataStore() : builder.dataStore;
     this.diagnosticOptOut = builder.diagnosticOptOut;
     this.hooks = (builder.hooksConfigurationBuilder == null ? Components.hooks() : builder.hooksConfigurationBuilder).build();
     this.http = builder.http == null ? Components.httpConfiguration() : builder.http;
+    this.incrementalInit = builder.incrementalInit;
     this.logging = builder.logging == null ? Components.logging() : builder.logging;
     this.offline = builder.offline;
     this.serviceEndpoints = (builder.serviceEndpointsBuilder == null ? Components.serviceEndpoints() :
@@ -86,12 +91,14 @@ public final class LDConfig {
   public static class Builder {
     private ApplicationInfoBuilder applicationInfoBuilder = null;
     private ComponentConfigurer<BigSegmentsConfiguration> bigSegments = null;
+    private ComponentConfigurer<DataSnapshotConfiguration> dataSnapshot = null;
     private ComponentConfigurer<DataSource> dataSource = null;
     private ComponentConfigurer<DataStore> dataStore = null;
     private boolean diagnosticOptOut = false;
     private ComponentConfigurer<EventProcessor> events = null;
     private HooksConfigurationBuilder hooksConfigurationBuilder = null;
     private ComponentConfigurer<HttpConfiguration> http = null;
+    private boolean incrementalInit = false;
     private ComponentConfigurer<LoggingConfiguration> logging = null;
     private ServiceEndpointsBuilder serviceEndpointsBuilder = null;
     private boolean offline = false;
@@ -115,12 +122,14 @@ public final class LDConfig {
       Builder newBuilder = new Builder();
       newBuilder.applicationInfoBuilder = ApplicationInfoBuilder.fromApplicationInfo(config.applicationInfo);
       newBuilder.bigSegments = config.bigSegments;
+      newBuilder.dataSnapshot = config.dataSnapshot;
       newBuilder.dataSource = config.dataSource;
       newBuilder.dataStore = config.dataStore;
       newBuilder.diagnosticOptOut = config.diagnosticOptOut;
       newBuilder.events = config.events;
       newBuilder.hooksConfigurationBuilder = ComponentsImpl.HooksConfigurationBuilderImpl.fromHooksConfiguration(config.hooks);
       newBuilder.http = config.http;
+      newBuilder.incrementalInit = config.incrementalInit;
       newBuilder.logging = config.logging;
 
       newBuilder.serviceEndpointsBuilder = ComponentsImpl.ServiceEndpointsBuilderImpl
@@ -183,6 +192,22 @@ public final class LDConfig {
       return this;
     }
 
+    /**
+     * Enables local snapshots of flag data, so that the SDK can evaluate flags with the last known values
+     * as soon as it starts, before the data source has connected.
+     * <p>
+     * By default, snapshots are disabled. To enable them, use {@link Components#dataSnapshot(java.nio.file.Path)};
+     * see {@link com.launchdarkly.sdk.server.integrations.DataSnapshotBuilder} for details.
+     *
+     * @param dataSnapshotConfigurer the snapshot configuration builder, or null to disable snapshots
+     * @return the main configuration builder
+     * @since 7.5.0
+     */
+    public Builder dataSnapshot(ComponentConfigurer<DataSnapshotConfiguration> dataSnapshotConfigurer) {
+      this.dataSnapshot = dataSnapshotConfigurer;
+      return this;
+    }
+
     /**
      * Sets the implementation of the component that receives feature flag data from LaunchDarkly,
      * using a factory object. Depending on the implementation, the factory may be a builder that
@@ -285,6 +310,30 @@ public final class LDConfig {
       return this;
     }
 
+    /**
+     * Set to true to apply full data sets from the data source incrementally.
+     * <p>
+     * Whenever the streaming connection is re-established, or a polling request returns changed data, the
+     * data source provides a complete set of flags and segments. By default, the SDK replaces the entire
+     * contents of the data store with that data set. If {@code incrementalInit} is true, then once the
+     * data store has been initialized, the SDK instead compares the version of each item in the new data
+     * set with what is currently in the store, and only writes the items that were added, changed, or
+     * removed. Removed items are replaced with deleted item placeholders.
+     * <p>
+     * This is mainly useful with a persistent data store, where replacing the entire data set means
+     * rewriting every item in the database. If most of the data has changed, or if the new data set
+     * contains an older version of an item than the store does, the SDK falls back to replacing the
+     * whole data set. The default is false.
+     *
+     * @param incrementalInit true to apply full data sets incrementally
+     * @return the builder
+     * @since 7.5.0
+     */
+    public Builder incrementalInit(boolean incrementalInit) {
+      this.incrementalInit = incrementalInit;
+      return this;
+    }
+
     /**
      * Sets the SDK's logging configuration, using a factory object. This object is normally a
      * configuration builder obtained from {@link Components#logging()}, which has methods
@@ -0,0 +1,553 @@
+package com.launchdarkly.sdk.server;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.launchdarkly.logging.LDLogger;
+import com.launchdarkly.sdk.server.PersistentDataStoreWrapper.CacheKey;
+import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.CacheStats;
+import com.launchdarkly.sdk.server.subsystems.DataStore;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.KeyedItems;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A {@link DataStore} that keeps items in serialized form outside of the Java heap, for environments
+ * where holding every flag and segment as a parsed object would take too much memory.
+ * <p>
+ * Serialized items are appended to an {@link Arena}: a series of memory-mapped segments of a temporary
+ * file, which is deleted when the store is closed. Flags and segments use the binary encoding of
+ * {@link BinaryItemFormat}, without Base64, so that parsing them does not involve any JSON text; other
+ * kinds use their own serialization. For each kind, a {@link KindIndex} maps keys to versions and
+ * locations in the arena with an open-addressing hash table.
+ * <p>
+ * The indexes are never modified once they are visible to readers. An update appends the new item to
+ * the arena, builds a modified copy of the index, and then replaces the {@link Contents} reference, so
+ * reads need no locking; this is the same copy-on-write approach as {@link InMemoryDataStore}, but
+ * copying a few flat arrays rather than a map of objects. Replaced items are left in the arena as
+ * garbage; once there is more garbage than live data, and at least a segment's worth of it, the live
+ * items are copied into a new arena.
+ * <p>
+ * Parsed items are kept in a size-bounded cache of recently used items. A cached item is only used if its
+ * version is the one in the index, so there is no need to invalidate cache entries when items change.
+ */
+final class OffHeapDataStore implements DataStore {
+  static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  private final Path directory;
+  private final int segmentSize;
+  private final LDLogger logger;
+  private final Cache<CacheKey, HotItem> hotItems;
+  private final Object writeLock = new Object();
+  private volatile Contents contents;
+  private volatile boolean initialized;
+
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder loadSuccessCount = new LongAdder();
+  private final LongAdder loadExceptionCount = new LongAdder();
+  private final LongAdder totalLoadTime = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+
+  OffHeapDataStore(Path directory, int hotItemCacheSize, LDLogger logger) {
+    this(directory, hotItemCacheSize, DEFAULT_SEGMENT_SIZE, logger);
+  }
+
+  OffHeapDataStore(Path directory, int hotItemCacheSize, int segmentSize, LDLogger logger) {
+    this.directory = directory != null ? directory : Paths.get(System.getProperty("java.io.tmpdir"));
+    this.segmentSize = segmentSize;
+    this.logger = logger;
+    this.hotItems = hotItemCacheSize <= 0 ? null : CacheBuilder.newBuilder()
+        .maximumSize(hotItemCacheSize)
+        .<CacheKey, HotItem>removalListener(n -> {
+          if (n.wasEvicted()) {
+            evictionCount.increment();
+          }
+        })
+        .build();
+    this.contents = new Contents(null, ImmutableMap.of(), 0, 0);
+  }
+
+  @Override
+  public void init(FullDataSet<ItemDescriptor> allData) {
+    synchronized (writeLock) {
+      Arena arena = newArena();
+      try {
+        ImmutableMap.Builder<DataKind, KindIndex> kinds = ImmutableMap.builder();
+        long liveBytes = 0;
+        for (Map.Entry<DataKind, KeyedItems<ItemDescriptor>> e0: allData.getData()) {
+          DataKind kind = e0.getKey();
+          KindIndex index = new KindIndex(Iterables.size(e0.getValue().getItems()));
+          for (Map.Entry<String, ItemDescriptor> e1: e0.getValue().getItems()) {
+            liveBytes += storeItem(arena, index, kind, e1.getKey(), e1.getValue());
+          }
+          kinds.put(kind, index);
+        }
+        Contents old = contents;
+        // The new data might reuse a version number for a different item, so cached items from the old
+        // data set must not be used; see HotItem
+        contents = new Contents(arena, kinds.build(), liveBytes, old.dataSetId + 1);
+        initialized = true;
+        closeArena(old.arena);
+      } catch (IOException | RuntimeException e) {
+        closeArena(arena);
+        throw e instanceof IOException ? new UncheckedIOException((IOException)e) : (RuntimeException)e;
+      }
+      if (hotItems != null) {
+        hotItems.invalidateAll(); // just to free the memory, since the entries can no longer be used
+      }
+    }
+  }
+
+  @Override
+  public ItemDescriptor get(DataKind kind, String key) {
+    Contents c = contents;
+    KindIndex index = c.kinds.get(kind);
+    int slot = index == null ? -1 : index.find(key);
+    if (slot < 0) {
+      return null;
+    }
+    int version = index.versions[slot];
+    int length = index.lengths[slot];
+    if (length < 0) {
+      return ItemDescriptor.deletedItem(version);
+    }
+    CacheKey cacheKey = null;
+    if (hotItems != null) {
+      cacheKey = CacheKey.forItem(kind, key);
+      HotItem cached = hotItems.getIfPresent(cacheKey);
+      if (cached != null && cached.matches(c.dataSetId, version)) {
+        hitCount.increment();
+        return cached.item;
+      }
+    }
+    missCount.increment();
+    long startTime = System.nanoTime();
+    ItemDescriptor item;
+    try {
+      item = decode(kind, version, c.arena.read(index.locations[slot], length));
+    } catch (RuntimeException e) {
+      loadExceptionCount.increment();
+      throw e;
+    }
+    totalLoadTime.add(System.nanoTime() - startTime);
+    loadSuccessCount.increment();
+    if (cacheKey != null) {
+      hotItems.put(cacheKey, new HotItem(c.dataSetId, item));
+    }
+    return item;
+  }
+
+  @Override
+  public KeyedItems<ItemDescriptor> getAll(DataKind kind) {
+    Contents c = contents;
+    KindIndex index = c.kinds.get(kind);
+    if (index == null) {
+      return new KeyedItems<>(null);
+    }
+    // This doesn't add items to the cache, since that would push out the items that are really in use
+    ImmutableList.Builder<Map.Entry<String, ItemDescriptor>> ret = ImmutableList.builder();
+    for (int slot = 0; slot < index.keys.length; slot++) {
+      String key = index.keys[slot];
+      if (key == null) {
+        continue;
+      }
+      int version = index.versions[slot];
+      ItemDescriptor item;
+      if (index.lengths[slot] < 0) {
+        item = ItemDescriptor.deletedItem(version);
+      } else {
+        HotItem cached = hotItems == null ? null : hotItems.getIfPresent(CacheKey.forItem(kind, key));
+        item = cached != null && cached.matches(c.dataSetId, version) ? cached.item :
+          decode(kind, version, c.arena.read(index.locations[slot], index.lengths[slot]));
+      }
+      ret.add(new AbstractMap.SimpleEntry<>(key, item));
+    }
+    return new KeyedItems<>(ret.build());
+  }
+
+  @Override
+  public boolean upsert(DataKind kind, String key, ItemDescriptor item) {
+    synchronized (writeLock) {
+      Contents c = contents;
+      KindIndex index = c.kinds.get(kind);
+      if (!isNewer(index, key, item.getVersion())) {
+        return false;
+      }
+      Arena arena = c.arena != null ? c.arena : newArena();
+      KindIndex newIndex = index == null ? new KindIndex(1) : index.copyWithRoomFor(1);
+      long liveBytes = c.liveBytes + storeItemOrFail(arena, newIndex, kind, key, item);
+      Map<DataKind, KindIndex> newKinds = new HashMap<>(c.kinds);
+      newKinds.put(kind, newIndex);
+      publish(arena, newKinds, liveBytes);
+      return true;
+    }
+  }
+
+  @Override
+  public FullDataSet<ItemDescriptor> upsertAll(FullDataSet<ItemDescriptor> items) {
+    // Same logic as upsert(), except that we only copy the index for each affected kind once per batch.
+    synchronized (writeLock) {
+      Contents c = contents;
+      Arena arena = c.arena != null ? c.arena : newArena();
+      Map<DataKind, KindIndex> newKinds = new HashMap<>(c.kinds);
+      long liveBytes = c.liveBytes;
+      ImmutableList.Builder<Map.Entry<DataKind, KeyedItems<ItemDescriptor>>> updated = ImmutableList.builder();
+      for (Map.Entry<DataKind, KeyedItems<ItemDescriptor>> e0: items.getData()) {
+        DataKind kind = e0.getKey();
+        KindIndex index = newKinds.get(kind);
+        KindIndex newIndex = null;
+        ImmutableList.Builder<Map.Entry<String, ItemDescriptor>> updatedOfKind = ImmutableList.builder();
+        for (Map.Entry<String, ItemDescriptor> e1: e0.getValue().getItems()) {
+          if (!isNewer(newIndex == null ? index : newIndex, e1.getKey(), e1.getValue().getVersion())) {
+            continue;
+          }
+          if (newIndex == null) {
+            int count = Iterables.size(e0.getValue().getItems());
+            newIndex = index == null ? new KindIndex(count) : index.copyWithRoomFor(count);
+          }
+          liveBytes += storeItemOrFail(arena, newIndex, kind, e1.getKey(), e1.getValue());
+          updatedOfKind.add(e1);
+        }
+        if (newIndex != null) {
+          newKinds.put(kind, newIndex);
+          updated.add(new AbstractMap.SimpleEntry<>(kind, new KeyedItems<>(updatedOfKind.build())));
+        }
+      }
+      publish(arena, newKinds, liveBytes);
+      return new FullDataSet<>(updated.build());
+    }
+  }
+
+  @Override
+  public boolean isInitialized() {
+    return initialized;
+  }
+
+  @Override
+  public boolean isStatusMonitoringEnabled() {
+    return false;
+  }
+
+  /**
+   * Returns statistics for the cache of parsed items. A "miss" is a query for an item that had to be
+   * parsed from its serialized form, and the "load time" is the time spent parsing.
+   */
+  @Override
+  public CacheStats getCacheStats() {
+    return new CacheStats(hitCount.sum(), missCount.sum(), loadSuccessCount.sum(), loadExceptionCount.sum(),
+        totalLoadTime.sum(), evictionCount.sum());
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (writeLock) {
+      Contents old = contents;
+      closeArena(old.arena);
+      contents = new Contents(null, ImmutableMap.of(), 0, old.dataSetId + 1);
+      initialized = false;
+      if (hotItems != null) {
+        hotItems.invalidateAll();
+      }
+    }
+  }
+
+  // for testing
+  long getArenaUsedBytes() {
+    Arena arena = contents.arena;
+    return arena == null ? 0 : arena.usedBytes;
+  }
+
+  private static boolean isNewer(KindIndex index, String key, int version) {
+    int slot = index == null ? -1 : index.find(key);
+    return slot < 0 || index.versions[slot] < version;
+  }
+
+  private void publish(Arena arena, Map<DataKind, KindIndex> kinds, long liveBytes) {
+    contents = new Contents(arena, ImmutableMap.copyOf(kinds), liveBytes, contents.dataSetId);
+    long garbageBytes = arena == null ? 0 : arena.usedBytes - liveBytes;
+    if (garbageBytes > liveBytes && garbageBytes >= segmentSize) {
+      compact();
+    }
+  }
+
+  private void compact() {
+    Contents c = contents;
+    Arena arena = newArena();
+    try {
+      ImmutableMap.Builder<DataKind, KindIndex> kinds = ImmutableMap.builder();
+      for (Map.Entry<DataKind, KindIndex> e: c.kinds.entrySet()) {
+        KindIndex oldIndex = e.getValue();
+        KindIndex newIndex = new KindIndex(oldIndex.size);
+        for (int slot = 0; slot < oldIndex.keys.length; slot++) {
+          if (oldIndex.keys[slot] != null) {
+            int length = oldIndex.lengths[slot];
+            long location = length < 0 ? 0 : arena.append(c.arena.read(oldIndex.locations[slot], length));
+            newIndex.put(oldIndex.keys[slot], oldIndex.versions[slot], location, length);
+          }
+        }
+        kinds.put(e.getKey(), newIndex);
+      }
+      contents = new Contents(arena, kinds.build(), c.liveBytes, c.dataSetId);
+    } catch (IOException | RuntimeException e) {
+      // We can keep using the old arena, so this isn't fatal
+      closeArena(arena);
+      logger.warn("Failed to compact off-heap data store: {}", e.toString());
+      return;
+    }
+    logger.debug("Compacted off-heap data store from {} to {} bytes", c.arena.usedBytes, c.liveBytes);
+    closeArena(c.arena);
+  }
+
+  private long storeItemOrFail(Arena arena, KindIndex index, DataKind kind, String key, ItemDescriptor item) {
+    try {
+      return storeItem(arena, index, kind, key, item);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // Appends the item to the arena and adds it to an index that is not yet visible to readers. Returns the
+  // change in the number of bytes of live data.
+  private long storeItem(Arena arena, KindIndex index, DataKind kind, String key, ItemDescriptor item)
+      throws IOException {
+    int slot = index.find(key);
+    long oldLength = slot < 0 ? 0 : Math.max(index.lengths[slot], 0);
+    if (item.getItem() == null) {
+      index.put(key, item.getVersion(), 0, -1);
+      return -oldLength;
+    }
+    byte[] data = encode(kind, item);
+    index.put(key, item.getVersion(), arena.append(data), data.length);
+    return data.length - oldLength;
+  }
+
+  private Arena newArena() {
+    try {
+      return new Arena(directory, segmentSize);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void closeArena(Arena arena) {
+    if (arena != null) {
+      arena.close();
+    }
+  }
+
+  static byte[] encode(DataKind kind, ItemDescriptor item) {
+    return BinaryItemFormat.supportsKind(kind) ? BinaryItemFormat.encodeToBytes(item.getItem()) :
+      kind.serialize(item).getBytes(UTF_8);
+  }
+
+  static ItemDescriptor decode(DataKind kind, int version, byte[] data) {
+    ItemDescriptor item = BinaryItemFormat.supportsKind(kind) ? BinaryItemFormat.decodeFromBytes(kind, data) :
+      kind.deserialize(new String(data, UTF_8));
+    // As in PersistentDataStoreWrapper, if the version we were given isn't the one in the object, trust ours
+    return item.getVersion() == version ? item : new ItemDescriptor(version, item.getItem());
+  }
+
+  private static final class Contents {
+    final Arena arena; // null if nothing has been stored yet
+    final ImmutableMap<DataKind, KindIndex> kinds;
+    final long liveBytes;
+    final long dataSetId; // incremented whenever all of the data is replaced
+
+    Contents(Arena arena, ImmutableMap<DataKind, KindIndex> kinds, long liveBytes, long dataSetId) {
+      this.arena = arena;
+      this.kinds = kinds;
+      this.liveBytes = liveBytes;
+      this.dataSetId = dataSetId;
+    }
+  }
+
+  /**
+   * A parsed item in the cache of recently used items, tagged with the data set it was read from.
+   * <p>
+   * Within one data set, an item's version only increases, so a cached item is current if its version
+   * is the one in the index. When all of the data is replaced, a version number might be reused for a
+   * different item, so an entry from another data set is never used. Clearing the cache when the data
+   * is replaced would not be enough, since a query that read the old data could add an entry just
+   * afterward.
+   */
+  static final class HotItem {
+    final long dataSetId;
+    final ItemDescriptor item;
+
+    HotItem(long dataSetId, ItemDescriptor item) {
+      this.dataSetId = dataSetId;
+      this.item = item;
+    }
+
+    boolean matches(long dataSetId, int version) {
+      return this.dataSetId == dataSetId && item.getVersion() == version;
+    }
+  }
+
+  /**
+   * An open-addressing hash table, with linear probing, of the items of one kind. A location is a segment
+   * number in the upper 32 bits and an offset within the segment in the lower 32 bits. Deleted items have
+   * a length of -1 and no data in the arena.
+   * <p>
+   * Only {@link #find(String)} may be called once the index is visible to other threads.
+   */
+  static final class KindIndex {
+    final String[] keys;
+    final int[] versions;
+    final long[] locations;
+    final int[] lengths;
+    int size;
+
+    KindIndex(int expectedSize) {
+      this(new String[capacityFor(expectedSize)]);
+    }
+
+    private KindIndex(String[] keys) {
+      this.keys = keys;
+      this.versions = new int[keys.length];
+      this.locations = new long[keys.length];
+      this.lengths = new int[keys.length];
+    }
+
+    private KindIndex(KindIndex from) {
+      this.keys = from.keys.clone();
+      this.versions = from.versions.clone();
+      this.locations = from.locations.clone();
+      this.lengths = from.lengths.clone();
+      this.size = from.size;
+    }
+
+    static int capacityFor(int size) {
+      // Keep the load factor at or below 0.75, with a power-of-two capacity
+      int minCapacity = Math.max(16, (int)Math.min(1 << 30, size * 4L / 3 + 1));
+      return Integer.highestOneBit(minCapacity - 1) << 1;
+    }
+
+    KindIndex copyWithRoomFor(int additionalItems) {
+      int capacity = capacityFor(size + additionalItems);
+      if (capacity == keys.length) {
+        return new KindIndex(this);
+      }
+      KindIndex ret = new KindIndex(new String[capacity]);
+      for (int slot = 0; slot < keys.length; slot++) {
+        if (keys[slot] != null) {
+          ret.put(keys[slot], versions[slot], locations[slot], lengths[slot]);
+        }
+      }
+      return ret;
+    }
+
+    int find(String key) {
+      int mask = keys.length - 1;
+      for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+        String k = keys[slot];
+        if (k == null) {
+          return -1;
+        }
+        if (k.equals(key)) {
+          return slot;
+        }
+      }
+    }
+
+    void put(String key, int version, long location, int length) {
+      int mask = keys.length - 1;
+      int slot = hash(key) & mask;
+      while (keys[slot] != null && !keys[slot].equals(key)) {
+        slot = (slot + 1) & mask;
+      }
+      if (keys[slot] == null) {
+        keys[slot] = key;
+        size++;
+      }
+      versions[slot] = version;
+      locations[slot] = location;
+      lengths[slot] = length;
+    }
+
+    private static int hash(String key) {
+      int h = key.hashCode();
+      return h ^ (h >>> 16);
+    }
+  }
+
+  /**
+   * Append-only storage for serialized items, in memory-mapped segments of a temporary file. Only the
+   * thread holding the store's write lock may append. Closing the arena deletes the file, but the
+   * mappings remain readable until they are garbage-collected, so readers that are still using an old
+   * {@link Contents} are not affected.
+   */
+  static final class Arena implements Closeable {
+    private final FileChannel channel;
+    private final int segmentSize;
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private long fileSize;
+    private int segmentUsed;
+    long usedBytes;
+
+    Arena(Path directory, int segmentSize) throws IOException {
+      Path file = Files.createTempFile(directory, "launchdarkly-offheap-", ".dat");
+      this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+          StandardOpenOption.DELETE_ON_CLOSE);
+      this.segmentSize = segmentSize;
+    }
+
+    long append(byte[] data) throws IOException {
+      MappedByteBuffer[] segs = segments;
+      if (segs.length == 0 || segs[segs.length - 1].capacity() - segmentUsed < data.length) {
+        int size = Math.max(segmentSize, data.length);
+        MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, fileSize, size);
+        fileSize += size;
+        segs = Arrays.copyOf(segs, segs.length + 1);
+        segs[segs.length - 1] = segment;
+        segments = segs;
+        segmentUsed = 0;
+      }
+      ByteBuffer buf = segs[segs.length - 1].duplicate();
+      ((Buffer)buf).position(segmentUsed);
+      buf.put(data);
+      long location = ((long)(segs.length - 1) << 32) | segmentUsed;
+      segmentUsed += data.length;
+      usedBytes += data.length;
+      return location;
+    }
+
+    byte[] read(long location, int length) {
+      ByteBuffer buf = segments[(int)(location >>> 32)].duplicate();
+      ((Buffer)buf).position((int)location);
+      byte[] ret = new byte[length];
+      buf.get(ret);
+      return ret;
+    }
+
+    @Override
+    public void close() {
+      try {
+        channel.close();
+      } catch (IOException e) {}
+    }
+  }
+}
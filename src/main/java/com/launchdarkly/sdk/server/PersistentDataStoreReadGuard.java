@@ -0,0 +1,204 @@
+package com.launchdarkly.sdk.server;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.StoreReadStats;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Limits on how {@link PersistentDataStoreWrapper} waits for reads from the persistent data store.
+ * <p>
+ * There are three independent options. A time budget makes the caller stop waiting for a read after
+ * the specified time, and throw a {@link ReadTimeoutException}; the read itself continues on a worker
+ * thread, since interrupting a database client in mid-request is rarely safe. A concurrency limit (a
+ * bulkhead) makes a read fail immediately with a {@link ReadRejectedException} if that many reads are
+ * already in progress, including ones whose callers have given up on them, so a slow database can't
+ * tie up an unbounded number of threads. A hedge delay starts a second attempt at the same read if the
+ * first one has not finished after that time, and uses whichever result arrives first.
+ * <p>
+ * If only the concurrency limit is set, reads are done on the calling thread; otherwise they are done
+ * on a pool of worker threads, and the calling thread waits for the result.
+ */
+final class PersistentDataStoreReadGuard implements Closeable {
+  /**
+   * Thrown if a read did not finish within the time budget.
+   */
+  static final class ReadTimeoutException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    ReadTimeoutException(long timeoutMillis) {
+      super("persistent store read did not complete within " + timeoutMillis + "ms");
+    }
+  }
+
+  /**
+   * Thrown if a read was not attempted because the concurrency limit had been reached.
+   */
+  static final class ReadRejectedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    ReadRejectedException(int limit) {
+      super("persistent store read rejected because " + limit + " reads were already in progress");
+    }
+  }
+
+  private final long timeoutNanos; // zero if there is no time budget
+  private final long hedgeDelayNanos; // zero if hedging is not enabled
+  private final int maxConcurrentReads; // zero if there is no limit
+  private final Semaphore permits; // null if there is no limit
+  private final ExecutorService executor; // null if reads are done on the calling thread
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final LongAdder timeoutCount = new LongAdder();
+  private final LongAdder rejectedCount = new LongAdder();
+  private final LongAdder hedgedCount = new LongAdder();
+  private final LongAdder hedgeWinCount = new LongAdder();
+
+  PersistentDataStoreReadGuard(Duration timeout, int maxConcurrentReads, Duration hedgeDelay) {
+    this.timeoutNanos = isPositive(timeout) ? timeout.toNanos() : 0;
+    this.hedgeDelayNanos = isPositive(hedgeDelay) ? hedgeDelay.toNanos() : 0;
+    this.maxConcurrentReads = Math.max(0, maxConcurrentReads);
+    this.permits = this.maxConcurrentReads == 0 ? null : new Semaphore(this.maxConcurrentReads);
+    this.executor = timeoutNanos == 0 && hedgeDelayNanos == 0 ? null :
+      Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("LaunchDarkly-PersistentDataStoreReader-%d")
+          .build());
+  }
+
+  /**
+   * Returns true if any of the options are set, so that a guard is needed.
+   */
+  static boolean isEnabled(Duration timeout, int maxConcurrentReads, Duration hedgeDelay) {
+    return isPositive(timeout) || maxConcurrentReads > 0 || isPositive(hedgeDelay);
+  }
+
+  private static boolean isPositive(Duration d) {
+    return d != null && !d.isZero() && !d.isNegative();
+  }
+
+  /**
+   * Performs a read, subject to the configured limits.
+   *
+   * @param reader the function that reads from the store
+   * @return the result
+   * @throws ReadTimeoutException if the time budget was exceeded
+   * @throws ReadRejectedException if the concurrency limit had been reached
+   * @throws RuntimeException if the read failed
+   */
+  <T> T read(Supplier<T> reader) {
+    if (executor == null) {
+      acquirePermit();
+      inFlight.incrementAndGet();
+      try {
+        return reader.get();
+      } finally {
+        inFlight.decrementAndGet();
+        releasePermit();
+      }
+    }
+    long startTime = System.nanoTime();
+    CompletableFuture<T> result = new CompletableFuture<>();
+    AtomicInteger attemptsRemaining = new AtomicInteger(1);
+    acquirePermit();
+    startAttempt(reader, result, attemptsRemaining, false);
+    try {
+      if (hedgeDelayNanos > 0 && (timeoutNanos == 0 || hedgeDelayNanos < timeoutNanos)) {
+        try {
+          return result.get(hedgeDelayNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+          // If we're at the concurrency limit, we just keep waiting for the first attempt
+          if (permits == null || permits.tryAcquire()) {
+            attemptsRemaining.incrementAndGet();
+            hedgedCount.increment();
+            startAttempt(reader, result, attemptsRemaining, true);
+          }
+        }
+      }
+      if (timeoutNanos == 0) {
+        return result.get();
+      }
+      long remaining = timeoutNanos - (System.nanoTime() - startTime);
+      return result.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      timeoutCount.increment();
+      throw new ReadTimeoutException(TimeUnit.NANOSECONDS.toMillis(timeoutNanos));
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      throw cause instanceof RuntimeException ? (RuntimeException)cause : new RuntimeException(cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
+
+  StoreReadStats getStats() {
+    return new StoreReadStats(inFlight.get(), timeoutCount.sum(), rejectedCount.sum(), hedgedCount.sum(),
+        hedgeWinCount.sum());
+  }
+
+  /**
+   * Stops accepting new reads. Reads that are already in progress are allowed to finish.
+   */
+  @Override
+  public void close() {
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
+  private void acquirePermit() {
+    if (permits != null && !permits.tryAcquire()) {
+      rejectedCount.increment();
+      throw new ReadRejectedException(maxConcurrentReads);
+    }
+  }
+
+  private void releasePermit() {
+    if (permits != null) {
+      permits.release();
+    }
+  }
+
+  // The caller must already have acquired a permit; it is released when the attempt finishes, whether
+  // or not anyone is still waiting for it.
+  private <T> void startAttempt(Supplier<T> reader, CompletableFuture<T> result, AtomicInteger attemptsRemaining,
+      boolean isHedge) {
+    inFlight.incrementAndGet();
+    try {
+      executor.execute(() -> {
+        try {
+          T value = reader.get();
+          if (result.complete(value) && isHedge) {
+            hedgeWinCount.increment();
+          }
+        } catch (RuntimeException e) {
+          // If another attempt is still running, it may yet succeed
+          if (attemptsRemaining.decrementAndGet() == 0) {
+            result.completeExceptionally(e);
+          }
+        } finally {
+          inFlight.decrementAndGet();
+          releasePermit();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      inFlight.decrementAndGet();
+      releasePermit();
+      if (attemptsRemaining.decrementAndGet() == 0) {
+        result.completeExceptionally(new IllegalStateException("persistent store has been closed"));
+      }
+    }
+  }
+}
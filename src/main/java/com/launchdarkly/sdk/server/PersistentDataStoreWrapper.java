@@ -1,17 +1,33 @@
 package com.launchdarkly.sdk.server;
 
-import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.launchdarkly.logging.LDLogger;
 import com.launchdarkly.logging.LogValues;
+import com.launchdarkly.sdk.server.DataModel.Clause;
+import com.launchdarkly.sdk.server.DataModel.FeatureFlag;
+import com.launchdarkly.sdk.server.DataModel.Rule;
+import com.launchdarkly.sdk.server.DataModel.Segment;
+import com.launchdarkly.sdk.server.DataModel.SegmentRule;
+import com.launchdarkly.sdk.server.DataModel.SegmentTarget;
+import com.launchdarkly.sdk.server.DataModel.Target;
+import com.launchdarkly.sdk.server.DataModelDependencies.KindAndKey;
 import com.launchdarkly.sdk.server.integrations.PersistentDataStoreBuilder;
 import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.CacheStats;
+import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.InitProgress;
+import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.StoreReadStats;
+import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.WriteQueueStats;
 import com.launchdarkly.sdk.server.subsystems.DataStore;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
@@ -20,20 +36,36 @@ import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.KeyedItems;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.SerializedItemDescriptor;
 import com.launchdarkly.sdk.server.subsystems.DataStoreUpdateSink;
 import com.launchdarkly.sdk.server.subsystems.PersistentDataStore;
+import com.launchdarkly.sdk.server.subsystems.PersistentDataStoreChangeNotifications;
+import com.launchdarkly.sdk.server.subsystems.PersistentDataStoreStreamingInit;
 
 import java.io.IOException;
 import java.time.Duration;
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 import static com.google.common.collect.Iterables.concat;
 import static com.google.common.collect.Iterables.filter;
 import static com.google.common.collect.Iterables.isEmpty;
+import static com.launchdarkly.sdk.server.DataModelDependencies.computeDependenciesFrom;
 
 /**
  * Package-private implementation of {@link DataStore} that delegates the basic functionality to an
@@ -44,28 +76,72 @@ import static com.google.common.collect.Iterables.isEmpty;
  * This class is only constructed by {@link PersistentDataStoreBuilder}.
  */
 final class PersistentDataStoreWrapper implements DataStore {
+  private static final int ESTIMATED_ENTRY_OVERHEAD = 200;
+  private static final int ESTIMATED_ITEM_OVERHEAD = 300;
+  private static final int ESTIMATED_VALUE_WEIGHT = 50;
+
   private final PersistentDataStore core;
-  private final LoadingCache<CacheKey, Optional<ItemDescriptor>> itemCache;
-  private final LoadingCache<DataKind, KeyedItems<ItemDescriptor>> allCache;
+  private final LoadingCache<CacheKey, CachedItem> itemCache;
+  private final LoadingCache<DataKind, CachedKind> allCache;
   private final LoadingCache<String, Boolean> initCache;
   private final PersistentDataStoreStatusManager statusManager;
   private final boolean cacheIndefinitely;
+  private final long cacheTtlNanos;
+  private final ConcurrentHashMap<String, KindCacheStats> kindStats; // null if we are not recording cache stats
+  private final ReadPathStats readPathStats; // null if we are not recording cache stats
+  private final CacheRefreshAhead<CacheKey> refreshAhead; // null if refresh-ahead is not enabled
+  private final SerializedItemCompression compression;
+  private final boolean binaryFormat;
+  private final PersistentDataStoreWriteQueue writeQueue; // null if write-behind is not enabled
+  private final PersistentDataStoreReadGuard readGuard; // null if there are no limits on reads
+  private final int initChunkSize;
+  private final int initParallelism;
+  private volatile InitProgressTracker initProgress; // null until the first call to initCore()
+  private final boolean bulkRefresh;
+  private final ScheduledExecutorService bulkRefresher; // null if bulk refresh is not enabled
   private final Set<DataKind> cachedDataKinds = new HashSet<>(); // this map is used in pollForAvailability()
   private final AtomicBoolean inited = new AtomicBoolean(false);
   private final ListeningExecutorService cacheExecutor;
+  private final DataStoreUpdateSink dataStoreUpdates;
   private final LDLogger logger;
+  private volatile boolean closed;
+  // Held while we update the store and then the caches, so that a change notification for our own update
+  // can't be processed in between and mistaken for someone else's update.
+  private final Object storeUpdateLock = new Object();
   
   PersistentDataStoreWrapper(
       final PersistentDataStore core,
-      Duration cacheTtl,
-      PersistentDataStoreBuilder.StaleValuesPolicy staleValuesPolicy,
-      boolean recordCacheStats,
+      Options options,
       DataStoreUpdateSink dataStoreUpdates,
       ScheduledExecutorService sharedExecutor,
       LDLogger logger
     ) {
+    Duration cacheTtl = options.cacheTtl;
+    PersistentDataStoreBuilder.StaleValuesPolicy staleValuesPolicy = options.staleValuesPolicy;
+    long cacheMaximumWeight = options.cacheMaximumWeight;
     this.core = core;
+    this.dataStoreUpdates = dataStoreUpdates;
     this.logger = logger;
+    this.compression = new SerializedItemCompression(options.compressionMinimumLength);
+    this.binaryFormat = options.serializationFormat == PersistentDataStoreBuilder.SerializationFormat.BINARY;
+    Duration writeBehindInterval = options.writeBehindInterval;
+    this.writeQueue = writeBehindInterval == null || writeBehindInterval.isZero() || writeBehindInterval.isNegative() ?
+        null : new PersistentDataStoreWriteQueue(this::writeQueuedItem, writeBehindInterval, logger);
+    this.readGuard = PersistentDataStoreReadGuard.isEnabled(options.readTimeout, options.maxConcurrentReads,
+        options.hedgeDelay) ?
+        new PersistentDataStoreReadGuard(options.readTimeout, options.maxConcurrentReads, options.hedgeDelay) : null;
+    this.initChunkSize = Math.max(1, options.initChunkSize);
+    this.initParallelism = Math.max(1, options.initParallelism);
+    Duration bulkRefreshInterval = options.bulkRefreshInterval;
+    this.bulkRefresh = bulkRefreshInterval != null && !bulkRefreshInterval.isZero() && !bulkRefreshInterval.isNegative()
+        && !cacheTtl.isZero();
+    if (bulkRefresh) {
+      // Cached data never expires in this mode; the refresher replaces it a whole kind at a time.
+      cacheTtl = Duration.ofMillis(-1);
+      cacheMaximumWeight = 0;
+    }
+    this.cacheTtlNanos = cacheTtl.toNanos();
+    boolean sizeBounded = false;
     
     if (cacheTtl.isZero()) {
       itemCache = null;
@@ -73,18 +149,34 @@ final class PersistentDataStoreWrapper implements DataStore {
       initCache = null;
       cacheExecutor = null;
       cacheIndefinitely = false;
+      kindStats = null;
+      readPathStats = null;
+      refreshAhead = null;
     } else {
       cacheIndefinitely = cacheTtl.isNegative();
-      CacheLoader<CacheKey, Optional<ItemDescriptor>> itemLoader = new CacheLoader<CacheKey, Optional<ItemDescriptor>>() {
+      sizeBounded = cacheMaximumWeight > 0;
+      kindStats = options.recordCacheStats ? new ConcurrentHashMap<>() : null;
+      readPathStats = options.recordCacheStats ? new ReadPathStats() : null;
+      // Refreshing ahead of expiry only makes sense if items do expire.
+      refreshAhead = cacheIndefinitely || options.cacheRefreshAheadRatio <= 0 ? null :
+        new CacheRefreshAhead<>(cacheTtl, options.cacheRefreshAheadRatio, key -> this.itemCache.refresh(key), sharedExecutor);
+      CacheLoader<CacheKey, CachedItem> itemLoader = new CacheLoader<CacheKey, CachedItem>() {
+        @Override
+        public CachedItem load(CacheKey key) throws Exception { 
+          return loadItem(key, true);
+        }
+
         @Override
-        public Optional<ItemDescriptor> load(CacheKey key) throws Exception { 
-          return Optional.fromNullable(getAndDeserializeItem(key.kind, key.key));
+        public ListenableFuture<CachedItem> reload(CacheKey key, CachedItem oldValue) throws Exception {
+          return Futures.immediateFuture(loadItem(key, false));
         }
       };
-      CacheLoader<DataKind, KeyedItems<ItemDescriptor>> allLoader = new CacheLoader<DataKind, KeyedItems<ItemDescriptor>>() {
+      CacheLoader<DataKind, CachedKind> allLoader = new CacheLoader<DataKind, CachedKind>() {
         @Override
-        public KeyedItems<ItemDescriptor> load(DataKind kind) throws Exception {
-          return getAllAndDeserialize(kind);
+        public CachedKind load(DataKind kind) throws Exception {
+          KeyedItems<ItemDescriptor> items = getAllAndDeserialize(kind);
+          addToItemCache(kind, items);
+          return new CachedKind(items);
         }
       };
       CacheLoader<String, Boolean> initLoader = new CacheLoader<String, Boolean>() {
@@ -94,28 +186,67 @@ final class PersistentDataStoreWrapper implements DataStore {
         }
       };
       
-      if (staleValuesPolicy == PersistentDataStoreBuilder.StaleValuesPolicy.REFRESH_ASYNC) {
+      if (staleValuesPolicy == PersistentDataStoreBuilder.StaleValuesPolicy.REFRESH_ASYNC ||
+          (refreshAhead != null && staleValuesPolicy == PersistentDataStoreBuilder.StaleValuesPolicy.REFRESH)) {
         cacheExecutor = MoreExecutors.listeningDecorator(sharedExecutor);
         
         // Note that the REFRESH_ASYNC mode is only used for itemCache, not allCache, since retrieving all flags is
-        // less frequently needed and we don't want to incur the extra overhead.
+        // less frequently needed and we don't want to incur the extra overhead. If refresh-ahead is enabled, we
+        // also use it for the REFRESH mode, since the point of refreshing ahead is that no evaluation should
+        // have to wait for an item that already has a value to be reloaded.
         itemLoader = CacheLoader.asyncReloading(itemLoader, cacheExecutor);
       } else {
         cacheExecutor = null;
       }
       
-      itemCache = newCacheBuilder(cacheTtl, staleValuesPolicy, recordCacheStats).build(itemLoader);
-      allCache = newCacheBuilder(cacheTtl, staleValuesPolicy, recordCacheStats).build(allLoader);
-      initCache = newCacheBuilder(cacheTtl, staleValuesPolicy, recordCacheStats).build(initLoader);
+      if (sizeBounded) {
+        // A size-bounded cache can't be relied on to contain all of the data, so we don't cache the
+        // results of getAll, and we can't use the cache to repopulate the store after an outage.
+        itemCache = new WindowTinyLfuCache<>(
+            cacheMaximumWeight,
+            PersistentDataStoreWrapper::estimateWeight,
+            cacheTtl,
+            staleValuesPolicy != PersistentDataStoreBuilder.StaleValuesPolicy.EVICT,
+            itemLoader,
+            kindStats == null ? null : key -> recordEviction(key),
+            Ticker.systemTicker()
+            );
+        allCache = null;
+      } else {
+        CacheBuilder<Object, Object> itemCacheBuilder = newCacheBuilder(cacheTtl, staleValuesPolicy, options.recordCacheStats);
+        itemCache = kindStats == null ? itemCacheBuilder.build(itemLoader) :
+          itemCacheBuilder.<CacheKey, CachedItem>removalListener(n -> {
+            if (n.wasEvicted()) {
+              recordEviction(n.getKey());
+            }
+          }).build(itemLoader);
+        allCache = newCacheBuilder(cacheTtl, staleValuesPolicy, options.recordCacheStats).build(allLoader);
+      }
+      initCache = newCacheBuilder(cacheTtl, staleValuesPolicy, options.recordCacheStats).build(initLoader);
     }
     statusManager = new PersistentDataStoreStatusManager(
-        !cacheIndefinitely,
+        !cacheIndefinitely || sizeBounded,
         true,
         this::pollAvailabilityAfterOutage,
         dataStoreUpdates::updateStatus,
         sharedExecutor,
         logger
         );
+    if (bulkRefresh) {
+      // This has its own thread, rather than using the shared executor, since reloading a large data set
+      // from the store can take a while.
+      bulkRefresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("LaunchDarkly-PersistentDataStoreRefresher-%d")
+          .build());
+      long intervalNanos = bulkRefreshInterval.toNanos();
+      bulkRefresher.scheduleWithFixedDelay(this::runBulkRefresh, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    } else {
+      bulkRefresher = null;
+    }
+    if (core instanceof PersistentDataStoreChangeNotifications) {
+      ((PersistentDataStoreChangeNotifications)core).subscribe(new StoreChangeListener(sharedExecutor));
+    }
   }
   
   private static CacheBuilder<Object, Object> newCacheBuilder(
@@ -141,10 +272,26 @@ final class PersistentDataStoreWrapper implements DataStore {
     }
     return builder;
   }
+
+  // package-private - true if items are written to the underlying store as JSON, in which case the data source
+  // can save us from serializing them again by keeping the JSON text that they were parsed from
+  boolean usesOriginalJson() {
+    return !binaryFormat;
+  }
   
   @Override
   public void close() throws IOException {
+    closed = true;
+    if (bulkRefresher != null) {
+      bulkRefresher.shutdownNow();
+    }
+    if (writeQueue != null) {
+      writeQueue.close(); // this writes any updates that are still queued, so it must happen before the store is closed
+    }
     statusManager.close();
+    if (readGuard != null) {
+      readGuard.close();
+    }
     core.close();
   }
 
@@ -171,6 +318,12 @@ final class PersistentDataStoreWrapper implements DataStore {
   
   @Override
   public void init(FullDataSet<ItemDescriptor> allData) {
+    synchronized (storeUpdateLock) {
+      initInternal(allData);
+    }
+  }
+
+  private void initInternal(FullDataSet<ItemDescriptor> allData) {
     synchronized (cachedDataKinds) {
       cachedDataKinds.clear();
       for (Map.Entry<DataKind, KeyedItems<ItemDescriptor>> e: allData.getData()) {
@@ -183,10 +336,16 @@ final class PersistentDataStoreWrapper implements DataStore {
       KeyedItems<SerializedItemDescriptor> items = serializeAll(kind, e0.getValue());
       allBuilder.add(new AbstractMap.SimpleEntry<>(kind, items));
     }
+    if (writeQueue != null) {
+      // The new data set supersedes any updates that we had not yet written
+      writeQueue.discardAll();
+    }
     RuntimeException failure = initCore(new FullDataSet<>(allBuilder.build()));
-    if (itemCache != null && allCache != null) {
+    if (itemCache != null) {
       itemCache.invalidateAll();
-      allCache.invalidateAll();
+      if (allCache != null) {
+        allCache.invalidateAll();
+      }
       if (failure != null && !cacheIndefinitely) {
         // Normally, if the underlying store failed to do the update, we do not want to update the cache -
         // the idea being that it's better to stay in a consistent state of having old data than to act
@@ -196,10 +355,12 @@ final class PersistentDataStoreWrapper implements DataStore {
       }
       for (Map.Entry<DataKind, KeyedItems<ItemDescriptor>> e0: allData.getData()) {
         DataKind kind = e0.getKey();
-        KeyedItems<ItemDescriptor> immutableItems = new KeyedItems<>(ImmutableList.copyOf(e0.getValue().getItems()));
-        allCache.put(kind, immutableItems);
+        if (allCache != null) {
+          KeyedItems<ItemDescriptor> immutableItems = new KeyedItems<>(ImmutableList.copyOf(e0.getValue().getItems()));
+          allCache.put(kind, new CachedKind(immutableItems));
+        }
         for (Map.Entry<String, ItemDescriptor> e1: e0.getValue().getItems()) {
-          itemCache.put(CacheKey.forItem(kind, e1.getKey()), Optional.of(e1.getValue()));
+          itemCache.put(CacheKey.forItem(kind, e1.getKey()), newCachedItem(e1.getValue()));
         }
       }
     }
@@ -212,21 +373,125 @@ final class PersistentDataStoreWrapper implements DataStore {
   }
   
   private RuntimeException initCore(FullDataSet<SerializedItemDescriptor> allData) {
+    int totalItems = 0;
+    for (Map.Entry<DataKind, KeyedItems<SerializedItemDescriptor>> e: allData.getData()) {
+      totalItems += Iterables.size(e.getValue().getItems());
+    }
+    InitProgressTracker progress = new InitProgressTracker(totalItems);
+    initProgress = progress;
     try {
-      core.init(allData);
+      if (core instanceof PersistentDataStoreStreamingInit) {
+        initInChunks((PersistentDataStoreStreamingInit)core, allData, progress);
+      } else {
+        core.init(allData);
+        progress.itemsWritten.set(totalItems);
+      }
       processError(null);
       return null;
     } catch (RuntimeException e) {
       processError(e);
       return e;
+    } finally {
+      progress.finish();
+    }
+  }
+
+  // Writes the data set through the store's streaming init interface, in chunks of at most initChunkSize
+  // items of one kind. If initParallelism is greater than 1, that many chunks can be written at once.
+  private void initInChunks(
+      PersistentDataStoreStreamingInit store,
+      FullDataSet<SerializedItemDescriptor> allData,
+      InitProgressTracker progress
+      ) {
+    List<Map.Entry<DataKind, KeyedItems<SerializedItemDescriptor>>> chunks = new ArrayList<>();
+    for (Map.Entry<DataKind, KeyedItems<SerializedItemDescriptor>> e: allData.getData()) {
+      for (List<Map.Entry<String, SerializedItemDescriptor>> items: Iterables.partition(e.getValue().getItems(), initChunkSize)) {
+        chunks.add(new AbstractMap.SimpleEntry<>(e.getKey(), new KeyedItems<>(items)));
+      }
+    }
+    PersistentDataStoreStreamingInit.InitSession session = store.beginInit();
+    boolean committed = false;
+    try {
+      if (initParallelism == 1 || chunks.size() <= 1) {
+        for (Map.Entry<DataKind, KeyedItems<SerializedItemDescriptor>> chunk: chunks) {
+          writeChunk(session, chunk, progress);
+        }
+      } else {
+        writeChunksInParallel(session, chunks, progress);
+      }
+      session.commit();
+      committed = true;
+    } finally {
+      if (!committed) {
+        try {
+          session.abort();
+        } catch (RuntimeException e) {
+          logger.warn("Unexpected error when aborting persistent store update: {}", LogValues.exceptionSummary(e));
+        }
+      }
     }
   }
+
+  private void writeChunksInParallel(
+      PersistentDataStoreStreamingInit.InitSession session,
+      List<Map.Entry<DataKind, KeyedItems<SerializedItemDescriptor>>> chunks,
+      InitProgressTracker progress
+      ) {
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(initParallelism, chunks.size()),
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("LaunchDarkly-PersistentDataStoreInit-%d").build());
+    List<Future<?>> futures = new ArrayList<>();
+    try {
+      for (Map.Entry<DataKind, KeyedItems<SerializedItemDescriptor>> chunk: chunks) {
+        futures.add(executor.submit(() -> writeChunk(session, chunk, progress)));
+      }
+      for (Future<?> f: futures) {
+        f.get();
+      }
+    } catch (ExecutionException e) {
+      throw getAsRuntimeException(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } finally {
+      // After a failure, don't start any more chunks, but let the ones in progress finish so that the
+      // session is not aborted while they are still writing.
+      for (Future<?> f: futures) {
+        f.cancel(false);
+      }
+      executor.shutdown();
+      Uninterruptibles.awaitTerminationUninterruptibly(executor);
+    }
+  }
+
+  private static void writeChunk(
+      PersistentDataStoreStreamingInit.InitSession session,
+      Map.Entry<DataKind, KeyedItems<SerializedItemDescriptor>> chunk,
+      InitProgressTracker progress
+      ) {
+    session.writeChunk(chunk.getKey(), chunk.getValue());
+    progress.itemsWritten.addAndGet(Iterables.size(chunk.getValue().getItems()));
+  }
   
   @Override
   public ItemDescriptor get(DataKind kind, String key) {
     try {
-      ItemDescriptor ret = itemCache != null ? itemCache.get(CacheKey.forItem(kind, key)).orNull() :
-        getAndDeserializeItem(kind, key);
+      if (kindStats != null) {
+        kindStatsFor(kind).requestCount.increment();
+      }
+      if (readPathStats != null) {
+        readPathStats.readCount.increment();
+      }
+      ItemDescriptor ret;
+      if (itemCache != null) {
+        CacheKey cacheKey = CacheKey.forItem(kind, key);
+        CachedItem cached = itemCache.get(cacheKey);
+        if (refreshAhead != null) {
+          refreshAhead.refreshIfDue(cacheKey, cached.refreshTime, System.nanoTime());
+        }
+        ret = cached.item;
+      } else {
+        ret = getPendingOrStoredItem(kind, key);
+      }
       processError(null);
       return ret;
     } catch (Exception e) {
@@ -239,7 +504,7 @@ final class PersistentDataStoreWrapper implements DataStore {
   public KeyedItems<ItemDescriptor> getAll(DataKind kind) {
     try {
       KeyedItems<ItemDescriptor> ret;
-      ret = allCache != null ? allCache.get(kind) : getAllAndDeserialize(kind);
+      ret = allCache != null ? allCache.get(kind).items : getAllAndDeserialize(kind);
       processError(null);
       return ret;
     } catch (Exception e) {
@@ -257,9 +522,18 @@ final class PersistentDataStoreWrapper implements DataStore {
   
   @Override
   public boolean upsert(DataKind kind, String key, ItemDescriptor item) {
+    synchronized (storeUpdateLock) {
+      return upsertInternal(kind, key, item);
+    }
+  }
+
+  private boolean upsertInternal(DataKind kind, String key, ItemDescriptor item) {
     synchronized (cachedDataKinds) {
       cachedDataKinds.add(kind);
     }
+    if (writeQueue != null) {
+      return upsertWriteBehind(kind, key, item);
+    }
     SerializedItemDescriptor serializedItem = serialize(kind, item);
     boolean updated = false;
     RuntimeException failure = null;
@@ -282,34 +556,268 @@ final class PersistentDataStoreWrapper implements DataStore {
       CacheKey cacheKey = CacheKey.forItem(kind, key);
       if (failure == null) {
         if (updated) {
-          itemCache.put(cacheKey, Optional.of(item));
+          itemCache.put(cacheKey, newCachedItem(item));
         } else {
           // there was a concurrent modification elsewhere - update the cache to get the new state
           itemCache.refresh(cacheKey);
         }
       } else {
-        Optional<ItemDescriptor> oldItem = itemCache.getIfPresent(cacheKey);
-        if (oldItem == null || !oldItem.isPresent() || oldItem.get().getVersion() < item.getVersion()) {
-          itemCache.put(cacheKey, Optional.of(item));
+        CachedItem oldItem = itemCache.getIfPresent(cacheKey);
+        if (oldItem == null || oldItem.item == null || oldItem.item.getVersion() < item.getVersion()) {
+          itemCache.put(cacheKey, newCachedItem(item));
+        }
+      }
+    }
+    updateAllCache(kind, key, item);
+    if (failure != null) {
+      throw failure;
+    }
+    return updated;
+  }
+
+  // In write-behind mode, we update the caches right away and leave the store update to the write queue.
+  // Since we don't know yet whether the store will accept the update, we decide whether it is an update
+  // based on what we already know about the item.
+  private boolean upsertWriteBehind(DataKind kind, String key, ItemDescriptor item) {
+    CacheKey cacheKey = CacheKey.forItem(kind, key);
+    ItemDescriptor current = writeQueue.getPendingItem(kind, key);
+    if (current == null && itemCache != null) {
+      CachedItem cached = itemCache.asMap().get(cacheKey);
+      current = cached == null ? null : cached.item;
+    }
+    if (current != null && current.getVersion() >= item.getVersion()) {
+      return false;
+    }
+    writeQueue.enqueue(kind, key, item);
+    if (itemCache != null) {
+      itemCache.put(cacheKey, newCachedItem(item));
+    }
+    updateAllCache(kind, key, item);
+    return true;
+  }
+
+  // Called by the write queue's worker thread.
+  private void writeQueuedItem(DataKind kind, String key, ItemDescriptor item) {
+    boolean updated;
+    try {
+      updated = core.upsert(kind, key, serialize(kind, item));
+    } catch (RuntimeException e) {
+      processError(e);
+      throw e;
+    }
+    if (!updated && itemCache != null && writeQueue.getPendingItem(kind, key) == item) {
+      // The store already had a newer version, written by someone else - update the caches to get the new state.
+      // We can't take storeUpdateLock here, because init() holds it while it waits for the write queue to finish
+      // writing. So, since upsertWriteBehind might have cached a newer update of this item in the meantime, we
+      // only replace a cache entry if it still holds the item that we tried to write.
+      ItemDescriptor stored = getAndDeserializeItem(kind, key);
+      CacheKey cacheKey = CacheKey.forItem(kind, key);
+      CachedItem cached = itemCache.asMap().get(cacheKey);
+      if (cached != null && cached.item == item) {
+        itemCache.asMap().replace(cacheKey, cached, newCachedItem(stored));
+      }
+      if (stored != null && allCache != null) {
+        if (cacheIndefinitely) {
+          allCache.asMap().computeIfPresent(kind, (k, cachedAll) -> cachedAll.itemsByKey.get(key) != item ? cachedAll :
+            new CachedKind(updateSingleItem(cachedAll.items, key, stored)));
+        } else {
+          allCache.invalidate(kind);
+        }
+      }
+    }
+  }
+
+  // Called on the shared executor when a store that implements PersistentDataStoreChangeNotifications reports
+  // that an item was changed, possibly by another process. We reload the item, and if it is newer than what
+  // we already knew about, we update the caches and report the change so that flag change events are sent.
+  // If we are caching, notifications of our own updates are ignored by the same version check.
+  private void onStoreItemChanged(DataKind kind, String key) {
+    if (closed) {
+      return;
+    }
+    ItemDescriptor item;
+    try {
+      item = getAndDeserializeItem(kind, key);
+      processError(null);
+    } catch (RuntimeException e) {
+      processError(e);
+      logger.warn("Unable to reload \"{}\" after change notification from persistent store: {}", key,
+          LogValues.exceptionSummary(e));
+      if (itemCache != null && !cacheIndefinitely) {
+        itemCache.invalidate(CacheKey.forItem(kind, key));
+        if (allCache != null) {
+          allCache.invalidate(kind);
+        }
+      }
+      return;
+    }
+    if (itemCache != null && !isNewer(item, getKnownItem(kind, key))) {
+      return;
+    }
+    updateCachesFromStore(kind, key, item);
+    dataStoreUpdates.itemChanged(kind, key, item);
+  }
+
+  // Called on the shared executor when the store reports that any number of items may have changed.
+  private void onStoreAllItemsChanged() {
+    reloadCachedData();
+  }
+
+  // Called on the bulk refresher's thread once per refresh interval. This does the same thing as an "all
+  // items changed" notification; since all cached items belong to kinds that are in the "all items" cache,
+  // that means one getAll query per kind. We don't hold storeUpdateLock while querying the store, since
+  // that could hold up updates from the data source for as long as it takes to read the whole data set.
+  private void runBulkRefresh() {
+    reloadCachedData();
+  }
+
+  // Reloads everything that is cached, and reports any items that have changed: whole kinds if they are in
+  // the "all items" cache, otherwise individual items with one getMany query per kind. If we are not caching,
+  // every read goes to the store anyway, and we have no way of knowing what changed.
+  //
+  // The store queries are done first, and then the results are applied under storeUpdateLock (if the caller
+  // doesn't already hold it). An update that was applied in between is newer than what we read, so we
+  // remember what we knew about each item before the queries, and leave alone any item that has changed.
+  private void reloadCachedData() {
+    if (closed || itemCache == null) {
+      return;
+    }
+    Map<DataKind, Map<String, ItemDescriptor>> knownByKind = new HashMap<>();
+    for (CacheKey cacheKey: itemCache.asMap().keySet()) {
+      knownByKind.computeIfAbsent(cacheKey.kind, k -> new HashMap<>())
+        .put(cacheKey.key, getKnownItem(cacheKey.kind, cacheKey.key));
+    }
+    Set<DataKind> wholeKinds = allCache == null ? new HashSet<>() : new HashSet<>(allCache.asMap().keySet());
+    for (DataKind kind: wholeKinds) {
+      Map<String, ItemDescriptor> known = knownByKind.computeIfAbsent(kind, k -> new HashMap<>());
+      CachedKind cachedKind = allCache.asMap().get(kind);
+      if (cachedKind != null) {
+        for (String key: cachedKind.itemsByKey.keySet()) {
+          known.put(key, getKnownItem(kind, key));
+        }
+      }
+    }
+    Map<DataKind, Map<String, ItemDescriptor>> foundByKind = new HashMap<>();
+    try {
+      for (Map.Entry<DataKind, Map<String, ItemDescriptor>> e: knownByKind.entrySet()) {
+        DataKind kind = e.getKey();
+        Map<String, ItemDescriptor> found = new HashMap<>();
+        if (wholeKinds.contains(kind)) {
+          for (Map.Entry<String, ItemDescriptor> e1: getAllAndDeserialize(kind).getItems()) {
+            found.put(e1.getKey(), e1.getValue());
+          }
+        } else if (!e.getValue().isEmpty()) {
+          Set<String> keys = e.getValue().keySet();
+          for (Map.Entry<String, SerializedItemDescriptor> e1: readFromStore(() -> core.getMany(kind, keys)).getItems()) {
+            found.put(e1.getKey(), deserialize(kind, e1.getValue()));
+          }
+        }
+        foundByKind.put(kind, found);
+      }
+      processError(null);
+    } catch (RuntimeException e) {
+      processError(e);
+      logger.warn("Unable to reload data from persistent store: {}", LogValues.exceptionSummary(e));
+      if (!cacheIndefinitely) {
+        itemCache.invalidateAll();
+        if (allCache != null) {
+          allCache.invalidateAll();
         }
       }
+      return;
+    }
+    synchronized (storeUpdateLock) {
+      if (closed) {
+        return;
+      }
+      for (Map.Entry<DataKind, Map<String, ItemDescriptor>> e: foundByKind.entrySet()) {
+        DataKind kind = e.getKey();
+        applyReloadedItems(kind, knownByKind.get(kind), e.getValue(), wholeKinds.contains(kind));
+      }
+    }
+  }
+
+  private void applyReloadedItems(DataKind kind, Map<String, ItemDescriptor> knownBefore,
+      Map<String, ItemDescriptor> found, boolean wholeKind) {
+    Set<String> keys = new HashSet<>(knownBefore.keySet());
+    keys.addAll(found.keySet());
+    Map<String, ItemDescriptor> changed = new HashMap<>();
+    for (String key: keys) {
+      ItemDescriptor known = getKnownItem(kind, key), before = knownBefore.get(key);
+      if (known != before && (known == null || before == null || known.getVersion() != before.getVersion())) {
+        continue; // it was updated after we queried the store
+      }
+      ItemDescriptor item = found.get(key);
+      if (isNewer(item, known)) {
+        itemCache.put(CacheKey.forItem(kind, key), newCachedItem(item));
+        dataStoreUpdates.itemChanged(kind, key, item);
+        changed.put(key, item);
+      }
+    }
+    CachedKind cachedKind = wholeKind ? allCache.asMap().get(kind) : null;
+    if (cachedKind != null) {
+      Map<String, ItemDescriptor> items = new HashMap<>(cachedKind.itemsByKey);
+      for (Map.Entry<String, ItemDescriptor> e: changed.entrySet()) {
+        if (e.getValue() == null) {
+          items.remove(e.getKey());
+        } else {
+          items.put(e.getKey(), e.getValue());
+        }
+      }
+      allCache.put(kind, new CachedKind(new KeyedItems<>(ImmutableList.copyOf(items.entrySet()))));
+    }
+  }
+
+  // Returns what we currently know about an item without querying the store: a queued update if any,
+  // otherwise the cached item, without counting this as a cache hit or miss.
+  private ItemDescriptor getKnownItem(DataKind kind, String key) {
+    ItemDescriptor pendingItem = writeQueue == null ? null : writeQueue.getPendingItem(kind, key);
+    if (pendingItem != null) {
+      return pendingItem;
+    }
+    CachedItem cached = itemCache.asMap().get(CacheKey.forItem(kind, key));
+    if (cached != null) {
+      return cached.item;
     }
+    CachedKind cachedKind = allCache == null ? null : allCache.asMap().get(kind);
+    return cachedKind == null ? null : cachedKind.itemsByKey.get(key);
+  }
+
+  // An item that has been removed from the store altogether (as opposed to replaced by a deleted item
+  // placeholder) counts as a change if we knew about it.
+  private static boolean isNewer(ItemDescriptor item, ItemDescriptor known) {
+    if (item == null || known == null) {
+      return item != known;
+    }
+    return item.getVersion() > known.getVersion();
+  }
+
+  private void updateCachesFromStore(DataKind kind, String key, ItemDescriptor item) {
+    if (itemCache == null) {
+      return;
+    }
+    itemCache.put(CacheKey.forItem(kind, key), newCachedItem(item));
+    if (item != null) {
+      updateAllCache(kind, key, item);
+    } else if (allCache != null) {
+      allCache.invalidate(kind);
+    }
+  }
+
+  private void updateAllCache(DataKind kind, String key, ItemDescriptor item) {
     if (allCache != null) {
       // If the cache has a finite TTL, then we should remove the "all items" cache entry to force
       // a reread the next time All is called. However, if it's an infinite TTL, we need to just
       // update the item within the existing "all items" entry (since we want things to still work
       // even if the underlying store is unavailable).
       if (cacheIndefinitely) {
-        KeyedItems<ItemDescriptor> cachedAll = allCache.getIfPresent(kind);
-        allCache.put(kind, updateSingleItem(cachedAll, key, item));
+        // This is atomic, so that it can't undo a concurrent change to another item by writeQueuedItem
+        allCache.asMap().compute(kind, (k, cachedAll) ->
+          new CachedKind(updateSingleItem(cachedAll == null ? null : cachedAll.items, key, item)));
       } else {
         allCache.invalidate(kind);
       }
     }
-    if (failure != null) {
-      throw failure;
-    }
-    return updated;
   }
   
   @Override
@@ -319,40 +827,296 @@ final class PersistentDataStoreWrapper implements DataStore {
 
   @Override
   public CacheStats getCacheStats() {
-    if (itemCache == null || allCache == null) {
+    if (itemCache == null) {
       return null;
     }
     com.google.common.cache.CacheStats itemStats = itemCache.stats();
-    com.google.common.cache.CacheStats allStats = allCache.stats();
+    com.google.common.cache.CacheStats allStats = allCache == null ? new com.google.common.cache.CacheStats(0, 0, 0, 0, 0, 0) :
+      allCache.stats();
+    Map<String, CacheStats> statsByKind = null;
+    if (kindStats != null) {
+      statsByKind = new HashMap<>();
+      for (Map.Entry<String, KindCacheStats> e: kindStats.entrySet()) {
+        statsByKind.put(e.getKey(), e.getValue().toCacheStats());
+      }
+    }
+    Map<CacheStats.ReadPath, Long> readCounts = readPathStats == null ? null : readPathStats.toReadCounts();
     return new CacheStats(
         itemStats.hitCount() + allStats.hitCount(),
         itemStats.missCount() + allStats.missCount(),
         itemStats.loadSuccessCount() + allStats.loadSuccessCount(),
         itemStats.loadExceptionCount() + allStats.loadExceptionCount(),
         itemStats.totalLoadTime() + allStats.totalLoadTime(),
-        itemStats.evictionCount() + allStats.evictionCount());
+        itemStats.evictionCount() + allStats.evictionCount(),
+        statsByKind,
+        readCounts);
+  }
+
+  @Override
+  public WriteQueueStats getWriteQueueStats() {
+    return writeQueue == null ? null : writeQueue.getStats();
+  }
+
+  @Override
+  public StoreReadStats getStoreReadStats() {
+    return readGuard == null ? null : readGuard.getStats();
+  }
+
+  @Override
+  public InitProgress getInitProgress() {
+    InitProgressTracker progress = initProgress;
+    return progress == null ? null : progress.toInitProgress();
+  }
+
+  private CachedItem loadItem(CacheKey key, boolean isCacheMiss) {
+    KindCacheStats stats = kindStats == null ? null : kindStatsFor(key.kind);
+    long startTime = System.nanoTime();
+    if (isCacheMiss) {
+      CachedKind cachedKind = bulkRefresh ? loadWholeKind(key.kind) : getCurrentCachedKind(key.kind, startTime);
+      if (cachedKind != null) {
+        if (stats != null) {
+          stats.recordLoad(true, true, System.nanoTime() - startTime);
+        }
+        if (readPathStats != null) {
+          readPathStats.fromAllItemsCacheCount.increment();
+        }
+        return newCachedItem(cachedKind.itemsByKey.get(key.key));
+      }
+      if (readPathStats != null) {
+        readPathStats.fromStoreCount.increment();
+      }
+    }
+    ItemDescriptor item;
+    try {
+      item = getPendingOrStoredItem(key.kind, key.key);
+    } catch (RuntimeException e) {
+      if (stats != null) {
+        stats.recordLoad(isCacheMiss, false, System.nanoTime() - startTime);
+      }
+      throw e;
+    }
+    if (stats != null) {
+      stats.recordLoad(isCacheMiss, true, System.nanoTime() - startTime);
+    }
+    prefetchDependencies(key.kind, key.key, item);
+    return newCachedItem(item);
+  }
+
+  // In bulk refresh mode, the first read of any item loads all items of its kind, so that every later
+  // read of that kind is answered from memory.
+  private CachedKind loadWholeKind(DataKind kind) {
+    try {
+      return allCache.getUnchecked(kind);
+    } catch (UncheckedExecutionException e) {
+      throw getAsRuntimeException(e);
+    }
+  }
+
+  // Returns the cached set of all items of this kind, if we have one that has not expired. We use
+  // asMap() so that this check is not counted as a hit or miss in the cache statistics; we also check
+  // the age of the entry ourselves, since in the REFRESH modes an entry can be older than the TTL.
+  private CachedKind getCurrentCachedKind(DataKind kind, long now) {
+    if (allCache == null) {
+      return null;
+    }
+    CachedKind cachedKind = allCache.asMap().get(kind);
+    if (cachedKind == null || (!cacheIndefinitely && now - cachedKind.loadedTime >= cacheTtlNanos)) {
+      return null;
+    }
+    return cachedKind;
+  }
+
+  // Called when we have queried all items of a kind, so that subsequent queries for individual items
+  // will not have to go to the store. We don't replace a cached item that has the same or a newer
+  // version, since it could have been updated after the query was done.
+  private void addToItemCache(DataKind kind, KeyedItems<ItemDescriptor> items) {
+    for (Map.Entry<String, ItemDescriptor> e: items.getItems()) {
+      putInItemCacheIfNewer(CacheKey.forItem(kind, e.getKey()), e.getValue());
+    }
+  }
+
+  // Caches an item that we read from the store, unless the cache already has a newer version of it. The
+  // read is not done under storeUpdateLock, so an update could have been cached since then; a null item,
+  // meaning that the store did not have it, does not replace a cached item for the same reason.
+  private void putInItemCacheIfNewer(CacheKey cacheKey, ItemDescriptor item) {
+    // Checking first means that we don't touch entries that are already current, since computing the
+    // same value still counts as a write for the cache's expiry time.
+    if (isNewerThanCached(item, itemCache.asMap().get(cacheKey))) {
+      itemCache.asMap().compute(cacheKey, (k, existing) ->
+          isNewerThanCached(item, existing) ? newCachedItem(item) : existing);
+    }
+  }
+
+  private static boolean isNewerThanCached(ItemDescriptor item, CachedItem existing) {
+    return existing == null ||
+        (item != null && (existing.item == null || existing.item.getVersion() < item.getVersion()));
+  }
+
+  private CachedItem newCachedItem(ItemDescriptor item) {
+    return new CachedItem(item, refreshAhead == null ? 0 : refreshAhead.nextRefreshTime(System.nanoTime()));
+  }
+
+  private KindCacheStats kindStatsFor(DataKind kind) {
+    return kindStats.computeIfAbsent(kind.getName(), k -> new KindCacheStats());
+  }
+
+  private void recordEviction(CacheKey key) {
+    kindStatsFor(key.kind).evictionCount.increment();
+  }
+
+  // Estimates the memory used by a cache entry, for the size-bounded cache. This is called every time an
+  // entry is cached, so rather than measuring the item's serialized form, we count the values in the parts
+  // of a flag or segment that can grow (variations, targets, rules, and clauses) and allow a fixed size for
+  // each of them, plus a fixed allowance for the objects that hold them.
+  private static int estimateWeight(CacheKey key, CachedItem value) {
+    int weight = ESTIMATED_ENTRY_OVERHEAD + key.key.length() * 2;
+    if (value.item != null && value.item.getItem() != null) {
+      weight += ESTIMATED_ITEM_OVERHEAD + countValues(value.item.getItem()) * ESTIMATED_VALUE_WEIGHT;
+    }
+    return weight;
+  }
+
+  private static int countValues(Object item) {
+    int count = 0;
+    if (item instanceof FeatureFlag) {
+      FeatureFlag flag = (FeatureFlag)item;
+      count += flag.getVariations().size() + flag.getPrerequisites().size();
+      for (Target t: flag.getTargets()) {
+        count += t.getValues().size();
+      }
+      for (Target t: flag.getContextTargets()) {
+        count += t.getValues().size();
+      }
+      for (Rule r: flag.getRules()) {
+        count += 1 + countClauseValues(r.getClauses());
+      }
+    } else if (item instanceof Segment) {
+      Segment segment = (Segment)item;
+      count += segment.getIncluded().size() + segment.getExcluded().size();
+      for (SegmentTarget t: segment.getIncludedContexts()) {
+        count += t.getValues().size();
+      }
+      for (SegmentTarget t: segment.getExcludedContexts()) {
+        count += t.getValues().size();
+      }
+      for (SegmentRule r: segment.getRules()) {
+        count += 1 + countClauseValues(r.getClauses());
+      }
+    }
+    return count;
+  }
+
+  private static int countClauseValues(List<Clause> clauses) {
+    int count = 0;
+    for (Clause c: clauses) {
+      count += 1 + c.getValues().size();
+    }
+    return count;
+  }
+
+  // All queries of the store go through here, so that any limits on reads are applied. Exceeding the time
+  // budget counts as a store error, but a rejection by the concurrency limit doesn't, since it doesn't tell us
+  // anything about the store that we didn't already know from the reads that are still in progress.
+  private <T> T readFromStore(Supplier<T> reader) {
+    if (readGuard == null) {
+      return reader.get();
+    }
+    try {
+      return readGuard.read(reader);
+    } catch (PersistentDataStoreReadGuard.ReadTimeoutException e) {
+      processError(e);
+      throw e;
+    }
   }
 
   private ItemDescriptor getAndDeserializeItem(DataKind kind, String key) {
-    SerializedItemDescriptor maybeSerializedItem = core.get(kind, key);
+    SerializedItemDescriptor maybeSerializedItem = readFromStore(() -> core.get(kind, key));
     return maybeSerializedItem == null ? null : deserialize(kind, maybeSerializedItem);
   }
+
+  // In write-behind mode, an update that is still in the write queue is newer than what the store has.
+  private ItemDescriptor getPendingOrStoredItem(DataKind kind, String key) {
+    ItemDescriptor pendingItem = writeQueue == null ? null : writeQueue.getPendingItem(kind, key);
+    return pendingItem != null ? pendingItem : getAndDeserializeItem(kind, key);
+  }
   
+  // Called whenever an item has been loaded into the item cache because of a cache miss. Rather than
+  // letting the evaluator discover the flag's prerequisites and segments one at a time, each of which
+  // would be another cache miss and another query, we load everything that is reachable from the item
+  // and not already cached. This takes one getMany query per data kind for each level of the dependency
+  // graph, rather than one query per item. Any failure here is ignored, since the evaluator will simply
+  // query the items individually and the error will be reported then.
+  private void prefetchDependencies(DataKind kind, String key, ItemDescriptor item) {
+    Set<KindAndKey> dependencies = computeDependenciesFrom(kind, item);
+    if (dependencies.isEmpty()) {
+      return;
+    }
+    Set<KindAndKey> visited = new HashSet<>();
+    visited.add(new KindAndKey(kind, key));
+    try {
+      while (!dependencies.isEmpty()) {
+        Map<DataKind, List<String>> keysByKind = new HashMap<>();
+        for (KindAndKey dependency: dependencies) {
+          if (visited.add(dependency) &&
+              itemCache.getIfPresent(CacheKey.forItem(dependency.kind, dependency.key)) == null) {
+            keysByKind.computeIfAbsent(dependency.kind, k -> new ArrayList<>()).add(dependency.key);
+          }
+        }
+        Set<KindAndKey> nextDependencies = new HashSet<>();
+        for (Map.Entry<DataKind, List<String>> e: keysByKind.entrySet()) {
+          DataKind depKind = e.getKey();
+          Map<String, ItemDescriptor> found = new HashMap<>();
+          for (Map.Entry<String, SerializedItemDescriptor> e1: readFromStore(() -> core.getMany(depKind, e.getValue())).getItems()) {
+            found.put(e1.getKey(), deserialize(depKind, e1.getValue()));
+          }
+          if (writeQueue != null) {
+            for (String depKey: e.getValue()) {
+              ItemDescriptor pendingItem = writeQueue.getPendingItem(depKind, depKey);
+              if (pendingItem != null) {
+                found.put(depKey, pendingItem);
+              }
+            }
+          }
+          for (ItemDescriptor depItem: found.values()) {
+            nextDependencies.addAll(computeDependenciesFrom(depKind, depItem));
+          }
+          for (String depKey: e.getValue()) {
+            putInItemCacheIfNewer(CacheKey.forItem(depKind, depKey), found.get(depKey));
+          }
+        }
+        dependencies = nextDependencies;
+      }
+    } catch (Exception e) {
+      logger.debug("Unable to prefetch dependencies of \"{}\": {}", key, LogValues.exceptionSummary(e));
+    }
+  }
+
   private KeyedItems<ItemDescriptor> getAllAndDeserialize(DataKind kind) {
-    KeyedItems<SerializedItemDescriptor> allItems = core.getAll(kind);
-    if (isEmpty(allItems.getItems())) {
+    KeyedItems<SerializedItemDescriptor> allItems = readFromStore(() -> core.getAll(kind));
+    Map<String, ItemDescriptor> pendingItems = writeQueue == null ? null : writeQueue.getPendingItems(kind);
+    if (isEmpty(allItems.getItems()) && (pendingItems == null || pendingItems.isEmpty())) {
       return new KeyedItems<ItemDescriptor>(null);
     }
     ImmutableList.Builder<Map.Entry<String, ItemDescriptor>> b = ImmutableList.builder();
     for (Map.Entry<String, SerializedItemDescriptor> e: allItems.getItems()) {
-      b.add(new AbstractMap.SimpleEntry<>(e.getKey(), deserialize(kind, e.getValue())));
+      ItemDescriptor item = deserialize(kind, e.getValue());
+      ItemDescriptor pendingItem = pendingItems == null ? null : pendingItems.remove(e.getKey());
+      b.add(new AbstractMap.SimpleEntry<>(e.getKey(),
+          pendingItem != null && pendingItem.getVersion() > item.getVersion() ? pendingItem : item));
+    }
+    if (pendingItems != null) {
+      for (Map.Entry<String, ItemDescriptor> e: pendingItems.entrySet()) {
+        b.add(new AbstractMap.SimpleEntry<>(e.getKey(), e.getValue()));
+      }
     }
     return new KeyedItems<>(b.build());
   }
   
   private SerializedItemDescriptor serialize(DataKind kind, ItemDescriptor itemDesc) {
     boolean isDeleted = itemDesc.getItem() == null;
-    return new SerializedItemDescriptor(itemDesc.getVersion(), isDeleted, kind.serialize(itemDesc));
+    String serializedItem = compression.encode(binaryFormat && !isDeleted && BinaryItemFormat.supportsKind(kind) ?
+        BinaryItemFormat.encode(itemDesc.getItem()) : kind.serialize(itemDesc));
+    return new SerializedItemDescriptor(itemDesc.getVersion(), isDeleted, serializedItem);
   }
   
   private KeyedItems<SerializedItemDescriptor> serializeAll(DataKind kind, KeyedItems<ItemDescriptor> items) {
@@ -367,7 +1131,11 @@ final class PersistentDataStoreWrapper implements DataStore {
     if (serializedItemDesc.isDeleted() || serializedItemDesc.getSerializedItem() == null) {
       return ItemDescriptor.deletedItem(serializedItemDesc.getVersion());
     }
-    ItemDescriptor deserializedItem = kind.deserialize(serializedItemDesc.getSerializedItem());
+    // Items may be in any of the formats that we know how to write, regardless of our own configuration
+    String serializedItem = SerializedItemCompression.decode(serializedItemDesc.getSerializedItem());
+    boolean isBinary = BinaryItemFormat.isEncoded(serializedItem) && BinaryItemFormat.supportsKind(kind);
+    ItemDescriptor deserializedItem = isBinary ? BinaryItemFormat.decode(kind, serializedItem) :
+      kind.deserialize(serializedItem);
     if (serializedItemDesc.getVersion() == 0 || serializedItemDesc.getVersion() == deserializedItem.getVersion()
         || deserializedItem.getItem() == null) {
       return deserializedItem;
@@ -412,9 +1180,9 @@ final class PersistentDataStoreWrapper implements DataStore {
       }
       ImmutableList.Builder<Map.Entry<DataKind, KeyedItems<SerializedItemDescriptor>>> builder = ImmutableList.builder();
       for (DataKind kind: allKinds) {
-        KeyedItems<ItemDescriptor> items = allCache.getIfPresent(kind);
-        if (items != null) {
-          builder.add(new AbstractMap.SimpleEntry<>(kind, serializeAll(kind, items)));
+        CachedKind cachedKind = allCache.getIfPresent(kind);
+        if (cachedKind != null) {
+          builder.add(new AbstractMap.SimpleEntry<>(kind, serializeAll(kind, cachedKind.items)));
         }
       }
       RuntimeException e = initCore(new FullDataSet<>(builder.build()));
@@ -433,6 +1201,223 @@ final class PersistentDataStoreWrapper implements DataStore {
     return true;
   }
   
+  /**
+   * The wrapper's configuration, as set with {@link PersistentDataStoreBuilder}. The defaults are the
+   * same as the builder's.
+   */
+  static final class Options {
+    Duration cacheTtl = PersistentDataStoreBuilder.DEFAULT_CACHE_TTL;
+    PersistentDataStoreBuilder.StaleValuesPolicy staleValuesPolicy = PersistentDataStoreBuilder.StaleValuesPolicy.EVICT;
+    boolean recordCacheStats;
+    long cacheMaximumWeight;
+    double cacheRefreshAheadRatio;
+    int compressionMinimumLength;
+    PersistentDataStoreBuilder.SerializationFormat serializationFormat = PersistentDataStoreBuilder.SerializationFormat.JSON;
+    Duration writeBehindInterval;
+    int initChunkSize = PersistentDataStoreBuilder.DEFAULT_INIT_CHUNK_SIZE;
+    int initParallelism = 1;
+    Duration bulkRefreshInterval;
+    Duration readTimeout;
+    int maxConcurrentReads;
+    Duration hedgeDelay;
+
+    Options cacheTtl(Duration cacheTtl) {
+      this.cacheTtl = cacheTtl;
+      return this;
+    }
+
+    Options staleValuesPolicy(PersistentDataStoreBuilder.StaleValuesPolicy staleValuesPolicy) {
+      this.staleValuesPolicy = staleValuesPolicy;
+      return this;
+    }
+
+    Options recordCacheStats(boolean recordCacheStats) {
+      this.recordCacheStats = recordCacheStats;
+      return this;
+    }
+
+    Options cacheMaximumWeight(long cacheMaximumWeight) {
+      this.cacheMaximumWeight = cacheMaximumWeight;
+      return this;
+    }
+
+    Options cacheRefreshAheadRatio(double cacheRefreshAheadRatio) {
+      this.cacheRefreshAheadRatio = cacheRefreshAheadRatio;
+      return this;
+    }
+
+    Options compressionMinimumLength(int compressionMinimumLength) {
+      this.compressionMinimumLength = compressionMinimumLength;
+      return this;
+    }
+
+    Options serializationFormat(PersistentDataStoreBuilder.SerializationFormat serializationFormat) {
+      this.serializationFormat = serializationFormat;
+      return this;
+    }
+
+    Options writeBehindInterval(Duration writeBehindInterval) {
+      this.writeBehindInterval = writeBehindInterval;
+      return this;
+    }
+
+    Options initChunkSize(int initChunkSize) {
+      this.initChunkSize = initChunkSize;
+      return this;
+    }
+
+    Options initParallelism(int initParallelism) {
+      this.initParallelism = initParallelism;
+      return this;
+    }
+
+    Options bulkRefreshInterval(Duration bulkRefreshInterval) {
+      this.bulkRefreshInterval = bulkRefreshInterval;
+      return this;
+    }
+
+    Options readTimeout(Duration readTimeout) {
+      this.readTimeout = readTimeout;
+      return this;
+    }
+
+    Options maxConcurrentReads(int maxConcurrentReads) {
+      this.maxConcurrentReads = maxConcurrentReads;
+      return this;
+    }
+
+    Options hedgeDelay(Duration hedgeDelay) {
+      this.hedgeDelay = hedgeDelay;
+      return this;
+    }
+  }
+
+  private static final class KindCacheStats {
+    final LongAdder requestCount = new LongAdder();
+    final LongAdder missCount = new LongAdder();
+    final LongAdder loadSuccessCount = new LongAdder();
+    final LongAdder loadExceptionCount = new LongAdder();
+    final LongAdder totalLoadTime = new LongAdder();
+    final LongAdder evictionCount = new LongAdder();
+
+    void recordLoad(boolean isCacheMiss, boolean success, long loadTime) {
+      if (isCacheMiss) {
+        missCount.increment();
+      }
+      (success ? loadSuccessCount : loadExceptionCount).increment();
+      totalLoadTime.add(loadTime);
+    }
+
+    CacheStats toCacheStats() {
+      long misses = missCount.sum();
+      return new CacheStats(Math.max(0, requestCount.sum() - misses), misses, loadSuccessCount.sum(),
+          loadExceptionCount.sum(), totalLoadTime.sum(), evictionCount.sum());
+    }
+  }
+
+  // Receives notifications from a store that implements PersistentDataStoreChangeNotifications. The store
+  // may call this on any thread, including one that it uses for I/O, so we do the actual work on the shared
+  // executor; since that has a single thread, the notifications are also processed in order.
+  private final class StoreChangeListener implements PersistentDataStoreChangeNotifications.ChangeListener {
+    private final ScheduledExecutorService executor;
+
+    StoreChangeListener(ScheduledExecutorService executor) {
+      this.executor = executor;
+    }
+
+    @Override
+    public void itemChanged(DataKind kind, String key) {
+      dispatch(() -> onStoreItemChanged(kind, key));
+    }
+
+    @Override
+    public void allItemsChanged() {
+      dispatch(PersistentDataStoreWrapper.this::onStoreAllItemsChanged);
+    }
+
+    private void dispatch(Runnable task) {
+      if (closed) {
+        return;
+      }
+      try {
+        executor.execute(() -> {
+          synchronized (storeUpdateLock) {
+            task.run();
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        // the SDK is shutting down
+      }
+    }
+  }
+
+  // The value type of allCache. The items are also indexed by key so that allCache can be used to answer
+  // queries for individual items; loadedTime is the System.nanoTime() value when the entry was created.
+  private static final class CachedKind {
+    final KeyedItems<ItemDescriptor> items;
+    final Map<String, ItemDescriptor> itemsByKey = new HashMap<>();
+    final long loadedTime = System.nanoTime();
+
+    CachedKind(KeyedItems<ItemDescriptor> items) {
+      this.items = items;
+      for (Map.Entry<String, ItemDescriptor> e: items.getItems()) {
+        itemsByKey.put(e.getKey(), e.getValue());
+      }
+    }
+  }
+
+  // Tracks the progress of one call to initCore(), for getInitProgress().
+  private static final class InitProgressTracker {
+    final int totalItems;
+    final AtomicInteger itemsWritten = new AtomicInteger();
+    final long startTime = System.nanoTime();
+    volatile boolean finished;
+    volatile long endTime;
+
+    InitProgressTracker(int totalItems) {
+      this.totalItems = totalItems;
+    }
+
+    void finish() {
+      endTime = System.nanoTime();
+      finished = true;
+    }
+
+    InitProgress toInitProgress() {
+      boolean isFinished = finished;
+      long elapsed = (isFinished ? endTime : System.nanoTime()) - startTime;
+      return new InitProgress(!isFinished, itemsWritten.get(), totalItems, Duration.ofNanos(elapsed));
+    }
+  }
+
+  private static final class ReadPathStats {
+    final LongAdder readCount = new LongAdder();
+    final LongAdder fromAllItemsCacheCount = new LongAdder();
+    final LongAdder fromStoreCount = new LongAdder();
+
+    Map<CacheStats.ReadPath, Long> toReadCounts() {
+      long fromAllItemsCache = fromAllItemsCacheCount.sum();
+      long fromStore = fromStoreCount.sum();
+      Map<CacheStats.ReadPath, Long> ret = new EnumMap<>(CacheStats.ReadPath.class);
+      ret.put(CacheStats.ReadPath.ITEM_CACHE, Math.max(0, readCount.sum() - fromAllItemsCache - fromStore));
+      ret.put(CacheStats.ReadPath.ALL_ITEMS_CACHE, fromAllItemsCache);
+      ret.put(CacheStats.ReadPath.STORE, fromStore);
+      return ret;
+    }
+  }
+
+  // The value type of itemCache. The item is null if the store did not have it; refreshTime is the
+  // System.nanoTime() value after which we should refresh it in the background, if refresh-ahead is enabled.
+  private static final class CachedItem {
+    final ItemDescriptor item;
+    final long refreshTime;
+
+    CachedItem(ItemDescriptor item, long refreshTime) {
+      this.item = item;
+      this.refreshTime = refreshTime;
+    }
+  }
+
   static final class CacheKey {
     final DataKind kind;
     final String key;
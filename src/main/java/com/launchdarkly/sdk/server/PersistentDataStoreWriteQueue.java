@@ -0,0 +1,258 @@
+package com.launchdarkly.sdk.server;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.launchdarkly.logging.LDLogger;
+import com.launchdarkly.logging.LogValues;
+import com.launchdarkly.sdk.server.PersistentDataStoreWrapper.CacheKey;
+import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.WriteQueueStats;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The queue of updates that {@link PersistentDataStoreWrapper} has not yet written to the persistent
+ * data store, when write-behind mode is enabled.
+ * <p>
+ * Updates are coalesced by key: if an item is updated again before the previous update has been written,
+ * only the newer version is written, but the entry keeps its original place in the queue and its original
+ * time for the purpose of measuring the write lag. A single worker thread writes the queued updates in
+ * the order in which they were first queued, starting one flush interval after an update is queued. It
+ * takes them from the queue in groups of at most {@link #BATCH_SIZE}, but since
+ * {@link com.launchdarkly.sdk.server.subsystems.PersistentDataStore} has no operation for writing several items at once, each update is still a separate call to the store;
+ * the gain is that a burst of updates costs one wakeup of the worker thread, and that updates of the same
+ * item are coalesced. An update stays in the queue until it has been written, so
+ * that {@link #getPendingItem(DataKind, String)} can still provide it while the write is in progress. If
+ * a write fails, the rest of the queue is left alone and the worker tries again after another interval.
+ */
+final class PersistentDataStoreWriteQueue implements Closeable {
+  static final int BATCH_SIZE = 100;
+
+  /**
+   * The operation that writes a single update to the store. It should throw an exception if the write
+   * fails.
+   */
+  interface ItemWriter {
+    void write(DataKind kind, String key, ItemDescriptor item);
+  }
+
+  private final ItemWriter writer;
+  private final long flushIntervalNanos;
+  private final ScheduledExecutorService executor;
+  private final LDLogger logger;
+  private final ConcurrentHashMap<CacheKey, PendingWrite> pending = new ConcurrentHashMap<>();
+  // The keys of the pending updates, in the order in which they were first queued. An update that
+  // replaces a queued one keeps its sequence number, so this only changes when a key is added or written.
+  private final ConcurrentSkipListMap<Long, CacheKey> order = new ConcurrentSkipListMap<>();
+  private final Object flushLock = new Object();
+  private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+  private final AtomicLong nextSequence = new AtomicLong();
+  private final LongAdder writeCount = new LongAdder();
+  private final LongAdder coalescedCount = new LongAdder();
+  private final LongAdder failedWriteCount = new LongAdder();
+  private volatile boolean closed;
+
+  PersistentDataStoreWriteQueue(ItemWriter writer, Duration flushInterval, LDLogger logger) {
+    this.writer = writer;
+    this.flushIntervalNanos = flushInterval.toNanos();
+    this.logger = logger;
+    this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("LaunchDarkly-PersistentDataStoreWriter-%d")
+        .build());
+  }
+
+  /**
+   * Adds an update to the queue, replacing any queued update of the same item unless that one has a
+   * higher version.
+   *
+   * @param kind the data kind
+   * @param key the item key
+   * @param item the new item
+   */
+  void enqueue(DataKind kind, String key, ItemDescriptor item) {
+    long now = System.nanoTime();
+    pending.compute(CacheKey.forItem(kind, key), (k, old) -> {
+      if (old == null) {
+        long sequence = nextSequence.getAndIncrement();
+        order.put(sequence, k);
+        return new PendingWrite(kind, key, item, sequence, now);
+      }
+      if (old.item.getVersion() >= item.getVersion()) {
+        return old;
+      }
+      coalescedCount.increment();
+      return new PendingWrite(kind, key, item, old.sequence, old.queuedTime);
+    });
+    scheduleFlush();
+  }
+
+  /**
+   * Returns the queued update of an item, if any.
+   *
+   * @param kind the data kind
+   * @param key the item key
+   * @return the item, or null if there is no queued update for it
+   */
+  ItemDescriptor getPendingItem(DataKind kind, String key) {
+    if (pending.isEmpty()) {
+      return null;
+    }
+    PendingWrite w = pending.get(CacheKey.forItem(kind, key));
+    return w == null ? null : w.item;
+  }
+
+  /**
+   * Returns all queued updates of items of the specified kind.
+   *
+   * @param kind the data kind
+   * @return a new mutable map of keys to items
+   */
+  Map<String, ItemDescriptor> getPendingItems(DataKind kind) {
+    Map<String, ItemDescriptor> ret = new HashMap<>();
+    for (PendingWrite w: pending.values()) {
+      if (w.kind.getName().equals(kind.getName())) {
+        ret.put(w.key, w.item);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Removes all queued updates without writing them. This is used when the store is about to be
+   * initialized with a full data set. It waits for any batch that is being written to finish first.
+   * The caller must not call {@link #enqueue(DataKind, String, ItemDescriptor)} at the same time.
+   */
+  void discardAll() {
+    synchronized (flushLock) {
+      pending.clear();
+      order.clear();
+    }
+  }
+
+  /**
+   * Writes all queued updates on the calling thread, one at a time.
+   *
+   * @return true if successful, false if a write failed
+   */
+  boolean flush() {
+    synchronized (flushLock) {
+      while (true) {
+        List<PendingWrite> batch = nextBatch();
+        if (batch.isEmpty()) {
+          return true;
+        }
+        for (PendingWrite w: batch) {
+          try {
+            writer.write(w.kind, w.key, w.item);
+          } catch (RuntimeException e) {
+            failedWriteCount.increment();
+            logger.warn("Failed to write {} queued update(s) to persistent store: {}", pending.size(),
+                LogValues.exceptionSummary(e));
+            logger.debug(LogValues.exceptionTrace(e));
+            return false;
+          }
+          writeCount.increment();
+          // If the item was updated again while we were writing it, this leaves the newer update in the queue
+          if (pending.remove(CacheKey.forItem(w.kind, w.key), w)) {
+            order.remove(w.sequence);
+          }
+        }
+      }
+    }
+  }
+
+  WriteQueueStats getStats() {
+    long oldestQueuedTime = 0;
+    int depth = 0;
+    for (PendingWrite w: pending.values()) {
+      if (depth == 0 || w.queuedTime - oldestQueuedTime < 0) {
+        oldestQueuedTime = w.queuedTime;
+      }
+      depth++;
+    }
+    Duration lag = depth == 0 ? Duration.ZERO : Duration.ofNanos(Math.max(0, System.nanoTime() - oldestQueuedTime));
+    return new WriteQueueStats(depth, lag, writeCount.sum(), coalescedCount.sum(), failedWriteCount.sum());
+  }
+
+  /**
+   * Stops the worker thread and writes any queued updates on the calling thread.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    executor.shutdown();
+    if (!flush() || !pending.isEmpty()) {
+      logger.warn("{} update(s) could not be written to the persistent store before it was closed",
+          pending.size());
+    }
+  }
+
+  private void scheduleFlush() {
+    if (closed || !flushScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      executor.schedule(this::runScheduledFlush, flushIntervalNanos, TimeUnit.NANOSECONDS);
+    } catch (RejectedExecutionException e) {
+      flushScheduled.set(false); // we were closed concurrently; close() will do the final flush
+    }
+  }
+
+  private void runScheduledFlush() {
+    // Clear the flag first, so that anything queued while we are writing will schedule another flush
+    flushScheduled.set(false);
+    if (closed) {
+      return;
+    }
+    flush();
+    if (!pending.isEmpty()) {
+      scheduleFlush(); // either a write failed, or more updates were queued; try again after the interval
+    }
+  }
+
+  private List<PendingWrite> nextBatch() {
+    List<PendingWrite> batch = new ArrayList<>(Math.min(BATCH_SIZE, order.size()));
+    for (Map.Entry<Long, CacheKey> e: order.entrySet()) {
+      PendingWrite w = pending.get(e.getValue());
+      // w could be null, or have a different sequence number, if enqueue() is adding it concurrently
+      if (w != null && w.sequence == e.getKey()) {
+        batch.add(w);
+        if (batch.size() == BATCH_SIZE) {
+          break;
+        }
+      }
+    }
+    return batch;
+  }
+
+  private static final class PendingWrite {
+    final DataKind kind;
+    final String key;
+    final ItemDescriptor item;
+    final long sequence; // the order in which the item was first queued
+    final long queuedTime; // the System.nanoTime() value when the item was first queued
+
+    PendingWrite(DataKind kind, String key, ItemDescriptor item, long sequence, long queuedTime) {
+      this.kind = kind;
+      this.key = key;
+      this.item = item;
+      this.sequence = sequence;
+      this.queuedTime = queuedTime;
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package com.launchdarkly.sdk.server;
+
+import com.launchdarkly.sdk.server.subsystems.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Optional compression of the serialized items that {@link PersistentDataStoreWrapper} writes to a
+ * persistent data store.
+ * <p>
+ * The {@link com.launchdarkly.sdk.server.subsystems.PersistentDataStore} interface represents items as
+ * strings, so a compressed item is the Base64 encoding of the deflated UTF-8 JSON, preceded by
+ * {@link #COMPRESSED_PREFIX}. That prefix can never be the start of a JSON object, so {@link #decode(String)}
+ * can tell the two formats apart; it accepts either one regardless of whether compression is enabled,
+ * so SDK instances with different settings can share a data store. However, older SDK versions cannot
+ * read compressed items.
+ */
+final class SerializedItemCompression {
+  static final String COMPRESSED_PREFIX = "ld-deflate:";
+
+  private final int minimumLength;
+
+  /**
+   * Creates an instance.
+   *
+   * @param minimumLength the length of serialized items, in characters, at or above which they should
+   *   be compressed; zero or less means no items are compressed
+   */
+  SerializedItemCompression(int minimumLength) {
+    this.minimumLength = minimumLength;
+  }
+
+  boolean isEnabled() {
+    return minimumLength > 0;
+  }
+
+  /**
+   * Compresses a serialized item if it is large enough and if compression makes it smaller.
+   *
+   * @param json the serialized item
+   * @return the value to store
+   */
+  String encode(String json) {
+    if (!isEnabled() || json == null || json.length() < minimumLength) {
+      return json;
+    }
+    String compressed = compress(json);
+    return compressed.length() < json.length() ? compressed : json;
+  }
+
+  /**
+   * Returns the serialized item that a stored value represents, decompressing it if necessary.
+   *
+   * @param stored the value from the data store
+   * @return the serialized item
+   * @throws SerializationException if the value is marked as compressed but cannot be decompressed
+   */
+  static String decode(String stored) {
+    if (stored == null || !stored.startsWith(COMPRESSED_PREFIX)) {
+      return stored;
+    }
+    return decompress(stored);
+  }
+
+  static String compress(String json) {
+    byte[] input = json.getBytes(StandardCharsets.UTF_8);
+    Deflater deflater = new Deflater();
+    try {
+      deflater.setInput(input);
+      deflater.finish();
+      ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 4 + 16);
+      byte[] buf = new byte[8192];
+      while (!deflater.finished()) {
+        int n = deflater.deflate(buf);
+        out.write(buf, 0, n);
+      }
+      return COMPRESSED_PREFIX + Base64.getEncoder().encodeToString(out.toByteArray());
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static String decompress(String stored) {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(Base64.getDecoder().decode(stored.substring(COMPRESSED_PREFIX.length())));
+      ByteArrayOutputStream out = new ByteArrayOutputStream(stored.length() * 4);
+      byte[] buf = new byte[8192];
+      while (!inflater.finished()) {
+        int n = inflater.inflate(buf);
+        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new DataFormatException("compressed data is truncated");
+        }
+        out.write(buf, 0, n);
+      }
+      return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    } catch (DataFormatException | IllegalArgumentException e) {
+      throw new SerializationException(e);
+    } finally {
+      inflater.end();
+    }
+  }
+}
@@ -0,0 +1,171 @@
+package com.launchdarkly.sdk.server;
+
+import com.launchdarkly.logging.LDLogger;
+import com.launchdarkly.sdk.server.interfaces.DataSourceStatusProvider.State;
+import com.launchdarkly.sdk.server.subsystems.ClientContext;
+import com.launchdarkly.sdk.server.subsystems.ComponentConfigurer;
+import com.launchdarkly.sdk.server.subsystems.DataSource;
+import com.launchdarkly.sdk.server.subsystems.DataSourceUpdateSink;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link DataSource} for SDK instances that share flag data through a {@link SharedFileDataStore}.
+ * <p>
+ * Of all the instances on the host that use the same shared file, only one is the leader: the one that
+ * holds an exclusive lock on the file's ".leader" lock file. The leader runs the configured data source,
+ * such as the usual streaming connection, which updates the shared store and so publishes the data to
+ * every other instance. The other instances, the followers, never connect to LaunchDarkly; they are
+ * initialized as soon as the leader has published data. Each follower tries to get the lock at every
+ * poll interval, so if the leader's process exits, one of the followers takes over.
+ */
+final class SharedFileDataSource implements DataSource {
+  private final Path file;
+  private final Path leaderLockFile;
+  private final ComponentConfigurer<DataSource> leaderDataSource;
+  private final ClientContext context;
+  private final DataSourceUpdateSink dataSourceUpdates;
+  private final ScheduledExecutorService scheduler;
+  private final Duration pollInterval;
+  private final LDLogger logger;
+  private final CompletableFuture<Void> initFuture = new CompletableFuture<>();
+  private final AtomicBoolean initialized = new AtomicBoolean(false);
+  private FileChannel leaderLockChannel;
+  private FileLock leaderLock;
+  private volatile DataSource leaderSource;
+  private ScheduledFuture<?> task;
+  private boolean closed;
+
+  SharedFileDataSource(
+      Path file,
+      ComponentConfigurer<DataSource> leaderDataSource,
+      ClientContext context,
+      ScheduledExecutorService sharedExecutor,
+      Duration pollInterval,
+      LDLogger logger
+      ) {
+    this.file = file;
+    this.leaderLockFile = file.resolveSibling(file.getFileName() + ".leader");
+    this.leaderDataSource = leaderDataSource;
+    this.context = context;
+    this.dataSourceUpdates = context.getDataSourceUpdateSink();
+    this.scheduler = sharedExecutor;
+    this.pollInterval = pollInterval;
+    this.logger = logger;
+  }
+
+  @Override
+  public Future<Void> start() {
+    synchronized (this) {
+      if (task == null && !closed) {
+        task = scheduler.scheduleAtFixedRate(this::check, 0L, pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+      }
+    }
+    return initFuture;
+  }
+
+  @Override
+  public boolean isInitialized() {
+    DataSource source = leaderSource;
+    return initialized.get() || (source != null && source.isInitialized());
+  }
+
+  // for testing
+  boolean isLeader() {
+    return leaderSource != null;
+  }
+
+  @Override
+  public void close() throws IOException {
+    DataSource source;
+    synchronized (this) {
+      closed = true;
+      if (task != null) {
+        task.cancel(false);
+        task = null;
+      }
+      source = leaderSource;
+      leaderSource = null;
+    }
+    try {
+      if (source != null) {
+        source.close();
+      }
+    } finally {
+      synchronized (this) {
+        // Closing the channel also releases the lock, so that a follower can take over
+        if (leaderLockChannel != null) {
+          leaderLockChannel.close();
+          leaderLockChannel = null;
+          leaderLock = null;
+        }
+      }
+    }
+  }
+
+  private synchronized void check() {
+    if (closed) {
+      return;
+    }
+    if (leaderSource != null) {
+      // The leader's data source is responsible for the status; this only matters if its start() future
+      // is not one that we can attach a callback to
+      if (leaderSource.isInitialized()) {
+        initFuture.complete(null);
+      }
+      return;
+    }
+    try {
+      if (tryToBecomeLeader()) {
+        startLeaderDataSource();
+        return;
+      }
+      if (SharedFileDataStore.readPublishedVersion(file) > 0 && !initialized.getAndSet(true)) {
+        logger.info("Initialized LaunchDarkly client from shared flag data in {}", file);
+        dataSourceUpdates.updateStatus(State.VALID, null);
+        initFuture.complete(null);
+      }
+    } catch (Exception e) {
+      logger.error("Unexpected error from shared file data source: {}", e.toString());
+      logger.debug(e.toString(), e);
+    }
+  }
+
+  private boolean tryToBecomeLeader() {
+    try {
+      if (leaderLockChannel == null) {
+        leaderLockChannel = FileChannel.open(leaderLockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      }
+      leaderLock = leaderLockChannel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      leaderLock = null; // another SDK instance in this process is the leader
+    } catch (IOException e) {
+      logger.warn("Unable to use shared flag data lock file {}: {}", leaderLockFile, e.toString());
+      leaderLock = null;
+    }
+    return leaderLock != null;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void startLeaderDataSource() {
+    logger.info("This SDK instance is now the leader for shared flag data in {}", file);
+    DataSource source = leaderDataSource.build(context);
+    leaderSource = source;
+    Future<Void> sourceFuture = source.start();
+    if (sourceFuture instanceof CompletableFuture) {
+      ((CompletableFuture<Void>)sourceFuture).whenComplete((result, error) -> initFuture.complete(null));
+    }
+  }
+}
@@ -0,0 +1,545 @@
+package com.launchdarkly.sdk.server;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.launchdarkly.logging.LDLogger;
+import com.launchdarkly.sdk.server.OffHeapDataStore.HotItem;
+import com.launchdarkly.sdk.server.OffHeapDataStore.KindIndex;
+import com.launchdarkly.sdk.server.PersistentDataStoreWrapper.CacheKey;
+import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.CacheStats;
+import com.launchdarkly.sdk.server.subsystems.DataStore;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.KeyedItems;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A {@link DataStore} whose contents are shared by every SDK instance on the host that uses the same file,
+ * so that only one of them (the one whose {@link SharedFileDataSource} is the leader) needs to receive and
+ * store flag data.
+ * <p>
+ * Each update writes a complete snapshot of the data to a temporary file, renames it over the shared
+ * file, and then increments a version number in a small memory-mapped control file. Every instance,
+ * including the one that wrote the update, checks that version number on each query; when it changes, it
+ * maps the new snapshot read-only and builds an index of it, the same {@link KindIndex} that
+ * {@link OffHeapDataStore} uses. Items are parsed when they are queried, and the most recently used parsed
+ * items are cached. Since a snapshot is never modified once it has been renamed into place, an instance
+ * that is still using an older mapping is unaffected by later updates.
+ * <p>
+ * Updates are serialized across processes by locking the control file, and each update is applied to
+ * the latest published snapshot rather than to this instance's view of it, so it is safe (if wasteful)
+ * for more than one instance to write. Rewriting the whole snapshot makes individual updates more
+ * expensive than in the other stores, but updates are rare compared to queries, and they only happen in
+ * the leader. Each call to {@link #upsertAll(FullDataSet)} is published as a single snapshot, so the
+ * leader's default data source batches stream updates to keep the number of snapshots down; see
+ * {@link com.launchdarkly.sdk.server.integrations.SharedFileDataSourceBuilder}.
+ * <p>
+ * Flag change listeners in other instances are not notified of updates, since those instances never see
+ * the individual changes.
+ */
+final class SharedFileDataStore implements DataStore {
+  static final int FILE_MAGIC = 0x4C445346; // "LDSF"
+  static final byte FORMAT_VERSION = 1;
+  private static final int CONTROL_MAGIC = 0x4C445343; // "LDSC"
+  private static final int CONTROL_SIZE = 16;
+  private static final int VERSION_OFFSET = 8;
+  private static final long OPEN_RETRY_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  // FileLock only excludes other processes, so SDK instances in this process that share a file also
+  // synchronize on one of these
+  private static final ConcurrentMap<Path, Object> processLocks = new ConcurrentHashMap<>();
+
+  private final Path file;
+  private final Path controlFile;
+  private final Object processLock;
+  private final LDLogger logger;
+  private final Cache<CacheKey, HotItem> hotItems;
+  private final Object viewLock = new Object();
+  private FileChannel controlChannel;
+  private volatile MappedByteBuffer control;
+  private volatile View view;
+  private volatile long failedVersion;
+  private long nextOpenAttempt;
+  private boolean closed;
+
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder loadSuccessCount = new LongAdder();
+  private final LongAdder loadExceptionCount = new LongAdder();
+  private final LongAdder totalLoadTime = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+
+  SharedFileDataStore(Path file, int hotItemCacheSize, LDLogger logger) {
+    this.file = file;
+    this.controlFile = controlFileFor(file);
+    this.processLock = processLocks.computeIfAbsent(controlFile.toAbsolutePath().normalize(), p -> new Object());
+    this.logger = logger;
+    this.hotItems = hotItemCacheSize <= 0 ? null : CacheBuilder.newBuilder()
+        .maximumSize(hotItemCacheSize)
+        .<CacheKey, HotItem>removalListener(n -> {
+          if (n.wasEvicted()) {
+            evictionCount.increment();
+          }
+        })
+        .build();
+  }
+
+  /**
+   * Returns the shared file that is used if none was configured. This depends on the SDK key, so that
+   * applications for different environments on the same host do not share data.
+   */
+  static Path defaultFile(String sdkKey) {
+    String hash = Hashing.sha256().hashString(sdkKey == null ? "" : sdkKey, UTF_8).toString().substring(0, 16);
+    return Paths.get(System.getProperty("java.io.tmpdir"), "launchdarkly-" + hash + ".data");
+  }
+
+  static Path controlFileFor(Path file) {
+    return file.resolveSibling(file.getFileName() + ".control");
+  }
+
+  /**
+   * Returns the version of the latest snapshot that has been published to the shared file, or zero if
+   * there is none yet. This is used by {@link SharedFileDataSource} to find out whether there is data
+   * without creating a store.
+   */
+  static long readPublishedVersion(Path file) {
+    Path path = controlFileFor(file);
+    if (!Files.exists(path)) {
+      return 0;
+    }
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer buf = ByteBuffer.allocate(CONTROL_SIZE);
+      while (buf.hasRemaining() && channel.read(buf) >= 0) {}
+      return buf.hasRemaining() || buf.getInt(0) != CONTROL_MAGIC ? 0 : buf.getLong(VERSION_OFFSET);
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  @Override
+  public void init(FullDataSet<ItemDescriptor> allData) {
+    Map<String, Map<String, RawItem>> data = new LinkedHashMap<>();
+    for (Map.Entry<DataKind, KeyedItems<ItemDescriptor>> e0: allData.getData()) {
+      Map<String, RawItem> items = data.computeIfAbsent(e0.getKey().getName(), k -> new LinkedHashMap<>());
+      for (Map.Entry<String, ItemDescriptor> e1: e0.getValue().getItems()) {
+        items.put(e1.getKey(), RawItem.encode(e0.getKey(), e1.getValue()));
+      }
+    }
+    synchronized (viewLock) {
+      withPublishLock(() -> {
+        publish(data, true);
+        return null;
+      });
+    }
+  }
+
+  @Override
+  public ItemDescriptor get(DataKind kind, String key) {
+    View v = currentView();
+    KindIndex index = v == null ? null : v.kinds.get(kind.getName());
+    int slot = index == null ? -1 : index.find(key);
+    if (slot < 0) {
+      return null;
+    }
+    int version = index.versions[slot];
+    int length = index.lengths[slot];
+    if (length < 0) {
+      return ItemDescriptor.deletedItem(version);
+    }
+    CacheKey cacheKey = null;
+    if (hotItems != null) {
+      cacheKey = CacheKey.forItem(kind, key);
+      HotItem cached = hotItems.getIfPresent(cacheKey);
+      if (cached != null && cached.matches(v.dataSetId, version)) {
+        hitCount.increment();
+        return cached.item;
+      }
+    }
+    missCount.increment();
+    long startTime = System.nanoTime();
+    ItemDescriptor item;
+    try {
+      item = OffHeapDataStore.decode(kind, version, v.read(index.locations[slot], length));
+    } catch (RuntimeException e) {
+      loadExceptionCount.increment();
+      throw e;
+    }
+    totalLoadTime.add(System.nanoTime() - startTime);
+    loadSuccessCount.increment();
+    if (cacheKey != null) {
+      hotItems.put(cacheKey, new HotItem(v.dataSetId, item));
+    }
+    return item;
+  }
+
+  @Override
+  public KeyedItems<ItemDescriptor> getAll(DataKind kind) {
+    View v = currentView();
+    KindIndex index = v == null ? null : v.kinds.get(kind.getName());
+    if (index == null) {
+      return new KeyedItems<>(null);
+    }
+    ImmutableList.Builder<Map.Entry<String, ItemDescriptor>> ret = ImmutableList.builder();
+    for (int slot = 0; slot < index.keys.length; slot++) {
+      String key = index.keys[slot];
+      if (key == null) {
+        continue;
+      }
+      int version = index.versions[slot];
+      ItemDescriptor item;
+      if (index.lengths[slot] < 0) {
+        item = ItemDescriptor.deletedItem(version);
+      } else {
+        HotItem cached = hotItems == null ? null : hotItems.getIfPresent(CacheKey.forItem(kind, key));
+        item = cached != null && cached.matches(v.dataSetId, version) ? cached.item :
+          OffHeapDataStore.decode(kind, version, v.read(index.locations[slot], index.lengths[slot]));
+      }
+      ret.add(new AbstractMap.SimpleEntry<>(key, item));
+    }
+    return new KeyedItems<>(ret.build());
+  }
+
+  @Override
+  public boolean upsert(DataKind kind, String key, ItemDescriptor item) {
+    FullDataSet<ItemDescriptor> updated = upsertAll(new FullDataSet<>(ImmutableMap.of(kind,
+        new KeyedItems<>(ImmutableList.of(new AbstractMap.SimpleEntry<>(key, item)))).entrySet()));
+    return updated.getData().iterator().hasNext();
+  }
+
+  @Override
+  public FullDataSet<ItemDescriptor> upsertAll(FullDataSet<ItemDescriptor> items) {
+    synchronized (viewLock) {
+      return withPublishLock(() -> {
+        // Another process might have published a snapshot since we last looked
+        long published = control.getLong(VERSION_OFFSET);
+        View latest = published == 0 ? null : (view != null && view.checkedVersion == published) ? view :
+          loadView(published);
+        Map<String, Map<String, RawItem>> data = latest == null ? new LinkedHashMap<>() : latest.copyRawData();
+
+        ImmutableList.Builder<Map.Entry<DataKind, KeyedItems<ItemDescriptor>>> updated = ImmutableList.builder();
+        for (Map.Entry<DataKind, KeyedItems<ItemDescriptor>> e0: items.getData()) {
+          DataKind kind = e0.getKey();
+          Map<String, RawItem> itemsOfKind = data.computeIfAbsent(kind.getName(), k -> new LinkedHashMap<>());
+          ImmutableList.Builder<Map.Entry<String, ItemDescriptor>> updatedOfKind = ImmutableList.builder();
+          boolean anyUpdated = false;
+          for (Map.Entry<String, ItemDescriptor> e1: e0.getValue().getItems()) {
+            RawItem existing = itemsOfKind.get(e1.getKey());
+            if (existing == null || existing.version < e1.getValue().getVersion()) {
+              itemsOfKind.put(e1.getKey(), RawItem.encode(kind, e1.getValue()));
+              updatedOfKind.add(e1);
+              anyUpdated = true;
+            }
+          }
+          if (anyUpdated) {
+            updated.add(new AbstractMap.SimpleEntry<>(kind, new KeyedItems<>(updatedOfKind.build())));
+          }
+        }
+        FullDataSet<ItemDescriptor> ret = new FullDataSet<>(updated.build());
+        if (ret.getData().iterator().hasNext()) {
+          publish(data, latest == null);
+        } else if (latest != null && latest != view) {
+          setView(latest);
+        }
+        return ret;
+      });
+    }
+  }
+
+  @Override
+  public boolean isInitialized() {
+    return currentView() != null;
+  }
+
+  @Override
+  public boolean isStatusMonitoringEnabled() {
+    return false;
+  }
+
+  /**
+   * Returns statistics for the cache of parsed items. A "miss" is a query for an item that had to be
+   * parsed from the shared file, and the "load time" is the time spent parsing.
+   */
+  @Override
+  public CacheStats getCacheStats() {
+    return new CacheStats(hitCount.sum(), missCount.sum(), loadSuccessCount.sum(), loadExceptionCount.sum(),
+        totalLoadTime.sum(), evictionCount.sum());
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (viewLock) {
+      closed = true;
+      view = null;
+      control = null;
+      if (controlChannel != null) {
+        controlChannel.close();
+        controlChannel = null;
+      }
+    }
+  }
+
+  // Returns the view of the latest published snapshot, or null if there is none. Normally this is just a
+  // read of the control file's version number.
+  private View currentView() {
+    MappedByteBuffer c = control;
+    View v = view;
+    if (c != null) {
+      long published = c.getLong(VERSION_OFFSET);
+      if ((v != null && published == v.checkedVersion) || published == failedVersion) {
+        return v;
+      }
+    }
+    return refreshView();
+  }
+
+  private View refreshView() {
+    synchronized (viewLock) {
+      if (closed || !openControl()) {
+        return view;
+      }
+      long published = control.getLong(VERSION_OFFSET);
+      View v = view;
+      if (published == 0 || (v != null && published == v.checkedVersion) || published == failedVersion) {
+        return v;
+      }
+      try {
+        View newView = loadView(published);
+        setView(newView);
+        return newView;
+      } catch (IOException | RuntimeException e) {
+        // Don't try again until there's another update, since every query would be slowed down
+        logger.warn("Unable to read shared flag data from {}: {}", file, e.toString());
+        failedVersion = published;
+        return v;
+      }
+    }
+  }
+
+  private void setView(View newView) {
+    View old = view;
+    view = newView;
+    if (hotItems != null && (old == null || old.dataSetId != newView.dataSetId)) {
+      // The old entries can no longer be used, since they are tagged with another data set (see HotItem),
+      // so this just frees the memory
+      hotItems.invalidateAll();
+    }
+  }
+
+  // Opens and maps the control file, creating it if necessary. Called with viewLock held.
+  private boolean openControl() {
+    if (control != null) {
+      return true;
+    }
+    if (closed || System.nanoTime() - nextOpenAttempt < 0) {
+      return false;
+    }
+    FileChannel channel = null;
+    try {
+      channel = FileChannel.open(controlFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+      synchronized (processLock) {
+        try (FileLock lock = channel.lock()) {
+          if (channel.size() < CONTROL_SIZE) {
+            ByteBuffer buf = ByteBuffer.allocate(CONTROL_SIZE);
+            buf.putInt(0, CONTROL_MAGIC);
+            channel.write(buf, 0);
+          }
+        }
+      }
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, CONTROL_SIZE);
+      if (mapped.getInt(0) != CONTROL_MAGIC) {
+        throw new IOException("not a LaunchDarkly shared data control file");
+      }
+      controlChannel = channel;
+      control = mapped;
+      return true;
+    } catch (IOException e) {
+      logger.warn("Unable to open shared flag data control file {}: {}", controlFile, e.toString());
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException e1) {}
+      }
+      nextOpenAttempt = System.nanoTime() + OPEN_RETRY_INTERVAL_NANOS;
+      return false;
+    }
+  }
+
+  private interface PublishAction<T> {
+    T run() throws IOException;
+  }
+
+  // Runs an update while holding the control file lock, so that no other process or SDK instance can
+  // publish at the same time. Called with viewLock held.
+  private <T> T withPublishLock(PublishAction<T> action) {
+    nextOpenAttempt = System.nanoTime(); // don't wait for the retry interval if there's new data
+    if (!openControl()) {
+      throw new UncheckedIOException(new IOException("shared flag data file " + file + " is not available"));
+    }
+    synchronized (processLock) {
+      try (FileLock lock = controlChannel.lock()) {
+        return action.run();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  // Writes a new snapshot and makes it the current one. Called with the publish lock held.
+  private void publish(Map<String, Map<String, RawItem>> data, boolean replacesAllData) throws IOException {
+    long version = control.getLong(VERSION_OFFSET) + 1;
+    long dataSetId = replacesAllData || view == null ? version : view.dataSetId;
+    Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+        out.writeInt(FILE_MAGIC);
+        out.writeByte(FORMAT_VERSION);
+        out.writeLong(version);
+        out.writeLong(dataSetId);
+        out.writeInt(data.size());
+        for (Map.Entry<String, Map<String, RawItem>> e0: data.entrySet()) {
+          out.writeUTF(e0.getKey());
+          out.writeInt(e0.getValue().size());
+          for (Map.Entry<String, RawItem> e1: e0.getValue().entrySet()) {
+            byte[] keyBytes = e1.getKey().getBytes(UTF_8);
+            out.writeInt(keyBytes.length);
+            out.write(keyBytes);
+            out.writeInt(e1.getValue().version);
+            byte[] itemData = e1.getValue().data;
+            out.writeInt(itemData == null ? -1 : itemData.length);
+            if (itemData != null) {
+              out.write(itemData);
+            }
+          }
+        }
+      }
+      // There's no need to force the data to disk: other processes see it through the page cache, and
+      // after a restart of the host the leader will get the data from LaunchDarkly again anyway.
+      Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    control.putLong(VERSION_OFFSET, version);
+    setView(loadView(version));
+  }
+
+  private View loadView(long checkedVersion) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      // The mapping stays valid after the channel is closed
+      return View.parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), checkedVersion);
+    }
+  }
+
+  private static final class RawItem {
+    final int version;
+    final byte[] data; // null for a deleted item
+
+    RawItem(int version, byte[] data) {
+      this.version = version;
+      this.data = data;
+    }
+
+    static RawItem encode(DataKind kind, ItemDescriptor item) {
+      return new RawItem(item.getVersion(), item.getItem() == null ? null : OffHeapDataStore.encode(kind, item));
+    }
+  }
+
+  /**
+   * An index of one snapshot of the shared file. Item locations are offsets in the mapped file.
+   */
+  private static final class View {
+    final MappedByteBuffer buffer;
+    final long checkedVersion; // the control file's version when this was loaded; normally the same as the snapshot's
+    final long dataSetId; // the version of the snapshot that last replaced all of the data
+    final ImmutableMap<String, KindIndex> kinds;
+
+    private View(MappedByteBuffer buffer, long checkedVersion, long dataSetId, ImmutableMap<String, KindIndex> kinds) {
+      this.buffer = buffer;
+      this.checkedVersion = checkedVersion;
+      this.dataSetId = dataSetId;
+      this.kinds = kinds;
+    }
+
+    static View parse(MappedByteBuffer buffer, long checkedVersion) throws IOException {
+      ByteBuffer buf = buffer.duplicate();
+      if (buf.remaining() < 9 || buf.getInt() != FILE_MAGIC || buf.get() != FORMAT_VERSION) {
+        throw new IOException("not a LaunchDarkly shared data file, or an unsupported version");
+      }
+      buf.getLong(); // the snapshot's own version, which we only need for troubleshooting
+      long dataSetId = buf.getLong();
+      int kindCount = buf.getInt();
+      ImmutableMap.Builder<String, KindIndex> kinds = ImmutableMap.builder();
+      for (int i = 0; i < kindCount; i++) {
+        byte[] nameBytes = new byte[buf.getShort() & 0xFFFF];
+        buf.get(nameBytes);
+        int itemCount = buf.getInt();
+        KindIndex index = new KindIndex(itemCount);
+        for (int j = 0; j < itemCount; j++) {
+          byte[] keyBytes = new byte[buf.getInt()];
+          buf.get(keyBytes);
+          int version = buf.getInt();
+          int length = buf.getInt();
+          int offset = buf.position();
+          if (length > 0) {
+            ((Buffer)buf).position(offset + length);
+          }
+          index.put(new String(keyBytes, UTF_8), version, offset, length);
+        }
+        kinds.put(new String(nameBytes, UTF_8), index);
+      }
+      return new View(buffer, checkedVersion, dataSetId, kinds.build());
+    }
+
+    byte[] read(long location, int length) {
+      ByteBuffer buf = buffer.duplicate();
+      ((Buffer)buf).position((int)location);
+      byte[] ret = new byte[length];
+      buf.get(ret);
+      return ret;
+    }
+
+    Map<String, Map<String, RawItem>> copyRawData() {
+      Map<String, Map<String, RawItem>> ret = new LinkedHashMap<>();
+      for (Map.Entry<String, KindIndex> e: kinds.entrySet()) {
+        KindIndex index = e.getValue();
+        Map<String, RawItem> items = new LinkedHashMap<>();
+        for (int slot = 0; slot < index.keys.length; slot++) {
+          if (index.keys[slot] != null) {
+            int length = index.lengths[slot];
+            items.put(index.keys[slot], new RawItem(index.versions[slot],
+                length < 0 ? null : read(index.locations[slot], length)));
+          }
+        }
+        ret.put(e.getKey(), items);
+      }
+      return ret;
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package com.launchdarkly.sdk.server;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
 import com.google.gson.JsonParseException;
 import com.google.gson.stream.JsonReader;
 import com.launchdarkly.eventsource.ConnectStrategy;
@@ -27,11 +28,15 @@ import com.launchdarkly.sdk.server.StreamProcessorEvents.PatchData;
 import com.launchdarkly.sdk.server.StreamProcessorEvents.PutData;
 import com.launchdarkly.sdk.server.interfaces.DataSourceStatusProvider.ErrorInfo;
 import com.launchdarkly.sdk.server.interfaces.DataSourceStatusProvider.ErrorKind;
+import com.launchdarkly.sdk.server.interfaces.DataSourceStatusProvider.PipelineStats;
 import com.launchdarkly.sdk.server.interfaces.DataSourceStatusProvider.State;
 import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider;
 import com.launchdarkly.sdk.server.subsystems.DataSource;
 import com.launchdarkly.sdk.server.subsystems.DataSourceUpdateSink;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.KeyedItems;
 import com.launchdarkly.sdk.server.subsystems.SerializationException;
 
 import java.io.IOException;
@@ -39,8 +44,15 @@ import java.io.Reader;
 import java.net.URI;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.AbstractMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
@@ -73,6 +85,20 @@ import okhttp3.Headers;
  * succeeded (we got an initial payload and successfully stored it) or permanently failed (we got a 401, etc.).
  * Otherwise, the client initialization method may time out but we will still be retrying in the background, and
  * if we succeed then the client can detect that we're initialized now by calling our Initialized method.
+ * 
+ * If update batching is enabled, then patch and delete events are not applied right away, but are held in a
+ * pending batch that is applied either when it reaches the maximum size, or when the batch window has elapsed,
+ * or just before a put event is applied. Batching always uses the apply thread described below, even if
+ * pipelining was not enabled, and all of those happen on that thread: when the batch window elapses, a task on
+ * the shared executor only puts a flush marker into the queue. So updates are still applied in the order
+ * they were received, and a slow store write never occupies the shared executor. A store failure while applying a batch
+ * is handled the same way as a store failure for a single update.
+ * 
+ * If pipelining is enabled, then the stream thread only parses each event, and puts the parsed data into a
+ * bounded queue that is consumed by a separate apply thread. The apply thread does everything that would
+ * otherwise be done after parsing, including setting the state to VALID and completing the init Future. Since
+ * there is only one apply thread, updates are still applied in the order they were received. If the queue is
+ * full, the stream thread blocks until there is room, which stops it from reading the stream.
  */
 final class StreamProcessor implements DataSource {
   private static final String PUT = "put";
@@ -91,12 +117,22 @@ final class StreamProcessor implements DataSource {
   final Duration initialReconnectDelay;
   private final DiagnosticStore diagnosticAccumulator;
   private final int threadPriority;
+  private final boolean keepOriginalJson;
   private final DataStoreStatusProvider.StatusListener statusListener;
   private volatile EventSource es;
   private final AtomicBoolean initialized = new AtomicBoolean(false);
   private final AtomicBoolean closed = new AtomicBoolean(false);
   private volatile long esStarted = 0;
   private volatile boolean lastStoreUpdateFailed = false;
+  private final Duration batchWindow;
+  private final int batchMaxItems;
+  private final ScheduledExecutorService sharedExecutor;
+  private final Object batchLock = new Object();
+  private final Map<DataKind, Map<String, ItemDescriptor>> pendingBatch = new LinkedHashMap<>(); // guarded by batchLock
+  private int pendingBatchSize = 0; // guarded by batchLock
+  private ScheduledFuture<?> pendingBatchFlush = null; // guarded by batchLock
+  private final ApplyQueue applyQueue; // null if neither pipelining nor batching is enabled
+  private final boolean pipelined;
   private final LDLogger logger;
 
   StreamProcessor(
@@ -108,12 +144,39 @@ final class StreamProcessor implements DataSource {
       String payloadFilter,
       Duration initialReconnectDelay,
       LDLogger logger) {
+    this(httpProperties, dataSourceUpdates, threadPriority, diagnosticAccumulator, streamUri, payloadFilter,
+        initialReconnectDelay, Duration.ZERO, 0, 0, null, logger);
+  }
+
+  StreamProcessor(
+      HttpProperties httpProperties,
+      DataSourceUpdateSink dataSourceUpdates,
+      int threadPriority,
+      DiagnosticStore diagnosticAccumulator,
+      URI streamUri,
+      String payloadFilter,
+      Duration initialReconnectDelay,
+      Duration batchWindow,
+      int batchMaxItems,
+      int pipelineQueueCapacity,
+      ScheduledExecutorService sharedExecutor,
+      LDLogger logger) {
     this.dataSourceUpdates = dataSourceUpdates;
     this.httpProperties = httpProperties;
     this.diagnosticAccumulator = diagnosticAccumulator;
     this.threadPriority = threadPriority;
+    this.keepOriginalJson = DataSourceUpdatesImpl.storeUsesOriginalJson(dataSourceUpdates);
     this.initialReconnectDelay = initialReconnectDelay;
+    this.batchWindow = batchWindow == null || sharedExecutor == null ? Duration.ZERO : batchWindow;
+    this.batchMaxItems = batchMaxItems;
+    this.sharedExecutor = sharedExecutor;
     this.logger = logger;
+    this.pipelined = pipelineQueueCapacity > 0;
+    // Batched updates are always applied on the apply thread, so that when the batch window has elapsed, the
+    // batch is flushed on the same thread as every other update rather than on the shared executor. Without
+    // pipelining, the queue only needs to be big enough for the stream thread not to wait on every flush.
+    this.applyQueue = pipelined ? new ApplyQueue(pipelineQueueCapacity) :
+      !this.batchWindow.isZero() ? new ApplyQueue(Math.max(1, batchMaxItems)) : null;
 
     URI tempUri = HttpHelpers.concatenateUriPath(streamUri, StandardEndpoints.STREAMING_REQUEST_PATH);
     if (payloadFilter != null) {
@@ -188,6 +251,10 @@ final class StreamProcessor implements DataSource {
         .retryDelay(initialReconnectDelay.toMillis(), TimeUnit.MILLISECONDS);
     es = builder.build();
     
+    if (applyQueue != null) {
+      applyQueue.start();
+    }
+
     Thread thread = new Thread(() -> {
       esStarted = System.currentTimeMillis();
       
@@ -236,9 +303,18 @@ final class StreamProcessor implements DataSource {
       return; // was already closed
     }
     logger.info("Closing LaunchDarkly StreamProcessor");
+    synchronized (batchLock) {
+      if (pendingBatchFlush != null) {
+        pendingBatchFlush.cancel(false);
+        pendingBatchFlush = null;
+      }
+    }
     if (statusListener != null) {
       dataSourceUpdates.getDataStoreStatusProvider().removeStatusListener(statusListener);
     }
+    if (applyQueue != null) {
+      applyQueue.close();
+    }
     if (es != null) {
       es.close();
     }
@@ -250,6 +326,10 @@ final class StreamProcessor implements DataSource {
     return initialized.get();
   }
 
+  PipelineStats getPipelineStats() {
+    return pipelined ? applyQueue.getStats() : null;
+  }
+
   // Handles a single StreamEvent and returns true if we should keep the stream alive,
   // or false if we should shut down permanently.
   private boolean handleEvent(StreamEvent event, CompletableFuture<Void> initFuture) {
@@ -284,8 +364,11 @@ final class StreamProcessor implements DataSource {
           logger.warn("Unexpected event found in stream: {}", event.getEventName());
           break;
       }
-      lastStoreUpdateFailed = false;
-      dataSourceUpdates.updateStatus(State.VALID, null);
+      if (applyQueue == null) {
+        // In pipelined mode, the apply thread does this after it has applied the event
+        lastStoreUpdateFailed = false;
+        dataSourceUpdates.updateStatus(State.VALID, null);
+      }
     } catch (StreamInputException e) {
       if (exceptionHasCause(e, StreamClosedWithIncompleteMessageException.class)) {
         // JSON parsing failed because the event was cut off prematurely-- because the
@@ -310,20 +393,24 @@ final class StreamProcessor implements DataSource {
      
       es.interrupt();
     } catch (StreamStoreException e) {
-      // See item 2 in error handling comments at top of class
-      if (statusListener == null) {
-        if (!lastStoreUpdateFailed) {
-          logger.warn("Restarting stream to ensure that we have the latest data");
-        }
-        es.interrupt();
-      }
-      lastStoreUpdateFailed = true;
+      handleStoreFailure();
     } catch (Exception e) {
       logger.warn("Unexpected error from stream processor: {}", LogValues.exceptionSummary(e));
       logger.debug(LogValues.exceptionTrace(e));
     }
   }
 
+  private void handleStoreFailure() {
+    // See item 2 in error handling comments at top of class
+    if (statusListener == null) {
+      if (!lastStoreUpdateFailed) {
+        logger.warn("Restarting stream to ensure that we have the latest data");
+      }
+      es.interrupt();
+    }
+    lastStoreUpdateFailed = true;
+  }
+
   private static boolean exceptionHasCause(Throwable e, Class<?> c) {
     if (c.isAssignableFrom(e.getClass())) {
       return true;
@@ -335,9 +422,22 @@ final class StreamProcessor implements DataSource {
       throws StreamInputException, StreamStoreException {
     recordStreamInit(false);
     esStarted = 0;
-    PutData putData = parseStreamJson(StreamProcessorEvents::parsePutData, eventData);
-    if (!dataSourceUpdates.init(putData.data)) {
-      throw new StreamStoreException();
+    PutData putData = parseStreamJson(jr -> StreamProcessorEvents.parsePutData(jr, keepOriginalJson), eventData);
+    if (applyQueue != null) {
+      applyQueue.enqueue(putData, initFuture);
+    } else {
+      applyPut(putData, initFuture);
+    }
+  }
+
+  private void applyPut(PutData putData, CompletableFuture<Void> initFuture) throws StreamStoreException {
+    synchronized (batchLock) {
+      if (!flushPendingBatch()) {
+        throw new StreamStoreException();
+      }
+      if (!dataSourceUpdates.init(putData.data)) {
+        throw new StreamStoreException();
+      }
     }
     if (!initialized.getAndSet(true)) {
       initFuture.complete(null);
@@ -346,23 +446,98 @@ final class StreamProcessor implements DataSource {
   }
 
   private void handlePatch(Reader eventData) throws StreamInputException, StreamStoreException {
-    PatchData data = parseStreamJson(StreamProcessorEvents::parsePatchData, eventData);
+    PatchData data = parseStreamJson(jr -> StreamProcessorEvents.parsePatchData(jr, keepOriginalJson), eventData);
     if (data.kind == null) {
       return;
     }
-    if (!dataSourceUpdates.upsert(data.kind, data.key, data.item)) {
-      throw new StreamStoreException();
+    if (applyQueue != null) {
+      applyQueue.enqueue(data, null);
+    } else {
+      applyPatch(data);
     }
   }
 
+  private void applyPatch(PatchData data) throws StreamStoreException {
+    applyUpdate(data.kind, data.key, data.item);
+  }
+
   private void handleDelete(Reader eventData) throws StreamInputException, StreamStoreException {
     DeleteData data = parseStreamJson(StreamProcessorEvents::parseDeleteData, eventData);
     if (data.kind == null) {
       return;
     }
+    if (applyQueue != null) {
+      applyQueue.enqueue(data, null);
+    } else {
+      applyDelete(data);
+    }
+  }
+
+  private void applyDelete(DeleteData data) throws StreamStoreException {
     ItemDescriptor placeholder = new ItemDescriptor(data.version, null);
-    if (!dataSourceUpdates.upsert(data.kind, data.key, placeholder)) {
-      throw new StreamStoreException();
+    applyUpdate(data.kind, data.key, placeholder);
+  }
+
+  private void applyUpdate(DataKind kind, String key, ItemDescriptor item) throws StreamStoreException {
+    if (batchWindow.isZero()) {
+      if (!dataSourceUpdates.upsert(kind, key, item)) {
+        throw new StreamStoreException();
+      }
+      return;
+    }
+    synchronized (batchLock) {
+      Map<String, ItemDescriptor> pendingItems = pendingBatch.get(kind);
+      if (pendingItems == null) {
+        pendingItems = new LinkedHashMap<>();
+        pendingBatch.put(kind, pendingItems);
+      }
+      ItemDescriptor pendingItem = pendingItems.get(key);
+      if (pendingItem == null) {
+        pendingItems.put(key, item);
+        pendingBatchSize++;
+      } else if (pendingItem.getVersion() < item.getVersion()) {
+        // Only the highest version of an item can take effect, so there's no need to keep the earlier ones
+        pendingItems.put(key, item);
+      }
+      if (pendingBatchSize >= batchMaxItems) {
+        if (!flushPendingBatch()) {
+          throw new StreamStoreException();
+        }
+      } else if (pendingBatchFlush == null) {
+        // The scheduled task only asks the apply thread to flush; see ApplyQueue.requestFlush()
+        pendingBatchFlush = sharedExecutor.schedule(applyQueue::requestFlush,
+            batchWindow.toMillis(), TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
+  // Applies any pending updates. Returns false if the data store update failed. The caller must hold batchLock.
+  private boolean flushPendingBatch() {
+    if (pendingBatchFlush != null) {
+      pendingBatchFlush.cancel(false);
+      pendingBatchFlush = null;
+    }
+    if (pendingBatchSize == 0) {
+      return true;
+    }
+    ImmutableList.Builder<Map.Entry<DataKind, KeyedItems<ItemDescriptor>>> batch = ImmutableList.builder();
+    for (Map.Entry<DataKind, Map<String, ItemDescriptor>> e: pendingBatch.entrySet()) {
+      batch.add(new AbstractMap.SimpleEntry<>(e.getKey(), new KeyedItems<>(ImmutableList.copyOf(e.getValue().entrySet()))));
+    }
+    pendingBatch.clear();
+    pendingBatchSize = 0;
+    return dataSourceUpdates.upsertAll(new FullDataSet<>(batch.build()));
+  }
+
+  // Called on the apply thread when the batch window has elapsed.
+  private void flushPendingBatchFromWorker() {
+    synchronized (batchLock) {
+      if (closed.get()) {
+        return;
+      }
+      if (!flushPendingBatch()) {
+        handleStoreFailure();
+      }
     }
   }
 
@@ -415,6 +590,143 @@ final class StreamProcessor implements DataSource {
     }
   }
 
+  // The queue between the stream thread and the apply thread in pipelined or batching mode. The counters are only
+  // written by one thread each (fullQueueCount by the stream thread, the others by the apply thread), so
+  // they are volatile rather than atomic.
+  private final class ApplyQueue {
+    private final BlockingQueue<QueuedEvent> queue;
+    private final int capacity;
+    private final Thread thread;
+    private volatile long fullQueueCount = 0;
+    private volatile long appliedCount = 0;
+    private volatile long totalApplyTime = 0;
+    private volatile long maxApplyTime = 0;
+    private boolean loggedFullQueue = false; // accessed only by the stream thread
+    private volatile boolean flushRequested = false;
+
+    ApplyQueue(int capacity) {
+      this.queue = new ArrayBlockingQueue<>(capacity);
+      this.capacity = capacity;
+      this.thread = new Thread(this::run);
+      thread.setName("LaunchDarkly-streaming-apply");
+      thread.setDaemon(true);
+      thread.setPriority(threadPriority);
+    }
+
+    void start() {
+      thread.start();
+    }
+
+    void close() {
+      queue.clear(); // also unblocks the stream thread if it was waiting for room in the queue
+      thread.interrupt();
+    }
+
+    // Called on the stream thread.
+    void enqueue(Object data, CompletableFuture<Void> initFuture) {
+      QueuedEvent event = new QueuedEvent(data, initFuture);
+      if (queue.offer(event)) {
+        loggedFullQueue = false;
+        return;
+      }
+      fullQueueCount++;
+      if (!loggedFullQueue) {
+        logger.warn("Stream updates are not being applied as fast as they are received; pausing stream until {} queued updates are applied",
+            capacity);
+        loggedFullQueue = true;
+      }
+      try {
+        queue.put(event);
+      } catch (InterruptedException e) {
+        if (closed.get()) {
+          return;
+        }
+        // The event is lost, so we can't trust our data any more. Restarting the stream gets us a new put
+        // event with the full data set. We don't restore the interrupted status: that would make every later
+        // wait for room in the queue fail immediately, and we have already dealt with the interruption.
+        logger.error("Stream thread was interrupted while waiting for room in the update queue; an update was dropped, restarting stream");
+        dataSourceUpdates.updateStatus(State.INTERRUPTED,
+            new ErrorInfo(ErrorKind.UNKNOWN, 0, "stream update was dropped", Instant.now()));
+        es.interrupt();
+      }
+    }
+
+    // Called on the shared executor when the batch window has elapsed. If the queue is full, there's no need
+    // to wait for room, since the apply thread is busy anyway; it checks the flag after each event.
+    void requestFlush() {
+      if (!queue.offer(new QueuedEvent(FLUSH_BATCH, null))) {
+        flushRequested = true;
+      }
+    }
+
+    private void run() {
+      while (!closed.get()) {
+        QueuedEvent event;
+        try {
+          event = queue.take();
+        } catch (InterruptedException e) {
+          break;
+        }
+        if (closed.get()) {
+          break;
+        }
+        if (event.data == FLUSH_BATCH) {
+          flushRequested = false;
+          flushPendingBatchFromWorker();
+          continue;
+        }
+        long startTime = System.nanoTime();
+        apply(event);
+        long elapsed = System.nanoTime() - startTime;
+        totalApplyTime += elapsed;
+        if (elapsed > maxApplyTime) {
+          maxApplyTime = elapsed;
+        }
+        appliedCount++;
+        if (flushRequested) {
+          flushRequested = false;
+          flushPendingBatchFromWorker();
+        }
+      }
+    }
+
+    private void apply(QueuedEvent event) {
+      try {
+        if (event.data instanceof PutData) {
+          applyPut((PutData)event.data, event.initFuture);
+        } else if (event.data instanceof PatchData) {
+          applyPatch((PatchData)event.data);
+        } else if (event.data instanceof DeleteData) {
+          applyDelete((DeleteData)event.data);
+        }
+        lastStoreUpdateFailed = false;
+        dataSourceUpdates.updateStatus(State.VALID, null);
+      } catch (StreamStoreException e) {
+        handleStoreFailure();
+      } catch (Exception e) {
+        logger.warn("Unexpected error from stream processor: {}", LogValues.exceptionSummary(e));
+        logger.debug(LogValues.exceptionTrace(e));
+      }
+    }
+
+    PipelineStats getStats() {
+      return new PipelineStats(queue.size(), capacity, fullQueueCount, appliedCount, totalApplyTime, maxApplyTime);
+    }
+  }
+
+  // Put into the apply queue to make the apply thread flush the pending batch.
+  private static final Object FLUSH_BATCH = new Object();
+
+  private static final class QueuedEvent {
+    final Object data;
+    final CompletableFuture<Void> initFuture;
+
+    QueuedEvent(Object data, CompletableFuture<Void> initFuture) {
+      this.data = data;
+      this.initFuture = initFuture;
+    }
+  }
+
   // StreamInputException is either a JSON parsing error *or* a failure to query another endpoint
   // (for indirect/put or indirect/patch); either way, it implies that we were unable to get valid data from LD services.
   @SuppressWarnings("serial")
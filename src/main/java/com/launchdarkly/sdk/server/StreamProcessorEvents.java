@@ -16,6 +16,7 @@ import java.io.IOException;
 import static com.launchdarkly.sdk.server.DataModel.ALL_DATA_KINDS;
 import static com.launchdarkly.sdk.server.DataModel.SEGMENTS;
 import static com.launchdarkly.sdk.server.DataModelSerialization.deserializeFromJsonReader;
+import static com.launchdarkly.sdk.server.DataModelSerialization.deserializeKeepingOriginalJson;
 import static com.launchdarkly.sdk.server.DataModelSerialization.deserializeFromParsedJson;
 import static com.launchdarkly.sdk.server.DataModelSerialization.parseFullDataSet;
 import static com.launchdarkly.sdk.server.JsonHelpers.gsonInstance;
@@ -118,6 +119,12 @@ abstract class StreamProcessorEvents {
   }
   
   static PutData parsePutData(JsonReader jr) {
+    return parsePutData(jr, false);
+  }
+
+  // If keepOriginalJson is true, the JSON text of each item is kept along with it (see
+  // DataModelSerialization.deserializeKeepingOriginalJson).
+  static PutData parsePutData(JsonReader jr, boolean keepOriginalJson) {
     String path = null;
     FullDataSet<ItemDescriptor> data = null;
     
@@ -130,7 +137,7 @@ abstract class StreamProcessorEvents {
           path = jr.nextString();
           break;
         case "data":
-          data = parseFullDataSet(jr);
+          data = parseFullDataSet(jr, keepOriginalJson);
           break;
         default:
           jr.skipValue(); 
@@ -151,6 +158,10 @@ abstract class StreamProcessorEvents {
   }
   
   static PatchData parsePatchData(JsonReader jr) {
+    return parsePatchData(jr, false);
+  }
+
+  static PatchData parsePatchData(JsonReader jr, boolean keepOriginalJson) {
     // The logic here is a little convoluted because JSON object property ordering is arbitrary, so
     // we don't know for sure that we'll see the "path" property before the "data" property, but we
     // won't know what kind of object to parse "data" into until we know whether "path" starts with
@@ -179,7 +190,9 @@ abstract class StreamProcessorEvents {
           break;
         case "data":
           if (kind != null) {
-            dataItem = deserializeFromJsonReader(kind, jr);
+            dataItem = keepOriginalJson ?
+                deserializeKeepingOriginalJson(kind, gsonInstance().fromJson(jr, JsonElement.class)) :
+                deserializeFromJsonReader(kind, jr);
           } else {
             bufferedParsedData = gsonInstance().fromJson(jr, JsonElement.class);
           }
@@ -197,7 +210,8 @@ abstract class StreamProcessorEvents {
         if (bufferedParsedData == null) {
           throw missingRequiredProperty("patch", "path");
         }
-        dataItem = deserializeFromParsedJson(kind, bufferedParsedData);
+        dataItem = keepOriginalJson ? deserializeKeepingOriginalJson(kind, bufferedParsedData) :
+          deserializeFromParsedJson(kind, bufferedParsedData);
       }
       return new PatchData(kind, key, new ItemDescriptor(dataItem.getVersion(), dataItem));
     } catch (IOException e) {
@@ -0,0 +1,843 @@
+package com.launchdarkly.sdk.server;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.AbstractLoadingCache;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * A size-bounded {@link com.google.common.cache.LoadingCache} that uses a simplified form of the
+ * W-TinyLFU eviction policy, for use by {@link PersistentDataStoreWrapper} when a maximum cache weight
+ * has been configured.
+ * <p>
+ * New entries go into a small LRU "window". Entries that fall out of the window move into the main
+ * space, which is a segmented LRU: entries start out on probation, and are promoted to the protected
+ * segment if they are read again. When the cache is over its maximum weight, the least recently used
+ * probationary entry is compared with the most recently admitted one, and whichever has been used less
+ * often recently (according to a {@link FrequencySketch}) is evicted. This keeps frequently used entries
+ * from being pushed out by a burst of entries that are only used once.
+ * <p>
+ * Expiration works like Guava's {@code expireAfterWrite} or {@code refreshAfterWrite}, depending on
+ * the {@code refreshAfterWrite} parameter. Concurrent loads of the same key are coalesced.
+ * <p>
+ * Lookups do not block on the eviction lock: if it is busy, the read is simply not recorded in the
+ * access order and frequency information.
+ * <p>
+ * As with Guava's caches, {@link #asMap()} provides a view of the entries that does not count as a hit
+ * or miss in {@link #stats()}; reads through the view also do not affect the eviction policy.
+ */
+final class WindowTinyLfuCache<K, V> extends AbstractLoadingCache<K, V> {
+  static final double WINDOW_FRACTION = 0.01;
+  static final double PROTECTED_FRACTION = 0.8;
+
+  private static final int NONE = 0;
+  private static final int WINDOW = 1;
+  private static final int PROBATION = 2;
+  private static final int PROTECTED = 3;
+
+  private final long maximumWeight;
+  private final long windowMaximumWeight;
+  private final long protectedMaximumWeight;
+  private final Weigher<? super K, ? super V> weigher;
+  private final long ttlNanos; // negative means entries never become stale
+  private final boolean refreshAfterWrite;
+  private final CacheLoader<K, V> loader;
+  private final Consumer<? super K> evictionListener;
+  private final Ticker ticker;
+
+  private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<K, CompletableFuture<V>> loadsInProgress = new ConcurrentHashMap<>();
+  private final Set<K> refreshesInProgress = ConcurrentHashMap.newKeySet();
+
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  private final AccessOrderQueue<K, V> windowQueue = new AccessOrderQueue<>();
+  private final AccessOrderQueue<K, V> probationQueue = new AccessOrderQueue<>();
+  private final AccessOrderQueue<K, V> protectedQueue = new AccessOrderQueue<>();
+  private final FrequencySketch sketch = new FrequencySketch();
+  private long windowWeight; // guarded by evictionLock
+  private long probationWeight; // guarded by evictionLock
+  private long protectedWeight; // guarded by evictionLock
+  private volatile long epoch; // incremented by invalidateAll, while holding evictionLock
+  private volatile MapView mapView; // created on first call to asMap()
+
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder loadSuccessCount = new LongAdder();
+  private final LongAdder loadExceptionCount = new LongAdder();
+  private final LongAdder totalLoadTime = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+
+  WindowTinyLfuCache(
+      long maximumWeight,
+      Weigher<? super K, ? super V> weigher,
+      Duration ttl,
+      boolean refreshAfterWrite,
+      CacheLoader<K, V> loader,
+      Consumer<? super K> evictionListener,
+      Ticker ticker
+      ) {
+    this.maximumWeight = maximumWeight;
+    this.windowMaximumWeight = Math.max(1, (long)(maximumWeight * WINDOW_FRACTION));
+    this.protectedMaximumWeight = (long)((maximumWeight - windowMaximumWeight) * PROTECTED_FRACTION);
+    this.weigher = weigher;
+    this.ttlNanos = ttl.isNegative() ? -1 : ttl.toNanos();
+    this.refreshAfterWrite = refreshAfterWrite;
+    this.loader = loader;
+    this.evictionListener = evictionListener;
+    this.ticker = ticker;
+  }
+
+  @Override
+  public V get(K key) throws ExecutionException {
+    Node<K, V> node = data.get(key);
+    if (node != null) {
+      if (!isStale(node)) {
+        hitCount.increment();
+        afterRead(node);
+        return node.value;
+      }
+      if (refreshAfterWrite) {
+        // Like Guava's refreshAfterWrite: if the loader reloads synchronously, we return the new value;
+        // if it reloads asynchronously, or fails, we return the stale value.
+        hitCount.increment();
+        afterRead(node);
+        refreshNode(node);
+        Node<K, V> current = data.get(key);
+        return current == null ? node.value : current.value;
+      }
+    }
+    missCount.increment();
+    return load(key, node);
+  }
+
+  @Override
+  public V getIfPresent(Object key) {
+    Node<K, V> node = data.get(key);
+    if (node == null || (!refreshAfterWrite && isStale(node))) {
+      missCount.increment();
+      return null;
+    }
+    hitCount.increment();
+    afterRead(node);
+    return node.value;
+  }
+
+  @Override
+  public void put(K key, V value) {
+    int weight = weigher.weigh(key, value);
+    List<K> evicted = new ArrayList<>();
+    evictionLock.lock();
+    try {
+      insert(key, value, weight, evicted);
+    } finally {
+      evictionLock.unlock();
+    }
+    notifyEvicted(evicted);
+  }
+
+  @Override
+  public void refresh(K key) {
+    Node<K, V> node = data.get(key);
+    if (node != null) {
+      refreshNode(node);
+      return;
+    }
+    try {
+      load(key, null);
+    } catch (Exception e) {
+      // As with Guava's refresh, a failure here is not reported to the caller; it is counted in stats().
+    }
+  }
+
+  @Override
+  public void invalidate(Object key) {
+    evictionLock.lock();
+    try {
+      Node<K, V> node = data.remove(key);
+      if (node != null) {
+        unlink(node);
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public void invalidateAll() {
+    evictionLock.lock();
+    try {
+      data.clear();
+      windowQueue.clear();
+      probationQueue.clear();
+      protectedQueue.clear();
+      windowWeight = 0;
+      probationWeight = 0;
+      protectedWeight = 0;
+      epoch++;
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public long size() {
+    return data.size();
+  }
+
+  @Override
+  public ConcurrentMap<K, V> asMap() {
+    MapView view = mapView;
+    if (view == null) {
+      mapView = view = new MapView(); // it doesn't matter if two threads do this at once
+    }
+    return view;
+  }
+
+  @Override
+  public CacheStats stats() {
+    return new CacheStats(hitCount.sum(), missCount.sum(), loadSuccessCount.sum(), loadExceptionCount.sum(),
+        totalLoadTime.sum(), evictionCount.sum());
+  }
+
+  /**
+   * Returns the current estimated total weight of all entries.
+   *
+   * @return the total weight
+   */
+  long weightedSize() {
+    evictionLock.lock();
+    try {
+      return windowWeight + probationWeight + protectedWeight;
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  private boolean isStale(Node<K, V> node) {
+    return ttlNanos >= 0 && ticker.read() - node.writeTime >= ttlNanos;
+  }
+
+  private V load(K key, Node<K, V> staleNode) throws ExecutionException {
+    CompletableFuture<V> future = new CompletableFuture<>();
+    CompletableFuture<V> existing = loadsInProgress.putIfAbsent(key, future);
+    if (existing != null) {
+      return awaitLoad(existing);
+    }
+    try {
+      long epochBefore = epoch;
+      long startTime = ticker.read();
+      V value;
+      try {
+        value = loader.load(key);
+      } catch (Throwable t) {
+        loadExceptionCount.increment();
+        totalLoadTime.add(ticker.read() - startTime);
+        future.completeExceptionally(t);
+        throw asLoadFailure(t);
+      }
+      totalLoadTime.add(ticker.read() - startTime);
+      if (value == null) {
+        loadExceptionCount.increment();
+        InvalidCacheLoadException e = new InvalidCacheLoadException("CacheLoader returned null for key " + key);
+        future.completeExceptionally(e);
+        throw e;
+      }
+      loadSuccessCount.increment();
+      replaceIfUnchanged(key, value, staleNode, epochBefore);
+      future.complete(value);
+      return value;
+    } finally {
+      loadsInProgress.remove(key, future);
+    }
+  }
+
+  private V awaitLoad(CompletableFuture<V> future) throws ExecutionException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new UncheckedExecutionException(e);
+    } catch (ExecutionException e) {
+      throw asLoadFailure(e.getCause());
+    }
+  }
+
+  private static ExecutionException asLoadFailure(Throwable t) {
+    // This matches the exceptions thrown by Guava's LoadingCache.get()
+    if (t instanceof Error) {
+      throw (Error)t;
+    }
+    if (t instanceof RuntimeException) {
+      throw new UncheckedExecutionException(t);
+    }
+    return new ExecutionException(t);
+  }
+
+  private void refreshNode(Node<K, V> node) {
+    K key = node.key;
+    if (!refreshesInProgress.add(key)) {
+      return;
+    }
+    long epochBefore = epoch;
+    long startTime = ticker.read();
+    ListenableFuture<V> future;
+    try {
+      future = loader.reload(key, node.value);
+    } catch (Exception e) {
+      loadExceptionCount.increment();
+      totalLoadTime.add(ticker.read() - startTime);
+      refreshesInProgress.remove(key);
+      return;
+    }
+    future.addListener(() -> {
+      try {
+        V value = Futures.getDone(future);
+        if (value == null) {
+          loadExceptionCount.increment();
+        } else {
+          loadSuccessCount.increment();
+          replaceIfUnchanged(key, value, node, epochBefore);
+        }
+      } catch (Exception e) {
+        loadExceptionCount.increment();
+      } finally {
+        totalLoadTime.add(ticker.read() - startTime);
+        refreshesInProgress.remove(key);
+      }
+    }, MoreExecutors.directExecutor());
+  }
+
+  // Stores a newly loaded value, unless the entry has been modified or the cache has been cleared
+  // since the load started; in that case the loaded value may be out of date.
+  private void replaceIfUnchanged(K key, V value, Node<K, V> expectedNode, long expectedEpoch) {
+    int weight = weigher.weigh(key, value);
+    List<K> evicted = new ArrayList<>();
+    evictionLock.lock();
+    try {
+      if (epoch != expectedEpoch || data.get(key) != expectedNode) {
+        return;
+      }
+      insert(key, value, weight, evicted);
+    } finally {
+      evictionLock.unlock();
+    }
+    notifyEvicted(evicted);
+  }
+
+  // Must be called while holding evictionLock. Returns the entry that was replaced, if any. The weight is
+  // computed by the caller, before taking the lock, wherever the value is known in advance.
+  private Node<K, V> insert(K key, V value, int weight, List<K> evictedOut) {
+    Node<K, V> node = new Node<>(key, value, weight, ticker.read());
+    Node<K, V> oldNode = data.put(key, node);
+    int queue = WINDOW;
+    if (oldNode != null) {
+      // A replaced entry keeps its position in the eviction policy
+      queue = oldNode.queue == NONE ? WINDOW : oldNode.queue;
+      unlink(oldNode);
+    }
+    link(node, queue);
+    sketch.ensureCapacity(data.size());
+    sketch.increment(key.hashCode());
+    evictEntries(evictedOut);
+    return oldNode;
+  }
+
+  // Must be called while holding evictionLock.
+  private void evictEntries(List<K> evictedOut) {
+    // Entries that fall out of the admission window become candidates for the main space.
+    while (windowWeight > windowMaximumWeight && windowQueue.head != null) {
+      Node<K, V> node = windowQueue.head;
+      unlink(node);
+      link(node, PROBATION);
+    }
+    while (windowWeight + probationWeight + protectedWeight > maximumWeight) {
+      Node<K, V> victim = probationQueue.head != null ? probationQueue.head :
+        protectedQueue.head != null ? protectedQueue.head : windowQueue.head;
+      Node<K, V> candidate = probationQueue.tail;
+      Node<K, V> evict = victim;
+      if (victim.queue == PROBATION && candidate != victim) {
+        // The candidate is only admitted if it has been used more often than the victim
+        evict = sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode()) ?
+            victim : candidate;
+      }
+      unlink(evict);
+      data.remove(evict.key, evict);
+      evictionCount.increment();
+      evictedOut.add(evict.key);
+    }
+  }
+
+  // Returns the node's value, or null if the node is null or has expired. In refreshAfterWrite mode
+  // entries don't expire; a stale value is still returned until it has been reloaded.
+  private V liveValue(Node<K, V> node) {
+    return node == null || (!refreshAfterWrite && isStale(node)) ? null : node.value;
+  }
+
+  private void afterRead(Node<K, V> node) {
+    if (!evictionLock.tryLock()) {
+      return;
+    }
+    try {
+      if (node.queue == NONE || data.get(node.key) != node) {
+        return;
+      }
+      sketch.increment(node.key.hashCode());
+      switch (node.queue) {
+      case WINDOW:
+        windowQueue.moveToTail(node);
+        break;
+      case PROBATION:
+        unlink(node);
+        link(node, PROTECTED);
+        while (protectedWeight > protectedMaximumWeight && protectedQueue.head != null) {
+          Node<K, V> demoted = protectedQueue.head;
+          unlink(demoted);
+          link(demoted, PROBATION);
+        }
+        break;
+      case PROTECTED:
+        protectedQueue.moveToTail(node);
+        break;
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  private void notifyEvicted(List<K> evicted) {
+    if (evictionListener != null) {
+      for (K key: evicted) {
+        evictionListener.accept(key);
+      }
+    }
+  }
+
+  // Must be called while holding evictionLock.
+  private void link(Node<K, V> node, int queue) {
+    node.queue = queue;
+    switch (queue) {
+    case WINDOW:
+      windowQueue.add(node);
+      windowWeight += node.weight;
+      break;
+    case PROBATION:
+      probationQueue.add(node);
+      probationWeight += node.weight;
+      break;
+    case PROTECTED:
+      protectedQueue.add(node);
+      protectedWeight += node.weight;
+      break;
+    }
+  }
+
+  // Must be called while holding evictionLock.
+  private void unlink(Node<K, V> node) {
+    switch (node.queue) {
+    case WINDOW:
+      windowQueue.remove(node);
+      windowWeight -= node.weight;
+      break;
+    case PROBATION:
+      probationQueue.remove(node);
+      probationWeight -= node.weight;
+      break;
+    case PROTECTED:
+      protectedQueue.remove(node);
+      protectedWeight -= node.weight;
+      break;
+    }
+    node.queue = NONE;
+  }
+
+  // The view returned by asMap(). Writes go through the same code as put() and invalidate(), so they
+  // update the eviction policy and notify the eviction listener; reads only look at the data map.
+  private final class MapView extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+    private Set<Map.Entry<K, V>> entrySet;
+
+    @Override
+    public V get(Object key) {
+      return liveValue(data.get(key));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+      if (ttlNanos < 0 || refreshAfterWrite) {
+        return data.size();
+      }
+      // Expired entries that have not been removed yet are not visible, so we have to count.
+      int n = 0;
+      for (Iterator<Map.Entry<K, V>> it = new EntryIterator(); it.hasNext(); it.next()) {
+        n++;
+      }
+      return n;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return !new EntryIterator().hasNext();
+    }
+
+    @Override
+    public V put(K key, V value) {
+      Objects.requireNonNull(value);
+      return update(key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+      Objects.requireNonNull(value);
+      return update(key, value, true);
+    }
+
+    @Override
+    public V remove(Object key) {
+      evictionLock.lock();
+      try {
+        Node<K, V> node = data.remove(key);
+        if (node == null) {
+          return null;
+        }
+        unlink(node);
+        return liveValue(node);
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+
+    // Unlike the default implementation in ConcurrentMap, this is atomic, and does not rewrite the entry
+    // if the function returns the existing value.
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+      List<K> evicted = new ArrayList<>();
+      V newValue;
+      evictionLock.lock();
+      try {
+        Node<K, V> node = data.get(key);
+        V oldValue = liveValue(node);
+        newValue = remappingFunction.apply(key, oldValue);
+        if (newValue == null) {
+          if (node != null) {
+            data.remove(key);
+            unlink(node);
+          }
+        } else if (newValue != oldValue) {
+          // The new value is only known here, so this is the one case where we weigh it under the lock
+          insert(key, newValue, weigher.weigh(key, newValue), evicted);
+        }
+      } finally {
+        evictionLock.unlock();
+      }
+      notifyEvicted(evicted);
+      return newValue;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+      evictionLock.lock();
+      try {
+        Node<K, V> node = data.get(key);
+        if (value == null || !value.equals(liveValue(node))) {
+          return false;
+        }
+        data.remove(key);
+        unlink(node);
+        return true;
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+      Objects.requireNonNull(newValue);
+      int weight = weigher.weigh(key, newValue);
+      List<K> evicted = new ArrayList<>();
+      evictionLock.lock();
+      try {
+        if (oldValue == null || !oldValue.equals(liveValue(data.get(key)))) {
+          return false;
+        }
+        insert(key, newValue, weight, evicted);
+      } finally {
+        evictionLock.unlock();
+      }
+      notifyEvicted(evicted);
+      return true;
+    }
+
+    @Override
+    public V replace(K key, V value) {
+      Objects.requireNonNull(value);
+      int weight = weigher.weigh(key, value);
+      List<K> evicted = new ArrayList<>();
+      V oldValue;
+      evictionLock.lock();
+      try {
+        oldValue = liveValue(data.get(key));
+        if (oldValue != null) {
+          insert(key, value, weight, evicted);
+        }
+      } finally {
+        evictionLock.unlock();
+      }
+      notifyEvicted(evicted);
+      return oldValue;
+    }
+
+    @Override
+    public void clear() {
+      invalidateAll();
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+      Set<Map.Entry<K, V>> ret = entrySet;
+      if (ret == null) {
+        entrySet = ret = new AbstractSet<Map.Entry<K, V>>() {
+          @Override
+          public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+          }
+
+          @Override
+          public int size() {
+            return data.size();
+          }
+        };
+      }
+      return ret;
+    }
+
+    private V update(K key, V value, boolean onlyIfAbsent) {
+      int weight = weigher.weigh(key, value);
+      List<K> evicted = new ArrayList<>();
+      V oldValue;
+      evictionLock.lock();
+      try {
+        oldValue = liveValue(data.get(key));
+        if (oldValue == null || !onlyIfAbsent) {
+          insert(key, value, weight, evicted);
+        }
+      } finally {
+        evictionLock.unlock();
+      }
+      notifyEvicted(evicted);
+      return oldValue;
+    }
+  }
+
+  // Iterates over the entries that have not expired. Like the iterators of ConcurrentHashMap, this is
+  // weakly consistent: it never throws ConcurrentModificationException.
+  private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+    private final Iterator<Node<K, V>> nodes = data.values().iterator();
+    private Map.Entry<K, V> next;
+    private K lastKey;
+
+    @Override
+    public boolean hasNext() {
+      while (next == null && nodes.hasNext()) {
+        Node<K, V> node = nodes.next();
+        V value = liveValue(node);
+        if (value != null) {
+          next = new AbstractMap.SimpleImmutableEntry<>(node.key, value);
+        }
+      }
+      return next != null;
+    }
+
+    @Override
+    public Map.Entry<K, V> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Map.Entry<K, V> ret = next;
+      next = null;
+      lastKey = ret.getKey();
+      return ret;
+    }
+
+    @Override
+    public void remove() {
+      if (lastKey == null) {
+        throw new IllegalStateException();
+      }
+      invalidate(lastKey);
+      lastKey = null;
+    }
+  }
+
+  private static final class Node<K, V> {
+    final K key;
+    final V value;
+    final int weight;
+    final long writeTime;
+    int queue; // guarded by evictionLock
+    Node<K, V> prev; // guarded by evictionLock
+    Node<K, V> next; // guarded by evictionLock
+
+    Node(K key, V value, int weight, long writeTime) {
+      this.key = key;
+      this.value = value;
+      this.weight = weight;
+      this.writeTime = writeTime;
+    }
+  }
+
+  // A doubly-linked list of nodes in order of access, from least recently used (head) to most recently
+  // used (tail). Not thread-safe.
+  private static final class AccessOrderQueue<K, V> {
+    Node<K, V> head;
+    Node<K, V> tail;
+
+    void add(Node<K, V> node) {
+      node.prev = tail;
+      node.next = null;
+      if (tail == null) {
+        head = node;
+      } else {
+        tail.next = node;
+      }
+      tail = node;
+    }
+
+    void remove(Node<K, V> node) {
+      if (node.prev == null) {
+        head = node.next;
+      } else {
+        node.prev.next = node.next;
+      }
+      if (node.next == null) {
+        tail = node.prev;
+      } else {
+        node.next.prev = node.prev;
+      }
+      node.prev = null;
+      node.next = null;
+    }
+
+    void moveToTail(Node<K, V> node) {
+      if (node != tail) {
+        remove(node);
+        add(node);
+      }
+    }
+
+    void clear() {
+      head = null;
+      tail = null;
+    }
+  }
+
+  /**
+   * A Count-Min sketch of 4-bit counters, which estimates how often each key has been used recently.
+   * All counters are halved periodically, so that the estimates favor recent activity. Not thread-safe.
+   */
+  static final class FrequencySketch {
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MINIMUM_TABLE_SIZE = 16;
+
+    private long[] table = new long[MINIMUM_TABLE_SIZE];
+    private int sampleSize = MINIMUM_TABLE_SIZE * 10;
+    private int additions;
+
+    /**
+     * Grows the sketch if necessary so that it can track roughly the specified number of keys. Growing
+     * the sketch discards the existing frequency information.
+     *
+     * @param expectedKeys the number of keys
+     */
+    void ensureCapacity(int expectedKeys) {
+      if (expectedKeys <= table.length) {
+        return;
+      }
+      int size = Integer.highestOneBit(expectedKeys - 1) << 1;
+      table = new long[size];
+      sampleSize = size * 10;
+      additions = 0;
+    }
+
+    int frequency(int hashCode) {
+      int hash = spread(hashCode);
+      int frequency = Integer.MAX_VALUE;
+      for (int i = 0; i < SEEDS.length; i++) {
+        int counterOffset = counterIndex(hash, i) << 2;
+        int count = (int)((table[tableIndex(hash, i)] >>> counterOffset) & 0xfL);
+        frequency = Math.min(frequency, count);
+      }
+      return frequency;
+    }
+
+    void increment(int hashCode) {
+      int hash = spread(hashCode);
+      boolean added = false;
+      for (int i = 0; i < SEEDS.length; i++) {
+        int index = tableIndex(hash, i);
+        int counterOffset = counterIndex(hash, i) << 2;
+        long mask = 0xfL << counterOffset;
+        if ((table[index] & mask) != mask) {
+          table[index] += 1L << counterOffset;
+          added = true;
+        }
+      }
+      if (added && ++additions >= sampleSize) {
+        reset();
+      }
+    }
+
+    private void reset() {
+      for (int i = 0; i < table.length; i++) {
+        table[i] = (table[i] >>> 1) & RESET_MASK;
+      }
+      additions /= 2;
+    }
+
+    private int tableIndex(int hash, int i) {
+      long h = (hash + SEEDS[i]) * SEEDS[i];
+      h += h >>> 32;
+      return ((int)h) & (table.length - 1);
+    }
+
+    // Each long in the table holds 16 counters; this picks one of them for the given hash and seed.
+    private static int counterIndex(int hash, int i) {
+      return (hash >>> (i << 3)) & 0xf;
+    }
+
+    private static int spread(int hashCode) {
+      int h = hashCode * 0x9e3779b9;
+      return h ^ (h >>> 16);
+    }
+  }
+}
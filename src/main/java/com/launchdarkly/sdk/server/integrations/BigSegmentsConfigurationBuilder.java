@@ -51,11 +51,30 @@ public final class BigSegmentsConfigurationBuilder implements ComponentConfigure
    */
   public static final Duration DEFAULT_STALE_AFTER = Duration.ofMinutes(2);
 
+  /**
+   * The default value for {@link #batchWindow(Duration)}: zero, meaning that each user's membership is
+   * queried separately.
+   *
+   * @since 7.5.0
+   */
+  public static final Duration DEFAULT_BATCH_WINDOW = Duration.ZERO;
+
+  /**
+   * The default value for {@link #maxBatchSize(int)}.
+   *
+   * @since 7.5.0
+   */
+  public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
   private final ComponentConfigurer<BigSegmentStore> storeConfigurer;
   private int userCacheSize = DEFAULT_USER_CACHE_SIZE;
   private Duration userCacheTime = DEFAULT_USER_CACHE_TIME;
   private Duration statusPollInterval = DEFAULT_STATUS_POLL_INTERVAL;
   private Duration staleAfter = DEFAULT_STALE_AFTER;
+  private Duration batchWindow = DEFAULT_BATCH_WINDOW;
+  private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+  private double userCacheRefreshAheadRatio = 0;
+  private Duration userCacheStaleWhileRevalidate = Duration.ZERO;
 
   /**
    * Creates a new builder for Big Segments configuration.
@@ -152,6 +171,98 @@ public final class BigSegmentsConfigurationBuilder implements ComponentConfigure
     return this;
   }
 
+  /**
+   * Sets how long the SDK waits to combine queries for different users into one store query.
+   * <p>
+   * When many users who are not in the cache are evaluated at the same time, such as right after the
+   * application starts or after their cache entries expire, each of them would normally cause a separate
+   * database query. With a nonzero batch window, the first query waits for up to this long for others to
+   * arrive, and then all of them are done with a single call to
+   * {@link BigSegmentStore#getMemberships(java.util.Collection)}, which for most databases takes one round
+   * trip. Concurrent evaluations for a user whose query is already in progress wait for that query rather
+   * than starting another.
+   * <p>
+   * This adds up to this much latency to evaluations that have to query the store, so it should be a few
+   * milliseconds at most, and it is only worthwhile if the store supports multi-user queries.
+   *
+   * @param batchWindow the batch window (a null or negative value will be changed to
+   *                    {@link #DEFAULT_BATCH_WINDOW}, which disables batching)
+   * @return the builder
+   * @see #DEFAULT_BATCH_WINDOW
+   * @since 7.5.0
+   */
+  public BigSegmentsConfigurationBuilder batchWindow(Duration batchWindow) {
+    this.batchWindow = batchWindow != null && !batchWindow.isNegative() ? batchWindow : DEFAULT_BATCH_WINDOW;
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of users whose memberships are queried together when
+   * {@link #batchWindow(Duration)} is enabled. A batch is queried as soon as it is full, without waiting
+   * for the rest of the batch window.
+   *
+   * @param maxBatchSize the maximum batch size (a zero or negative value will be changed to
+   *                     {@link #DEFAULT_MAX_BATCH_SIZE})
+   * @return the builder
+   * @see #DEFAULT_MAX_BATCH_SIZE
+   * @since 7.5.0
+   */
+  public BigSegmentsConfigurationBuilder maxBatchSize(int maxBatchSize) {
+    this.maxBatchSize = maxBatchSize > 0 ? maxBatchSize : DEFAULT_MAX_BATCH_SIZE;
+    return this;
+  }
+
+  /**
+   * Enables refreshing of cached user states in the background shortly before they expire.
+   * <p>
+   * Normally, once a user's Big Segment state has been cached for {@link #userCacheTime(Duration)}, it
+   * expires, and the next evaluation for that user has to wait for a new store query. If you set a
+   * refresh-ahead ratio, each cached state is instead given a random refresh time within that final
+   * fraction of the cache time. The first evaluation for the user after that time starts reloading the
+   * state on a background thread and uses the cached state without waiting; only one such reload is done
+   * at a time for each user. So users who are evaluated frequently are kept in the cache without ever
+   * waiting for a query, while users who are not evaluated during their refresh window expire as usual.
+   * For instance, a ratio of 0.4 with the default 5-second cache time spreads the reloads over the last
+   * 2 seconds.
+   * <p>
+   * The default is zero, meaning that cached states are only reloaded when they expire. This property has
+   * no effect if the cache time is zero. Values greater than 1 are treated as 1.
+   *
+   * @param ratio the fraction of the user cache time during which each state may be refreshed early
+   * @return the builder
+   * @see #userCacheStaleWhileRevalidate(Duration)
+   * @since 7.5.0
+   */
+  public BigSegmentsConfigurationBuilder userCacheRefreshAhead(double ratio) {
+    this.userCacheRefreshAheadRatio = ratio < 0 ? 0 : Math.min(ratio, 1.0);
+    return this;
+  }
+
+  /**
+   * Sets how long a user's Big Segment state may still be used after it has expired from the cache,
+   * while a new state is loaded in the background.
+   * <p>
+   * With a nonzero value, a cached state is kept for this much longer than {@link #userCacheTime(Duration)}.
+   * An evaluation that finds an expired state during that time uses it without waiting and starts reloading
+   * it on a background thread, as with {@link #userCacheRefreshAhead(double)}; the
+   * {@link EvaluationReason} for such an evaluation has a {@link BigSegmentsStatus} of
+   * {@link BigSegmentsStatus#STALE}, since the membership may be out of date. Only states that have not
+   * been used at all in that time have to be queried while the evaluation waits.
+   * <p>
+   * The default is zero, meaning that an expired state is never used. This property has no effect if the
+   * cache time is zero.
+   *
+   * @param staleWhileRevalidate how long to keep using an expired state (a null or negative value will be
+   *                             changed to zero)
+   * @return the builder
+   * @since 7.5.0
+   */
+  public BigSegmentsConfigurationBuilder userCacheStaleWhileRevalidate(Duration staleWhileRevalidate) {
+    this.userCacheStaleWhileRevalidate = staleWhileRevalidate != null && !staleWhileRevalidate.isNegative()
+        ? staleWhileRevalidate : Duration.ZERO;
+    return this;
+  }
+
   @Override
   public BigSegmentsConfiguration build(ClientContext context) {
     BigSegmentStore store = storeConfigurer == null ? null : storeConfigurer.build(context);
@@ -160,6 +271,10 @@ public final class BigSegmentsConfigurationBuilder implements ComponentConfigure
         userCacheSize,
         userCacheTime,
         statusPollInterval,
-        staleAfter);
+        staleAfter,
+        batchWindow,
+        maxBatchSize,
+        userCacheRefreshAheadRatio,
+        userCacheStaleWhileRevalidate);
   }
 }
@@ -0,0 +1,79 @@
+package com.launchdarkly.sdk.server.integrations;
+
+import com.launchdarkly.sdk.server.Components;
+import com.launchdarkly.sdk.server.LDConfig.Builder;
+import com.launchdarkly.sdk.server.interfaces.DataSnapshotConfiguration;
+import com.launchdarkly.sdk.server.subsystems.ClientContext;
+import com.launchdarkly.sdk.server.subsystems.ComponentConfigurer;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Contains methods for configuring local snapshots of flag data.
+ * <p>
+ * If snapshots are enabled, the SDK periodically writes all of the flag and segment data that it
+ * currently has to a file on local disk. When the SDK starts, if its data store is not already
+ * initialized, it loads the last snapshot into the data store before the data source has connected,
+ * so that flags can be evaluated with the last known values right away. The first full data set from
+ * the data source then replaces the snapshot data. While the data came from a snapshot,
+ * {@link com.launchdarkly.sdk.server.interfaces.DataSourceStatusProvider.Status#isFromSnapshot()}
+ * returns true.
+ * <p>
+ * If a snapshot was loaded, the {@link com.launchdarkly.sdk.server.LDClient} constructor does not wait
+ * for the data source to initialize, regardless of {@link Builder#startWait(Duration)}.
+ * <p>
+ * If you do not explicitly enable snapshots, no file is read or written. To enable them, obtain a
+ * builder with {@link Components#dataSnapshot(Path)}, change its properties with the methods of this
+ * class, and pass it to {@link Builder#dataSnapshot(ComponentConfigurer)}:
+ * <pre><code>
+ *     LDConfig config = new LDConfig.Builder()
+ *         .dataSnapshot(Components.dataSnapshot(Paths.get("/var/cache/myapp/flags.snapshot"))
+ *             .writeInterval(Duration.ofMinutes(1)))
+ *         .build();
+ * </code></pre>
+ * <p>
+ * The snapshot file is written to a temporary file in the same directory first and then renamed,
+ * so a process that crashes while writing will not leave a partial snapshot behind. The file format
+ * is internal to the SDK and may change between SDK versions; a snapshot that cannot be read is
+ * ignored.
+ *
+ * @since 7.5.0
+ */
+public final class DataSnapshotBuilder implements ComponentConfigurer<DataSnapshotConfiguration> {
+  /**
+   * The default value for {@link #writeInterval(Duration)}: 30 seconds.
+   */
+  public static final Duration DEFAULT_WRITE_INTERVAL = Duration.ofSeconds(30);
+
+  private final Path filePath;
+  private Duration writeInterval = DEFAULT_WRITE_INTERVAL;
+
+  /**
+   * Creates a new builder for snapshot configuration.
+   *
+   * @param filePath the location of the snapshot file
+   */
+  public DataSnapshotBuilder(Path filePath) {
+    this.filePath = filePath;
+  }
+
+  /**
+   * Sets how often the SDK checks whether its data has changed since the last snapshot was written,
+   * and if so, writes a new snapshot. A final snapshot is also written when the client is closed.
+   *
+   * @param writeInterval the interval between snapshots; null to use the default
+   * @return the builder
+   * @see #DEFAULT_WRITE_INTERVAL
+   */
+  public DataSnapshotBuilder writeInterval(Duration writeInterval) {
+    this.writeInterval = writeInterval != null && writeInterval.compareTo(Duration.ZERO) > 0
+        ? writeInterval : DEFAULT_WRITE_INTERVAL;
+    return this;
+  }
+
+  @Override
+  public DataSnapshotConfiguration build(ClientContext context) {
+    return new DataSnapshotConfiguration(filePath, writeInterval);
+  }
+}
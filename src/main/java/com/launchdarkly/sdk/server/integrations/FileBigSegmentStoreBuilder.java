@@ -0,0 +1,94 @@
+package com.launchdarkly.sdk.server.integrations;
+
+import com.launchdarkly.sdk.server.Components;
+import com.launchdarkly.sdk.server.subsystems.BigSegmentStore;
+import com.launchdarkly.sdk.server.subsystems.ClientContext;
+import com.launchdarkly.sdk.server.subsystems.ComponentConfigurer;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * A builder for configuring the file-based Big Segment store.
+ * <p>
+ * Obtain an instance of this class by calling {@link FileData#bigSegmentStore()}. After calling its
+ * methods to specify any desired custom settings, pass it to
+ * {@link Components#bigSegments(ComponentConfigurer)}, and then store the result in your SDK
+ * configuration.
+ * <p>
+ * The store reads Big Segment membership exports from a directory. For each Big Segment there can be
+ * a file called {@code <segmentRef>.included}, listing the users who are included in the segment, and a
+ * file called {@code <segmentRef>.excluded}, listing the users who are excluded from it. The segment
+ * reference is the segment key followed by ".g" and the segment's generation, such as
+ * {@code "beta-users.g3"}. Each line of a file is the hash of one user key, in the same form that
+ * LaunchDarkly uses in Big Segment databases (the base64-encoded SHA-256 hash of the key), and the lines
+ * must be sorted in byte order, as {@code LC_ALL=C sort} does. Other files in the directory are ignored.
+ * <p>
+ * The files are memory-mapped rather than read into the heap, and users are found by binary search. The
+ * store also keeps a Bloom filter for each file, so that checking a user who is not in a segment, which
+ * is the usual case, does not touch the file at all.
+ * <p>
+ * The store checks the directory for added, changed, or removed files at the
+ * {@link #reloadInterval(Duration) reload interval}. To update a file, write the new version under a
+ * temporary name and rename it into place; a file that is modified in place while the SDK is reading it
+ * could produce incorrect results or errors.
+ * <p>
+ * The Big Segment status that the SDK reports is based on the most recent modification time of the
+ * files, which is considered to be the time when the data was last known to be up to date (see
+ * {@link BigSegmentsConfigurationBuilder#staleAfter(Duration)}). If your export process does not
+ * rewrite files that have not changed, it can also update the modification time of a file called
+ * {@code synchronized} in the same directory each time it runs.
+ *
+ * @since 7.5.0
+ */
+public final class FileBigSegmentStoreBuilder implements ComponentConfigurer<BigSegmentStore> {
+  /**
+   * The default value for {@link #directory(Path)}: a directory called "launchdarkly-big-segments" in
+   * the current working directory.
+   */
+  public static final Path DEFAULT_DIRECTORY = Paths.get("launchdarkly-big-segments");
+
+  /**
+   * The default value for {@link #reloadInterval(Duration)}.
+   */
+  public static final Duration DEFAULT_RELOAD_INTERVAL = Duration.ofSeconds(5);
+
+  Path directory = DEFAULT_DIRECTORY;
+  Duration reloadInterval = DEFAULT_RELOAD_INTERVAL;
+
+  FileBigSegmentStoreBuilder() {}
+
+  /**
+   * Specifies the directory that contains the membership files.
+   *
+   * @param directory the directory path; null to use {@link #DEFAULT_DIRECTORY}
+   * @return the builder
+   */
+  public FileBigSegmentStoreBuilder directory(Path directory) {
+    this.directory = directory == null ? DEFAULT_DIRECTORY : directory;
+    return this;
+  }
+
+  /**
+   * Specifies how often the store checks the directory for changes.
+   * <p>
+   * The check is done by whichever query or status poll comes first after the interval has passed, so
+   * it does not need a thread of its own; it only looks at the directory listing and file attributes,
+   * and reads a file again only if it has changed.
+   *
+   * @param reloadInterval the interval; zero to check on every query, or null or negative to use
+   *   {@link #DEFAULT_RELOAD_INTERVAL}
+   * @return the builder
+   */
+  public FileBigSegmentStoreBuilder reloadInterval(Duration reloadInterval) {
+    this.reloadInterval = reloadInterval == null || reloadInterval.isNegative() ? DEFAULT_RELOAD_INTERVAL :
+      reloadInterval;
+    return this;
+  }
+
+  @Override
+  public BigSegmentStore build(ClientContext context) {
+    return new FileBigSegmentStoreImpl(directory, reloadInterval, context.getBaseLogger().subLogger("BigSegments"));
+  }
+}
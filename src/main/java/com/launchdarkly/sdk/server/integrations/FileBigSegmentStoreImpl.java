@@ -0,0 +1,366 @@
+package com.launchdarkly.sdk.server.integrations;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.launchdarkly.logging.LDLogger;
+import com.launchdarkly.logging.LogValues;
+import com.launchdarkly.sdk.server.subsystems.BigSegmentStore;
+import com.launchdarkly.sdk.server.subsystems.BigSegmentStoreTypes.Membership;
+import com.launchdarkly.sdk.server.subsystems.BigSegmentStoreTypes.StoreMetadata;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.launchdarkly.sdk.server.subsystems.BigSegmentStoreTypes.createMembershipFromSegmentRefs;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Internal implementation of the file-based Big Segment store; see {@link FileBigSegmentStoreBuilder}
+ * for the file format.
+ * <p>
+ * Each membership file is memory-mapped, and checked once when it is loaded to make sure that its lines
+ * are in order, so that a user hash can be found by binary search: each probe finds the start and end of
+ * the line around the midpoint of the current range, and compares it with the hash byte by byte. The
+ * loading pass also builds a Bloom filter of about 10 bits per line, with 7 probes, which rules out
+ * about 99% of the users who are not in the file without reading the file. The probe positions come from
+ * a single 128-bit hash of the user hash, which is computed once per query and reused for every file.
+ * <p>
+ * The loaded files are held in an immutable snapshot. At most once per reload interval, the first thread
+ * to make a query lists the directory and compares each file's size, modification time and file key with
+ * the loaded version; if anything has changed, it loads the changed files and publishes a new snapshot.
+ * A file that cannot be loaded is logged, once for each version of it, and its previous version, if any,
+ * remains in use.
+ */
+final class FileBigSegmentStoreImpl implements BigSegmentStore {
+  static final String INCLUDED_SUFFIX = ".included";
+  static final String EXCLUDED_SUFFIX = ".excluded";
+  static final String SYNCHRONIZED_FILE_NAME = "synchronized";
+
+  private static final int BLOOM_BITS_PER_ENTRY = 10;
+  private static final int BLOOM_PROBES = 7;
+
+  private final Path directory;
+  private final long reloadIntervalNanos;
+  private final LDLogger logger;
+  private final ReentrantLock reloadLock = new ReentrantLock();
+  private volatile Snapshot snapshot = Snapshot.EMPTY;
+  private volatile long nextReloadTime;
+  private volatile boolean closed;
+  private final Map<String, String> rejectedVersions = new HashMap<>(); // so we log each bad file only once
+  private boolean directoryMissingLogged;
+
+  FileBigSegmentStoreImpl(Path directory, Duration reloadInterval, LDLogger logger) {
+    this.directory = directory;
+    this.reloadIntervalNanos = reloadInterval.toNanos();
+    this.logger = logger;
+    reloadLock.lock();
+    try {
+      reload();
+    } finally {
+      reloadLock.unlock();
+    }
+  }
+
+  @Override
+  public Membership getMembership(String userHash) {
+    Snapshot s = currentSnapshot();
+    if (s.files.length == 0) {
+      return null;
+    }
+    byte[] key = userHash.getBytes(UTF_8);
+    ByteBuffer hash = ByteBuffer.wrap(Hashing.murmur3_128().hashBytes(key).asBytes()).order(ByteOrder.LITTLE_ENDIAN);
+    long h1 = hash.getLong(0), h2 = hash.getLong(8);
+    List<String> included = null, excluded = null;
+    for (SegmentFile f: s.files) {
+      if (f.mightContain(h1, h2) && f.contains(key)) {
+        if (f.included) {
+          if (included == null) {
+            included = new ArrayList<>();
+          }
+          included.add(f.segmentRef);
+        } else {
+          if (excluded == null) {
+            excluded = new ArrayList<>();
+          }
+          excluded.add(f.segmentRef);
+        }
+      }
+    }
+    return createMembershipFromSegmentRefs(included, excluded);
+  }
+
+  @Override
+  public StoreMetadata getMetadata() {
+    Snapshot s = currentSnapshot();
+    return s.lastModified == null ? null : new StoreMetadata(s.lastModified);
+  }
+
+  @Override
+  public void close() throws IOException {
+    // The mapped buffers are released when they are garbage-collected
+    closed = true;
+    snapshot = Snapshot.EMPTY;
+  }
+
+  private Snapshot currentSnapshot() {
+    if (!closed && System.nanoTime() - nextReloadTime >= 0 && reloadLock.tryLock()) {
+      try {
+        if (!closed && System.nanoTime() - nextReloadTime >= 0) {
+          reload();
+        }
+      } finally {
+        reloadLock.unlock();
+      }
+    }
+    return snapshot;
+  }
+
+  // Called with reloadLock held.
+  private void reload() {
+    try {
+      Snapshot old = snapshot;
+      Map<String, SegmentFile> oldFiles = new HashMap<>();
+      for (SegmentFile f: old.files) {
+        oldFiles.put(f.fileName, f);
+      }
+      List<SegmentFile> files = new ArrayList<>();
+      Long lastModified = null;
+      boolean changed = false;
+      try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
+        for (Path p: paths) {
+          String name = p.getFileName().toString();
+          boolean included = name.endsWith(INCLUDED_SUFFIX);
+          boolean isSegmentFile = included || name.endsWith(EXCLUDED_SUFFIX);
+          if (!isSegmentFile && !name.equals(SYNCHRONIZED_FILE_NAME)) {
+            continue;
+          }
+          BasicFileAttributes attrs;
+          try {
+            attrs = Files.readAttributes(p, BasicFileAttributes.class);
+          } catch (NoSuchFileException e) {
+            continue; // it was deleted after we listed the directory
+          }
+          if (!attrs.isRegularFile()) {
+            continue;
+          }
+          long modified = attrs.lastModifiedTime().toMillis();
+          lastModified = lastModified == null ? modified : Math.max(lastModified, modified);
+          if (!isSegmentFile) {
+            continue;
+          }
+          SegmentFile f = oldFiles.remove(name);
+          String version = attrs.size() + "/" + modified + "/" + attrs.fileKey();
+          if ((f == null || !f.isSameVersion(attrs)) && !version.equals(rejectedVersions.get(name))) {
+            String segmentRef = name.substring(0, name.length() -
+                (included ? INCLUDED_SUFFIX.length() : EXCLUDED_SUFFIX.length()));
+            try {
+              f = SegmentFile.load(p, name, segmentRef, included, attrs);
+              rejectedVersions.remove(name);
+              changed = true;
+              logger.debug("Loaded Big Segment file {} ({} users)", name, f.lineCount);
+            } catch (IOException | IllegalArgumentException e) {
+              // If the file was already loaded, keep using the old version
+              logger.error("Could not load Big Segment file {}: {}", p, LogValues.exceptionSummary(e));
+              rejectedVersions.put(name, version);
+            }
+          }
+          if (f != null) {
+            files.add(f);
+          }
+        }
+      }
+      directoryMissingLogged = false;
+      if (changed || !oldFiles.isEmpty() || !Objects.equals(lastModified, old.lastModified)) {
+        snapshot = new Snapshot(files.toArray(new SegmentFile[files.size()]), lastModified);
+      }
+    } catch (NoSuchFileException e) {
+      if (!directoryMissingLogged) {
+        logger.warn("Big Segment directory {} does not exist", directory);
+        directoryMissingLogged = true;
+      }
+      snapshot = Snapshot.EMPTY;
+    } catch (IOException e) {
+      // Leave the current snapshot in place and try again at the next interval
+      logger.warn("Could not read Big Segment directory {}: {}", directory, LogValues.exceptionSummary(e));
+    } finally {
+      nextReloadTime = System.nanoTime() + reloadIntervalNanos;
+    }
+  }
+
+  private static final class Snapshot {
+    static final Snapshot EMPTY = new Snapshot(new SegmentFile[0], null);
+
+    final SegmentFile[] files;
+    final Long lastModified; // null if there are no files
+
+    Snapshot(SegmentFile[] files, Long lastModified) {
+      this.files = files;
+      this.lastModified = lastModified;
+    }
+  }
+
+  static final class SegmentFile {
+    final String fileName;
+    final String segmentRef;
+    final boolean included;
+    final int lineCount;
+    private final long size;
+    private final long lastModified;
+    private final Object fileKey;
+    private final ByteBuffer data;
+    private final long[] bloomBits;
+    private final long bloomBitCount;
+
+    private SegmentFile(String fileName, String segmentRef, boolean included, BasicFileAttributes attrs,
+        ByteBuffer data, int lineCount) {
+      this.fileName = fileName;
+      this.segmentRef = segmentRef;
+      this.included = included;
+      this.size = attrs.size();
+      this.lastModified = attrs.lastModifiedTime().toMillis();
+      this.fileKey = attrs.fileKey();
+      this.data = data;
+      this.lineCount = lineCount;
+      int words = (int)Math.max(1, ((long)lineCount * BLOOM_BITS_PER_ENTRY + 63) >>> 6);
+      this.bloomBits = new long[words];
+      this.bloomBitCount = (long)words << 6;
+    }
+
+    static SegmentFile load(Path path, String fileName, String segmentRef, boolean included,
+        BasicFileAttributes attrs) throws IOException {
+      if (attrs.size() > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("file is larger than 2GB");
+      }
+      ByteBuffer data;
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        // The mapping remains valid after the channel is closed
+        data = channel.map(FileChannel.MapMode.READ_ONLY, 0, attrs.size());
+      }
+
+      // First pass: check that the lines are in order, and count them so we can size the Bloom filter
+      int limit = data.limit();
+      int lineCount = 0, prevStart = -1, prevEnd = -1;
+      for (int start = 0; start < limit; ) {
+        int next = endOfLine(data, start, limit);
+        int end = trimEnd(data, start, next);
+        if (prevStart >= 0 && compare(data, prevStart, prevEnd, data, start, end) > 0) {
+          throw new IllegalArgumentException("lines are not sorted (at line " + (lineCount + 1) + ")");
+        }
+        prevStart = start;
+        prevEnd = end;
+        lineCount++;
+        start = next + 1;
+      }
+
+      // Second pass: build the Bloom filter
+      SegmentFile f = new SegmentFile(fileName, segmentRef, included, attrs, data, lineCount);
+      byte[] line = new byte[64];
+      for (int start = 0; start < limit; ) {
+        int next = endOfLine(data, start, limit);
+        int length = trimEnd(data, start, next) - start;
+        if (length > line.length) {
+          line = new byte[length];
+        }
+        for (int i = 0; i < length; i++) {
+          line[i] = data.get(start + i);
+        }
+        HashCode hash = Hashing.murmur3_128().hashBytes(line, 0, length);
+        ByteBuffer hashBytes = ByteBuffer.wrap(hash.asBytes()).order(ByteOrder.LITTLE_ENDIAN);
+        f.addToBloomFilter(hashBytes.getLong(0), hashBytes.getLong(8));
+        start = next + 1;
+      }
+      return f;
+    }
+
+    boolean isSameVersion(BasicFileAttributes attrs) {
+      return attrs.size() == size && attrs.lastModifiedTime().toMillis() == lastModified &&
+          Objects.equals(attrs.fileKey(), fileKey);
+    }
+
+    boolean mightContain(long h1, long h2) {
+      long combined = h1;
+      for (int i = 0; i < BLOOM_PROBES; i++) {
+        long bit = (combined & Long.MAX_VALUE) % bloomBitCount;
+        if ((bloomBits[(int)(bit >>> 6)] & (1L << bit)) == 0) {
+          return false;
+        }
+        combined += h2;
+      }
+      return true;
+    }
+
+    private void addToBloomFilter(long h1, long h2) {
+      long combined = h1;
+      for (int i = 0; i < BLOOM_PROBES; i++) {
+        long bit = (combined & Long.MAX_VALUE) % bloomBitCount;
+        bloomBits[(int)(bit >>> 6)] |= 1L << bit;
+        combined += h2;
+      }
+    }
+
+    boolean contains(byte[] key) {
+      ByteBuffer keyBuffer = ByteBuffer.wrap(key);
+      // lo and hi are byte offsets; every line that starts within [lo, hi) is still a candidate
+      int lo = 0, hi = data.limit();
+      while (lo < hi) {
+        int mid = lo + (hi - lo) / 2;
+        int start = mid;
+        while (start > lo && data.get(start - 1) != '\n') {
+          start--;
+        }
+        int next = endOfLine(data, start, data.limit());
+        int c = compare(keyBuffer, 0, key.length, data, start, trimEnd(data, start, next));
+        if (c == 0) {
+          return true;
+        }
+        if (c < 0) {
+          hi = start;
+        } else {
+          lo = next + 1;
+        }
+      }
+      return false;
+    }
+
+    // Returns the position of the newline that ends the line, or the limit if there is none.
+    private static int endOfLine(ByteBuffer data, int start, int limit) {
+      int pos = start;
+      while (pos < limit && data.get(pos) != '\n') {
+        pos++;
+      }
+      return pos;
+    }
+
+    // Excludes the carriage return of a Windows line ending.
+    private static int trimEnd(ByteBuffer data, int start, int end) {
+      return end > start && data.get(end - 1) == '\r' ? end - 1 : end;
+    }
+
+    // Compares two byte ranges as unsigned bytes, which is the same order as "LC_ALL=C sort".
+    private static int compare(ByteBuffer a, int aStart, int aEnd, ByteBuffer b, int bStart, int bEnd) {
+      int length = Math.min(aEnd - aStart, bEnd - bStart);
+      for (int i = 0; i < length; i++) {
+        int c = (a.get(aStart + i) & 0xff) - (b.get(bStart + i) & 0xff);
+        if (c != 0) {
+          return c;
+        }
+      }
+      return (aEnd - aStart) - (bEnd - bStart);
+    }
+  }
+}
@@ -137,6 +137,27 @@ public abstract class FileData {
   public static FileDataSourceBuilder dataSource() {
     return new FileDataSourceBuilder();
   }
-  
+
+  /**
+   * Creates a builder for a Big Segment store that reads segment membership from local files.
+   * <p>
+   * This lets the SDK evaluate flags that use Big Segments without a database, if some other process
+   * delivers exports of the segment memberships to a local directory. See
+   * {@link FileBigSegmentStoreBuilder} for the file format.
+   * <pre><code>
+   *     LDConfig config = new LDConfig.Builder()
+   *         .bigSegments(Components.bigSegments(
+   *             FileData.bigSegmentStore().directory(Paths.get("/var/lib/big-segments"))
+   *         ))
+   *         .build();
+   * </code></pre>
+   *
+   * @return a Big Segment store configuration object
+   * @since 7.5.0
+   */
+  public static FileBigSegmentStoreBuilder bigSegmentStore() {
+    return new FileBigSegmentStoreBuilder();
+  }
+
   private FileData() {}
 }
@@ -0,0 +1,49 @@
+package com.launchdarkly.sdk.server.integrations;
+
+import com.launchdarkly.sdk.server.Components;
+
+/**
+ * Integration between the LaunchDarkly SDK and the local file system, for persistent storage of
+ * feature flag data without an external database.
+ * <p>
+ * This is intended for single-host deployments where you want flag data to survive a restart of
+ * the application, but do not want to run a database such as Redis. See {@link #dataStore()} for
+ * details.
+ *
+ * @since 7.5.0
+ */
+public abstract class LocalDisk {
+  /**
+   * Returns a builder object for creating a data store that keeps flag data in files in a local
+   * directory.
+   * <p>
+   * This object can be modified with {@link LocalDiskDataStoreBuilder} methods for any desired
+   * custom settings, before including it in the SDK configuration with
+   * {@link Components#persistentDataStore(com.launchdarkly.sdk.server.subsystems.ComponentConfigurer)}:
+   * <pre><code>
+   *     LDConfig config = new LDConfig.Builder()
+   *         .dataStore(
+   *             Components.persistentDataStore(
+   *                 LocalDisk.dataStore().directory(Paths.get("/var/lib/my-app/flags"))
+   *             )
+   *         )
+   *         .build();
+   * </code></pre>
+   * <p>
+   * The store keeps an index of all items in memory and reads the items themselves from
+   * memory-mapped files, so reads do not involve any I/O calls; it is fast enough that you can
+   * use it with {@link PersistentDataStoreBuilder#noCaching()} if you would rather not keep a
+   * deserialized copy of the data in memory as well.
+   * <p>
+   * Several SDK instances, in the same process or in different processes on the same host, can
+   * share a directory; each one sees the changes made by the others. The directory must be on a
+   * local file system, since the store relies on file locking and memory mapping.
+   *
+   * @return a data store configuration object
+   */
+  public static LocalDiskDataStoreBuilder dataStore() {
+    return new LocalDiskDataStoreBuilder();
+  }
+
+  private LocalDisk() {}
+}
@@ -0,0 +1,119 @@
+package com.launchdarkly.sdk.server.integrations;
+
+import com.launchdarkly.sdk.LDValue;
+import com.launchdarkly.sdk.server.Components;
+import com.launchdarkly.sdk.server.subsystems.ClientContext;
+import com.launchdarkly.sdk.server.subsystems.ComponentConfigurer;
+import com.launchdarkly.sdk.server.subsystems.DiagnosticDescription;
+import com.launchdarkly.sdk.server.subsystems.PersistentDataStore;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * A builder for configuring the local disk data store.
+ * <p>
+ * Obtain an instance of this class by calling {@link LocalDisk#dataStore()}. After calling its methods
+ * to specify any desired custom settings, wrap it in a {@link PersistentDataStoreBuilder}
+ * by calling {@link Components#persistentDataStore(ComponentConfigurer)}, and then
+ * store this in your SDK configuration.
+ * <p>
+ * The store writes every update to an append-only log file. Once the log has grown to the
+ * {@link #compactionThreshold(int) compaction threshold}, its contents are merged into a new snapshot
+ * file, which is written under a temporary name and then renamed, so that a crash can never leave a
+ * partially written snapshot in place. Every record in both files has a checksum; if the application
+ * stops in the middle of writing a record, the incomplete record is discarded the next time the
+ * store is opened.
+ *
+ * @since 7.5.0
+ */
+public final class LocalDiskDataStoreBuilder implements ComponentConfigurer<PersistentDataStore>, DiagnosticDescription {
+  /**
+   * The default value for {@link #directory(Path)}: a directory called "launchdarkly-data" in the
+   * current working directory.
+   */
+  public static final Path DEFAULT_DIRECTORY = Paths.get("launchdarkly-data");
+
+  /**
+   * The default value for {@link #prefix(String)}.
+   */
+  public static final String DEFAULT_PREFIX = "launchdarkly";
+
+  /**
+   * The default value for {@link #compactionThreshold(int)}.
+   */
+  public static final int DEFAULT_COMPACTION_THRESHOLD = 1000;
+
+  Path directory = DEFAULT_DIRECTORY;
+  String prefix = DEFAULT_PREFIX;
+  int compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+  boolean syncWrites = false;
+
+  LocalDiskDataStoreBuilder() {}
+
+  /**
+   * Specifies the directory where the data files are kept. It will be created if it does not exist.
+   *
+   * @param directory the directory path; null to use {@link #DEFAULT_DIRECTORY}
+   * @return the builder
+   */
+  public LocalDiskDataStoreBuilder directory(Path directory) {
+    this.directory = directory == null ? DEFAULT_DIRECTORY : directory;
+    return this;
+  }
+
+  /**
+   * Specifies a prefix for the names of the data files. Stores that use different prefixes in the
+   * same directory are independent of each other.
+   *
+   * @param prefix the file name prefix; null or empty to use {@link #DEFAULT_PREFIX}
+   * @return the builder
+   */
+  public LocalDiskDataStoreBuilder prefix(String prefix) {
+    this.prefix = prefix == null || prefix.isEmpty() ? DEFAULT_PREFIX : prefix;
+    return this;
+  }
+
+  /**
+   * Specifies how many updates can be added to the log file before it is compacted into a new
+   * snapshot file.
+   * <p>
+   * A lower threshold keeps the files smaller and makes opening the store faster, at the cost of
+   * rewriting the whole data set more often.
+   *
+   * @param compactionThreshold the number of log records; values less than 1 are changed to
+   *   {@link #DEFAULT_COMPACTION_THRESHOLD}
+   * @return the builder
+   */
+  public LocalDiskDataStoreBuilder compactionThreshold(int compactionThreshold) {
+    this.compactionThreshold = compactionThreshold < 1 ? DEFAULT_COMPACTION_THRESHOLD : compactionThreshold;
+    return this;
+  }
+
+  /**
+   * Specifies whether every update should be flushed to the storage device before it is considered
+   * complete.
+   * <p>
+   * By default, this is {@code false}: updates are handed to the operating system, which means they
+   * survive a crash of the application but not necessarily a power failure. Snapshot files are always
+   * flushed before they replace the previous snapshot.
+   *
+   * @param syncWrites true to flush every update
+   * @return the builder
+   */
+  public LocalDiskDataStoreBuilder syncWrites(boolean syncWrites) {
+    this.syncWrites = syncWrites;
+    return this;
+  }
+
+  @Override
+  public PersistentDataStore build(ClientContext context) {
+    return new LocalDiskDataStoreImpl(directory, prefix, compactionThreshold, syncWrites,
+        context.getBaseLogger().subLogger("DataStore"));
+  }
+
+  @Override
+  public LDValue describeConfiguration(ClientContext clientContext) {
+    return LDValue.of("LocalDisk");
+  }
+}
@@ -0,0 +1,704 @@
+package com.launchdarkly.sdk.server.integrations;
+
+import com.launchdarkly.logging.LDLogger;
+import com.launchdarkly.logging.LogValues;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.KeyedItems;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.SerializedItemDescriptor;
+import com.launchdarkly.sdk.server.subsystems.PersistentDataStore;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Internal implementation of the local disk data store.
+ * <p>
+ * The data is kept in a numbered "generation" of two files: a snapshot ({@code <prefix>.<n>.snapshot}),
+ * which is never modified once written, and a log ({@code <prefix>.<n>.log}) of the updates made since
+ * then. Generation 0 has no snapshot, and means that the store has never been initialized. Calling
+ * {@link #init(FullDataSet)}, or compacting the log, writes the next generation's snapshot under a
+ * temporary name, flushes it, and renames it; the files of older generations are then deleted. When the
+ * store is opened, it uses the newest snapshot that exists, so a crash at any point leaves either the old
+ * or the new generation intact.
+ * <p>
+ * Both files contain a short header followed by records of the form
+ * {@code [payload length][CRC32 of payload][payload]}, where the payload contains the kind name, key,
+ * version, deleted flag and serialized item. Within a generation, later records replace earlier ones.
+ * The log is extended in chunks, doubling its size each time, so that its memory-mapped views only need to
+ * be remapped occasionally; the unused part at the end is zero, and a zero payload length marks the end
+ * of the records.
+ * <p>
+ * Every instance keeps an index of all items in memory, pointing to the serialized items in memory-mapped
+ * views of the files, so a read is just a map lookup and a copy of the item's bytes. Instances that share
+ * the same files, whether in this process or another one, coordinate through two more files:
+ * <ul>
+ * <li> {@code <prefix>.lock} is locked with {@link FileLock} for every write, so that only one instance
+ * writes at a time. Within this process, instances also synchronize on a shared monitor, since file locks
+ * are held on behalf of the whole process.
+ * <li> {@code <prefix>.control} is a small memory-mapped file holding the current generation, the length
+ * of the log that has been completely written, and a counter that is incremented after every change. Each
+ * read compares the counter with the last value the instance has seen; only if it has changed does the
+ * instance take the lock and catch up, either by reading the new part of the log or by loading a new
+ * generation. Anything in the log beyond the committed length was left by a writer that failed part way
+ * through, and is overwritten by the next writer, which always follows its record with an end marker.
+ * </ul>
+ * If the files cannot be opened, the store reports that it is unavailable, and tries again on the next
+ * operation.
+ */
+final class LocalDiskDataStoreImpl implements PersistentDataStore {
+  static final int FILE_MAGIC = 0x4C444453; // "LDDS"
+  static final byte FORMAT_VERSION = 1;
+  static final int HEADER_SIZE = 6; // magic, format version, flags
+  static final byte FLAG_INITIALIZED = 1;
+  static final int RECORD_OVERHEAD = 8; // payload length, checksum
+  static final int MIN_LOG_ALLOCATION = 65536;
+
+  private static final int CONTROL_SIZE = 32;
+  private static final int CONTROL_MAGIC_OFFSET = 0;
+  private static final int CONTROL_GENERATION_OFFSET = 8;
+  private static final int CONTROL_LOG_END_OFFSET = 16;
+  private static final int CONTROL_CHANGE_COUNT_OFFSET = 24;
+
+  // File locks are held on behalf of the whole process, so instances in this process that use the same
+  // files must also exclude each other with an ordinary monitor.
+  private static final ConcurrentHashMap<Path, Object> processLocks = new ConcurrentHashMap<>();
+
+  private final Path directory;
+  private final String prefix;
+  private final int compactionThreshold;
+  private final boolean syncWrites;
+  private final LDLogger logger;
+  private final Pattern dataFileNamePattern;
+  private final Object processLock;
+
+  // These are only modified while holding processLock and the file lock
+  private FileChannel lockChannel;
+  private FileChannel controlChannel;
+  private MappedByteBuffer control;
+  private boolean closed;
+  private volatile State state; // null if the files are not open
+  private volatile long seenChangeCount;
+
+  volatile Runnable updateHook; // for testing: called at the start of every upsert
+
+  LocalDiskDataStoreImpl(Path directory, String prefix, int compactionThreshold, boolean syncWrites, LDLogger logger) {
+    this.directory = directory;
+    this.prefix = prefix;
+    this.compactionThreshold = compactionThreshold;
+    this.syncWrites = syncWrites;
+    this.logger = logger;
+    this.dataFileNamePattern = Pattern.compile(Pattern.quote(prefix) + "\\.([0-9]+)\\.(snapshot|log|snapshot\\.tmp)");
+    this.processLock = processLocks.computeIfAbsent(directory.resolve(prefix).toAbsolutePath().normalize(),
+        p -> new Object());
+  }
+
+  @Override
+  public void init(FullDataSet<SerializedItemDescriptor> allData) {
+    withWriteLock(() -> {
+      State current = catchUp();
+      try (SnapshotWriter w = new SnapshotWriter(current.generation + 1, true)) {
+        for (Map.Entry<DataKind, KeyedItems<SerializedItemDescriptor>> kindData: allData.getData()) {
+          String kindName = kindData.getKey().getName();
+          for (Map.Entry<String, SerializedItemDescriptor> item: kindData.getValue().getItems()) {
+            SerializedItemDescriptor d = item.getValue();
+            w.add(kindName, item.getKey(), d.getVersion(), d.isDeleted(),
+                d.getSerializedItem() == null ? null : d.getSerializedItem().getBytes(UTF_8));
+          }
+        }
+        switchToGeneration(w.commit());
+      }
+      return null;
+    });
+  }
+
+  @Override
+  public SerializedItemDescriptor get(DataKind kind, String key) {
+    Map<String, Entry> items = currentState().items.get(kind.getName());
+    Entry e = items == null ? null : items.get(key);
+    return e == null ? null : e.toItemDescriptor();
+  }
+
+  @Override
+  public KeyedItems<SerializedItemDescriptor> getAll(DataKind kind) {
+    Map<String, Entry> items = currentState().items.get(kind.getName());
+    List<Map.Entry<String, SerializedItemDescriptor>> ret = new ArrayList<>(items == null ? 0 : items.size());
+    if (items != null) {
+      for (Map.Entry<String, Entry> e: items.entrySet()) {
+        ret.add(new AbstractMap.SimpleEntry<>(e.getKey(), e.getValue().toItemDescriptor()));
+      }
+    }
+    return new KeyedItems<>(ret);
+  }
+
+  @Override
+  public boolean upsert(DataKind kind, String key, SerializedItemDescriptor item) {
+    Runnable hook = updateHook;
+    if (hook != null) {
+      hook.run();
+    }
+    return withWriteLock(() -> {
+      State current = catchUp();
+      Entry old = current.itemsOfKind(kind.getName()).get(key);
+      if (old != null && old.version >= item.getVersion()) {
+        return false;
+      }
+      current.appendToLog(kind.getName(), key, item.getVersion(), item.isDeleted(),
+          item.getSerializedItem() == null ? null : item.getSerializedItem().getBytes(UTF_8));
+      publish(current);
+      if (current.logRecordCount >= compactionThreshold) {
+        compact(current);
+      }
+      return true;
+    });
+  }
+
+  @Override
+  public boolean isInitialized() {
+    return currentState().initialized;
+  }
+
+  @Override
+  public boolean isStoreAvailable() {
+    try {
+      currentState();
+      return true;
+    } catch (RuntimeException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (processLock) {
+      closed = true;
+      closeFiles();
+    }
+  }
+
+  private State currentState() {
+    State s = state;
+    if (s != null && control.getLong(CONTROL_CHANGE_COUNT_OFFSET) == seenChangeCount) {
+      return s;
+    }
+    return withWriteLock(this::catchUp);
+  }
+
+  private interface LockedAction<T> {
+    T run() throws IOException;
+  }
+
+  private <T> T withWriteLock(LockedAction<T> action) {
+    synchronized (processLock) {
+      if (closed) {
+        throw new IllegalStateException("data store has been closed");
+      }
+      try {
+        if (lockChannel == null) {
+          openFiles();
+        }
+        try (FileLock lock = lockChannel.lock()) {
+          if (state == null) {
+            recover();
+          }
+          return action.run();
+        }
+      } catch (IOException e) {
+        if (state == null) {
+          closeFiles(); // so we will try to open everything again next time
+        }
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  private void openFiles() throws IOException {
+    Files.createDirectories(directory);
+    lockChannel = FileChannel.open(directory.resolve(prefix + ".lock"),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    controlChannel = FileChannel.open(directory.resolve(prefix + ".control"),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    control = controlChannel.map(FileChannel.MapMode.READ_WRITE, 0, CONTROL_SIZE);
+  }
+
+  private void closeFiles() {
+    State s = state;
+    state = null;
+    if (s != null) {
+      s.close();
+    }
+    closeQuietly(lockChannel);
+    closeQuietly(controlChannel);
+    lockChannel = null;
+    controlChannel = null;
+  }
+
+  // Called with the write lock held, when the files have just been opened. Unlike catchUp(), this does
+  // not rely on the control file, since it may be missing or may not have been written after a crash.
+  private void recover() throws IOException {
+    long generation = findLatestGeneration();
+    long committedLogEnd = control.getInt(CONTROL_MAGIC_OFFSET) == FILE_MAGIC &&
+        control.getLong(CONTROL_GENERATION_OFFSET) == generation ?
+        control.getLong(CONTROL_LOG_END_OFFSET) : Long.MAX_VALUE;
+    State s = loadGeneration(generation, committedLogEnd);
+    state = s;
+    publish(s);
+    deleteOldFiles(generation);
+  }
+
+  // Called with the write lock held, to pick up any changes made by other instances.
+  private State catchUp() throws IOException {
+    long changeCount = control.getLong(CONTROL_CHANGE_COUNT_OFFSET);
+    long generation = control.getLong(CONTROL_GENERATION_OFFSET);
+    long logEnd = control.getLong(CONTROL_LOG_END_OFFSET);
+    State s = state;
+    if (generation != s.generation || logEnd < s.logEnd) {
+      State newState = loadGeneration(generation, logEnd);
+      state = newState;
+      s.close();
+      s = newState;
+    } else if (logEnd > s.logEnd) {
+      s.readLog(logEnd);
+    }
+    seenChangeCount = changeCount;
+    return s;
+  }
+
+  private void publish(State s) {
+    long changeCount = control.getLong(CONTROL_CHANGE_COUNT_OFFSET) + 1;
+    control.putInt(CONTROL_MAGIC_OFFSET, FILE_MAGIC);
+    control.putLong(CONTROL_GENERATION_OFFSET, s.generation);
+    control.putLong(CONTROL_LOG_END_OFFSET, s.logEnd);
+    control.putLong(CONTROL_CHANGE_COUNT_OFFSET, changeCount); // written last, since readers check it first
+    if (syncWrites) {
+      control.force();
+    }
+    seenChangeCount = changeCount;
+  }
+
+  private void compact(State current) throws IOException {
+    try (SnapshotWriter w = new SnapshotWriter(current.generation + 1, current.initialized)) {
+      for (Map.Entry<String, ConcurrentHashMap<String, Entry>> kindItems: current.items.entrySet()) {
+        for (Map.Entry<String, Entry> item: kindItems.getValue().entrySet()) {
+          Entry e = item.getValue();
+          w.add(kindItems.getKey(), item.getKey(), e.version, e.deleted,
+              e.length < 0 ? null : e.file.read(e.offset, e.length));
+        }
+      }
+      switchToGeneration(w.commit());
+    }
+    logger.debug("Compacted local data store log into generation {}", current.generation + 1);
+  }
+
+  private void switchToGeneration(long generation) throws IOException {
+    State newState = loadGeneration(generation, HEADER_SIZE);
+    State old = state;
+    state = newState;
+    publish(newState);
+    old.close();
+    deleteOldFiles(generation);
+  }
+
+  private State loadGeneration(long generation, long committedLogEnd) throws IOException {
+    DataFile snapshot = null;
+    boolean initialized = false;
+    if (generation > 0) {
+      snapshot = DataFile.open(snapshotPath(generation), false);
+      ByteBuffer header = snapshot.mapped(HEADER_SIZE);
+      initialized = isValidHeader(header) && (header.get(5) & FLAG_INITIALIZED) != 0;
+    }
+    DataFile log = DataFile.open(logPath(generation), true);
+    if (log.size() < HEADER_SIZE || !isValidHeader(log.mapped(HEADER_SIZE))) {
+      log.truncate(0);
+      log.write(makeHeader((byte)0), 0);
+    }
+    State s = new State(generation, initialized, snapshot, log);
+    if (snapshot != null && s.readRecords(snapshot, HEADER_SIZE, snapshot.size()) != snapshot.size()) {
+      // The SDK will initialize the store again, which replaces the damaged snapshot
+      logger.error("Local data store snapshot {} is damaged; the store will be treated as uninitialized",
+          snapshot.path);
+      s.initialized = false;
+    }
+    s.readLog(Math.min(committedLogEnd, log.size()));
+    log.writeEndMarker(s.logEnd); // discard anything that was not completely written
+    return s;
+  }
+
+  private long findLatestGeneration() throws IOException {
+    long latest = 0;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path p: files) {
+        Matcher m = dataFileNamePattern.matcher(p.getFileName().toString());
+        if (m.matches() && m.group(2).equals("snapshot")) {
+          latest = Math.max(latest, Long.parseLong(m.group(1)));
+        }
+      }
+    }
+    return latest;
+  }
+
+  private void deleteOldFiles(long currentGeneration) {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path p: files) {
+        Matcher m = dataFileNamePattern.matcher(p.getFileName().toString());
+        if (m.matches() && (Long.parseLong(m.group(1)) < currentGeneration || m.group(2).endsWith(".tmp"))) {
+          try {
+            Files.deleteIfExists(p);
+          } catch (IOException e) {
+            // On some platforms a file cannot be deleted while it is still mapped; we'll try again next time
+            logger.debug("Could not delete old data file {}: {}", p, LogValues.exceptionSummary(e));
+          }
+        }
+      }
+    } catch (IOException e) {
+      logger.warn("Could not list data store directory: {}", LogValues.exceptionSummary(e));
+    }
+  }
+
+  private Path snapshotPath(long generation) {
+    return directory.resolve(prefix + "." + generation + ".snapshot");
+  }
+
+  private Path logPath(long generation) {
+    return directory.resolve(prefix + "." + generation + ".log");
+  }
+
+  private static byte[] makeHeader(byte flags) {
+    return ByteBuffer.allocate(HEADER_SIZE).putInt(FILE_MAGIC).put(FORMAT_VERSION).put(flags).array();
+  }
+
+  private static boolean isValidHeader(ByteBuffer buffer) {
+    return buffer.getInt(0) == FILE_MAGIC && buffer.get(4) == FORMAT_VERSION;
+  }
+
+  static byte[] encodeRecord(String kindName, String key, int version, boolean deleted, byte[] item) {
+    byte[] kindBytes = kindName.getBytes(UTF_8);
+    byte[] keyBytes = key.getBytes(UTF_8);
+    int payloadLength = 2 + kindBytes.length + 2 + keyBytes.length + 4 + 1 + 4 + (item == null ? 0 : item.length);
+    ByteBuffer buf = ByteBuffer.allocate(RECORD_OVERHEAD + payloadLength);
+    buf.putInt(payloadLength).putInt(0);
+    buf.putShort((short)kindBytes.length).put(kindBytes);
+    buf.putShort((short)keyBytes.length).put(keyBytes);
+    buf.putInt(version).put((byte)(deleted ? 1 : 0));
+    if (item == null) {
+      buf.putInt(-1);
+    } else {
+      buf.putInt(item.length).put(item);
+    }
+    CRC32 crc = new CRC32();
+    crc.update(buf.array(), RECORD_OVERHEAD, payloadLength);
+    buf.putInt(4, (int)crc.getValue());
+    return buf.array();
+  }
+
+  // Makes a rename in the directory durable. Some platforms do not allow a directory to be opened this
+  // way; there is nothing else we can do on those, so that is not treated as an error.
+  private void syncDirectory() {
+    try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+      dir.force(true);
+    } catch (IOException e) {
+      logger.debug("Could not sync data store directory: {}", LogValues.exceptionSummary(e));
+    }
+  }
+
+  private static void closeQuietly(Closeable c) {
+    if (c != null) {
+      try {
+        c.close();
+      } catch (IOException e) {}
+    }
+  }
+
+  /**
+   * The contents of one generation of the data files, as seen by this instance.
+   */
+  private final class State {
+    final long generation;
+    final DataFile snapshot;
+    final DataFile log;
+    final ConcurrentHashMap<String, ConcurrentHashMap<String, Entry>> items = new ConcurrentHashMap<>();
+    // These are only modified while holding the write lock, before or after the state is published
+    boolean initialized;
+    long logEnd = HEADER_SIZE;
+    int logRecordCount;
+
+    State(long generation, boolean initialized, DataFile snapshot, DataFile log) {
+      this.generation = generation;
+      this.initialized = initialized;
+      this.snapshot = snapshot;
+      this.log = log;
+    }
+
+    ConcurrentHashMap<String, Entry> itemsOfKind(String kindName) {
+      return items.computeIfAbsent(kindName, k -> new ConcurrentHashMap<>());
+    }
+
+    void readLog(long end) throws IOException {
+      long pos = readRecords(log, logEnd, end);
+      if (pos < end && !log.isEndMarker(pos, end)) {
+        logger.warn("Discarding {} bytes of incomplete data at the end of the local data store log", end - pos);
+      }
+      logEnd = pos;
+    }
+
+    // Reads records from the file into the index, stopping at the first incomplete or damaged one, and
+    // returns the position after the last good record.
+    long readRecords(DataFile file, long start, long end) throws IOException {
+      ByteBuffer buf = file.mapped(end);
+      CRC32 crc = new CRC32();
+      int pos = (int)start;
+      while (end - pos >= RECORD_OVERHEAD) {
+        int payloadLength = buf.getInt(pos);
+        int payloadStart = pos + RECORD_OVERHEAD;
+        if (payloadLength < 13 || payloadLength > end - payloadStart) {
+          break;
+        }
+        ByteBuffer payload = buf.duplicate();
+        ((Buffer)payload).limit(payloadStart + payloadLength).position(payloadStart);
+        crc.reset();
+        crc.update(payload);
+        if ((int)crc.getValue() != buf.getInt(pos + 4)) {
+          break;
+        }
+        ((Buffer)payload).position(payloadStart);
+        String kindName = readString(payload);
+        String key = readString(payload);
+        int version = payload.getInt();
+        boolean deleted = payload.get() != 0;
+        int itemLength = payload.getInt();
+        itemsOfKind(kindName).put(key, new Entry(version, deleted, file, payload.position(), itemLength));
+        if (file == log) {
+          logRecordCount++;
+        }
+        pos = payloadStart + payloadLength;
+      }
+      return pos;
+    }
+
+    void appendToLog(String kindName, String key, int version, boolean deleted, byte[] item) throws IOException {
+      byte[] record = encodeRecord(kindName, key, version, deleted, item);
+      if (logEnd + record.length + RECORD_OVERHEAD > Integer.MAX_VALUE) {
+        throw new IOException("local data store log is too large");
+      }
+      // The end marker after the record hides anything left by a writer that failed before committing
+      log.reserve(logEnd + record.length + RECORD_OVERHEAD);
+      log.write(Arrays.copyOf(record, record.length + RECORD_OVERHEAD), logEnd);
+      if (syncWrites) {
+        log.channel.force(false);
+      }
+      int itemOffset = (int)logEnd + record.length - (item == null ? 0 : item.length);
+      itemsOfKind(kindName).put(key, new Entry(version, deleted, log, itemOffset, item == null ? -1 : item.length));
+      logEnd += record.length;
+      logRecordCount++;
+    }
+
+    void close() {
+      if (snapshot != null) {
+        snapshot.close();
+      }
+      log.close();
+    }
+  }
+
+  private static String readString(ByteBuffer buf) {
+    byte[] bytes = new byte[buf.getShort() & 0xffff];
+    buf.get(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  /**
+   * An item in the index: its version and deleted state, and where to find its serialized form.
+   */
+  private static final class Entry {
+    final int version;
+    final boolean deleted;
+    final DataFile file;
+    final int offset;
+    final int length; // -1 if there is no serialized item
+
+    Entry(int version, boolean deleted, DataFile file, int offset, int length) {
+      this.version = version;
+      this.deleted = deleted;
+      this.file = file;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    SerializedItemDescriptor toItemDescriptor() {
+      try {
+        return new SerializedItemDescriptor(version, deleted,
+            length < 0 ? null : new String(file.read(offset, length), UTF_8));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * A data file, with a read-only memory-mapped view of the whole file that is replaced when the file
+   * grows. Logs grow in chunks (see {@link #reserve(long)}), so appending to one usually does not require
+   * a new mapping.
+   */
+  private static final class DataFile implements Closeable {
+    final Path path;
+    final FileChannel channel;
+    private volatile MappedByteBuffer map;
+
+    private DataFile(Path path, FileChannel channel) {
+      this.path = path;
+      this.channel = channel;
+    }
+
+    static DataFile open(Path path, boolean writable) throws IOException {
+      return new DataFile(path, writable ?
+          FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE) :
+          FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    long size() throws IOException {
+      return channel.size();
+    }
+
+    ByteBuffer mapped(long end) throws IOException {
+      MappedByteBuffer m = map;
+      if (m == null || m.capacity() < end) {
+        synchronized (this) {
+          m = map;
+          if (m == null || m.capacity() < end) {
+            long size = channel.size();
+            if (size < end || size > Integer.MAX_VALUE) {
+              throw new IOException("unexpected size of data file " + path + ": " + size);
+            }
+            m = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            map = m;
+          }
+        }
+      }
+      return m;
+    }
+
+    byte[] read(int offset, int length) throws IOException {
+      ByteBuffer buf = mapped((long)offset + length).duplicate();
+      ((Buffer)buf).position(offset);
+      byte[] ret = new byte[length];
+      buf.get(ret);
+      return ret;
+    }
+
+    void write(byte[] data, long position) throws IOException {
+      ByteBuffer buf = ByteBuffer.wrap(data);
+      while (buf.hasRemaining()) {
+        position += channel.write(buf, position);
+      }
+    }
+
+    void truncate(long size) throws IOException {
+      channel.truncate(size);
+    }
+
+    // Makes sure that the file is at least the given size, by at least doubling its size if it is not.
+    // The new part of the file reads as zeros.
+    void reserve(long end) throws IOException {
+      long size = channel.size();
+      if (size < end) {
+        long newSize = Math.min(Integer.MAX_VALUE, Math.max(end, Math.max(size * 2, MIN_LOG_ALLOCATION)));
+        write(new byte[1], newSize - 1);
+      }
+    }
+
+    void writeEndMarker(long position) throws IOException {
+      long size = channel.size();
+      if (size > position) {
+        write(new byte[(int)Math.min(RECORD_OVERHEAD, size - position)], position);
+      }
+    }
+
+    boolean isEndMarker(long position, long end) throws IOException {
+      return end - position >= 4 && mapped(end).getInt((int)position) == 0;
+    }
+
+    @Override
+    public void close() {
+      // Readers may still be using items from this file, so before closing the channel, make sure the
+      // mapping covers the whole file; the mapping stays valid after the channel is closed.
+      try {
+        mapped(channel.size());
+      } catch (IOException e) {}
+      closeQuietly(channel);
+    }
+  }
+
+  /**
+   * Writes a new snapshot file under a temporary name, and renames it when it is complete.
+   */
+  private final class SnapshotWriter implements Closeable {
+    final long generation;
+    final Path tempPath;
+    final FileOutputStream fileStream;
+    final OutputStream stream;
+    long size;
+    boolean committed;
+
+    SnapshotWriter(long generation, boolean initialized) throws IOException {
+      this.generation = generation;
+      this.tempPath = directory.resolve(prefix + "." + generation + ".snapshot.tmp");
+      this.fileStream = new FileOutputStream(tempPath.toFile());
+      this.stream = new BufferedOutputStream(fileStream, 65536);
+      byte[] header = makeHeader(initialized ? FLAG_INITIALIZED : 0);
+      stream.write(header);
+      size = header.length;
+    }
+
+    void add(String kindName, String key, int version, boolean deleted, byte[] item) throws IOException {
+      byte[] record = encodeRecord(kindName, key, version, deleted, item);
+      if (size + record.length > Integer.MAX_VALUE) {
+        throw new IOException("data set is too large for the local data store");
+      }
+      stream.write(record);
+      size += record.length;
+    }
+
+    long commit() throws IOException {
+      stream.flush();
+      fileStream.getChannel().force(true);
+      stream.close();
+      Files.move(tempPath, snapshotPath(generation), StandardCopyOption.ATOMIC_MOVE);
+      syncDirectory();
+      committed = true;
+      return generation;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!committed) {
+        closeQuietly(stream);
+        Files.deleteIfExists(tempPath);
+      }
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package com.launchdarkly.sdk.server.integrations;
+
+import com.launchdarkly.sdk.server.Components;
+import com.launchdarkly.sdk.server.LDConfig.Builder;
+import com.launchdarkly.sdk.server.subsystems.ComponentConfigurer;
+import com.launchdarkly.sdk.server.subsystems.DataStore;
+
+import java.nio.file.Path;
+
+/**
+ * Contains methods for configuring the off-heap data store.
+ * <p>
+ * By default, the SDK keeps all flags and segments in memory as fully parsed objects, which is the
+ * fastest way to evaluate flags but can use a lot of heap space in environments with a very large number
+ * of flags or very large segments. The off-heap data store instead keeps the items in serialized form in
+ * a memory-mapped file outside of the Java heap, and keeps only the most recently used items in memory as
+ * parsed objects. Items that are not in that set are parsed again the next time they are used, which
+ * makes those evaluations slower.
+ * <p>
+ * To use the off-heap data store, create a builder with {@link Components#offHeapDataStore()}, change its
+ * properties with the methods of this class, and pass it to {@link Builder#dataStore(ComponentConfigurer)}:
+ * <pre><code>
+ *     LDConfig config = new LDConfig.Builder()
+ *         .dataStore(Components.offHeapDataStore().hotItemCacheSize(20000))
+ *         .build();
+ * </code></pre>
+ * <p>
+ * Unlike a persistent data store, this does not keep data across restarts of the application: the file
+ * is deleted when the SDK client is closed, and the data is reloaded from LaunchDarkly as usual.
+ * <p>
+ * Note that this class is abstract; the actual implementation is created by calling
+ * {@link Components#offHeapDataStore()}.
+ *
+ * @since 7.5.0
+ */
+public abstract class OffHeapDataStoreBuilder implements ComponentConfigurer<DataStore> {
+  /**
+   * The default value for {@link #hotItemCacheSize(int)}.
+   */
+  public static final int DEFAULT_HOT_ITEM_CACHE_SIZE = 10000;
+
+  protected int hotItemCacheSize = DEFAULT_HOT_ITEM_CACHE_SIZE;
+
+  protected Path directory;
+
+  /**
+   * Sets the maximum number of parsed flags and segments to keep in memory.
+   * <p>
+   * Ideally this should be at least the number of items that are evaluated frequently, including the
+   * prerequisites and segments that those flags refer to. When it is full, the least recently used item is
+   * discarded.
+   *
+   * @param hotItemCacheSize the maximum number of items; zero to parse every item each time it is used,
+   *   or a negative value to use the default
+   * @return the builder
+   * @see #DEFAULT_HOT_ITEM_CACHE_SIZE
+   */
+  public OffHeapDataStoreBuilder hotItemCacheSize(int hotItemCacheSize) {
+    this.hotItemCacheSize = hotItemCacheSize < 0 ? DEFAULT_HOT_ITEM_CACHE_SIZE : hotItemCacheSize;
+    return this;
+  }
+
+  /**
+   * Sets the directory for the memory-mapped file that holds the serialized items.
+   * <p>
+   * The file only exists while the SDK client is running. By default, it is created in the system's
+   * temporary directory (the {@code java.io.tmpdir} system property).
+   *
+   * @param directory the directory; null to use the default
+   * @return the builder
+   */
+  public OffHeapDataStoreBuilder directory(Path directory) {
+    this.directory = directory;
+    return this;
+  }
+}
@@ -6,6 +6,7 @@ import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider;
 import com.launchdarkly.sdk.server.subsystems.ComponentConfigurer;
 import com.launchdarkly.sdk.server.subsystems.DataStore;
 import com.launchdarkly.sdk.server.subsystems.PersistentDataStore;
+import com.launchdarkly.sdk.server.subsystems.PersistentDataStoreStreamingInit;
 
 import java.time.Duration;
 import java.util.concurrent.TimeUnit;
@@ -44,10 +45,27 @@ public abstract class PersistentDataStoreBuilder implements ComponentConfigurer<
    */
   public static final Duration DEFAULT_CACHE_TTL = Duration.ofSeconds(15);
 
+  /**
+   * The default value for {@link #initChunkSize(int)}.
+   * @since 7.5.0
+   */
+  public static final int DEFAULT_INIT_CHUNK_SIZE = 500;
+
   protected final ComponentConfigurer<PersistentDataStore> persistentDataStoreConfigurer; // see Components for why these are not private
   protected Duration cacheTime = DEFAULT_CACHE_TTL;
   protected StaleValuesPolicy staleValuesPolicy = StaleValuesPolicy.EVICT;
   protected boolean recordCacheStats = false;
+  protected long cacheMaximumWeight = 0;
+  protected double cacheRefreshAheadRatio = 0;
+  protected int compressionMinimumLength = 0;
+  protected SerializationFormat serializationFormat = SerializationFormat.JSON;
+  protected Duration writeBehindInterval = null;
+  protected int initChunkSize = DEFAULT_INIT_CHUNK_SIZE;
+  protected int initParallelism = 1;
+  protected Duration bulkRefreshInterval = null;
+  protected Duration readTimeout = null;
+  protected int maxConcurrentReads = 0;
+  protected Duration hedgeDelay = null;
 
   /**
    * Possible values for {@link #staleValuesPolicy(StaleValuesPolicy)}.
@@ -93,6 +111,28 @@ public abstract class PersistentDataStoreBuilder implements ComponentConfigurer<
      */
     REFRESH_ASYNC
   };
+
+  /**
+   * Possible values for {@link #serializationFormat(SerializationFormat)}.
+   *
+   * @since 7.5.0
+   */
+  public enum SerializationFormat {
+    /**
+     * Indicates that flags and segments should be stored as JSON. This is the default, and is the only
+     * format that older versions of the SDK, and SDKs for other platforms, can read.
+     */
+    JSON,
+    /**
+     * Indicates that flags and segments should be stored in a compact binary format.
+     * <p>
+     * The binary format is smaller than JSON for flags with many rules, and faster to read, because
+     * each property name is only stored once per item. It is not smaller for items that consist mostly
+     * of unique strings, such as a flag with a long list of individually targeted users. Since the data
+     * store interface only supports strings, the binary data is stored in Base64 encoding.
+     */
+    BINARY
+  }
   
   /**
    * Creates a new builder.
@@ -195,4 +235,278 @@ public abstract class PersistentDataStoreBuilder implements ComponentConfigurer<
     this.recordCacheStats = recordCacheStats;
     return this;
   }
+
+  /**
+   * Specifies a maximum size for the in-memory cache, as an estimated number of bytes.
+   * <p>
+   * By default, the cache has no size limit: items are only removed from it when they expire according
+   * to {@link #cacheTime(Duration)}, so with {@link #cacheForever()} and a large data set it will
+   * eventually hold every flag and segment. Setting a maximum weight makes the SDK use a size-bounded
+   * cache instead. When the cache is full, it decides which items to keep based on how often they have
+   * been used recently, so that frequently evaluated flags are not pushed out by a burst of rarely used
+   * ones. The size of each item is a rough estimate based on how many variations, targets, rules, and
+   * clause values it has, rather than an exact measurement, so that it is cheap to compute.
+   * <p>
+   * The expiration and stale value behavior set by {@link #cacheTime(Duration)} and
+   * {@link #staleValuesPolicy(StaleValuesPolicy)} still applies. However, a size-bounded cache cannot
+   * be relied on to hold a complete copy of the data, so results of queries for all flags are not
+   * cached, and if the data store becomes unavailable and then recovers, the SDK will ask its data
+   * source to refresh the data rather than rewriting the store from the cache.
+   * <p>
+   * A value of zero or less means there is no limit.
+   *
+   * @param maximumWeight the maximum total estimated size of cached items, in bytes
+   * @return the builder
+   * @since 7.5.0
+   */
+  public PersistentDataStoreBuilder cacheMaximumWeight(long maximumWeight) {
+    this.cacheMaximumWeight = maximumWeight < 0 ? 0 : maximumWeight;
+    return this;
+  }
+
+  /**
+   * Enables refreshing of cached items in the background shortly before they expire.
+   * <p>
+   * Normally, all of the items that the SDK puts into the cache when it receives a full set of data
+   * will expire at the same moment, one {@link #cacheTime(Duration)} later; the next evaluations will
+   * then reload them from the data store all at once, and if several SDK instances received the data
+   * at the same time, they will all do so together. If you set a refresh-ahead ratio, each cached item
+   * is instead given a random refresh time within that final fraction of the cache TTL. The first time
+   * the item is read after its refresh time, the SDK starts reloading it on a background thread and
+   * returns the cached value without waiting; only one such reload is done at a time for each item.
+   * For instance, a ratio of 0.25 with a 30-second TTL spreads the reloads over the last 7.5 seconds
+   * of the TTL, and a ratio of 1.0 spreads them over the whole TTL.
+   * <p>
+   * When this is enabled with {@link StaleValuesPolicy#REFRESH}, reloads of expired items are also done
+   * asynchronously, as with {@link StaleValuesPolicy#REFRESH_ASYNC}. With {@link StaleValuesPolicy#EVICT},
+   * an item that is not read at all during its refresh window still expires as usual.
+   * <p>
+   * The default is zero, meaning that items are only reloaded when they expire. This property has no
+   * effect if caching is disabled or if the cache TTL is infinite. Values greater than 1 are treated as 1.
+   *
+   * @param ratio the fraction of the cache TTL during which each item may be refreshed early
+   * @return the builder
+   * @since 7.5.0
+   */
+  public PersistentDataStoreBuilder cacheRefreshAhead(double ratio) {
+    this.cacheRefreshAheadRatio = ratio < 0 ? 0 : Math.min(ratio, 1.0);
+    return this;
+  }
+
+  /**
+   * Enables compression of large items when they are written to the persistent data store.
+   * <p>
+   * Flags with many individual targets, and segments with many included or excluded keys, can have
+   * very large JSON representations; that increases memory use and network traffic for the database, and
+   * some databases have a limit on the size of a single item. If you set a minimum length, each item
+   * whose JSON representation is at least that many characters long is compressed with the DEFLATE
+   * algorithm before it is stored, as long as that makes it smaller. Items are stored as strings, so
+   * the compressed data is Base64-encoded, with a prefix that identifies it as compressed.
+   * <p>
+   * The SDK can always read compressed items, whether or not this option is set, so it is safe for
+   * SDK instances with different settings to share a database. However, older versions of the SDK,
+   * and SDKs for other platforms, cannot read compressed items; do not enable this if any such
+   * applications use the same database.
+   * <p>
+   * The default is zero, meaning that items are not compressed.
+   *
+   * @param minimumLength the minimum length of an item's JSON representation, in characters, for it to
+   *   be compressed; zero or less disables compression
+   * @return the builder
+   * @since 7.5.0
+   */
+  public PersistentDataStoreBuilder compressItemsLargerThan(int minimumLength) {
+    this.compressionMinimumLength = minimumLength < 0 ? 0 : minimumLength;
+    return this;
+  }
+
+  /**
+   * Specifies the format in which the SDK should write flags and segments to the persistent data store.
+   * The default is {@link SerializationFormat#JSON}.
+   * <p>
+   * The SDK can read items in either format, whatever this is set to, so it is safe for SDK instances
+   * with different settings to share a database, or to change this setting for an existing database.
+   * However, older versions of the SDK, and SDKs for other platforms, can only read JSON; do not use
+   * {@link SerializationFormat#BINARY} if any such applications use the same database.
+   *
+   * @param serializationFormat a {@link SerializationFormat} constant
+   * @return the builder
+   * @since 7.5.0
+   */
+  public PersistentDataStoreBuilder serializationFormat(SerializationFormat serializationFormat) {
+    this.serializationFormat = serializationFormat == null ? SerializationFormat.JSON : serializationFormat;
+    return this;
+  }
+
+  /**
+   * Enables write-behind mode, in which updates are written to the persistent data store by a
+   * background thread rather than by the thread that received them.
+   * <p>
+   * Normally, when the SDK receives an update to a flag or segment, it writes the update to the data store
+   * before it goes on to process the next update, so a slow database delays every update that follows. In
+   * write-behind mode, the update is applied to the SDK's in-memory cache immediately and placed in a queue;
+   * after the specified interval, a worker thread writes everything in the queue to the data store. Each
+   * item is still written with its own call to the data store, so this does not reduce the number of
+   * writes unless the same item is updated more than once before it is written, in which case only its
+   * latest version is written.
+   * Until an update has been written, this SDK instance behaves as if it had been, but other applications
+   * that share the database will not see it.
+   * <p>
+   * If a write fails, the update stays in the queue and is retried after another interval. When the SDK
+   * is closed, it writes any updates that are still in the queue before closing the data store. The
+   * current queue depth and write lag are available from {@link DataStoreStatusProvider#getWriteQueueStats()}.
+   * <p>
+   * Write-behind does not apply when the SDK receives a full set of data, which is written directly to
+   * the data store as usual and replaces any updates that are still queued.
+   * <p>
+   * The default is null, meaning that updates are written synchronously.
+   *
+   * @param flushInterval how long to wait after an update before writing queued updates to the store;
+   *   null, zero, or a negative value disables write-behind
+   * @return the builder
+   * @since 7.5.0
+   */
+  public PersistentDataStoreBuilder writeBehind(Duration flushInterval) {
+    this.writeBehindInterval = flushInterval == null || flushInterval.isZero() || flushInterval.isNegative() ?
+        null : flushInterval;
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of items in each chunk, when writing a full data set to a persistent data store
+   * that supports doing so in chunks.
+   * <p>
+   * This only has an effect if the data store implementation also implements {@link PersistentDataStoreStreamingInit};
+   * see that interface for details. Smaller chunks mean smaller requests or transactions, but more of them.
+   * <p>
+   * The default is {@link #DEFAULT_INIT_CHUNK_SIZE}. Values less than 1 are treated as 1.
+   *
+   * @param chunkSize the maximum number of items to write at once
+   * @return the builder
+   * @since 7.5.0
+   */
+  public PersistentDataStoreBuilder initChunkSize(int chunkSize) {
+    this.initChunkSize = Math.max(1, chunkSize);
+    return this;
+  }
+
+  /**
+   * Sets how many chunks may be written at the same time, when writing a full data set to a persistent data
+   * store that supports doing so in chunks.
+   * <p>
+   * This only has an effect if the data store implementation also implements {@link PersistentDataStoreStreamingInit}.
+   * If it is greater than 1, the SDK uses that many worker threads for the duration of the operation, so
+   * that the latency of each request to the database overlaps with that of others; the progress of the
+   * operation is available from {@link DataStoreStatusProvider#getInitProgress()}.
+   * <p>
+   * The default is 1, meaning that chunks are written one at a time. Values less than 1 are treated as 1.
+   *
+   * @param parallelism the maximum number of chunks to write at once
+   * @return the builder
+   * @since 7.5.0
+   */
+  public PersistentDataStoreBuilder initParallelism(int parallelism) {
+    this.initParallelism = Math.max(1, parallelism);
+    return this;
+  }
+
+  /**
+   * Enables bulk refresh mode, in which the SDK keeps an in-memory copy of each kind of data and reloads
+   * it as a whole on a schedule, instead of letting each cached item expire and reload on its own.
+   * <p>
+   * This is mainly useful with {@link com.launchdarkly.sdk.server.Components#externalUpdatesOnly()}, where
+   * some other process updates the data store. With the usual per-item caching, every flag that is
+   * evaluated is reloaded with a separate query once per {@link #cacheTime(Duration)}, so an application
+   * that uses thousands of flags makes thousands of small queries per cache period, and any evaluation that
+   * finds an expired item has to wait for the database. In bulk refresh mode, the first read of a flag or
+   * segment loads all items of that kind with a single query, and a background thread then reloads every
+   * kind that has been loaded once per refresh interval. Evaluations are always answered from the
+   * in-memory copy and never wait for the database. Changes found by a refresh are reported to
+   * {@link com.launchdarkly.sdk.server.interfaces.FlagChangeListener}s.
+   * <p>
+   * In this mode, cached data does not expire, so {@link #cacheTime(Duration)}, {@link #staleValuesPolicy(StaleValuesPolicy)},
+   * {@link #cacheMaximumWeight(long)}, and {@link #cacheRefreshAhead(double)} are ignored; as with
+   * {@link #cacheForever()}, the SDK keeps using its last copy of the data if the data store becomes
+   * unavailable. It has no effect if caching is disabled with {@link #noCaching()}.
+   * <p>
+   * The default is null, meaning that each cached item expires according to {@link #cacheTime(Duration)}.
+   *
+   * @param refreshInterval how often to reload the data; null, zero, or a negative value disables bulk refresh
+   * @return the builder
+   * @since 7.5.0
+   */
+  public PersistentDataStoreBuilder bulkRefresh(Duration refreshInterval) {
+    this.bulkRefreshInterval = refreshInterval == null || refreshInterval.isZero() || refreshInterval.isNegative() ?
+        null : refreshInterval;
+    return this;
+  }
+
+  /**
+   * Sets a time budget for each read from the persistent data store.
+   * <p>
+   * Normally, an evaluation that needs an item that is not in the cache waits for the data store as long as
+   * the database client takes to answer, so if the database becomes slow, application threads that are
+   * evaluating flags can pile up. If you set a read timeout, the SDK stops waiting for a query after that
+   * time and treats it as a data store error: if the cache still has a value for the item, which is only
+   * the case with {@link StaleValuesPolicy#REFRESH} or {@link StaleValuesPolicy#REFRESH_ASYNC}, that value
+   * is used; otherwise the evaluation returns the application's default value. The query itself is not
+   * cancelled, since interrupting a database client in mid-request is rarely safe; to limit how many such
+   * queries can accumulate, use {@link #maxConcurrentReads(int)} as well.
+   * <p>
+   * To enforce the timeout, the SDK does each read on a worker thread. This only applies to reads; writes
+   * are always done on the thread that requested them. The number of timeouts is available from
+   * {@link DataStoreStatusProvider#getStoreReadStats()}.
+   * <p>
+   * The default is null, meaning that there is no time limit.
+   *
+   * @param timeout the maximum time to wait for each read; null, zero, or a negative value means no limit
+   * @return the builder
+   * @since 7.5.0
+   */
+  public PersistentDataStoreBuilder readTimeout(Duration timeout) {
+    this.readTimeout = timeout == null || timeout.isZero() || timeout.isNegative() ? null : timeout;
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of reads from the persistent data store that may be in progress at once.
+   * <p>
+   * If that many reads are already in progress, including ones that have exceeded the
+   * {@link #readTimeout(Duration)} but have not yet finished, any further read fails immediately, and the
+   * evaluation that needed it behaves as it would for any other data store error. This keeps a slow
+   * database from tying up an unbounded number of threads. The number of rejected reads is available
+   * from {@link DataStoreStatusProvider#getStoreReadStats()}.
+   * <p>
+   * The default is zero, meaning that there is no limit.
+   *
+   * @param limit the maximum number of reads in progress; zero or less means no limit
+   * @return the builder
+   * @since 7.5.0
+   */
+  public PersistentDataStoreBuilder maxConcurrentReads(int limit) {
+    this.maxConcurrentReads = Math.max(0, limit);
+    return this;
+  }
+
+  /**
+   * Enables hedged reads from the persistent data store.
+   * <p>
+   * If a read has not finished after the specified delay, the SDK starts a second, identical read and
+   * uses whichever result arrives first. This reduces the effect of occasional slow responses, such as a
+   * request that was sent to a database node that is briefly stalled, at the cost of some extra load on
+   * the database; a delay near the usual 95th or 99th percentile latency of a read means that only a few
+   * percent of reads are repeated. The second read is not started if that would exceed the
+   * {@link #maxConcurrentReads(int)} limit, and it does not extend the {@link #readTimeout(Duration)}.
+   * <p>
+   * The default is null, meaning that reads are not hedged.
+   *
+   * @param delay how long to wait for a read before starting a second attempt; null, zero, or a
+   *   negative value disables hedged reads
+   * @return the builder
+   * @since 7.5.0
+   */
+  public PersistentDataStoreBuilder hedgedReads(Duration delay) {
+    this.hedgeDelay = delay == null || delay.isZero() || delay.isNegative() ? null : delay;
+    return this;
+  }
 }
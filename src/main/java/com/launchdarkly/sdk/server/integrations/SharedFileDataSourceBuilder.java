@@ -0,0 +1,107 @@
+package com.launchdarkly.sdk.server.integrations;
+
+import com.launchdarkly.sdk.server.Components;
+import com.launchdarkly.sdk.server.LDConfig.Builder;
+import com.launchdarkly.sdk.server.subsystems.ComponentConfigurer;
+import com.launchdarkly.sdk.server.subsystems.DataSource;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Contains methods for configuring the data source for flag data that is shared by several processes on
+ * the same host.
+ * <p>
+ * Normally, every process that uses the SDK opens its own connection to LaunchDarkly and keeps its own
+ * copy of the flag data. On a host that runs many such processes with the same SDK key, they can instead
+ * share one copy: one process, the leader, receives the data and publishes it to a memory-mapped file,
+ * and the others read it from there. The leader is chosen by locking a file, so if the leader's process
+ * exits, another one takes over.
+ * <p>
+ * This must be used together with the data store created by {@link Components#sharedFileDataStore()},
+ * configured with the same file:
+ * <pre><code>
+ *     Path sharedFile = Paths.get("/dev/shm/my-app-flags");
+ *     LDConfig config = new LDConfig.Builder()
+ *         .dataSource(Components.sharedFileDataSource().file(sharedFile))
+ *         .dataStore(Components.sharedFileDataStore().file(sharedFile))
+ *         .build();
+ * </code></pre>
+ * <p>
+ * Note that this class is abstract; the actual implementation is created by calling
+ * {@link Components#sharedFileDataSource()}.
+ *
+ * @since 7.5.0
+ */
+public abstract class SharedFileDataSourceBuilder implements ComponentConfigurer<DataSource> {
+  /**
+   * The default value for {@link #pollInterval(Duration)}: 1 second.
+   */
+  public static final Duration DEFAULT_POLL_INTERVAL = Duration.ofSeconds(1);
+
+  /**
+   * The batching window of the default leader data source: 100 milliseconds.
+   *
+   * @see #leaderDataSource(ComponentConfigurer)
+   */
+  public static final Duration DEFAULT_LEADER_BATCH_WINDOW = Duration.ofMillis(100);
+
+  protected Path file;
+
+  protected ComponentConfigurer<DataSource> leaderDataSource = defaultLeaderDataSource();
+
+  protected Duration pollInterval = DEFAULT_POLL_INTERVAL;
+
+  /**
+   * Sets the shared file. This must be the same as the one given to {@link SharedFileDataStoreBuilder#file(Path)}.
+   * <p>
+   * If not specified, the file is in the system's temporary directory (the {@code java.io.tmpdir} system
+   * property), with a name derived from the SDK key. A file in a memory-backed file system such as
+   * {@code /dev/shm} is best, since the data never needs to be written to disk.
+   *
+   * @param file the shared file; null to use the default
+   * @return the builder
+   */
+  public SharedFileDataSourceBuilder file(Path file) {
+    this.file = file;
+    return this;
+  }
+
+  /**
+   * Sets the data source that the leader uses to get flag data. The default is
+   * {@link Components#streamingDataSource()} with updates batched over {@link #DEFAULT_LEADER_BATCH_WINDOW}.
+   * <p>
+   * The leader writes a complete new snapshot of the shared file for every change that it applies to the
+   * store, so it is much cheaper to apply a burst of updates as one batch. If you configure your own
+   * streaming data source, consider enabling {@link StreamingDataSourceBuilder#batchUpdates(Duration, int)}
+   * for the same reason.
+   *
+   * @param leaderDataSource the leader's data source configuration; null to use the default
+   * @return the builder
+   */
+  public SharedFileDataSourceBuilder leaderDataSource(ComponentConfigurer<DataSource> leaderDataSource) {
+    this.leaderDataSource = leaderDataSource == null ? defaultLeaderDataSource() : leaderDataSource;
+    return this;
+  }
+
+  /**
+   * Sets how often a process that is not the leader checks whether the leader has published data, and
+   * whether it should become the leader because the previous leader has exited.
+   * <p>
+   * This does not affect how quickly updates are seen: once there is data, every process sees each update
+   * as soon as the leader has written it.
+   *
+   * @param pollInterval the interval; null to use the default
+   * @return the builder
+   */
+  public SharedFileDataSourceBuilder pollInterval(Duration pollInterval) {
+    this.pollInterval = pollInterval == null || pollInterval.isNegative() || pollInterval.isZero() ?
+        DEFAULT_POLL_INTERVAL : pollInterval;
+    return this;
+  }
+
+  private static ComponentConfigurer<DataSource> defaultLeaderDataSource() {
+    return Components.streamingDataSource()
+        .batchUpdates(DEFAULT_LEADER_BATCH_WINDOW, StreamingDataSourceBuilder.DEFAULT_BATCH_MAX_ITEMS);
+  }
+}
@@ -0,0 +1,62 @@
+package com.launchdarkly.sdk.server.integrations;
+
+import com.launchdarkly.sdk.server.Components;
+import com.launchdarkly.sdk.server.subsystems.ComponentConfigurer;
+import com.launchdarkly.sdk.server.subsystems.DataStore;
+
+import java.nio.file.Path;
+
+/**
+ * Contains methods for configuring the data store for flag data that is shared by several processes on
+ * the same host.
+ * <p>
+ * The store keeps the flag data in a memory-mapped file that every process on the host that uses the same
+ * file can read, so the operating system keeps only one copy of it in memory. Each process keeps only the
+ * most recently used flags and segments as parsed objects. See {@link SharedFileDataSourceBuilder} for
+ * how to configure this together with the shared data source, which it must be used with.
+ * <p>
+ * Queries are cheap, but updates are not: every change that the leader applies to the store copies the
+ * whole data set, writes it to a new snapshot file, and makes every process map and index the new file.
+ * The cost of an update is therefore proportional to the total size of the flag data, not to the size of
+ * the change. The default leader data source batches bursts of stream updates so that they are written
+ * as one snapshot; see {@link SharedFileDataSourceBuilder#leaderDataSource(ComponentConfigurer)}.
+ * <p>
+ * Note that this class is abstract; the actual implementation is created by calling
+ * {@link Components#sharedFileDataStore()}.
+ *
+ * @since 7.5.0
+ */
+public abstract class SharedFileDataStoreBuilder implements ComponentConfigurer<DataStore> {
+  /**
+   * The default value for {@link #hotItemCacheSize(int)}.
+   */
+  public static final int DEFAULT_HOT_ITEM_CACHE_SIZE = OffHeapDataStoreBuilder.DEFAULT_HOT_ITEM_CACHE_SIZE;
+
+  protected Path file;
+
+  protected int hotItemCacheSize = DEFAULT_HOT_ITEM_CACHE_SIZE;
+
+  /**
+   * Sets the shared file. This must be the same as the one given to {@link SharedFileDataSourceBuilder#file(Path)}.
+   *
+   * @param file the shared file; null to use the default
+   * @return the builder
+   */
+  public SharedFileDataStoreBuilder file(Path file) {
+    this.file = file;
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of parsed flags and segments to keep in memory in each process.
+   *
+   * @param hotItemCacheSize the maximum number of items; zero to parse every item each time it is used,
+   *   or a negative value to use the default
+   * @return the builder
+   * @see OffHeapDataStoreBuilder#hotItemCacheSize(int)
+   */
+  public SharedFileDataStoreBuilder hotItemCacheSize(int hotItemCacheSize) {
+    this.hotItemCacheSize = hotItemCacheSize < 0 ? DEFAULT_HOT_ITEM_CACHE_SIZE : hotItemCacheSize;
+    return this;
+  }
+}
@@ -29,9 +29,25 @@ public abstract class StreamingDataSourceBuilder implements ComponentConfigurer<
    */
   public static final Duration DEFAULT_INITIAL_RECONNECT_DELAY = Duration.ofMillis(1000);
   
+  /**
+   * The default value for the {@code maxItems} parameter of {@link #batchUpdates(Duration, int)}: 100.
+   */
+  public static final int DEFAULT_BATCH_MAX_ITEMS = 100;
+  
+  /**
+   * The default value for the {@code queueCapacity} parameter of {@link #pipelinedUpdates(int)}: 1000.
+   */
+  public static final int DEFAULT_PIPELINE_QUEUE_CAPACITY = 1000;
+  
   protected Duration initialReconnectDelay = DEFAULT_INITIAL_RECONNECT_DELAY;
 
   protected String payloadFilter;
+  
+  protected Duration batchWindow = Duration.ZERO;
+  
+  protected int batchMaxItems = DEFAULT_BATCH_MAX_ITEMS;
+  
+  protected int pipelineQueueCapacity = 0;
 
   /**
    * Sets the initial reconnect delay for the streaming connection.
@@ -62,4 +78,63 @@ public abstract class StreamingDataSourceBuilder implements ComponentConfigurer<
     this.payloadFilter = payloadFilter;
     return this;
   }
+
+  /**
+   * Enables coalescing of individual flag and segment updates received from the stream.
+   * <p>
+   * Normally, each update event from the stream is applied to the data store as soon as it is received,
+   * and causes its own flag change events. If updates are batched, then an update is held for up to
+   * {@code window} in case more updates arrive, and all updates received in that time are applied to the
+   * data store together, with a single round of flag change events. If {@code maxItems} updates are
+   * received before the window has elapsed, they are applied immediately. This can greatly reduce the
+   * overhead of bursts of updates, such as when many flags are changed at once, at the cost of a small
+   * delay in applying each update.
+   * <p>
+   * Updates are always applied in the same relative order as they were received, and any pending
+   * updates are applied before a full data set from the stream.
+   * <p>
+   * Batched updates are applied on a separate thread from the one that reads the stream, as with
+   * {@link #pipelinedUpdates(int)}. If pipelining is not enabled, up to {@code maxItems} parsed events
+   * can be waiting for that thread before the stream thread stops reading.
+   * <p>
+   * By default, the window is zero, meaning that updates are not batched.
+   * 
+   * @param window the maximum time to hold an update before applying it; null or zero to disable batching
+   * @param maxItems the maximum number of updates to hold; values less than 1 are changed to
+   *   {@link #DEFAULT_BATCH_MAX_ITEMS}
+   * @return the builder
+   * @since 7.5.0
+   */
+  public StreamingDataSourceBuilder batchUpdates(Duration window, int maxItems) {
+    this.batchWindow = window == null || window.isNegative() ? Duration.ZERO : window;
+    this.batchMaxItems = maxItems < 1 ? DEFAULT_BATCH_MAX_ITEMS : maxItems;
+    return this;
+  }
+
+  /**
+   * Enables applying stream updates on a separate thread from the one that reads the stream.
+   * <p>
+   * Normally, each event is read, parsed, and applied to the data store on the same thread, so a slow
+   * data store write (such as with a persistent store that is under load) also delays reading the next
+   * event, and a long enough delay can cause the stream connection to time out. In pipelined mode, the
+   * stream thread only reads and parses events, and hands them off through a queue of at most
+   * {@code queueCapacity} events to another thread that applies them. Events are still applied in the
+   * order they were received.
+   * <p>
+   * If the queue is full, the stream thread waits for space to become available before reading any more
+   * events, and a warning is logged. The current queue depth, the number of times the queue was full,
+   * and the time taken to apply updates are available from
+   * {@link com.launchdarkly.sdk.server.interfaces.DataSourceStatusProvider#getPipelineStats()}.
+   * <p>
+   * By default, pipelining is disabled.
+   * 
+   * @param queueCapacity the maximum number of parsed events that can be waiting to be applied; zero or
+   *   a negative value disables pipelining
+   * @return the builder
+   * @since 7.5.0
+   */
+  public StreamingDataSourceBuilder pipelinedUpdates(int queueCapacity) {
+    this.pipelineQueueCapacity = queueCapacity < 0 ? 0 : queueCapacity;
+    return this;
+  }
 }
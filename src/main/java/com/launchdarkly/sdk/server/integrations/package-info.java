@@ -5,7 +5,8 @@
  * In the current main LaunchDarkly Java SDK library, this package contains the configuration builders
  * for the standard SDK components such as {@link com.launchdarkly.sdk.server.integrations.StreamingDataSourceBuilder},
  * the {@link com.launchdarkly.sdk.server.integrations.PersistentDataStoreBuilder} builder for use with
- * database integrations (the specific database integrations themselves are provided by add-on libraries),
+ * database integrations (the specific database integrations themselves are provided by add-on libraries,
+ * except for {@link com.launchdarkly.sdk.server.integrations.LocalDisk}, which stores data in local files),
  * and {@link com.launchdarkly.sdk.server.integrations.FileData} (for reading flags from a file in testing).
  */
 package com.launchdarkly.sdk.server.integrations;
@@ -23,6 +23,10 @@ public final class BigSegmentsConfiguration {
   private final Duration userCacheTime;
   private final Duration statusPollInterval;
   private final Duration staleAfter;
+  private final Duration batchWindow;
+  private final int maxBatchSize;
+  private final double userCacheRefreshAheadRatio;
+  private final Duration userCacheStaleWhileRevalidate;
 
   /**
    * Creates a new {@link BigSegmentsConfiguration} instance with the specified values.
@@ -40,11 +44,48 @@ public final class BigSegmentsConfiguration {
                                   Duration userCacheTime,
                                   Duration statusPollInterval,
                                   Duration staleAfter) {
+    this(bigSegmentStore, userCacheSize, userCacheTime, statusPollInterval, staleAfter,
+        BigSegmentsConfigurationBuilder.DEFAULT_BATCH_WINDOW, BigSegmentsConfigurationBuilder.DEFAULT_MAX_BATCH_SIZE,
+        0, Duration.ZERO);
+  }
+
+  /**
+   * Creates a new {@link BigSegmentsConfiguration} instance with the specified values, including the
+   * batching of store queries and the background refreshing of cached user state.
+   * <p>
+   * See {@link BigSegmentsConfigurationBuilder} for more information on the configuration fields.
+   *
+   * @param bigSegmentStore the Big Segments store instance
+   * @param userCacheSize the user cache size
+   * @param userCacheTime the user cache time
+   * @param statusPollInterval the status poll interval
+   * @param staleAfter the interval after which store data is considered stale
+   * @param batchWindow how long to wait for other users' queries to batch together; zero to disable batching
+   * @param maxBatchSize the maximum number of users in a batch
+   * @param userCacheRefreshAheadRatio the fraction of the user cache time during which a cached user state
+   *   may be refreshed in the background; zero to disable
+   * @param userCacheStaleWhileRevalidate how long an expired user state may still be used while it is
+   *   refreshed in the background; zero to disable
+   * @since 7.5.0
+   */
+  public BigSegmentsConfiguration(BigSegmentStore bigSegmentStore,
+                                  int userCacheSize,
+                                  Duration userCacheTime,
+                                  Duration statusPollInterval,
+                                  Duration staleAfter,
+                                  Duration batchWindow,
+                                  int maxBatchSize,
+                                  double userCacheRefreshAheadRatio,
+                                  Duration userCacheStaleWhileRevalidate) {
     this.bigSegmentStore = bigSegmentStore;
     this.userCacheSize = userCacheSize;
     this.userCacheTime = userCacheTime;
     this.statusPollInterval = statusPollInterval;
     this.staleAfter = staleAfter;
+    this.batchWindow = batchWindow;
+    this.maxBatchSize = maxBatchSize;
+    this.userCacheRefreshAheadRatio = userCacheRefreshAheadRatio;
+    this.userCacheStaleWhileRevalidate = userCacheStaleWhileRevalidate;
   }
 
   /**
@@ -91,4 +132,44 @@ public final class BigSegmentsConfiguration {
   public Duration getStaleAfter() {
     return this.staleAfter;
   }
+
+  /**
+   * Gets the value set by {@link BigSegmentsConfigurationBuilder#batchWindow(Duration)}
+   *
+   * @return the configured batch window; zero if queries are not batched
+   * @since 7.5.0
+   */
+  public Duration getBatchWindow() {
+    return this.batchWindow;
+  }
+
+  /**
+   * Gets the value set by {@link BigSegmentsConfigurationBuilder#maxBatchSize(int)}
+   *
+   * @return the configured maximum batch size
+   * @since 7.5.0
+   */
+  public int getMaxBatchSize() {
+    return this.maxBatchSize;
+  }
+
+  /**
+   * Gets the value set by {@link BigSegmentsConfigurationBuilder#userCacheRefreshAhead(double)}
+   *
+   * @return the configured refresh-ahead ratio; zero if cached user states are not refreshed early
+   * @since 7.5.0
+   */
+  public double getUserCacheRefreshAheadRatio() {
+    return this.userCacheRefreshAheadRatio;
+  }
+
+  /**
+   * Gets the value set by {@link BigSegmentsConfigurationBuilder#userCacheStaleWhileRevalidate(Duration)}
+   *
+   * @return the configured stale-while-revalidate time; zero if expired user states are not used
+   * @since 7.5.0
+   */
+  public Duration getUserCacheStaleWhileRevalidate() {
+    return this.userCacheStaleWhileRevalidate;
+  }
 }
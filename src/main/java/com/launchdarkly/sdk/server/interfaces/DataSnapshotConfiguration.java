@@ -0,0 +1,50 @@
+package com.launchdarkly.sdk.server.interfaces;
+
+import com.launchdarkly.sdk.server.integrations.DataSnapshotBuilder;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Encapsulates the SDK's configuration with regard to local snapshots of flag data.
+ * <p>
+ * See {@link DataSnapshotBuilder} for more details on these properties.
+ *
+ * @see DataSnapshotBuilder
+ * @since 7.5.0
+ */
+public final class DataSnapshotConfiguration {
+  private final Path filePath;
+  private final Duration writeInterval;
+
+  /**
+   * Creates a new {@link DataSnapshotConfiguration} instance with the specified values.
+   * <p>
+   * See {@link DataSnapshotBuilder} for more information on the configuration fields.
+   *
+   * @param filePath the snapshot file location
+   * @param writeInterval the interval between checks for changed data to write
+   */
+  public DataSnapshotConfiguration(Path filePath, Duration writeInterval) {
+    this.filePath = filePath;
+    this.writeInterval = writeInterval;
+  }
+
+  /**
+   * Gets the location of the snapshot file.
+   *
+   * @return the file path
+   */
+  public Path getFilePath() {
+    return filePath;
+  }
+
+  /**
+   * Gets the value set by {@link DataSnapshotBuilder#writeInterval(Duration)}.
+   *
+   * @return the interval between checks for changed data to write
+   */
+  public Duration getWriteInterval() {
+    return writeInterval;
+  }
+}
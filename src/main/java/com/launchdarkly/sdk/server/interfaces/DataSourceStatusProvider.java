@@ -83,6 +83,20 @@ public interface DataSourceStatusProvider {
    */
   public boolean waitFor(State desiredState, Duration timeout) throws InterruptedException;
   
+  /**
+   * Queries the current statistics for the queue of stream updates, if the data source is a streaming
+   * data source with pipelined updates enabled.
+   * <p>
+   * This method returns null if the data source is not a streaming data source, or if you did not enable
+   * pipelining with {@link com.launchdarkly.sdk.server.integrations.StreamingDataSourceBuilder#pipelinedUpdates(int)}.
+   * 
+   * @return a {@link PipelineStats} instance; null if not applicable
+   * @since 7.5.0
+   */
+  public default PipelineStats getPipelineStats() {
+    return null;
+  }
+  
   /**
    * An enumeration of possible values for {@link DataSourceStatusProvider.Status#getState()}.
    */
@@ -293,6 +307,7 @@ public interface DataSourceStatusProvider {
     private final State state;
     private final Instant stateSince;
     private final ErrorInfo lastError;
+    private final boolean fromSnapshot;
 
     /**
      * Constructs a new instance.
@@ -302,9 +317,23 @@ public interface DataSourceStatusProvider {
      * @param lastError a description of the last error, or null if no errors have occurred since startup
      */
     public Status(State state, Instant stateSince, ErrorInfo lastError) {
+      this(state, stateSince, lastError, false);
+    }
+
+    /**
+     * Constructs a new instance.
+     * 
+     * @param state the basic state as an enumeration
+     * @param stateSince timestamp of the last state transition
+     * @param lastError a description of the last error, or null if no errors have occurred since startup
+     * @param fromSnapshot true if the current data was loaded from a local snapshot
+     * @since 7.5.0
+     */
+    public Status(State state, Instant stateSince, ErrorInfo lastError, boolean fromSnapshot) {
       this.state = state;
       this.stateSince = stateSince;
       this.lastError = lastError;
+      this.fromSnapshot = fromSnapshot;
     }
     
     /**
@@ -352,23 +381,148 @@ public interface DataSourceStatusProvider {
       return lastError;
     }
     
+    /**
+     * Returns true if the SDK's current flag data was loaded from a local snapshot at startup, and has
+     * not yet been replaced by data from the data source.
+     * <p>
+     * This can only be true if snapshots were enabled with
+     * {@link com.launchdarkly.sdk.server.LDConfig.Builder#dataSnapshot(com.launchdarkly.sdk.server.subsystems.ComponentConfigurer)}.
+     * 
+     * @return true if the data is from a snapshot
+     * @since 7.5.0
+     */
+    public boolean isFromSnapshot() {
+      return fromSnapshot;
+    }
+    
     @Override
     public boolean equals(Object other) {
       if (other instanceof Status) {
         Status o = (Status)other;
-        return state == o.state && Objects.equals(stateSince, o.stateSince) && Objects.equals(lastError, o.lastError);
+        return state == o.state && Objects.equals(stateSince, o.stateSince) && Objects.equals(lastError, o.lastError) &&
+            fromSnapshot == o.fromSnapshot;
       }
       return false;
     }
     
     @Override
     public int hashCode() {
-      return Objects.hash(state, stateSince, lastError);
+      return Objects.hash(state, stateSince, lastError, fromSnapshot);
+    }
+    
+    @Override
+    public String toString() {
+      return "Status(" + state + "," + stateSince + "," + lastError + (fromSnapshot ? ",fromSnapshot" : "") + ")";
+    }
+  }
+
+  /**
+   * A snapshot of statistics for the queue of stream updates waiting to be applied. The counts and times
+   * are cumulative across the lifetime of the data source.
+   * 
+   * @see DataSourceStatusProvider#getPipelineStats()
+   * @see com.launchdarkly.sdk.server.integrations.StreamingDataSourceBuilder#pipelinedUpdates(int)
+   * @since 7.5.0
+   */
+  public static final class PipelineStats {
+    private final int queueDepth;
+    private final int queueCapacity;
+    private final long fullQueueCount;
+    private final long appliedCount;
+    private final long totalApplyTime;
+    private final long maxApplyTime;
+    
+    /**
+     * Constructs a new instance.
+     * 
+     * @param queueDepth number of parsed events currently waiting to be applied
+     * @param queueCapacity maximum number of events that can be waiting to be applied
+     * @param fullQueueCount number of times the stream thread had to wait because the queue was full
+     * @param appliedCount number of events that have been applied
+     * @param totalApplyTime number of nanoseconds spent applying each event after it was taken from the queue,
+     *   summed over all events
+     * @param maxApplyTime largest number of nanoseconds spent applying an event after it was taken from the queue
+     */
+    public PipelineStats(int queueDepth, int queueCapacity, long fullQueueCount, long appliedCount,
+        long totalApplyTime, long maxApplyTime) {
+      this.queueDepth = queueDepth;
+      this.queueCapacity = queueCapacity;
+      this.fullQueueCount = fullQueueCount;
+      this.appliedCount = appliedCount;
+      this.totalApplyTime = totalApplyTime;
+      this.maxApplyTime = maxApplyTime;
+    }
+    
+    /**
+     * The number of parsed events that are currently waiting to be applied.
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+      return queueDepth;
+    }
+
+    /**
+     * The maximum number of events that can be waiting to be applied.
+     * @return the queue capacity
+     */
+    public int getQueueCapacity() {
+      return queueCapacity;
+    }
+
+    /**
+     * The number of times that the stream thread had to stop reading because the queue was full.
+     * @return the number of times the queue was full
+     */
+    public long getFullQueueCount() {
+      return fullQueueCount;
+    }
+
+    /**
+     * The number of events that have been taken from the queue and applied.
+     * @return the number of applied events
+     */
+    public long getAppliedCount() {
+      return appliedCount;
+    }
+
+    /**
+     * The total number of nanoseconds spent applying events, measured from when each event was taken from
+     * the queue. This does not include the time that events spent waiting in the queue; a queue that is
+     * often full, as shown by {@link #getFullQueueCount()}, means that events are waiting.
+     * @return total apply time for all events
+     */
+    public long getTotalApplyTime() {
+      return totalApplyTime;
+    }
+
+    /**
+     * The largest number of nanoseconds spent applying an event, measured from when it was taken from the
+     * queue.
+     * @return maximum apply time
+     */
+    public long getMaxApplyTime() {
+      return maxApplyTime;
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof PipelineStats)) {
+        return false;
+      }
+      PipelineStats o = (PipelineStats)other;
+      return queueDepth == o.queueDepth && queueCapacity == o.queueCapacity && fullQueueCount == o.fullQueueCount &&
+          appliedCount == o.appliedCount && totalApplyTime == o.totalApplyTime && maxApplyTime == o.maxApplyTime;
+    }
+    
+    @Override
+    public int hashCode() {
+      return Objects.hash(queueDepth, queueCapacity, fullQueueCount, appliedCount, totalApplyTime, maxApplyTime);
     }
     
     @Override
     public String toString() {
-      return "Status(" + state + "," + stateSince + "," + lastError + ")";
+      return "{queueDepth=" + queueDepth + ", queueCapacity=" + queueCapacity + ", fullQueue=" + fullQueueCount +
+          ", applied=" + appliedCount + ", totalApplyTime=" + totalApplyTime + ", maxApplyTime=" + maxApplyTime + "}";
     }
   }
 
@@ -2,6 +2,10 @@ package com.launchdarkly.sdk.server.interfaces;
 
 import com.launchdarkly.sdk.server.integrations.PersistentDataStoreBuilder;
 
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -75,6 +79,52 @@ public interface DataStoreStatusProvider {
    * @return a {@link CacheStats} instance; null if not applicable
    */
   public CacheStats getCacheStats();
+
+  /**
+   * Queries the current state of the queue of updates that have not yet been written to the persistent
+   * store, if this is a persistent store with write-behind enabled.
+   * <p>
+   * This method returns null if the data store implementation is not a persistent store, or if you did not
+   * enable write-behind with {@link PersistentDataStoreBuilder#writeBehind(Duration)}.
+   * 
+   * @return a {@link WriteQueueStats} instance; null if not applicable
+   * @since 7.5.0
+   */
+  public default WriteQueueStats getWriteQueueStats() {
+    return null;
+  }
+
+  /**
+   * Queries the progress of the most recent operation that replaced the contents of the persistent store
+   * with a full data set, if this is a persistent store.
+   * <p>
+   * This is most useful for large data sets with a store that supports writing the data in chunks (see
+   * {@link com.launchdarkly.sdk.server.subsystems.PersistentDataStoreStreamingInit}); for other stores, the
+   * number of items written only changes when the whole data set has been written. This method returns null
+   * if the data store implementation is not a persistent store, or if this SDK instance has not yet tried to
+   * write a full data set to it.
+   * 
+   * @return an {@link InitProgress} instance; null if not applicable
+   * @since 7.5.0
+   */
+  public default InitProgress getInitProgress() {
+    return null;
+  }
+  
+  /**
+   * Queries the state of the limits on reads from the persistent store, if this is a persistent store
+   * with a read timeout, a concurrency limit, or hedged reads enabled.
+   * <p>
+   * This method returns null if the data store implementation is not a persistent store, or if you did not
+   * enable any of those options with {@link PersistentDataStoreBuilder#readTimeout(Duration)},
+   * {@link PersistentDataStoreBuilder#maxConcurrentReads(int)}, or {@link PersistentDataStoreBuilder#hedgedReads(Duration)}.
+   * 
+   * @return a {@link StoreReadStats} instance; null if not applicable
+   * @since 7.5.0
+   */
+  public default StoreReadStats getStoreReadStats() {
+    return null;
+  }
   
   /**
    * Information about a status change.
@@ -161,12 +211,38 @@ public interface DataStoreStatusProvider {
    * @since 4.12.0
    */
   public static final class CacheStats {
+    /**
+     * The ways in which a query for a single item can be answered by a caching data store.
+     * 
+     * @see CacheStats#getReadCount(ReadPath)
+     * @since 7.5.0
+     */
+    public static enum ReadPath {
+      /**
+       * The item was found in the cache of individual items.
+       */
+      ITEM_CACHE,
+
+      /**
+       * The item was not in the cache of individual items, but the cache had a current copy of all
+       * items of that kind, so the data store did not need to be queried.
+       */
+      ALL_ITEMS_CACHE,
+
+      /**
+       * The item was queried from the underlying data store.
+       */
+      STORE
+    }
+
     private final long hitCount;
     private final long missCount;
     private final long loadSuccessCount;
     private final long loadExceptionCount;
     private final long totalLoadTime;
     private final long evictionCount;
+    private final Map<String, CacheStats> statsByKind;
+    private final Map<ReadPath, Long> readCounts;
     
     /**
      * Constructs a new instance.
@@ -180,12 +256,60 @@ public interface DataStoreStatusProvider {
      */
     public CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadExceptionCount,
         long totalLoadTime, long evictionCount) {
+      this(hitCount, missCount, loadSuccessCount, loadExceptionCount, totalLoadTime, evictionCount, null);
+    }
+
+    /**
+     * Constructs a new instance, including statistics for each kind of data.
+     * 
+     * @param hitCount number of queries that produced a cache hit
+     * @param missCount number of queries that produced a cache miss
+     * @param loadSuccessCount number of cache misses that loaded a value without an exception
+     * @param loadExceptionCount number of cache misses that tried to load a value but got an exception
+     * @param totalLoadTime number of nanoseconds spent loading new values
+     * @param evictionCount number of cache entries that have been evicted
+     * @param statsByKind statistics for queries of individual items, keyed by the name of the data kind;
+     *   may be null
+     * @since 7.5.0
+     */
+    public CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadExceptionCount,
+        long totalLoadTime, long evictionCount, Map<String, CacheStats> statsByKind) {
+      this(hitCount, missCount, loadSuccessCount, loadExceptionCount, totalLoadTime, evictionCount, statsByKind, null);
+    }
+
+    /**
+     * Constructs a new instance, including statistics for each kind of data and for each way that
+     * queries of individual items were answered.
+     * 
+     * @param hitCount number of queries that produced a cache hit
+     * @param missCount number of queries that produced a cache miss
+     * @param loadSuccessCount number of cache misses that loaded a value without an exception
+     * @param loadExceptionCount number of cache misses that tried to load a value but got an exception
+     * @param totalLoadTime number of nanoseconds spent loading new values
+     * @param evictionCount number of cache entries that have been evicted
+     * @param statsByKind statistics for queries of individual items, keyed by the name of the data kind;
+     *   may be null
+     * @param readCounts number of queries of individual items that were answered in each way; may be null
+     * @since 7.5.0
+     */
+    public CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadExceptionCount,
+        long totalLoadTime, long evictionCount, Map<String, CacheStats> statsByKind, Map<ReadPath, Long> readCounts) {
       this.hitCount = hitCount;
       this.missCount = missCount;
       this.loadSuccessCount = loadSuccessCount;
       this.loadExceptionCount = loadExceptionCount;
       this.totalLoadTime = totalLoadTime;
       this.evictionCount = evictionCount;
+      this.statsByKind = statsByKind == null ? Collections.emptyMap() : Collections.unmodifiableMap(statsByKind);
+      Map<ReadPath, Long> nonZeroReadCounts = new EnumMap<>(ReadPath.class);
+      if (readCounts != null) {
+        for (Map.Entry<ReadPath, Long> e: readCounts.entrySet()) {
+          if (e.getValue() != null && e.getValue().longValue() != 0) {
+            nonZeroReadCounts.put(e.getKey(), e.getValue());
+          }
+        }
+      }
+      this.readCounts = Collections.unmodifiableMap(nonZeroReadCounts); // omitting zeroes makes equals() simpler
     }
     
     /**
@@ -236,6 +360,28 @@ public interface DataStoreStatusProvider {
     public long getEvictionCount() {
       return evictionCount;
     }
+
+    /**
+     * Statistics for queries of individual items, broken down by the kind of data, such as "features"
+     * or "segments". This is empty if the data store does not provide such a breakdown.
+     * @return a map of data kind names to statistics
+     * @since 7.5.0
+     */
+    public Map<String, CacheStats> getStatsByKind() {
+      return statsByKind;
+    }
+
+    /**
+     * The number of queries for individual items that were answered in the specified way. This is
+     * zero for every {@link ReadPath} if the data store does not provide such a breakdown.
+     * @param readPath a {@link ReadPath}
+     * @return the number of queries
+     * @since 7.5.0
+     */
+    public long getReadCount(ReadPath readPath) {
+      Long count = readCounts.get(readPath);
+      return count == null ? 0 : count.longValue();
+    }
     
     @Override
     public boolean equals(Object other) {
@@ -244,18 +390,306 @@ public interface DataStoreStatusProvider {
       }
       CacheStats o = (CacheStats)other;
       return hitCount == o.hitCount && missCount == o.missCount && loadSuccessCount == o.loadSuccessCount &&
-          loadExceptionCount == o.loadExceptionCount && totalLoadTime == o.totalLoadTime && evictionCount == o.evictionCount;
+          loadExceptionCount == o.loadExceptionCount && totalLoadTime == o.totalLoadTime && evictionCount == o.evictionCount &&
+          statsByKind.equals(o.statsByKind) && readCounts.equals(o.readCounts);
     }
     
     @Override
     public int hashCode() {
-      return Objects.hash(hitCount, missCount, loadSuccessCount, loadExceptionCount, totalLoadTime, evictionCount);
+      return Objects.hash(hitCount, missCount, loadSuccessCount, loadExceptionCount, totalLoadTime, evictionCount,
+          statsByKind, readCounts);
     }
     
     @Override
     public String toString() {
       return "{hit=" + hitCount + ", miss=" + missCount + ", loadSuccess=" + loadSuccessCount +
-          ", loadException=" + loadExceptionCount + ", totalLoadTime=" + totalLoadTime + ", evictionCount=" + evictionCount + "}";
+          ", loadException=" + loadExceptionCount + ", totalLoadTime=" + totalLoadTime + ", evictionCount=" + evictionCount +
+          (statsByKind.isEmpty() ? "" : ", byKind=" + statsByKind) +
+          (readCounts.isEmpty() ? "" : ", reads=" + readCounts) + "}";
+    }
+  }
+
+  /**
+   * A snapshot of the state of a persistent data store's write-behind queue. The counts are cumulative
+   * across the lifetime of the data store.
+   * 
+   * @see DataStoreStatusProvider#getWriteQueueStats()
+   * @see PersistentDataStoreBuilder#writeBehind(Duration)
+   * @since 7.5.0
+   */
+  public static final class WriteQueueStats {
+    private final int queueDepth;
+    private final Duration writeLag;
+    private final long writeCount;
+    private final long coalescedCount;
+    private final long failedWriteCount;
+
+    /**
+     * Constructs a new instance.
+     * 
+     * @param queueDepth number of items that have updates waiting to be written
+     * @param writeLag how long the oldest of those updates has been waiting; null is the same as zero
+     * @param writeCount number of updates that have been written to the store
+     * @param coalescedCount number of updates that replaced an update of the same item that had not yet
+     *   been written
+     * @param failedWriteCount number of times that writing an update to the store failed
+     */
+    public WriteQueueStats(int queueDepth, Duration writeLag, long writeCount, long coalescedCount,
+        long failedWriteCount) {
+      this.queueDepth = queueDepth;
+      this.writeLag = writeLag == null ? Duration.ZERO : writeLag;
+      this.writeCount = writeCount;
+      this.coalescedCount = coalescedCount;
+      this.failedWriteCount = failedWriteCount;
+    }
+
+    /**
+     * The number of items that have been updated but not yet written to the store. Several updates of
+     * the same item count as one, since only the latest one will be written.
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+      return queueDepth;
+    }
+
+    /**
+     * How long the oldest update that has not yet been written to the store has been waiting. This is
+     * zero if the queue is empty.
+     * @return the write lag
+     */
+    public Duration getWriteLag() {
+      return writeLag;
+    }
+
+    /**
+     * The number of updates that have been written to the store.
+     * @return the number of writes
+     */
+    public long getWriteCount() {
+      return writeCount;
+    }
+
+    /**
+     * The number of updates that replaced an update of the same item before it was written, and so
+     * saved a write.
+     * @return the number of coalesced updates
+     */
+    public long getCoalescedCount() {
+      return coalescedCount;
+    }
+
+    /**
+     * The number of times that writing an update to the store failed. Failed updates remain in the queue
+     * and are retried.
+     * @return the number of failed writes
+     */
+    public long getFailedWriteCount() {
+      return failedWriteCount;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof WriteQueueStats)) {
+        return false;
+      }
+      WriteQueueStats o = (WriteQueueStats)other;
+      return queueDepth == o.queueDepth && writeLag.equals(o.writeLag) && writeCount == o.writeCount &&
+          coalescedCount == o.coalescedCount && failedWriteCount == o.failedWriteCount;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(queueDepth, writeLag, writeCount, coalescedCount, failedWriteCount);
+    }
+
+    @Override
+    public String toString() {
+      return "{queueDepth=" + queueDepth + ", writeLag=" + writeLag + ", writes=" + writeCount +
+          ", coalesced=" + coalescedCount + ", failedWrites=" + failedWriteCount + "}";
+    }
+  }
+
+  /**
+   * A snapshot of the progress of writing a full data set to a persistent data store.
+   * 
+   * @see DataStoreStatusProvider#getInitProgress()
+   * @since 7.5.0
+   */
+  public static final class InitProgress {
+    private final boolean inProgress;
+    private final int itemsWritten;
+    private final int totalItems;
+    private final Duration elapsedTime;
+
+    /**
+     * Constructs a new instance.
+     * 
+     * @param inProgress true if the data set is still being written
+     * @param itemsWritten number of items that have been written so far
+     * @param totalItems number of items in the data set
+     * @param elapsedTime how long the operation has taken so far, or took in total if it is finished;
+     *   null is the same as zero
+     */
+    public InitProgress(boolean inProgress, int itemsWritten, int totalItems, Duration elapsedTime) {
+      this.inProgress = inProgress;
+      this.itemsWritten = itemsWritten;
+      this.totalItems = totalItems;
+      this.elapsedTime = elapsedTime == null ? Duration.ZERO : elapsedTime;
+    }
+
+    /**
+     * True if the data set is still being written; false if the operation has finished, whether or not it
+     * was successful.
+     * @return true if in progress
+     */
+    public boolean isInProgress() {
+      return inProgress;
+    }
+
+    /**
+     * The number of items that have been written so far. If the operation has finished and this is less
+     * than {@link #getTotalItems()}, it failed.
+     * @return the number of items written
+     */
+    public int getItemsWritten() {
+      return itemsWritten;
+    }
+
+    /**
+     * The number of items in the data set.
+     * @return the total number of items
+     */
+    public int getTotalItems() {
+      return totalItems;
+    }
+
+    /**
+     * How long the operation has taken so far, or how long it took in total if it has finished.
+     * @return the elapsed time
+     */
+    public Duration getElapsedTime() {
+      return elapsedTime;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof InitProgress)) {
+        return false;
+      }
+      InitProgress o = (InitProgress)other;
+      return inProgress == o.inProgress && itemsWritten == o.itemsWritten && totalItems == o.totalItems &&
+          elapsedTime.equals(o.elapsedTime);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(inProgress, itemsWritten, totalItems, elapsedTime);
+    }
+
+    @Override
+    public String toString() {
+      return "{inProgress=" + inProgress + ", written=" + itemsWritten + ", total=" + totalItems +
+          ", elapsed=" + elapsedTime + "}";
+    }
+  }
+
+  /**
+   * A snapshot of the state of the limits on reads from a persistent data store. The counts are cumulative
+   * across the lifetime of the data store.
+   * 
+   * @see DataStoreStatusProvider#getStoreReadStats()
+   * @see PersistentDataStoreBuilder#readTimeout(Duration)
+   * @see PersistentDataStoreBuilder#maxConcurrentReads(int)
+   * @see PersistentDataStoreBuilder#hedgedReads(Duration)
+   * @since 7.5.0
+   */
+  public static final class StoreReadStats {
+    private final int inFlightCount;
+    private final long timeoutCount;
+    private final long rejectedCount;
+    private final long hedgedCount;
+    private final long hedgeWinCount;
+
+    /**
+     * Constructs a new instance.
+     * 
+     * @param inFlightCount number of reads currently in progress
+     * @param timeoutCount number of reads that did not complete within the time budget
+     * @param rejectedCount number of reads that were rejected because of the concurrency limit
+     * @param hedgedCount number of reads for which a second attempt was started
+     * @param hedgeWinCount number of reads for which the second attempt finished first
+     */
+    public StoreReadStats(int inFlightCount, long timeoutCount, long rejectedCount, long hedgedCount,
+        long hedgeWinCount) {
+      this.inFlightCount = inFlightCount;
+      this.timeoutCount = timeoutCount;
+      this.rejectedCount = rejectedCount;
+      this.hedgedCount = hedgedCount;
+      this.hedgeWinCount = hedgeWinCount;
+    }
+
+    /**
+     * The number of reads from the store that are currently in progress. This includes reads that have
+     * exceeded the time budget, whose callers are no longer waiting for them, and the second attempts of
+     * hedged reads.
+     * @return the number of reads in progress
+     */
+    public int getInFlightCount() {
+      return inFlightCount;
+    }
+
+    /**
+     * The number of reads that did not complete within the time budget. Each of these was also reported as
+     * a store error, and the SDK used a stale cached value if it had one.
+     * @return the number of timeouts
+     */
+    public long getTimeoutCount() {
+      return timeoutCount;
+    }
+
+    /**
+     * The number of reads that were not attempted because the concurrency limit had been reached.
+     * @return the number of rejected reads
+     */
+    public long getRejectedCount() {
+      return rejectedCount;
+    }
+
+    /**
+     * The number of reads that took longer than the hedge delay, so that a second attempt was started.
+     * @return the number of hedged reads
+     */
+    public long getHedgedCount() {
+      return hedgedCount;
+    }
+
+    /**
+     * The number of hedged reads for which the second attempt finished before the first.
+     * @return the number of times the second attempt was used
+     */
+    public long getHedgeWinCount() {
+      return hedgeWinCount;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof StoreReadStats)) {
+        return false;
+      }
+      StoreReadStats o = (StoreReadStats)other;
+      return inFlightCount == o.inFlightCount && timeoutCount == o.timeoutCount && rejectedCount == o.rejectedCount &&
+          hedgedCount == o.hedgedCount && hedgeWinCount == o.hedgeWinCount;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(inFlightCount, timeoutCount, rejectedCount, hedgedCount, hedgeWinCount);
+    }
+
+    @Override
+    public String toString() {
+      return "{inFlight=" + inFlightCount + ", timeouts=" + timeoutCount + ", rejected=" + rejectedCount +
+          ", hedged=" + hedgedCount + ", hedgeWins=" + hedgeWinCount + "}";
     }
   }
 }
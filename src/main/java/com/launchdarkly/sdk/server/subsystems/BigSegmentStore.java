@@ -1,6 +1,9 @@
 package com.launchdarkly.sdk.server.subsystems;
 
 import java.io.Closeable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Interface for a read-only data store that allows querying of user membership in Big Segments.
@@ -29,6 +32,33 @@ public interface BigSegmentStore extends Closeable {
    */
   BigSegmentStoreTypes.Membership getMembership(String userHash);
 
+  /**
+   * Queries the store for the current segment state of several users at once.
+   * <p>
+   * The SDK calls this instead of {@link #getMembership(String)} when it has been configured to combine
+   * queries for different users with
+   * {@link com.launchdarkly.sdk.server.integrations.BigSegmentsConfigurationBuilder#batchWindow(java.time.Duration)}.
+   * Implementations for databases that support multi-key reads should override it so that the whole batch
+   * takes one round trip; the default implementation simply calls {@link #getMembership(String)} for each
+   * hash.
+   * <p>
+   * Users with no membership state may be omitted from the result, or mapped to {@code null} or to an
+   * empty {@link BigSegmentStoreTypes.Membership}. As with {@link #getMembership(String)}, an exception
+   * should only be thrown for an unexpected database error or malformed data, and it applies to every
+   * user in the batch.
+   *
+   * @param userHashes the hashed user identifiers
+   * @return a map of hashed user identifiers to segment membership states
+   * @since 7.5.0
+   */
+  default Map<String, BigSegmentStoreTypes.Membership> getMemberships(Collection<String> userHashes) {
+    Map<String, BigSegmentStoreTypes.Membership> ret = new HashMap<>();
+    for (String userHash: userHashes) {
+      ret.put(userHash, getMembership(userHash));
+    }
+    return ret;
+  }
+
   /**
    * Returns information about the overall state of the store.
    * <p>
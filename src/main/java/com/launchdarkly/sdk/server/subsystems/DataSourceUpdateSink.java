@@ -8,6 +8,9 @@ import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.KeyedItems;
+
+import java.util.Map;
 
 /**
  * Interface that a data source implementation will use to push data into the SDK.
@@ -52,6 +55,32 @@ public interface DataSourceUpdateSink {
    */
   boolean upsert(DataKind kind, String key, ItemDescriptor item); 
   
+  /**
+   * Updates or inserts a batch of items, with the same versioning rules as
+   * {@link #upsert(DataKind, String, ItemDescriptor)}. Items that are not in the batch are unaffected.
+   * <p>
+   * A data source that receives many individual updates in a short time may use this method to apply
+   * them all at once, which allows the SDK to do a single data store update and to send a single round
+   * of flag change events. The default implementation simply calls
+   * {@link #upsert(DataKind, String, ItemDescriptor)} for each item.
+   * <p>
+   * Error handling is the same as for {@link #upsert(DataKind, String, ItemDescriptor)}.
+   * 
+   * @param items a list of {@link DataStoreTypes.DataKind} instances and the items to update for each
+   * @return true if the update succeeded, false if it failed
+   * @since 7.5.0
+   */
+  default boolean upsertAll(FullDataSet<ItemDescriptor> items) {
+    for (Map.Entry<DataKind, KeyedItems<ItemDescriptor>> e0: items.getData()) {
+      for (Map.Entry<String, ItemDescriptor> e1: e0.getValue().getItems()) {
+        if (!upsert(e0.getKey(), e1.getKey(), e1.getValue())) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+  
   /**
    * Returns an object that provides status tracking for the data store, if applicable.
    * <p>
@@ -1,13 +1,19 @@
 package com.launchdarkly.sdk.server.subsystems;
 
+import com.google.common.collect.ImmutableList;
 import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider;
 import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.CacheStats;
+import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.InitProgress;
+import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.StoreReadStats;
+import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.WriteQueueStats;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.KeyedItems;
 
 import java.io.Closeable;
+import java.util.AbstractMap;
+import java.util.Map;
 
 /**
  * Interface for a data store that holds feature flags and related data received by the SDK.
@@ -74,6 +80,38 @@ public interface DataStore extends Closeable {
    */
   boolean upsert(DataKind kind, String key, ItemDescriptor item);
   
+  /**
+   * Updates or inserts a batch of items, with the same versioning rules as
+   * {@link #upsert(DataKind, String, ItemDescriptor)}. Unlike {@link #init(FullDataSet)}, this does not
+   * affect any items that are not in the batch.
+   * <p>
+   * Items should be applied in the order that they are given. The default implementation simply calls
+   * {@link #upsert(DataKind, String, ItemDescriptor)} for each item; implementations that can apply a
+   * batch more efficiently than a series of individual updates may override it.
+   * 
+   * @param items a list of {@link DataStoreTypes.DataKind} instances and the items to update for each
+   * @return the subset of the items that were actually updated, in the same form
+   * @since 7.5.0
+   */
+  default FullDataSet<ItemDescriptor> upsertAll(FullDataSet<ItemDescriptor> items) {
+    ImmutableList.Builder<Map.Entry<DataKind, KeyedItems<ItemDescriptor>>> updated = ImmutableList.builder();
+    for (Map.Entry<DataKind, KeyedItems<ItemDescriptor>> e0: items.getData()) {
+      DataKind kind = e0.getKey();
+      ImmutableList.Builder<Map.Entry<String, ItemDescriptor>> updatedOfKind = ImmutableList.builder();
+      boolean anyUpdated = false;
+      for (Map.Entry<String, ItemDescriptor> e1: e0.getValue().getItems()) {
+        if (upsert(kind, e1.getKey(), e1.getValue())) {
+          updatedOfKind.add(e1);
+          anyUpdated = true;
+        }
+      }
+      if (anyUpdated) {
+        updated.add(new AbstractMap.SimpleEntry<>(kind, new KeyedItems<>(updatedOfKind.build())));
+      }
+    }
+    return new FullDataSet<>(updated.build());
+  }
+  
   /**
    * Checks whether this store has been initialized with any data yet.
    *
@@ -104,4 +142,38 @@ public interface DataStore extends Closeable {
    * @return a cache statistics object, or null if not applicable
    */
   CacheStats getCacheStats();
+
+  /**
+   * Returns the state of the queue of updates that have not yet been written to an underlying
+   * persistent store, if this data store implementation supports write-behind. The default
+   * implementation returns null.
+   * 
+   * @return a write queue statistics object, or null if not applicable
+   * @since 7.5.0
+   */
+  default WriteQueueStats getWriteQueueStats() {
+    return null;
+  }
+
+  /**
+   * Returns the progress of the most recent operation that wrote a full data set to an underlying
+   * persistent store, if this data store implementation has one. The default implementation returns null.
+   * 
+   * @return an init progress object, or null if not applicable
+   * @since 7.5.0
+   */
+  default InitProgress getInitProgress() {
+    return null;
+  }
+
+  /**
+   * Returns the state of the limits on reads from an underlying persistent store, if this data store
+   * implementation has one and any limits are configured. The default implementation returns null.
+   * 
+   * @return a read statistics object, or null if not applicable
+   * @since 7.5.0
+   */
+  default StoreReadStats getStoreReadStats() {
+    return null;
+  }
 }
@@ -1,6 +1,8 @@
 package com.launchdarkly.sdk.server.subsystems;
 
 import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
 
 /**
  * Interface that a data store implementation can use to report information back to the SDK.
@@ -17,4 +19,18 @@ public interface DataStoreUpdateSink {
    * @param newStatus the updated status properties
    */
   void updateStatus(DataStoreStatusProvider.Status newStatus);
+
+  /**
+   * Reports that an item in the data store has been changed by something other than the SDK's data source,
+   * such as another process that shares a persistent data store.
+   * <p>
+   * The data store should call this after it has updated any data that it caches. The SDK uses it to notify
+   * {@link com.launchdarkly.sdk.server.interfaces.FlagChangeListener}s. The default implementation does nothing.
+   * 
+   * @param kind the kind of the item
+   * @param key the item key
+   * @param item the new state of the item, or null if it no longer exists
+   * @since 7.5.0
+   */
+  default void itemChanged(DataKind kind, String key, ItemDescriptor item) {}
 }
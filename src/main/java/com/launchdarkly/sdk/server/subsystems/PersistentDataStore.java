@@ -6,6 +6,10 @@ import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.KeyedItems;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.SerializedItemDescriptor;
 
 import java.io.Closeable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Interface for a data store that holds feature flags and related data in a serialized form.
@@ -91,7 +95,36 @@ public interface PersistentDataStore extends Closeable {
    * @return a collection of key-value pairs; the ordering is not significant
    */
   KeyedItems<SerializedItemDescriptor> getAll(DataKind kind);
-  
+
+  /**
+   * Retrieves any number of items from the specified collection, if available.
+   * <p>
+   * The SDK calls this method when it knows in advance that it will need several items, for instance
+   * the prerequisite flags and segments that are referenced by a flag it is about to evaluate. Stores
+   * that can look up multiple keys in a single query or pipelined request should override it, so that
+   * the SDK needs only one round trip instead of one per item. The default implementation simply calls
+   * {@link #get(DataStoreTypes.DataKind, String)} for each key.
+   * <p>
+   * Keys that are not known at all should be omitted from the results. See
+   * {@link #get(DataStoreTypes.DataKind, String)} for how to set the properties of the
+   * {@link SerializedItemDescriptor} for each item that is found.
+   *
+   * @param kind specifies which collection to use
+   * @param keys the unique keys of the items within that collection
+   * @return a collection of key-value pairs for the items that were found; the ordering is not significant
+   * @since 7.5.0
+   */
+  default KeyedItems<SerializedItemDescriptor> getMany(DataKind kind, Iterable<String> keys) {
+    List<Map.Entry<String, SerializedItemDescriptor>> items = new ArrayList<>();
+    for (String key: keys) {
+      SerializedItemDescriptor item = get(kind, key);
+      if (item != null) {
+        items.add(new AbstractMap.SimpleEntry<>(key, item));
+      }
+    }
+    return new KeyedItems<>(items);
+  }
+
   /**
    * Updates or inserts an item in the specified collection.
    * <p>
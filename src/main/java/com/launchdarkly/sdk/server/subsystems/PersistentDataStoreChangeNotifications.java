@@ -0,0 +1,52 @@
+package com.launchdarkly.sdk.server.subsystems;
+
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
+
+/**
+ * Optional interface for a {@link PersistentDataStore} that can tell the SDK when its data has been
+ * changed by another process.
+ * <p>
+ * This is mainly useful when the SDK is configured with {@link com.launchdarkly.sdk.server.Components#externalUpdatesOnly()},
+ * so that some other process, such as the Relay Proxy, is responsible for writing to the store. Normally the
+ * SDK only sees those changes when its cached copy of an item expires, so there is a trade-off between
+ * querying the database frequently and evaluating stale flags. If the store also implements this interface,
+ * for instance by subscribing to a pub/sub channel or to the database's own change notifications, the SDK
+ * reloads each item as soon as it is notified that the item has changed, and notifies any
+ * {@link com.launchdarkly.sdk.server.interfaces.FlagChangeListener}s. That makes it reasonable to use a very
+ * long cache TTL, or to cache items indefinitely.
+ * <p>
+ * The SDK calls {@link #subscribe(ChangeListener)} once, when it creates the data store. The store can call
+ * the listener from any thread; the SDK does not do any I/O on that thread. Notifications of changes that
+ * this SDK instance made itself are harmless, since the SDK ignores a notification if it already has the
+ * current version of the item. The store should stop sending notifications when it is closed.
+ *
+ * @since 7.5.0
+ */
+public interface PersistentDataStoreChangeNotifications {
+  /**
+   * Registers the SDK's listener for change notifications.
+   *
+   * @param listener the listener
+   */
+  void subscribe(ChangeListener listener);
+
+  /**
+   * The interface that the store uses to notify the SDK of changes.
+   */
+  interface ChangeListener {
+    /**
+     * Reports that an item has been added, updated, or deleted.
+     *
+     * @param kind the kind of the item
+     * @param key the item key
+     */
+    void itemChanged(DataKind kind, String key);
+
+    /**
+     * Reports that any number of items may have changed. The store should call this when it cannot say
+     * exactly what has changed, for instance if the whole data set was replaced, or if it had to reconnect
+     * to the source of the notifications and may have missed some.
+     */
+    void allItemsChanged();
+  }
+}
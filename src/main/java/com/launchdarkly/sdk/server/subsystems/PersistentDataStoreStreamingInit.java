@@ -0,0 +1,69 @@
+package com.launchdarkly.sdk.server.subsystems;
+
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.KeyedItems;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.SerializedItemDescriptor;
+
+/**
+ * Optional interface for a {@link PersistentDataStore} that can receive a full set of data in pieces.
+ * <p>
+ * Normally the SDK replaces the contents of a persistent data store by passing the entire data set to
+ * {@link PersistentDataStore#init(FullDataSet)}. For a large data set, that means either one very large
+ * transaction or a very long sequence of individual writes. If the store also implements this interface,
+ * the SDK instead calls {@link #beginInit()}, passes the items to {@link InitSession#writeChunk(DataKind, KeyedItems)}
+ * in chunks of a configurable size, and then calls {@link InitSession#commit()}; the size of each chunk,
+ * and how many chunks may be written at once, are set with
+ * {@link com.launchdarkly.sdk.server.integrations.PersistentDataStoreBuilder#initChunkSize(int)} and
+ * {@link com.launchdarkly.sdk.server.integrations.PersistentDataStoreBuilder#initParallelism(int)}.
+ * <p>
+ * The end result of a successful session must be the same as calling {@link PersistentDataStore#init(FullDataSet)}
+ * with all of the items: all previous data is discarded, and the store is considered initialized. Ideally,
+ * none of the new data should be visible to readers until {@link InitSession#commit()} is called, for instance
+ * by writing it under a new key prefix or generation number and switching to that in {@code commit}. If
+ * that isn't possible, the store should follow the same rules as for a non-atomic {@code init}: add or update
+ * items as they are written, and delete any previously stored items that were not written in {@code commit}.
+ * <p>
+ * Error handling is the same as for {@link PersistentDataStore}: if an operation fails, it should throw a
+ * {@code RuntimeException}. If any part of the session fails, the SDK calls {@link InitSession#abort()}
+ * and does not call {@code commit}.
+ *
+ * @since 7.5.0
+ */
+public interface PersistentDataStoreStreamingInit {
+  /**
+   * Starts replacing the contents of the store.
+   *
+   * @return an object for writing the new data
+   */
+  InitSession beginInit();
+
+  /**
+   * The state of a single replacement of the store's contents, as returned by {@link #beginInit()}.
+   * <p>
+   * If parallelism is enabled, {@link #writeChunk(DataKind, KeyedItems)} may be called concurrently from
+   * several threads, so it must be thread-safe. Chunks may be written in any order, but each chunk contains
+   * items of only one kind, and no item is written more than once. {@link #commit()} and {@link #abort()}
+   * are only called after all calls to {@code writeChunk} have returned.
+   */
+  interface InitSession {
+    /**
+     * Writes some of the new data.
+     *
+     * @param kind the kind of the items
+     * @param items the items, keyed by their keys
+     */
+    void writeChunk(DataKind kind, KeyedItems<SerializedItemDescriptor> items);
+
+    /**
+     * Makes the new data current, once all of it has been written.
+     */
+    void commit();
+
+    /**
+     * Discards the session after a failure. This is called instead of {@link #commit()}; it should not
+     * throw an exception.
+     */
+    void abort();
+  }
+}
@@ -0,0 +1,182 @@
+package com.launchdarkly.sdk.server;
+
+import com.google.common.collect.ImmutableSet;
+import com.launchdarkly.sdk.server.subsystems.BigSegmentStore;
+import com.launchdarkly.sdk.server.subsystems.BigSegmentStoreTypes.Membership;
+import com.launchdarkly.sdk.server.subsystems.BigSegmentStoreTypes.StoreMetadata;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.launchdarkly.sdk.server.subsystems.BigSegmentStoreTypes.createMembershipFromSegmentRefs;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
+
+@SuppressWarnings("javadoc")
+public class BigSegmentMembershipBatcherTest {
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final BatchRecordingStore store = new BatchRecordingStore();
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private static Membership membershipFor(String userHash) {
+    return createMembershipFromSegmentRefs(Collections.singleton("segment-" + userHash), null);
+  }
+
+  private List<Future<Membership>> queryConcurrently(BigSegmentMembershipBatcher batcher, String... userHashes) {
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Membership>> results = new ArrayList<>();
+    for (String userHash: userHashes) {
+      results.add(executor.submit(() -> {
+        start.await();
+        return batcher.getMembership(userHash);
+      }));
+    }
+    start.countDown();
+    return results;
+  }
+
+  @Test
+  public void concurrentQueriesForDifferentUsersAreBatched() throws Exception {
+    BigSegmentMembershipBatcher batcher = new BigSegmentMembershipBatcher(store, Duration.ofMillis(500), 100);
+    List<Future<Membership>> results = queryConcurrently(batcher, "a", "b", "c");
+
+    assertThat(results.get(0).get(5, TimeUnit.SECONDS), equalTo(membershipFor("a")));
+    assertThat(results.get(1).get(5, TimeUnit.SECONDS), equalTo(membershipFor("b")));
+    assertThat(results.get(2).get(5, TimeUnit.SECONDS), equalTo(membershipFor("c")));
+    assertThat(store.batches.take(), equalTo(ImmutableSet.of("a", "b", "c")));
+    assertThat(store.batches.isEmpty(), equalTo(true));
+  }
+
+  @Test
+  public void fullBatchIsQueriedWithoutWaitingForBatchWindow() throws Exception {
+    BigSegmentMembershipBatcher batcher = new BigSegmentMembershipBatcher(store, Duration.ofMinutes(1), 2);
+    List<Future<Membership>> results = queryConcurrently(batcher, "a", "b");
+
+    assertThat(results.get(0).get(5, TimeUnit.SECONDS), equalTo(membershipFor("a")));
+    assertThat(results.get(1).get(5, TimeUnit.SECONDS), equalTo(membershipFor("b")));
+    assertThat(store.batches.take(), equalTo(ImmutableSet.of("a", "b")));
+  }
+
+  @Test
+  public void concurrentQueriesForSameUserShareOneQuery() throws Exception {
+    store.blockQueries = new CountDownLatch(1);
+    BigSegmentMembershipBatcher batcher = new BigSegmentMembershipBatcher(store, Duration.ofMillis(1), 100);
+    Future<Membership> first = executor.submit(() -> batcher.getMembership("a"));
+    assertThat(store.batches.poll(5, TimeUnit.SECONDS), equalTo(ImmutableSet.of("a")));
+    Future<Membership> second = executor.submit(() -> batcher.getMembership("a"));
+    Thread.sleep(50);
+
+    store.blockQueries.countDown();
+    assertThat(first.get(5, TimeUnit.SECONDS), equalTo(membershipFor("a")));
+    assertThat(second.get(5, TimeUnit.SECONDS), equalTo(membershipFor("a")));
+    assertThat(store.batches.isEmpty(), equalTo(true));
+  }
+
+  @Test
+  public void userWithNoMembershipGetsNull() {
+    store.usersWithNoMembership.add("a");
+    BigSegmentMembershipBatcher batcher = new BigSegmentMembershipBatcher(store, Duration.ofMillis(1), 100);
+    assertThat(batcher.getMembership("a"), nullValue());
+  }
+
+  @Test
+  public void storeErrorIsThrownToEveryCallerInBatch() throws Exception {
+    store.error = new RuntimeException("sorry");
+    BigSegmentMembershipBatcher batcher = new BigSegmentMembershipBatcher(store, Duration.ofMillis(200), 100);
+    for (Future<Membership> result: queryConcurrently(batcher, "a", "b")) {
+      try {
+        result.get(5, TimeUnit.SECONDS);
+        fail("expected exception");
+      } catch (ExecutionException e) {
+        assertThat(e.getCause(), instanceOf(RuntimeException.class));
+        assertThat(e.getCause().getMessage(), equalTo("sorry"));
+      }
+    }
+  }
+
+  @Test
+  public void defaultGetMembershipsQueriesEachUser() {
+    BigSegmentStore singleUserStore = new BigSegmentStore() {
+      @Override
+      public Membership getMembership(String userHash) {
+        return userHash.equals("a") ? membershipFor(userHash) : null;
+      }
+
+      @Override
+      public StoreMetadata getMetadata() {
+        return null;
+      }
+
+      @Override
+      public void close() {}
+    };
+    Map<String, Membership> result = singleUserStore.getMemberships(ImmutableSet.of("a", "b"));
+    assertThat(result.get("a"), equalTo(membershipFor("a")));
+    assertThat(result.get("b"), nullValue());
+  }
+
+  private static final class BatchRecordingStore implements BigSegmentStore {
+    final BlockingQueue<Set<String>> batches = new LinkedBlockingQueue<>();
+    final Set<String> usersWithNoMembership = new HashSet<>();
+    volatile CountDownLatch blockQueries;
+    volatile RuntimeException error;
+
+    @Override
+    public Membership getMembership(String userHash) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Map<String, Membership> getMemberships(Collection<String> userHashes) {
+      batches.add(ImmutableSet.copyOf(userHashes));
+      if (blockQueries != null) {
+        try {
+          blockQueries.await();
+        } catch (InterruptedException e) {}
+      }
+      if (error != null) {
+        throw error;
+      }
+      Map<String, Membership> ret = new HashMap<>();
+      for (String userHash: userHashes) {
+        if (!usersWithNoMembership.contains(userHash)) {
+          ret.put(userHash, membershipFor(userHash));
+        }
+      }
+      return ret;
+    }
+
+    @Override
+    public StoreMetadata getMetadata() {
+      return null;
+    }
+
+    @Override
+    public void close() {}
+  }
+}
@@ -1,5 +1,6 @@
 package com.launchdarkly.sdk.server;
 
+import com.google.common.collect.ImmutableSet;
 import com.launchdarkly.sdk.EvaluationReason.BigSegmentsStatus;
 import com.launchdarkly.sdk.server.BigSegmentStoreWrapper.BigSegmentsQueryResult;
 import com.launchdarkly.sdk.server.interfaces.BigSegmentStoreStatusProvider;
@@ -17,7 +18,10 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -27,15 +31,20 @@ import static com.launchdarkly.sdk.server.TestComponents.clientContext;
 import static com.launchdarkly.sdk.server.TestComponents.nullLogger;
 import static com.launchdarkly.sdk.server.TestComponents.sharedExecutor;
 import static com.launchdarkly.sdk.server.subsystems.BigSegmentStoreTypes.createMembershipFromSegmentRefs;
+import static java.util.Arrays.asList;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.isA;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 @SuppressWarnings("javadoc")
 public class BigSegmentStoreWrapperTest extends BaseTest {
   private static final String SDK_KEY = "sdk-key";
+  private static final ImmutableSet<String> SEGMENT_REFS = ImmutableSet.of("key1", "key2", "seg1", "seg2", "seg3");
 
   private final EasyMockSupport mocks = new EasyMockSupport();
   private AtomicBoolean storeUnavailable;
@@ -61,8 +70,27 @@ public class BigSegmentStoreWrapperTest extends BaseTest {
     expect(storeFactoryMock.build(isA(ClientContext.class))).andReturn(storeMock);
   }
 
+  // The wrapper caches memberships in a compact form that only represents the known segment references,
+  // so we compare them by querying those references.
+  private static boolean membershipEquals(Membership expected, Membership actual) {
+    for (String segmentRef: SEGMENT_REFS) {
+      if (!Objects.equals(expected.checkMembership(segmentRef), actual.checkMembership(segmentRef))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void assertMembershipEquals(Membership expected, Membership actual) {
+    for (String segmentRef: SEGMENT_REFS) {
+      assertEquals(segmentRef, expected.checkMembership(segmentRef), actual.checkMembership(segmentRef));
+    }
+  }
+
   private BigSegmentStoreWrapper makeWrapper(BigSegmentsConfiguration bsConfig) {
-    return new BigSegmentStoreWrapper(bsConfig, eventBroadcaster, sharedExecutor, testLogger);
+    BigSegmentStoreWrapper wrapper = new BigSegmentStoreWrapper(bsConfig, eventBroadcaster, sharedExecutor, testLogger);
+    wrapper.updateSegmentRefs(SEGMENT_REFS);
+    return wrapper;
   }
   
   private void setStoreMembership(String userKey, Membership membership) {
@@ -83,7 +111,7 @@ public class BigSegmentStoreWrapperTest extends BaseTest {
         .build(clientContext(SDK_KEY, new LDConfig.Builder().build()));
     try (BigSegmentStoreWrapper wrapper = makeWrapper(bsConfig)) {
       BigSegmentsQueryResult res = wrapper.getUserMembership(userKey);
-      assertEquals(expectedMembership, res.membership);
+      assertMembershipEquals(expectedMembership, res.membership);
       assertEquals(BigSegmentsStatus.HEALTHY, res.status);
     }
   }
@@ -100,7 +128,7 @@ public class BigSegmentStoreWrapperTest extends BaseTest {
         .build(clientContext(SDK_KEY, new LDConfig.Builder().build()));
     try (BigSegmentStoreWrapper wrapper = makeWrapper(bsConfig)) {
       BigSegmentsQueryResult res = wrapper.getUserMembership(userKey);
-      assertEquals(createMembershipFromSegmentRefs(null, null), res.membership);
+      assertMembershipEquals(createMembershipFromSegmentRefs(null, null), res.membership);
       assertEquals(BigSegmentsStatus.HEALTHY, res.status);
     }
   }
@@ -119,11 +147,11 @@ public class BigSegmentStoreWrapperTest extends BaseTest {
         .build(clientContext(SDK_KEY, new LDConfig.Builder().build()));
     try (BigSegmentStoreWrapper wrapper = makeWrapper(bsConfig)) {
       BigSegmentsQueryResult res1 = wrapper.getUserMembership(userKey);
-      assertEquals(expectedMembership, res1.membership);
+      assertMembershipEquals(expectedMembership, res1.membership);
       assertEquals(BigSegmentsStatus.HEALTHY, res1.status);
 
       BigSegmentsQueryResult res2 = wrapper.getUserMembership(userKey);
-      assertEquals(expectedMembership, res2.membership);
+      assertMembershipEquals(expectedMembership, res2.membership);
       assertEquals(BigSegmentsStatus.HEALTHY, res2.status);
     }
   }
@@ -142,7 +170,7 @@ public class BigSegmentStoreWrapperTest extends BaseTest {
         .build(clientContext(SDK_KEY, new LDConfig.Builder().build()));
     try (BigSegmentStoreWrapper wrapper = makeWrapper(bsConfig)) {
       BigSegmentsQueryResult res = wrapper.getUserMembership(userKey);
-      assertEquals(expectedMembership, res.membership);
+      assertMembershipEquals(expectedMembership, res.membership);
       assertEquals(BigSegmentsStatus.STALE, res.status);
     }
   }
@@ -161,11 +189,232 @@ public class BigSegmentStoreWrapperTest extends BaseTest {
         .build(clientContext(SDK_KEY, new LDConfig.Builder().build()));
     try (BigSegmentStoreWrapper wrapper = makeWrapper(bsConfig)) {
       BigSegmentsQueryResult res = wrapper.getUserMembership(userKey);
-      assertEquals(expectedMembership, res.membership);
+      assertMembershipEquals(expectedMembership, res.membership);
       assertEquals(BigSegmentsStatus.STALE, res.status);
     }
   }
 
+  @Test
+  public void membershipQueryUsesBatchQueryWhenBatchWindowIsSet() throws Exception {
+    Membership expectedMembership = createMembershipFromSegmentRefs(Collections.singleton("key1"), null);
+    String userKey = "userkey";
+    String userHash = BigSegmentStoreWrapper.hashForUserKey(userKey);
+    expect(storeMock.getMemberships(Collections.singleton(userHash)))
+        .andReturn(Collections.singletonMap(userHash, expectedMembership));
+    mocks.replayAll();
+
+    storeMetadata.set(new StoreMetadata(System.currentTimeMillis()));
+    BigSegmentsConfiguration bsConfig = Components.bigSegments(storeFactoryMock)
+        .staleAfter(Duration.ofDays(1))
+        .batchWindow(Duration.ofMillis(1))
+        .build(clientContext(SDK_KEY, new LDConfig.Builder().build()));
+    try (BigSegmentStoreWrapper wrapper = makeWrapper(bsConfig)) {
+      BigSegmentsQueryResult res = wrapper.getUserMembership(userKey);
+      assertMembershipEquals(expectedMembership, res.membership);
+      assertEquals(BigSegmentsStatus.HEALTHY, res.status);
+    }
+  }
+
+  @Test
+  public void expiredStateIsReturnedAsStaleWhileItIsRefreshed() throws Exception {
+    Membership oldMembership = createMembershipFromSegmentRefs(Collections.singleton("key1"), null);
+    Membership newMembership = createMembershipFromSegmentRefs(Collections.singleton("key2"), null);
+    String userKey = "userkey";
+    expect(storeMock.getMembership(BigSegmentStoreWrapper.hashForUserKey(userKey)))
+        .andReturn(oldMembership).andReturn(newMembership).anyTimes();
+    mocks.replayAll();
+
+    storeMetadata.set(new StoreMetadata(System.currentTimeMillis()));
+    BigSegmentsConfiguration bsConfig = Components.bigSegments(storeFactoryMock)
+        .staleAfter(Duration.ofDays(1))
+        .userCacheTime(Duration.ofMillis(200))
+        .userCacheStaleWhileRevalidate(Duration.ofDays(1))
+        .build(clientContext(SDK_KEY, new LDConfig.Builder().build()));
+    try (BigSegmentStoreWrapper wrapper = makeWrapper(bsConfig)) {
+      BigSegmentsQueryResult res1 = wrapper.getUserMembership(userKey);
+      assertMembershipEquals(oldMembership, res1.membership);
+      assertEquals(BigSegmentsStatus.HEALTHY, res1.status);
+
+      Thread.sleep(300);
+
+      BigSegmentsQueryResult res2 = wrapper.getUserMembership(userKey);
+      assertMembershipEquals(oldMembership, res2.membership);
+      assertEquals(BigSegmentsStatus.STALE, res2.status);
+
+      BigSegmentsQueryResult res3 = waitForMembership(wrapper, userKey, newMembership);
+      assertEquals(BigSegmentsStatus.HEALTHY, res3.status);
+    }
+  }
+
+  @Test
+  public void cachedStateIsRefreshedBeforeItExpires() throws Exception {
+    Membership oldMembership = createMembershipFromSegmentRefs(Collections.singleton("key1"), null);
+    Membership newMembership = createMembershipFromSegmentRefs(Collections.singleton("key2"), null);
+    String userKey = "userkey";
+    expect(storeMock.getMembership(BigSegmentStoreWrapper.hashForUserKey(userKey)))
+        .andReturn(oldMembership).andReturn(newMembership).anyTimes();
+    mocks.replayAll();
+
+    storeMetadata.set(new StoreMetadata(System.currentTimeMillis()));
+    Duration userCacheTime = Duration.ofSeconds(2);
+    BigSegmentsConfiguration bsConfig = Components.bigSegments(storeFactoryMock)
+        .staleAfter(Duration.ofDays(1))
+        .userCacheTime(userCacheTime)
+        .userCacheRefreshAhead(1.0)
+        .build(clientContext(SDK_KEY, new LDConfig.Builder().build()));
+    try (BigSegmentStoreWrapper wrapper = makeWrapper(bsConfig)) {
+      long startTime = System.nanoTime();
+      BigSegmentsQueryResult res1 = wrapper.getUserMembership(userKey);
+      assertMembershipEquals(oldMembership, res1.membership);
+
+      // The refresh time is somewhere within the cache time, so the state should be reloaded before
+      // it would have expired.
+      BigSegmentsQueryResult res2 = waitForMembership(wrapper, userKey, newMembership);
+      assertEquals(BigSegmentsStatus.HEALTHY, res2.status);
+      assertTrue(System.nanoTime() - startTime < userCacheTime.toNanos());
+    }
+  }
+
+  private static BigSegmentsQueryResult waitForMembership(BigSegmentStoreWrapper wrapper, String userKey,
+      Membership expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (true) {
+      BigSegmentsQueryResult res = wrapper.getUserMembership(userKey);
+      if (membershipEquals(expected, res.membership) || System.currentTimeMillis() > deadline) {
+        assertMembershipEquals(expected, res.membership);
+        return res;
+      }
+      Thread.sleep(1);
+    }
+  }
+
+  @Test
+  public void cachedStateIsReloadedWhenItDoesNotCoverRequestedSegment() throws Exception {
+    String newSegmentRef = "new-segment.g1";
+    Membership expectedMembership = createMembershipFromSegmentRefs(asList("key1", newSegmentRef), null);
+    String userKey = "userkey";
+    expect(storeMock.getMembership(BigSegmentStoreWrapper.hashForUserKey(userKey)))
+        .andReturn(expectedMembership).times(2);
+    mocks.replayAll();
+
+    storeMetadata.set(new StoreMetadata(System.currentTimeMillis()));
+    BigSegmentsConfiguration bsConfig = Components.bigSegments(storeFactoryMock)
+        .staleAfter(Duration.ofDays(1))
+        .build(clientContext(SDK_KEY, new LDConfig.Builder().build()));
+    try (BigSegmentStoreWrapper wrapper = makeWrapper(bsConfig)) {
+      BigSegmentsQueryResult res1 = wrapper.getUserMembership(userKey);
+      assertEquals(Boolean.TRUE, res1.membership.checkMembership("key1"));
+      assertNull(res1.membership.checkMembership(newSegmentRef));
+
+      BigSegmentsQueryResult res2 = wrapper.getUserMembership(userKey, newSegmentRef);
+      assertEquals(Boolean.TRUE, res2.membership.checkMembership("key1"));
+      assertEquals(Boolean.TRUE, res2.membership.checkMembership(newSegmentRef));
+
+      // now that the cached state covers the new segment, it isn't queried again
+      BigSegmentsQueryResult res3 = wrapper.getUserMembership(userKey, newSegmentRef);
+      assertSame(res2.membership, res3.membership);
+    }
+    mocks.verifyAll();
+  }
+
+  @Test
+  public void concurrentReloadsOfCachedStateQueryStoreOnce() throws Exception {
+    String newSegmentRef = "new-segment.g1";
+    Membership expectedMembership = createMembershipFromSegmentRefs(asList("key1", newSegmentRef), null);
+    String userKey = "userkey";
+    expect(storeMock.getMembership(BigSegmentStoreWrapper.hashForUserKey(userKey))).andAnswer(() -> {
+      Thread.sleep(100); // so that the other callers ask for the state while it is being reloaded
+      return expectedMembership;
+    }).times(2);
+    mocks.replayAll();
+
+    storeMetadata.set(new StoreMetadata(System.currentTimeMillis()));
+    BigSegmentsConfiguration bsConfig = Components.bigSegments(storeFactoryMock)
+        .staleAfter(Duration.ofDays(1))
+        .build(clientContext(SDK_KEY, new LDConfig.Builder().build()));
+    try (BigSegmentStoreWrapper wrapper = makeWrapper(bsConfig)) {
+      wrapper.getUserMembership(userKey);
+
+      List<Thread> threads = new ArrayList<>();
+      BlockingQueue<BigSegmentsQueryResult> results = new LinkedBlockingQueue<>();
+      for (int i = 0; i < 5; i++) {
+        threads.add(new Thread(() -> results.add(wrapper.getUserMembership(userKey, newSegmentRef))));
+      }
+      threads.forEach(Thread::start);
+      for (Thread t: threads) {
+        t.join();
+      }
+      assertEquals(threads.size(), results.size());
+      for (BigSegmentsQueryResult result: results) {
+        assertEquals(Boolean.TRUE, result.membership.checkMembership(newSegmentRef));
+      }
+    }
+    mocks.verifyAll();
+  }
+
+  @Test
+  public void cachedStateIsConvertedWithoutQueryWhenSegmentRefsAreRebuilt() throws Exception {
+    Membership expectedMembership = createMembershipFromSegmentRefs(asList("key1", "seg1"), null);
+    String userKey = "userkey";
+    expect(storeMock.getMembership(BigSegmentStoreWrapper.hashForUserKey(userKey)))
+        .andReturn(expectedMembership).times(1);
+    mocks.replayAll();
+
+    storeMetadata.set(new StoreMetadata(System.currentTimeMillis()));
+    BigSegmentsConfiguration bsConfig = Components.bigSegments(storeFactoryMock)
+        .staleAfter(Duration.ofDays(1))
+        .build(clientContext(SDK_KEY, new LDConfig.Builder().build()));
+    try (BigSegmentStoreWrapper wrapper = makeWrapper(bsConfig)) {
+      BigSegmentsQueryResult res1 = wrapper.getUserMembership(userKey);
+      BigSegmentRefOrdinals oldOrdinals = wrapper.getSegmentRefOrdinals();
+
+      wrapper.updateSegmentRefs(ImmutableSet.of("seg1", "seg2"));
+      BigSegmentRefOrdinals newOrdinals = wrapper.getSegmentRefOrdinals();
+      assertNotSame(oldOrdinals, newOrdinals);
+      assertEquals(2, newOrdinals.size());
+
+      // The state that we already have is still returned until it has been converted
+      BigSegmentsQueryResult res2 = wrapper.getUserMembership(userKey);
+      assertEquals(Boolean.TRUE, res2.membership.checkMembership("seg1"));
+
+      long deadline = System.currentTimeMillis() + 5000;
+      BigSegmentsQueryResult res3 = res2;
+      while (((CompactBigSegmentMembership)res3.membership).getOrdinals() != newOrdinals &&
+          System.currentTimeMillis() < deadline) {
+        Thread.sleep(1);
+        res3 = wrapper.getUserMembership(userKey);
+      }
+      assertNotSame(res1.membership, res3.membership);
+      assertSame(newOrdinals, ((CompactBigSegmentMembership)res3.membership).getOrdinals());
+      assertEquals(Boolean.TRUE, res3.membership.checkMembership("seg1"));
+      assertNull(res3.membership.checkMembership("seg2"));
+      assertNull(res3.membership.checkMembership("key1"));
+    }
+    mocks.verifyAll();
+  }
+
+  @Test
+  public void segmentRefsAreOnlyRebuiltWhenSomeAreNoLongerUsed() throws Exception {
+    mocks.replayAll();
+
+    storeMetadata.set(new StoreMetadata(System.currentTimeMillis()));
+    BigSegmentsConfiguration bsConfig = Components.bigSegments(storeFactoryMock)
+        .staleAfter(Duration.ofDays(1))
+        .build(clientContext(SDK_KEY, new LDConfig.Builder().build()));
+    try (BigSegmentStoreWrapper wrapper = makeWrapper(bsConfig)) {
+      BigSegmentRefOrdinals ordinals = wrapper.getSegmentRefOrdinals();
+
+      wrapper.updateSegmentRefs(ImmutableSet.<String>builder().addAll(SEGMENT_REFS).add("seg4").build());
+      assertSame(ordinals, wrapper.getSegmentRefOrdinals());
+      assertEquals(SEGMENT_REFS.size(), ordinals.ordinalIfKnown("seg4"));
+
+      wrapper.updateSegmentRefs(SEGMENT_REFS);
+      assertNotSame(ordinals, wrapper.getSegmentRefOrdinals());
+      assertEquals(-1, wrapper.getSegmentRefOrdinals().ordinalIfKnown("seg4"));
+      assertEquals(SEGMENT_REFS.size(), wrapper.getSegmentRefOrdinals().size());
+    }
+  }
+
   @Test
   public void leastRecentUserIsEvictedFromCache() throws Exception {
     String userKey1 = "userkey1", userKey2 = "userkey2", userKey3 = "userkey3";
@@ -186,27 +435,27 @@ public class BigSegmentStoreWrapperTest extends BaseTest {
         .build(clientContext(SDK_KEY, new LDConfig.Builder().build()));
     try (BigSegmentStoreWrapper wrapper = makeWrapper(bsConfig)) {
       BigSegmentsQueryResult res1 = wrapper.getUserMembership(userKey1);
-      assertEquals(expectedMembership1, res1.membership);
+      assertMembershipEquals(expectedMembership1, res1.membership);
       assertEquals(BigSegmentsStatus.HEALTHY, res1.status);
 
       BigSegmentsQueryResult res2 = wrapper.getUserMembership(userKey2);
-      assertEquals(expectedMembership2, res2.membership);
+      assertMembershipEquals(expectedMembership2, res2.membership);
       assertEquals(BigSegmentsStatus.HEALTHY, res2.status);
 
       BigSegmentsQueryResult res3 = wrapper.getUserMembership(userKey3);
-      assertEquals(expectedMembership3, res3.membership);
+      assertMembershipEquals(expectedMembership3, res3.membership);
       assertEquals(BigSegmentsStatus.HEALTHY, res3.status);
 
       BigSegmentsQueryResult res2a = wrapper.getUserMembership(userKey2);
-      assertEquals(expectedMembership2, res2a.membership);
+      assertMembershipEquals(expectedMembership2, res2a.membership);
       assertEquals(BigSegmentsStatus.HEALTHY, res2a.status);
 
       BigSegmentsQueryResult res3a = wrapper.getUserMembership(userKey3);
-      assertEquals(expectedMembership3, res3a.membership);
+      assertMembershipEquals(expectedMembership3, res3a.membership);
       assertEquals(BigSegmentsStatus.HEALTHY, res3a.status);
 
       BigSegmentsQueryResult res1a = wrapper.getUserMembership(userKey1);
-      assertEquals(expectedMembership1, res1a.membership);
+      assertMembershipEquals(expectedMembership1, res1a.membership);
       assertEquals(BigSegmentsStatus.HEALTHY, res1a.status);
     }
   }
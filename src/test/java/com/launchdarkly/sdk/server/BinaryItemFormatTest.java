@@ -0,0 +1,97 @@
+package com.launchdarkly.sdk.server;
+
+import com.google.gson.JsonElement;
+import com.launchdarkly.sdk.LDValue;
+import com.launchdarkly.sdk.server.DataModel.FeatureFlag;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
+import com.launchdarkly.sdk.server.subsystems.SerializationException;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Base64;
+
+import static com.launchdarkly.sdk.server.DataModel.FEATURES;
+import static com.launchdarkly.sdk.server.DataModel.SEGMENTS;
+import static com.launchdarkly.sdk.server.JsonHelpers.gsonInstance;
+import static com.launchdarkly.sdk.server.JsonHelpers.serialize;
+import static com.launchdarkly.sdk.server.ModelBuilders.flagBuilder;
+import static com.launchdarkly.sdk.server.ModelBuilders.segmentBuilder;
+import static com.launchdarkly.sdk.server.TestUtil.assertItemEquals;
+import static com.launchdarkly.testhelpers.JsonAssertions.assertJsonEquals;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+@SuppressWarnings("javadoc")
+public class BinaryItemFormatTest {
+  private static final String VALUES_JSON = "{\"a\":null,\"b\":[true,false],\"c\":-12345678901,\"d\":0.5," +
+      "\"e\":\"\\u00e9\\u4e2d\",\"f\":[\"x\",\"x\",\"y\"],\"g\":{\"a\":{}}}";
+
+  private static byte[] encodedBytes(String encoded) {
+    return Base64.getDecoder().decode(encoded.substring(BinaryItemFormat.PREFIX.length()));
+  }
+
+  @Test
+  public void flagAndSegmentRoundTrip() {
+    FeatureFlag flag = flagBuilder("flag").version(2).on(true).variations(true, false)
+        .addTarget(0, "a", "b").addRule("rule1", 1, "{\"attribute\":\"email\",\"op\":\"in\",\"values\":[\"x\"]}")
+        .build();
+    assertItemEquals(flag, BinaryItemFormat.decode(FEATURES, BinaryItemFormat.encode(flag)));
+
+    DataModel.Segment segment = segmentBuilder("segment").version(3).included("a").excluded("b").build();
+    assertItemEquals(segment, BinaryItemFormat.decode(SEGMENTS, BinaryItemFormat.encode(segment)));
+  }
+
+  @Test
+  public void deletedItemIsDecodedAsDeletedItem() {
+    FeatureFlag flag = flagBuilder("flag").version(2).deleted(true).build();
+    assertThat(BinaryItemFormat.decode(FEATURES, BinaryItemFormat.encode(flag)),
+        equalTo(ItemDescriptor.deletedItem(2)));
+  }
+
+  @Test
+  public void allJsonValueTypesRoundTrip() throws Exception {
+    String encoded = BinaryItemFormat.encode(LDValue.parse(VALUES_JSON));
+    JsonElement decoded = gsonInstance().fromJson(new BinaryItemFormat.BinaryJsonReader(encodedBytes(encoded)),
+        JsonElement.class);
+    assertJsonEquals(VALUES_JSON, serialize(decoded));
+  }
+
+  @Test
+  public void repeatedStringsAreOnlyStoredOnce() {
+    FeatureFlag flag = flagBuilder("flag").version(1).build();
+    for (int i = 0; i < 20; i++) {
+      flag = flagBuilder(flag).addRule("rule" + i, 0,
+          "{\"attribute\":\"email\",\"op\":\"endsWith\",\"values\":[\"@example.com\"]}").build();
+    }
+    assertThat(encodedBytes(BinaryItemFormat.encode(flag)).length, lessThan(serialize(flag).length() / 2));
+  }
+
+  @Test
+  public void encodedItemIsRecognized() {
+    assertThat(BinaryItemFormat.isEncoded(BinaryItemFormat.encode(flagBuilder("flag").build())), is(true));
+    assertThat(BinaryItemFormat.isEncoded(serialize(flagBuilder("flag").build())), is(false));
+    assertThat(BinaryItemFormat.isEncoded(null), is(false));
+  }
+
+  @Test(expected=SerializationException.class)
+  public void unknownFormatVersionCausesSerializationException() {
+    BinaryItemFormat.decode(FEATURES,
+        BinaryItemFormat.PREFIX + Base64.getEncoder().encodeToString(new byte[] { 99, 0, 0 }));
+  }
+
+  @Test(expected=SerializationException.class)
+  public void truncatedDataCausesSerializationException() {
+    String encoded = BinaryItemFormat.encode(flagBuilder("flag").version(1).build());
+    byte[] bytes = encodedBytes(encoded);
+    BinaryItemFormat.decode(FEATURES, BinaryItemFormat.PREFIX +
+        Base64.getEncoder().encodeToString(Arrays.copyOf(bytes, bytes.length - 2)));
+  }
+
+  @Test(expected=SerializationException.class)
+  public void invalidBase64CausesSerializationException() {
+    BinaryItemFormat.decode(FEATURES, BinaryItemFormat.PREFIX + "!!!");
+  }
+}
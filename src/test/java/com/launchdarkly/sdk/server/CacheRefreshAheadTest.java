@@ -0,0 +1,92 @@
+package com.launchdarkly.sdk.server;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+@SuppressWarnings("javadoc")
+public class CacheRefreshAheadTest {
+  private static final Duration TTL = Duration.ofNanos(1000);
+
+  private final List<String> refreshedKeys = new ArrayList<>();
+  private final List<Runnable> tasks = new ArrayList<>();
+
+  private CacheRefreshAhead<String> makeRefreshAhead(double windowRatio, double randomValue) {
+    return new CacheRefreshAhead<>(TTL, windowRatio, refreshedKeys::add, tasks::add, () -> randomValue);
+  }
+
+  private void runTasks() {
+    for (Runnable task: tasks) {
+      task.run();
+    }
+    tasks.clear();
+  }
+
+  @Test
+  public void refreshTimeIsWithinWindowAtEndOfTtl() {
+    assertThat(makeRefreshAhead(0.25, 0).nextRefreshTime(5000), equalTo(6000L));
+    assertThat(makeRefreshAhead(0.25, 0.5).nextRefreshTime(5000), equalTo(5875L));
+    assertThat(makeRefreshAhead(0.25, 0.999).nextRefreshTime(5000), equalTo(5751L));
+    assertThat(makeRefreshAhead(1.0, 0.5).nextRefreshTime(5000), equalTo(5500L));
+  }
+
+  @Test
+  public void windowRatioIsClamped() {
+    assertThat(makeRefreshAhead(2.0, 0.5).nextRefreshTime(5000), equalTo(5500L));
+    assertThat(makeRefreshAhead(-1.0, 0.5).nextRefreshTime(5000), equalTo(6000L));
+  }
+
+  @Test
+  public void doesNotRefreshBeforeRefreshTime() {
+    CacheRefreshAhead<String> refreshAhead = makeRefreshAhead(0.5, 0);
+    assertThat(refreshAhead.refreshIfDue("a", 1000, 999), is(false));
+    assertThat(tasks, empty());
+  }
+
+  @Test
+  public void refreshesOnExecutorAfterRefreshTime() {
+    CacheRefreshAhead<String> refreshAhead = makeRefreshAhead(0.5, 0);
+    assertThat(refreshAhead.refreshIfDue("a", 1000, 1000), is(true));
+    assertThat(refreshedKeys, empty());
+    runTasks();
+    assertThat(refreshedKeys, contains("a"));
+  }
+
+  @Test
+  public void concurrentRefreshesOfSameKeyAreCoalesced() {
+    CacheRefreshAhead<String> refreshAhead = makeRefreshAhead(0.5, 0);
+    assertThat(refreshAhead.refreshIfDue("a", 1000, 1001), is(true));
+    assertThat(refreshAhead.refreshIfDue("a", 1000, 1002), is(false));
+    assertThat(refreshAhead.refreshIfDue("b", 1000, 1002), is(true));
+    assertThat(tasks, hasSize(2));
+    runTasks();
+    assertThat(refreshedKeys, contains("a", "b"));
+
+    // once the refresh has finished, another one can be started
+    assertThat(refreshAhead.refreshIfDue("a", 1000, 1003), is(true));
+  }
+
+  @Test
+  public void keyCanBeRefreshedAgainIfExecutorRejectsTask() {
+    boolean[] reject = new boolean[] { true };
+    CacheRefreshAhead<String> refreshAhead = new CacheRefreshAhead<>(TTL, 0.5, refreshedKeys::add, task -> {
+      if (reject[0]) {
+        throw new RejectedExecutionException();
+      }
+      tasks.add(task);
+    });
+    assertThat(refreshAhead.refreshIfDue("a", 1000, 1001), is(false));
+    reject[0] = false;
+    assertThat(refreshAhead.refreshIfDue("a", 1000, 1001), is(true));
+  }
+}
@@ -0,0 +1,142 @@
+package com.launchdarkly.sdk.server;
+
+import com.launchdarkly.sdk.server.DataModelPreprocessing.SegmentPreprocessed;
+import com.launchdarkly.sdk.server.subsystems.BigSegmentStoreTypes.Membership;
+
+import org.junit.Test;
+
+import static com.launchdarkly.sdk.server.subsystems.BigSegmentStoreTypes.createMembershipFromSegmentRefs;
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+@SuppressWarnings("javadoc")
+public class CompactBigSegmentMembershipTest {
+  private final BigSegmentRefOrdinals ordinals = new BigSegmentRefOrdinals();
+
+  @Test
+  public void ordinalIsAssignedOnceForEachRef() {
+    int ordinal1 = ordinals.ordinalFor("a.g1");
+    int ordinal2 = ordinals.ordinalFor("b.g1");
+    assertThat(ordinals.ordinalFor("a.g1"), equalTo(ordinal1));
+    assertThat(ordinal2, equalTo(ordinal1 + 1));
+    assertThat(ordinals.ordinalIfKnown("b.g1"), equalTo(ordinal2));
+    assertThat(ordinals.ordinalIfKnown("c.g1"), equalTo(-1));
+    assertThat(ordinals.knownRefs()[ordinal2], equalTo("b.g1"));
+    assertThat(ordinals.size(), equalTo(2));
+  }
+
+  @Test
+  public void ordinalIsRememberedForPreprocessedSegmentOnceKnown() {
+    SegmentPreprocessed segment = new SegmentPreprocessed("a.g1");
+    assertThat(ordinals.ordinalIfKnown(segment), equalTo(-1));
+    assertThat(segment.bigSegmentOrdinal, nullValue());
+
+    int ordinal = ordinals.ordinalFor("a.g1");
+    assertThat(ordinals.ordinalIfKnown(segment), equalTo(ordinal));
+    assertThat(segment.bigSegmentOrdinal.ordinals, sameInstance(ordinals));
+
+    BigSegmentRefOrdinals otherOrdinals = new BigSegmentRefOrdinals();
+    otherOrdinals.ordinalFor("b.g1");
+    int otherOrdinal = otherOrdinals.ordinalFor("a.g1");
+    assertThat(otherOrdinals.ordinalIfKnown(segment), equalTo(otherOrdinal));
+    assertThat(segment.bigSegmentOrdinal.ordinals, sameInstance(otherOrdinals));
+  }
+
+  @Test
+  public void includedAndExcludedRefs() {
+    String included = "included.g1", excluded = "excluded.g1", both = "both.g1", neither = "neither.g1";
+    for (String ref: new String[] { included, excluded, both, neither }) {
+      ordinals.ordinalFor(ref);
+    }
+    Membership original = createMembershipFromSegmentRefs(asList(included, both), asList(excluded, both));
+
+    CompactBigSegmentMembership m = CompactBigSegmentMembership.fromMembership(original, ordinals);
+
+    assertThat(m.checkMembership(included), equalTo(true));
+    assertThat(m.checkMembership(excluded), equalTo(false));
+    assertThat(m.checkMembership(both), equalTo(true)); // inclusion overrides exclusion
+    assertThat(m.checkMembership(neither), nullValue());
+    assertThat(m.checkMembership("unknown.g1"), nullValue());
+    assertThat(m.checkMembership(ordinals.ordinalFor(included)), equalTo(true));
+    assertThat(m.checkMembership(ordinals.ordinalFor(excluded)), equalTo(false));
+    assertThat(m.checkMembership(ordinals.ordinalFor(neither)), nullValue());
+    assertThat(m.ordinalOf(new SegmentPreprocessed(excluded)), equalTo(ordinals.ordinalFor(excluded)));
+  }
+
+  @Test
+  public void refsThatWereNotKnownAtConversionTimeAreNotCovered() {
+    String knownRef = "known.g1", lateRef = "late.g1";
+    ordinals.ordinalFor(knownRef);
+    Membership original = createMembershipFromSegmentRefs(asList(knownRef, lateRef), null);
+    CompactBigSegmentMembership m = CompactBigSegmentMembership.fromMembership(original, ordinals);
+
+    ordinals.ordinalFor(lateRef);
+
+    assertThat(m.covers(knownRef), equalTo(true));
+    assertThat(m.covers(lateRef), equalTo(false));
+    assertThat(m.checkMembership(lateRef), nullValue());
+    assertThat(m.ordinalOf(new SegmentPreprocessed(lateRef)), equalTo(-1));
+  }
+
+  @Test
+  public void conversionToNewOrdinalsKeepsRefsThatAreStillCovered() {
+    String a = "a.g1", b = "b.g1", c = "c.g1", d = "d.g1";
+    for (String ref: new String[] { a, b, c }) {
+      ordinals.ordinalFor(ref);
+    }
+    CompactBigSegmentMembership m = CompactBigSegmentMembership.fromMembership(
+        createMembershipFromSegmentRefs(asList(a, c, d), asList(b)), ordinals);
+
+    // b has been dropped, and d is new, so the converted membership can't say anything about d
+    BigSegmentRefOrdinals newOrdinals = new BigSegmentRefOrdinals();
+    for (String ref: new String[] { a, c, d }) {
+      newOrdinals.ordinalFor(ref);
+    }
+    CompactBigSegmentMembership converted = m.withOrdinals(newOrdinals);
+
+    assertThat(converted.getOrdinals(), sameInstance(newOrdinals));
+    assertThat(converted.checkMembership(a), equalTo(true));
+    assertThat(converted.checkMembership(c), equalTo(true));
+    assertThat(converted.checkMembership(b), nullValue());
+    assertThat(converted.covers(d), equalTo(false));
+    assertThat(converted.checkMembership(d), nullValue());
+    assertThat(m.withOrdinals(ordinals), sameInstance(m));
+  }
+
+  @Test
+  public void emptyAndNullMembershipsAreEquivalent() {
+    ordinals.ordinalFor("a.g1");
+    CompactBigSegmentMembership fromNull = CompactBigSegmentMembership.fromMembership(null, ordinals);
+    CompactBigSegmentMembership fromEmpty = CompactBigSegmentMembership.fromMembership(
+        createMembershipFromSegmentRefs(null, null), ordinals);
+    assertThat(fromNull, equalTo(fromEmpty));
+    assertThat(fromNull.covers("a.g1"), equalTo(true));
+    assertThat(fromNull.checkMembership("a.g1"), nullValue());
+  }
+
+  @Test
+  public void equality() {
+    String ref1 = "equal1.g1", ref2 = "equal2.g1";
+    ordinals.ordinalFor(ref1);
+    ordinals.ordinalFor(ref2);
+    BigSegmentRefOrdinals otherOrdinals = new BigSegmentRefOrdinals();
+    otherOrdinals.ordinalFor(ref1);
+    otherOrdinals.ordinalFor(ref2);
+
+    CompactBigSegmentMembership m1 = CompactBigSegmentMembership.fromMembership(
+        createMembershipFromSegmentRefs(asList(ref1), asList(ref2)), ordinals);
+    CompactBigSegmentMembership m2 = CompactBigSegmentMembership.fromMembership(
+        createMembershipFromSegmentRefs(asList(ref1), asList(ref2)), ordinals);
+    CompactBigSegmentMembership m3 = CompactBigSegmentMembership.fromMembership(
+        createMembershipFromSegmentRefs(asList(ref1, ref2), null), ordinals);
+    CompactBigSegmentMembership m4 = CompactBigSegmentMembership.fromMembership(
+        createMembershipFromSegmentRefs(asList(ref1), asList(ref2)), otherOrdinals);
+    assertThat(m1, equalTo(m2));
+    assertThat(m1.hashCode(), equalTo(m2.hashCode()));
+    assertThat(m1.equals(m3), equalTo(false));
+    assertThat(m1.equals(m4), equalTo(false)); // the same bits mean different things with other ordinals
+  }
+}
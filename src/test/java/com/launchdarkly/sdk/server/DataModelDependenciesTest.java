@@ -168,6 +168,41 @@ public class DataModelDependenciesTest {
         contains(extraItem1.toKeyedItemDescriptor(), extraItem2.toKeyedItemDescriptor()));
   }
   
+  @Test
+  public void sortAllCollectionsHandlesVeryLongPrerequisiteChain() {
+    // flag0 depends on flag1, which depends on flag2, etc.; this would overflow the stack with a recursive sort
+    int count = 50000;
+    FeatureFlag[] flags = new FeatureFlag[count];
+    for (int i = 0; i < count; i++) {
+      flags[i] = i == count - 1 ? flagBuilder("flag" + i).build() :
+        flagBuilder("flag" + i).prerequisites(prerequisite("flag" + (i + 1), 0)).build();
+    }
+    FullDataSet<ItemDescriptor> inputData = new DataBuilder().addAny(FEATURES, flags).addAny(SEGMENTS).build();
+    
+    FullDataSet<ItemDescriptor> result = DataModelDependencies.sortAllCollections(inputData);
+    List<String> keys = ImmutableList.copyOf(transform(Iterables.get(result.getData(), 1).getValue().getItems(),
+        e -> e.getKey()));
+    assertEquals(count, keys.size());
+    for (int i = 0; i < count; i++) {
+      assertEquals("flag" + (count - 1 - i), keys.get(i));
+    }
+  }
+  
+  @Test
+  public void sortAllCollectionsIncludesAllItemsInPrerequisiteCycle() {
+    FullDataSet<ItemDescriptor> inputData = new DataBuilder()
+        .addAny(FEATURES,
+          flagBuilder("a").prerequisites(prerequisite("b", 0)).build(),
+          flagBuilder("b").prerequisites(prerequisite("a", 0)).build(),
+          flagBuilder("c").prerequisites(prerequisite("a", 0)).build())
+        .addAny(SEGMENTS)
+        .build();
+    
+    FullDataSet<ItemDescriptor> result = DataModelDependencies.sortAllCollections(inputData);
+    assertThat(transform(Iterables.get(result.getData(), 1).getValue().getItems(), e -> e.getKey()),
+        contains("b", "a", "c"));
+  }
+  
   static void verifySortedData(FullDataSet<ItemDescriptor> sortedData, FullDataSet<ItemDescriptor> inputData) {
     Map<DataKind, Map<String, ItemDescriptor>> dataMap = toDataMap(sortedData);
     assertEquals(2, dataMap.size());
@@ -338,6 +373,86 @@ public class DataModelDependenciesTest {
         new KindAndKey(FEATURES, "flag3"));
   }
   
+  @Test
+  public void dependencyTrackerUpdatesGraphFromFullDataSet() {
+    DependencyTracker dt = new DependencyTracker();
+    
+    FeatureFlag flag1 = flagBuilder("flag1").version(1).prerequisites(prerequisite("flag3", 0)).build();
+    FeatureFlag flag2 = flagBuilder("flag2").version(1).prerequisites(prerequisite("flag3", 0)).build();
+    FeatureFlag flag3 = flagBuilder("flag3").version(1).build();
+    dt.updateDependenciesFromFullDataSet(new DataBuilder().addAny(FEATURES, flag1, flag2, flag3).build());
+    
+    verifyAffectedItems(dt, FEATURES, "flag3",
+        new KindAndKey(FEATURES, "flag3"),
+        new KindAndKey(FEATURES, "flag2"),
+        new KindAndKey(FEATURES, "flag1"));
+    
+    // flag1 is changed to depend on flag4 instead, and flag2 is removed from the data set
+    FeatureFlag flag1v2 = flagBuilder("flag1").version(2).prerequisites(prerequisite("flag4", 0)).build();
+    FeatureFlag flag4 = flagBuilder("flag4").version(1).build();
+    dt.updateDependenciesFromFullDataSet(new DataBuilder().addAny(FEATURES, flag1v2, flag3, flag4).build());
+    
+    verifyAffectedItems(dt, FEATURES, "flag3",
+        new KindAndKey(FEATURES, "flag3"));
+    verifyAffectedItems(dt, FEATURES, "flag4",
+        new KindAndKey(FEATURES, "flag4"),
+        new KindAndKey(FEATURES, "flag1"));
+  }
+
+  @Test
+  public void dependencyTrackerRemovesUnusedNodesWhenFullDataSetIsApplied() {
+    DependencyTracker dt = new DependencyTracker();
+
+    FeatureFlag flag1 = flagBuilder("flag1").version(1).prerequisites(prerequisite("flag2", 0)).build();
+    FeatureFlag flag2 = flagBuilder("flag2").version(1).prerequisites(prerequisite("flag3", 0)).build();
+    FeatureFlag flag3 = flagBuilder("flag3").version(1).build();
+    FeatureFlag flag4 = flagBuilder("flag4").version(1)
+        .rules(ruleBuilder().clauses(clauseMatchingSegment("segment1")).build()).build();
+    dt.updateDependenciesFromFullDataSet(new DataBuilder().addAny(FEATURES, flag1, flag2, flag3, flag4).build());
+    assertThat(dt.size(), equalTo(5));
+
+    // flag1 and flag4 are gone, so segment1 (which was never in the data set) is no longer referenced;
+    // flag2 and flag3 are kept, and still have the right edges after being renumbered
+    FeatureFlag flag5 = flagBuilder("flag5").version(1).prerequisites(prerequisite("flag3", 0)).build();
+    dt.updateDependenciesFromFullDataSet(new DataBuilder().addAny(FEATURES, flag2, flag3, flag5).build());
+    assertThat(dt.size(), equalTo(3));
+
+    verifyAffectedItems(dt, FEATURES, "flag3",
+        new KindAndKey(FEATURES, "flag3"),
+        new KindAndKey(FEATURES, "flag2"),
+        new KindAndKey(FEATURES, "flag5"));
+    verifyAffectedItems(dt, SEGMENTS, "segment1",
+        new KindAndKey(SEGMENTS, "segment1"));
+
+    // the removed items can be added again
+    dt.updateDependenciesFrom(FEATURES, flag1.getKey(), new ItemDescriptor(flag1.getVersion(), flag1));
+    verifyAffectedItems(dt, FEATURES, "flag3",
+        new KindAndKey(FEATURES, "flag3"),
+        new KindAndKey(FEATURES, "flag2"),
+        new KindAndKey(FEATURES, "flag5"),
+        new KindAndKey(FEATURES, "flag1"));
+  }
+
+  @Test
+  public void dependencyTrackerCountsRepeatedReferenceOnlyOnce() {
+    DependencyTracker dt = new DependencyTracker();
+    
+    FeatureFlag flag1 = flagBuilder("flag1")
+        .rules(
+            ruleBuilder().clauses(clauseMatchingSegment("segment1")).build(),
+            ruleBuilder().clauses(clauseMatchingSegment("segment1")).build()
+            )
+        .build();
+    dt.updateDependenciesFrom(FEATURES, flag1.getKey(), new ItemDescriptor(flag1.getVersion(), flag1));
+    
+    // now remove the rules; if the reference had been counted twice, one would be left over
+    FeatureFlag flag1v2 = flagBuilder("flag1").build();
+    dt.updateDependenciesFrom(FEATURES, flag1.getKey(), new ItemDescriptor(flag1v2.getVersion(), flag1v2));
+    
+    verifyAffectedItems(dt, SEGMENTS, "segment1",
+        new KindAndKey(SEGMENTS, "segment1"));
+  }
+  
   private void verifyAffectedItems(DependencyTracker dt, DataKind kind, String key, KindAndKey... expected) {
     Set<KindAndKey> result = new HashSet<>();
     dt.addAffectedItems(result, new KindAndKey(kind, key));
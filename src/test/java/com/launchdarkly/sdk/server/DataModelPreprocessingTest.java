@@ -377,4 +377,25 @@ public class DataModelPreprocessingTest {
     assertNotNull(ce.valuesExtra.get(0).parsedRegex);
     assertEquals("x*", ce.valuesExtra.get(0).parsedRegex.toString());
   }
+
+  @Test
+  public void preprocessSegmentAddsPrecomputedBigSegmentRef() {
+    Segment s = segmentBuilder("key").disablePreprocessing(true).unbounded(true).generation(2).build();
+    
+    assertNull(s.preprocessed);
+    
+    s.afterDeserialized();
+    
+    assertNotNull(s.preprocessed);
+    assertEquals("key.g2", s.preprocessed.bigSegmentRef);
+  }
+  
+  @Test
+  public void preprocessSegmentDoesNotAddBigSegmentRefIfGenerationIsUnknown() {
+    Segment s = segmentBuilder("key").disablePreprocessing(true).unbounded(true).build();
+    
+    s.afterDeserialized();
+    
+    assertNull(s.preprocessed);
+  }
 }
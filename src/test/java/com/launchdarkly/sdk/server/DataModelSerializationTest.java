@@ -32,7 +32,9 @@ import java.util.function.Consumer;
 import static com.launchdarkly.sdk.server.DataModel.FEATURES;
 import static com.launchdarkly.sdk.server.DataModel.SEGMENTS;
 import static com.launchdarkly.sdk.server.DataModelSerialization.deserializeFromParsedJson;
+import static com.launchdarkly.sdk.server.DataModelSerialization.deserializeKeepingOriginalJson;
 import static com.launchdarkly.sdk.server.DataModelSerialization.parseFullDataSet;
+import static com.launchdarkly.sdk.server.JsonHelpers.gsonInstance;
 import static com.launchdarkly.sdk.server.JsonHelpers.serialize;
 import static com.launchdarkly.sdk.server.ModelBuilders.flagBuilder;
 import static com.launchdarkly.sdk.server.ModelBuilders.segmentBuilder;
@@ -90,6 +92,51 @@ public class DataModelSerializationTest {
     deserializeFromParsedJson(mysteryKind, element);
   }
 
+  @Test
+  public void parseFullDataSetKeepsOriginalJsonIfRequested() throws Exception {
+    String flagJson = "{\"key\": \"flag1\", \"version\": 2, \"unknownProperty\": true}";
+    String segmentJson = "{\"key\":\"segment1\",\n\"version\":3}";
+    String json = "{\"flags\":{\"flag1\":" + flagJson + "},\n\"segments\":{\"segment1\":" + segmentJson + "}}";
+    FullDataSet<ItemDescriptor> data = parseFullDataSet(jsonReaderFrom(json), true);
+    ItemDescriptor flag = data.getData().iterator().next().getValue().getItems().iterator().next().getValue();
+    assertEquals("{\"key\":\"flag1\",\"version\":2,\"unknownProperty\":true}", FEATURES.serialize(flag));
+    
+    DataModelSerialization.releaseOriginalJson(data);
+    assertNull(DataModelSerialization.getOriginalJson(flag));
+    assertJsonEquals(serialize(flag.getItem()), FEATURES.serialize(flag));
+  }
+
+  @Test
+  public void parseFullDataSetDoesNotKeepOriginalJsonByDefault() throws Exception {
+    String json = "{\"flags\":{\"flag1\":{\"key\": \"flag1\", \"version\": 2}}}";
+    FullDataSet<ItemDescriptor> data = parseFullDataSet(jsonReaderFrom(json));
+    ItemDescriptor flag = data.getData().iterator().next().getValue().getItems().iterator().next().getValue();
+    assertNull(DataModelSerialization.getOriginalJson(flag));
+  }
+
+  @Test
+  public void originalJsonIsNotKeptIfKeyOrVersionDoesNotMatchItem() throws Exception {
+    // Gson will convert a string to a number when deserializing, but we don't trust that the text means
+    // the same thing as the item in that case
+    String versionAsString = "{\"key\":\"flag1\",\"version\":\"2\"}";
+    VersionedData flag = deserializeKeepingOriginalJson(FEATURES, gsonInstance().fromJson(versionAsString, JsonElement.class));
+    assertEquals(2, flag.getVersion());
+    assertNull(DataModelSerialization.getOriginalJson(new ItemDescriptor(2, flag)));
+
+    String noKey = "{\"version\":2}";
+    VersionedData flag2 = deserializeKeepingOriginalJson(FEATURES, gsonInstance().fromJson(noKey, JsonElement.class));
+    assertNull(DataModelSerialization.getOriginalJson(new ItemDescriptor(2, flag2)));
+  }
+
+  @Test
+  public void originalJsonIsNotUsedIfVersionDoesNotMatch() {
+    FeatureFlag flag = flagBuilder("flag1").version(2).build();
+    String originalJson = "{\"key\": \"flag1\", \"version\": 2}";
+    DataModelSerialization.setOriginalJson(flag, originalJson);
+    assertEquals(originalJson, FEATURES.serialize(new ItemDescriptor(2, flag)));
+    assertJsonEquals(serialize(flag), FEATURES.serialize(new ItemDescriptor(3, flag)));
+  }
+
   @Test
   public void flagIsDeserializedWithAllProperties() {
     assertFlagFromJson(
@@ -335,6 +382,22 @@ public class DataModelSerializationTest {
     assertJsonEquals(json0, json1);
   }
   
+  @Test
+  public void flagWithAllPropertiesSurvivesBinaryFormat() {
+    FeatureFlag flag0 = (FeatureFlag)FEATURES.deserialize(flagWithAllPropertiesJson().toJsonString()).getItem();
+    ItemDescriptor item = BinaryItemFormat.decode(FEATURES, BinaryItemFormat.encode(flag0));
+    assertFlagHasAllProperties((FeatureFlag)item.getItem());
+    assertJsonEquals(serialize(flag0), serialize(item.getItem()));
+  }
+
+  @Test
+  public void segmentWithAllPropertiesSurvivesBinaryFormat() {
+    Segment segment0 = (Segment)SEGMENTS.deserialize(segmentWithAllPropertiesJson().toJsonString()).getItem();
+    ItemDescriptor item = BinaryItemFormat.decode(SEGMENTS, BinaryItemFormat.encode(segment0));
+    assertSegmentHasAllProperties((Segment)item.getItem());
+    assertJsonEquals(serialize(segment0), serialize(item.getItem()));
+  }
+
   @Test
   public void segmentIsDeserializedWithAllProperties() {
     String json0 = segmentWithAllPropertiesJson().toJsonString();
@@ -0,0 +1,134 @@
+package com.launchdarkly.sdk.server;
+
+import com.launchdarkly.sdk.server.DataStoreTestTypes.DataBuilder;
+import com.launchdarkly.sdk.server.interfaces.DataSnapshotConfiguration;
+import com.launchdarkly.sdk.server.subsystems.DataStore;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
+import com.launchdarkly.testhelpers.TempDir;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static com.launchdarkly.sdk.server.DataModel.FEATURES;
+import static com.launchdarkly.sdk.server.DataModel.SEGMENTS;
+import static com.launchdarkly.sdk.server.DataStoreTestTypes.toDataMap;
+import static com.launchdarkly.sdk.server.ModelBuilders.flagBuilder;
+import static com.launchdarkly.sdk.server.ModelBuilders.segmentBuilder;
+import static com.launchdarkly.sdk.server.TestComponents.inMemoryDataStore;
+import static com.launchdarkly.sdk.server.TestComponents.nullLogger;
+import static com.launchdarkly.sdk.server.TestComponents.sharedExecutor;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+@SuppressWarnings("javadoc")
+public class DataSnapshotManagerTest {
+  private static FullDataSet<ItemDescriptor> makeData(int flagVersion) {
+    return new DataBuilder()
+        .addAny(FEATURES, flagBuilder("flag1").version(flagVersion).build())
+        .addAny(SEGMENTS, segmentBuilder("segment1").version(1).build())
+        .build();
+  }
+
+  private static DataSnapshotManager makeInstance(Path filePath, DataStore store) {
+    return new DataSnapshotManager(new DataSnapshotConfiguration(filePath, Duration.ofMinutes(1)),
+        store, sharedExecutor, nullLogger);
+  }
+
+  @Test
+  public void snapshotCanBeWrittenAndLoaded() throws Exception {
+    try (TempDir dir = TempDir.create()) {
+      Path filePath = dir.getPath().resolve("snapshot");
+      DataStore store = inMemoryDataStore();
+      store.init(makeData(1));
+      makeInstance(filePath, store).writeIfChanged();
+
+      FullDataSet<ItemDescriptor> loaded = makeInstance(filePath, inMemoryDataStore()).load();
+      assertThat(loaded, notNullValue());
+      assertThat(toDataMap(loaded), equalTo(toDataMap(makeData(1))));
+    }
+  }
+
+  @Test
+  public void snapshotIsNotRewrittenIfDataHasNotChanged() throws Exception {
+    try (TempDir dir = TempDir.create()) {
+      Path filePath = dir.getPath().resolve("snapshot");
+      DataStore store = inMemoryDataStore();
+      store.init(makeData(1));
+      DataSnapshotManager manager = makeInstance(filePath, store);
+      manager.writeIfChanged();
+      Files.delete(filePath);
+
+      manager.writeIfChanged();
+      assertThat(Files.exists(filePath), is(false));
+
+      store.upsert(FEATURES, "flag1", new ItemDescriptor(2, flagBuilder("flag1").version(2).build()));
+      manager.writeIfChanged();
+      assertThat(Files.exists(filePath), is(true));
+    }
+  }
+
+  @Test
+  public void snapshotIsNotRewrittenIfDataIsUnchangedSinceLoad() throws Exception {
+    try (TempDir dir = TempDir.create()) {
+      Path filePath = dir.getPath().resolve("snapshot");
+      DataStore store1 = inMemoryDataStore();
+      store1.init(makeData(1));
+      makeInstance(filePath, store1).writeIfChanged();
+
+      DataStore store2 = inMemoryDataStore();
+      DataSnapshotManager manager = makeInstance(filePath, store2);
+      store2.init(manager.load());
+      Files.delete(filePath);
+
+      manager.writeIfChanged();
+      assertThat(Files.exists(filePath), is(false));
+    }
+  }
+
+  @Test
+  public void snapshotIsNotWrittenIfStoreIsNotInitialized() throws Exception {
+    try (TempDir dir = TempDir.create()) {
+      Path filePath = dir.getPath().resolve("snapshot");
+      makeInstance(filePath, inMemoryDataStore()).writeIfChanged();
+      assertThat(Files.exists(filePath), is(false));
+    }
+  }
+
+  @Test
+  public void closeWritesFinalSnapshot() throws Exception {
+    try (TempDir dir = TempDir.create()) {
+      Path filePath = dir.getPath().resolve("snapshot");
+      DataStore store = inMemoryDataStore();
+      store.init(makeData(1));
+      DataSnapshotManager manager = makeInstance(filePath, store);
+      manager.start();
+      manager.close();
+      assertThat(Files.exists(filePath), is(true));
+    }
+  }
+
+  @Test
+  public void missingFileIsNotLoaded() throws Exception {
+    try (TempDir dir = TempDir.create()) {
+      Path filePath = dir.getPath().resolve("snapshot");
+      assertThat(makeInstance(filePath, inMemoryDataStore()).load(), nullValue());
+    }
+  }
+
+  @Test
+  public void invalidFileIsNotLoaded() throws Exception {
+    try (TempDir dir = TempDir.create()) {
+      Path filePath = dir.getPath().resolve("snapshot");
+      Files.write(filePath, "not a snapshot".getBytes(StandardCharsets.UTF_8));
+      assertThat(makeInstance(filePath, inMemoryDataStore()).load(), nullValue());
+    }
+  }
+}
@@ -21,6 +21,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.sameInstance;
 
 @SuppressWarnings("javadoc")
@@ -111,4 +112,9 @@ public class DataSourceStatusProviderImplTest extends BaseTest {
     assertThat(success, equalTo(false));
     assertThat(timeEnd - timeStart, lessThan(500L));
   }
+
+  @Test
+  public void pipelineStatsAreNullIfDataSourceIsNotPipelined() throws Exception {
+    assertThat(statusProvider.getPipelineStats(), nullValue());
+  }
 }
@@ -1,14 +1,19 @@
 package com.launchdarkly.sdk.server;
 
+import com.google.common.collect.ImmutableSet;
 import com.launchdarkly.sdk.server.DataStoreTestTypes.DataBuilder;
+import com.launchdarkly.sdk.server.interfaces.BigSegmentsConfiguration;
 import com.launchdarkly.sdk.server.interfaces.DataSourceStatusProvider;
 import com.launchdarkly.sdk.server.interfaces.DataSourceStatusProvider.ErrorInfo;
 import com.launchdarkly.sdk.server.interfaces.DataSourceStatusProvider.ErrorKind;
 import com.launchdarkly.sdk.server.interfaces.DataSourceStatusProvider.State;
 import com.launchdarkly.sdk.server.interfaces.DataSourceStatusProvider.Status;
+import com.launchdarkly.sdk.server.subsystems.BigSegmentStore;
 import com.launchdarkly.sdk.server.subsystems.DataStore;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.KeyedItems;
 import com.launchdarkly.sdk.server.interfaces.FlagChangeEvent;
 import com.launchdarkly.sdk.server.interfaces.FlagChangeListener;
 
@@ -20,6 +25,9 @@ import org.junit.Test;
 import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -30,17 +38,23 @@ import static com.launchdarkly.sdk.server.ModelBuilders.flagBuilder;
 import static com.launchdarkly.sdk.server.ModelBuilders.prerequisite;
 import static com.launchdarkly.sdk.server.ModelBuilders.ruleBuilder;
 import static com.launchdarkly.sdk.server.ModelBuilders.segmentBuilder;
+import static com.launchdarkly.sdk.server.TestComponents.clientContext;
 import static com.launchdarkly.sdk.server.TestComponents.inMemoryDataStore;
 import static com.launchdarkly.sdk.server.TestComponents.nullLogger;
 import static com.launchdarkly.sdk.server.TestComponents.sharedExecutor;
+import static com.launchdarkly.sdk.server.TestComponents.specificComponent;
 import static com.launchdarkly.sdk.server.TestUtil.expectEvents;
 import static com.launchdarkly.testhelpers.ConcurrentHelpers.assertNoMoreValues;
 import static com.launchdarkly.testhelpers.ConcurrentHelpers.awaitValue;
 import static org.easymock.EasyMock.replay;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 
 @SuppressWarnings("javadoc")
 public class DataSourceUpdatesImplTest {
@@ -62,6 +76,10 @@ public class DataSourceUpdatesImplTest {
     return new DataSourceUpdatesImpl(store, null, flagChangeBroadcaster, statusBroadcaster, sharedExecutor, null, nullLogger);
   }
   
+  private DataSourceUpdatesImpl makeIncrementalInstance(DataStore store) {
+    return new DataSourceUpdatesImpl(store, null, flagChangeBroadcaster, null, sharedExecutor, null, true, nullLogger);
+  }
+  
   @Test
   public void sendsEventsOnInitForNewlyAddedFlags() throws Exception {
     DataStore store = inMemoryDataStore();
@@ -87,6 +105,38 @@ public class DataSourceUpdatesImplTest {
     expectEvents(eventSink, "flag2");
   }
 
+  @Test
+  public void fullDataSetUpdatesBigSegmentRefs() throws Exception {
+    DataStore store = inMemoryDataStore();
+    BigSegmentStore bigSegmentStore = mocks.niceMock(BigSegmentStore.class);
+    mocks.replayAll();
+    BigSegmentsConfiguration bsConfig = Components.bigSegments(specificComponent(bigSegmentStore))
+        .build(clientContext("sdk-key", new LDConfig.Builder().build()));
+    try (BigSegmentStoreWrapper wrapper = new BigSegmentStoreWrapper(bsConfig,
+        EventBroadcasterImpl.forBigSegmentStoreStatus(sharedExecutor, nullLogger), sharedExecutor, nullLogger)) {
+      DataSourceUpdatesImpl storeUpdates = makeInstance(store);
+      storeUpdates.bigSegmentStoreWrapper = wrapper;
+
+      storeUpdates.init(new DataBuilder()
+          .addAny(SEGMENTS,
+              segmentBuilder("big1").version(1).unbounded(true).generation(1).build(),
+              segmentBuilder("big2").version(1).unbounded(true).generation(1).build(),
+              segmentBuilder("regular").version(1).build())
+          .build());
+      assertThat(ImmutableSet.copyOf(wrapper.getSegmentRefOrdinals().knownRefs()),
+          equalTo(ImmutableSet.of("big1.g1", "big2.g1")));
+
+      // the old generation of big1 is dropped
+      storeUpdates.init(new DataBuilder()
+          .addAny(SEGMENTS,
+              segmentBuilder("big1").version(2).unbounded(true).generation(2).build(),
+              segmentBuilder("big2").version(1).unbounded(true).generation(1).build())
+          .build());
+      assertThat(ImmutableSet.copyOf(wrapper.getSegmentRefOrdinals().knownRefs()),
+          equalTo(ImmutableSet.of("big1.g2", "big2.g1")));
+    }
+  }
+
   @Test
   public void sendsEventOnUpdateForNewlyAddedFlag() throws Exception {
     DataStore store = inMemoryDataStore();
@@ -331,6 +381,71 @@ public class DataSourceUpdatesImplTest {
     expectEvents(eventSink, "flag2", "flag4");
   }
 
+  @Test
+  public void sendsEventsForFlagsAffectedByChangeReportedByStore() throws Exception {
+    DataStore store = inMemoryDataStore();
+    DataBuilder builder = new DataBuilder()
+        .addAny(FEATURES,
+            flagBuilder("flag1").version(1).build(),
+            flagBuilder("flag2").version(1).rules(
+                ruleBuilder().clauses(
+                    ModelBuilders.clauseMatchingSegment("segment1")
+                    ).build()
+                ).build(),
+            flagBuilder("flag3").version(1).prerequisites(prerequisite("flag2", 0)).build())
+        .addAny(SEGMENTS,
+            segmentBuilder("segment1").version(1).build());
+
+    // The data was put in the store by someone else, as in daemon mode, so we haven't seen it before.
+    store.init(builder.build());
+    DataSourceUpdatesImpl storeUpdates = makeInstance(store);
+
+    BlockingQueue<FlagChangeEvent> eventSink = new LinkedBlockingQueue<>();
+    flagChangeBroadcaster.register(eventSink::add);
+
+    ItemDescriptor segment1v2 = new ItemDescriptor(2, segmentBuilder("segment1").version(2).build());
+    store.upsert(SEGMENTS, "segment1", segment1v2);
+    storeUpdates.itemChangedInStore(SEGMENTS, "segment1", segment1v2);
+
+    expectEvents(eventSink, "flag2", "flag3");
+  }
+
+  @Test
+  public void sendsOneEventPerAffectedFlagOnUpsertAll() throws Exception {
+    DataStore store = inMemoryDataStore();
+    DataBuilder builder = new DataBuilder()
+        .addAny(FEATURES,
+            flagBuilder("flag1").version(1).build(),
+            flagBuilder("flag2").version(1).rules(
+                ruleBuilder().clauses(
+                    ModelBuilders.clauseMatchingSegment("segment1")
+                    ).build()
+                ).build(),
+            flagBuilder("flag3").version(1).build(),
+            flagBuilder("flag4").version(1).prerequisites(prerequisite("flag2", 0)).build())
+        .addAny(SEGMENTS,
+            segmentBuilder("segment1").version(1).build());
+
+    DataSourceUpdatesImpl storeUpdates = makeInstance(store);
+
+    storeUpdates.init(builder.build());
+    
+    BlockingQueue<FlagChangeEvent> eventSink = new LinkedBlockingQueue<>();
+    flagChangeBroadcaster.register(eventSink::add);
+    
+    storeUpdates.upsertAll(new DataBuilder()
+        .addAny(FEATURES,
+            flagBuilder("flag2").version(2).build(),
+            flagBuilder("flag3").version(1).build()) // same version, so not really updated
+        .addAny(SEGMENTS,
+            segmentBuilder("segment1").version(2).build())
+        .build());
+    
+    assertThat(store.get(FEATURES, "flag2").getVersion(), is(2));
+    assertThat(store.get(SEGMENTS, "segment1").getVersion(), is(2));
+    expectEvents(eventSink, "flag2", "flag4");
+  }
+
   @Test
   public void dataSetIsPassedToDataStoreInCorrectOrder() throws Exception {
     // The logic for this is already tested in DataModelDependenciesTest, but here we are verifying
@@ -348,6 +463,179 @@ public class DataSourceUpdatesImplTest {
 
   }
 
+  @Test
+  public void incrementalInitOnlyWritesChangedAndRemovedItems() throws Exception {
+    RecordingDataStore store = new RecordingDataStore();
+    DataBuilder builder = new DataBuilder()
+        .addAny(FEATURES,
+            flagBuilder("flag1").version(1).build(),
+            flagBuilder("flag2").version(1).build(),
+            flagBuilder("flag3").version(1).build(),
+            flagBuilder("flag4").version(1).build())
+        .addAny(SEGMENTS,
+            segmentBuilder("segment1").version(1).build());
+    
+    DataSourceUpdatesImpl storeUpdates = makeIncrementalInstance(store);
+    
+    storeUpdates.init(builder.build());
+    assertThat(store.initCount, is(1));
+    
+    BlockingQueue<FlagChangeEvent> eventSink = new LinkedBlockingQueue<>();
+    flagChangeBroadcaster.register(eventSink::add);
+    
+    builder.addAny(FEATURES, flagBuilder("flag2").version(2).build());
+    builder.remove(FEATURES, "flag3");
+    storeUpdates.init(builder.build());
+    
+    assertThat(store.initCount, is(1));
+    assertThat(store.upsertAllCount, is(1));
+    assertThat(store.upsertedKeys, contains("flag2", "flag3"));
+    assertThat(store.get(FEATURES, "flag2").getVersion(), is(2));
+    assertThat(store.get(FEATURES, "flag3"), equalTo(ItemDescriptor.deletedItem(2)));
+    expectEvents(eventSink, "flag2", "flag3");
+  }
+
+  @Test
+  public void incrementalInitDoesNotReplaceDeletedItemThatIsAlreadyInStore() throws Exception {
+    RecordingDataStore store = new RecordingDataStore();
+    DataBuilder builder = new DataBuilder()
+        .addAny(FEATURES,
+            flagBuilder("flag1").version(1).build(),
+            flagBuilder("flag2").version(1).build(),
+            flagBuilder("flag3").version(1).build(),
+            flagBuilder("flag4").version(1).build(),
+            flagBuilder("flag5").version(1).build(),
+            flagBuilder("flag6").version(1).build());
+    
+    DataSourceUpdatesImpl storeUpdates = makeIncrementalInstance(store);
+    storeUpdates.init(builder.build());
+    
+    BlockingQueue<FlagChangeEvent> eventSink = new LinkedBlockingQueue<>();
+    flagChangeBroadcaster.register(eventSink::add);
+    
+    // Between reading the store and writing the changes, something else deletes flag3 with the same version
+    // that the deleted item placeholder will have, so the placeholder is not applied and isn't a change.
+    store.beforeUpsertAll = () -> store.upsertWithoutRecording(FEATURES, "flag3", ItemDescriptor.deletedItem(2));
+    builder.addAny(FEATURES, flagBuilder("flag2").version(2).build());
+    builder.remove(FEATURES, "flag3");
+    assertThat(storeUpdates.init(builder.build()), is(true));
+    
+    assertThat(store.initCount, is(1));
+    assertThat(store.upsertedKeys, contains("flag2", "flag3"));
+    assertThat(store.get(FEATURES, "flag3"), equalTo(ItemDescriptor.deletedItem(2)));
+    expectEvents(eventSink, "flag2");
+    
+    // Now that flag3 is only a deleted item in the store, a data set without it doesn't change anything
+    store.beforeUpsertAll = null;
+    store.upsertedKeys.clear();
+    storeUpdates.init(builder.build());
+    assertThat(store.initCount, is(1));
+    assertThat(store.upsertedKeys, empty());
+    assertThat(store.get(FEATURES, "flag3"), equalTo(ItemDescriptor.deletedItem(2)));
+    assertNoMoreValues(eventSink, 100, TimeUnit.MILLISECONDS);
+  }
+
+  @Test
+  public void incrementalInitSendsEventsForFlagsWhoseSegmentsChanged() throws Exception {
+    RecordingDataStore store = new RecordingDataStore();
+    DataBuilder builder = new DataBuilder()
+        .addAny(FEATURES,
+            flagBuilder("flag1").version(1).build(),
+            flagBuilder("flag2").version(1).rules(
+                ruleBuilder().clauses(
+                    ModelBuilders.clauseMatchingSegment("segment1")
+                    ).build()
+                ).build(),
+            flagBuilder("flag3").version(1).build(),
+            flagBuilder("flag4").version(1).prerequisites(prerequisite("flag2", 0)).build())
+        .addAny(SEGMENTS,
+            segmentBuilder("segment1").version(1).build(),
+            segmentBuilder("segment2").version(1).build());
+
+    DataSourceUpdatesImpl storeUpdates = makeIncrementalInstance(store);
+
+    storeUpdates.init(builder.build());
+    
+    BlockingQueue<FlagChangeEvent> eventSink = new LinkedBlockingQueue<>();
+    flagChangeBroadcaster.register(eventSink::add);
+    
+    builder.addAny(SEGMENTS, segmentBuilder("segment1").version(2).build());
+    storeUpdates.init(builder.build());
+    
+    assertThat(store.initCount, is(1));
+    assertThat(store.upsertedKeys, contains("segment1"));
+    expectEvents(eventSink, "flag2", "flag4");
+  }
+
+  @Test
+  public void incrementalInitDoesFullInitIfStoreWasNotInitialized() throws Exception {
+    RecordingDataStore store = new RecordingDataStore();
+    DataSourceUpdatesImpl storeUpdates = makeIncrementalInstance(store);
+    
+    storeUpdates.init(new DataBuilder().addAny(FEATURES, flagBuilder("flag1").version(1).build()).build());
+    
+    assertThat(store.initCount, is(1));
+    assertThat(store.upsertedKeys, empty());
+  }
+
+  @Test
+  public void incrementalInitDoesFullInitIfAnItemHasALowerVersion() throws Exception {
+    RecordingDataStore store = new RecordingDataStore();
+    DataBuilder builder = new DataBuilder()
+        .addAny(FEATURES,
+            flagBuilder("flag1").version(1).build(),
+            flagBuilder("flag2").version(5).build(),
+            flagBuilder("flag3").version(1).build());
+    DataSourceUpdatesImpl storeUpdates = makeIncrementalInstance(store);
+    
+    storeUpdates.init(builder.build());
+    builder.addAny(FEATURES, flagBuilder("flag2").version(4).build());
+    storeUpdates.init(builder.build());
+    
+    assertThat(store.initCount, is(2));
+    assertThat(store.upsertedKeys, empty());
+    assertThat(store.get(FEATURES, "flag2").getVersion(), is(4));
+  }
+
+  @Test
+  public void incrementalInitDoesFullInitIfMostItemsChanged() throws Exception {
+    RecordingDataStore store = new RecordingDataStore();
+    DataBuilder builder = new DataBuilder()
+        .addAny(FEATURES,
+            flagBuilder("flag1").version(1).build(),
+            flagBuilder("flag2").version(1).build(),
+            flagBuilder("flag3").version(1).build());
+    DataSourceUpdatesImpl storeUpdates = makeIncrementalInstance(store);
+    
+    storeUpdates.init(builder.build());
+    builder.addAny(FEATURES,
+        flagBuilder("flag1").version(2).build(),
+        flagBuilder("flag2").version(2).build());
+    storeUpdates.init(builder.build());
+    
+    assertThat(store.initCount, is(2));
+    assertThat(store.upsertedKeys, empty());
+  }
+
+  @Test
+  public void initFromSnapshotSetsFromSnapshotStatusUntilDataSourceInitializes() {
+    DataStore store = inMemoryDataStore();
+    DataSourceUpdatesImpl updates = makeInstance(store);
+    FullDataSet<ItemDescriptor> data = new DataBuilder()
+        .addAny(FEATURES, flagBuilder("flag1").version(1).build())
+        .build();
+
+    assertThat(updates.initFromSnapshot(data), is(true));
+    assertThat(store.isInitialized(), is(true));
+    assertThat(updates.getLastStatus().getState(), is(State.INITIALIZING));
+    assertThat(updates.getLastStatus().isFromSnapshot(), is(true));
+
+    updates.init(data);
+    updates.updateStatus(State.VALID, null);
+    assertThat(updates.getLastStatus().getState(), is(State.VALID));
+    assertThat(updates.getLastStatus().isFromSnapshot(), is(false));
+  }
+
   @Test
   public void updateStatusBroadcastsNewStatus() {
     EventBroadcasterImpl<DataSourceStatusProvider.StatusListener, DataSourceStatusProvider.Status> broadcaster =
@@ -405,6 +693,21 @@ public class DataSourceUpdatesImplTest {
     assertNoMoreValues(statuses, 100, TimeUnit.MILLISECONDS);
   }
   
+  @Test
+  public void originalJsonOfItemsIsReleasedAfterStoreUpdate() throws Exception {
+    DataModel.FeatureFlag flag1 = flagBuilder("flag1").version(1).build();
+    DataModel.FeatureFlag flag2 = flagBuilder("flag2").version(1).build();
+    DataModelSerialization.setOriginalJson(flag1, "{\"key\":\"flag1\",\"version\":1}");
+    DataModelSerialization.setOriginalJson(flag2, "{\"key\":\"flag2\",\"version\":1}");
+    DataSourceUpdatesImpl updates = makeInstance(inMemoryDataStore());
+
+    updates.init(new DataBuilder().addAny(FEATURES, flag1).build());
+    assertThat(DataModelSerialization.getOriginalJson(new ItemDescriptor(1, flag1)), nullValue());
+
+    updates.upsert(FEATURES, "flag2", new ItemDescriptor(1, flag2));
+    assertThat(DataModelSerialization.getOriginalJson(new ItemDescriptor(1, flag2)), nullValue());
+  }
+
   @Test
   public void outageTimeoutLogging() throws Exception {
     BlockingQueue<String> outageErrors = new LinkedBlockingQueue<>();
@@ -441,4 +744,41 @@ public class DataSourceUpdatesImplTest {
     assertThat(errorsDesc, containsString("ERROR_RESPONSE(501) (2 times)"));
     assertThat(errorsDesc, containsString("ERROR_RESPONSE(502) (1 time)"));
   }
+  
+  private static final class RecordingDataStore extends InMemoryDataStore {
+    volatile int initCount = 0;
+    volatile int upsertAllCount = 0;
+    final List<String> upsertedKeys = new ArrayList<>();
+    volatile Runnable beforeUpsertAll = null;
+    
+    @Override
+    public void init(FullDataSet<ItemDescriptor> allData) {
+      initCount++;
+      super.init(allData);
+    }
+    
+    @Override
+    public boolean upsert(DataKind kind, String key, ItemDescriptor item) {
+      upsertedKeys.add(key);
+      return super.upsert(kind, key, item);
+    }
+    
+    @Override
+    public FullDataSet<ItemDescriptor> upsertAll(FullDataSet<ItemDescriptor> items) {
+      upsertAllCount++;
+      if (beforeUpsertAll != null) {
+        beforeUpsertAll.run();
+      }
+      for (Map.Entry<DataKind, KeyedItems<ItemDescriptor>> e0: items.getData()) {
+        for (Map.Entry<String, ItemDescriptor> e1: e0.getValue().getItems()) {
+          upsertedKeys.add(e1.getKey());
+        }
+      }
+      return super.upsertAll(items);
+    }
+    
+    void upsertWithoutRecording(DataKind kind, String key, ItemDescriptor item) {
+      super.upsert(kind, key, item);
+    }
+  }
 }
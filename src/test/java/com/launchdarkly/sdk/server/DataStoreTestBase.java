@@ -1,8 +1,10 @@
 package com.launchdarkly.sdk.server;
 
+import com.google.common.collect.ImmutableSet;
 import com.launchdarkly.sdk.server.DataStoreTestTypes.DataBuilder;
 import com.launchdarkly.sdk.server.DataStoreTestTypes.TestItem;
 import com.launchdarkly.sdk.server.subsystems.DataStore;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
 
@@ -14,6 +16,7 @@ import java.util.Map;
 
 import static com.launchdarkly.sdk.server.DataStoreTestTypes.OTHER_TEST_ITEMS;
 import static com.launchdarkly.sdk.server.DataStoreTestTypes.TEST_ITEMS;
+import static com.launchdarkly.sdk.server.DataStoreTestTypes.toDataMap;
 import static com.launchdarkly.sdk.server.DataStoreTestTypes.toItemsMap;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -165,4 +168,24 @@ public abstract class DataStoreTestBase {
     store.upsert(TEST_ITEMS, item1.key, item1.toItemDescriptor());
     assertEquals(deletedItem, store.get(TEST_ITEMS, item1.key));
   }
+  
+  @Test
+  public void upsertAllUpdatesOnlyItemsWithNewerVersions() {
+    store.init(new DataBuilder().add(TEST_ITEMS, item1, item2).build());
+    TestItem item1v2 = item1.withVersion(item1.version + 1);
+    TestItem item2old = item2.withVersion(item2.version - 1);
+    TestItem newItem = new TestItem("new-name", "new-key", 99);
+    
+    FullDataSet<ItemDescriptor> updated = store.upsertAll(
+        new DataBuilder().add(TEST_ITEMS, item1v2, item2old, newItem).add(OTHER_TEST_ITEMS, otherItem1).build());
+    
+    assertEquals(item1v2.toItemDescriptor(), store.get(TEST_ITEMS, item1.key));
+    assertEquals(item2.toItemDescriptor(), store.get(TEST_ITEMS, item2.key));
+    assertEquals(newItem.toItemDescriptor(), store.get(TEST_ITEMS, newItem.key));
+    assertEquals(otherItem1.toItemDescriptor(), store.get(OTHER_TEST_ITEMS, otherItem1.key));
+    
+    Map<DataKind, Map<String, ItemDescriptor>> updatedMap = toDataMap(updated);
+    assertEquals(ImmutableSet.of(item1.key, newItem.key), updatedMap.get(TEST_ITEMS).keySet());
+    assertEquals(ImmutableSet.of(otherItem1.key), updatedMap.get(OTHER_TEST_ITEMS).keySet());
+  }
 }
@@ -2,6 +2,7 @@ package com.launchdarkly.sdk.server;
 
 import com.launchdarkly.sdk.EvaluationDetail;
 import com.launchdarkly.sdk.EvaluationReason;
+import com.launchdarkly.sdk.EvaluationReason.BigSegmentsStatus;
 import com.launchdarkly.sdk.LDValue;
 
 import org.junit.Test;
@@ -121,6 +122,21 @@ public class EvalResultTest {
     assertThat(r1.getVariationIndex(), equalTo(r.getVariationIndex()));
   }
   
+  @Test
+  public void withBigSegmentsStatus() {
+    EvalResult r = EvalResult.of(SOME_VALUE, SOME_VARIATION, SOME_REASON);
+    
+    EvalResult r1 = r.withBigSegmentsStatus(BigSegmentsStatus.HEALTHY);
+    assertThat(r1.getReason(), equalTo(SOME_REASON.withBigSegmentsStatus(BigSegmentsStatus.HEALTHY)));
+    assertThat(r1.getValue(), equalTo(r.getValue()));
+    assertThat(r1.getVariationIndex(), equalTo(r.getVariationIndex()));
+    assertThat(r.withBigSegmentsStatus(BigSegmentsStatus.HEALTHY), sameInstance(r1));
+    
+    EvalResult r2 = r.withBigSegmentsStatus(BigSegmentsStatus.STALE);
+    assertThat(r2.getReason(), equalTo(SOME_REASON.withBigSegmentsStatus(BigSegmentsStatus.STALE)));
+    assertThat(r.withBigSegmentsStatus(BigSegmentsStatus.STALE), sameInstance(r2));
+  }
+  
   @Test
   public void withForceReasonTracking() {
     EvalResult r = EvalResult.of(SOME_VALUE, SOME_VARIATION, SOME_REASON);
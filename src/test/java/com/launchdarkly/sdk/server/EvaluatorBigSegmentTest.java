@@ -130,6 +130,31 @@ public class EvaluatorBigSegmentTest extends EvaluatorTestBase {
     assertEquals(BigSegmentsStatus.HEALTHY, result.getReason().getBigSegmentsStatus());
   }
 
+  @Test
+  public void matchedAndUnmatchedWithCompactMembership() {
+    Segment includedSegment = segmentBuilder("segmentkey1").unbounded(true).generation(2).build();
+    Segment excludedSegment = segmentBuilder("segmentkey2").unbounded(true).generation(2).build();
+    BigSegmentStoreWrapper.BigSegmentsQueryResult queryResult = new BigSegmentStoreWrapper.BigSegmentsQueryResult();
+    queryResult.status = BigSegmentsStatus.HEALTHY;
+    BigSegmentRefOrdinals ordinals = new BigSegmentRefOrdinals();
+    ordinals.ordinalFor(makeBigSegmentRef(includedSegment));
+    ordinals.ordinalFor(makeBigSegmentRef(excludedSegment));
+    queryResult.membership = CompactBigSegmentMembership.fromMembership(
+        createMembershipFromSegmentRefs(asList(makeBigSegmentRef(includedSegment)),
+            asList(makeBigSegmentRef(excludedSegment))),
+        ordinals);
+    Evaluator evaluator = evaluatorBuilder().withStoredSegments(includedSegment, excludedSegment)
+        .withBigSegmentQueryResult(testUser.getKey(), queryResult).build();
+
+    EvalResult result1 = evaluator.evaluate(booleanFlagWithClauses("key", clauseMatchingSegment(includedSegment)),
+        testUser, expectNoPrerequisiteEvals());
+    assertEquals(LDValue.of(true), result1.getValue());
+
+    EvalResult result2 = evaluator.evaluate(booleanFlagWithClauses("key", clauseMatchingSegment(excludedSegment)),
+        testUser, expectNoPrerequisiteEvals());
+    assertEquals(LDValue.of(false), result2.getValue());
+  }
+
   @Test
   public void bigSegmentStatusIsReturnedFromProvider() {
     Segment segment = segmentBuilder("segmentkey").unbounded(true).generation(2).build();
@@ -181,9 +206,9 @@ public class EvaluatorBigSegmentTest extends EvaluatorTestBase {
 
     Evaluator.Getters mockGetters = strictMock(Evaluator.Getters.class);
     expect(mockGetters.getSegment(segment1.getKey())).andReturn(segment1);
-    expect(mockGetters.getBigSegments(key1)).andReturn(null).times(1);
+    expect(mockGetters.getBigSegments(key1, makeBigSegmentRef(segment1))).andReturn(null).times(1);
     expect(mockGetters.getSegment(segment2.getKey())).andReturn(segment2);
-    expect(mockGetters.getBigSegments(key2)).andReturn(queryResultForKey2).times(1);
+    expect(mockGetters.getBigSegments(key2, makeBigSegmentRef(segment2))).andReturn(queryResultForKey2).times(1);
     expect(mockGetters.getSegment(segment3.getKey())).andReturn(segment3);
     replay(mockGetters);
 
@@ -192,4 +217,43 @@ public class EvaluatorBigSegmentTest extends EvaluatorTestBase {
     assertEquals(LDValue.of(true), result.getValue());
     assertEquals(BigSegmentsStatus.HEALTHY, result.getReason().getBigSegmentsStatus());
   }
+
+  @Test
+  public void bigSegmentStateIsQueriedAgainIfCompactMembershipDoesNotCoverSegment() {
+    Segment segment1 = segmentBuilder("segmentkey1").unbounded(true).generation(2).build();
+    Segment segment2 = segmentBuilder("segmentkey2").unbounded(true).generation(2).build();
+    FeatureFlag flag = flagBuilder("key")
+        .on(true)
+        .fallthroughVariation(0)
+        .variations(false, true)
+        .rules(
+            ruleBuilder().variation(1).clauses(clauseMatchingSegment(segment1)).build(),
+            ruleBuilder().variation(1).clauses(clauseMatchingSegment(segment2)).build()
+        )
+        .build();
+
+    // The first result was loaded when only segment1 was known, so it can't tell us about segment2
+    BigSegmentRefOrdinals ordinals = new BigSegmentRefOrdinals();
+    ordinals.ordinalFor(makeBigSegmentRef(segment1));
+    BigSegmentStoreWrapper.BigSegmentsQueryResult oldResult = new BigSegmentStoreWrapper.BigSegmentsQueryResult(
+        CompactBigSegmentMembership.fromMembership(createMembershipFromSegmentRefs(null, null), ordinals),
+        BigSegmentsStatus.HEALTHY);
+    ordinals.ordinalFor(makeBigSegmentRef(segment2));
+    BigSegmentStoreWrapper.BigSegmentsQueryResult newResult = new BigSegmentStoreWrapper.BigSegmentsQueryResult(
+        CompactBigSegmentMembership.fromMembership(
+            createMembershipFromSegmentRefs(asList(makeBigSegmentRef(segment2)), null), ordinals),
+        BigSegmentsStatus.HEALTHY);
+
+    Evaluator.Getters mockGetters = strictMock(Evaluator.Getters.class);
+    expect(mockGetters.getSegment(segment1.getKey())).andReturn(segment1);
+    expect(mockGetters.getBigSegments(testUser.getKey(), makeBigSegmentRef(segment1))).andReturn(oldResult).times(1);
+    expect(mockGetters.getSegment(segment2.getKey())).andReturn(segment2);
+    expect(mockGetters.getBigSegments(testUser.getKey(), makeBigSegmentRef(segment2))).andReturn(newResult).times(1);
+    replay(mockGetters);
+
+    Evaluator evaluator = new Evaluator(mockGetters, testLogger);
+    EvalResult result = evaluator.evaluate(flag, testUser, expectNoPrerequisiteEvals());
+    assertEquals(LDValue.of(true), result.getValue());
+    assertEquals(BigSegmentsStatus.HEALTHY, result.getReason().getBigSegmentsStatus());
+  }
 }
@@ -90,7 +90,7 @@ public abstract class EvaluatorTestUtil {
         return segmentMap.get(key);
       }
 
-      public BigSegmentsQueryResult getBigSegments(String key) {
+      public BigSegmentsQueryResult getBigSegments(String key, String segmentRef) {
         if (!bigSegmentMap.containsKey(key)) {
           throw new IllegalStateException("Evaluator unexpectedly tried to query Big Segment: " + key);
         }
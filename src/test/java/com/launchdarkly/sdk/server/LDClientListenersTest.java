@@ -2,7 +2,9 @@ package com.launchdarkly.sdk.server;
 
 import com.launchdarkly.sdk.LDContext;
 import com.launchdarkly.sdk.LDValue;
+import com.launchdarkly.sdk.server.DataModel.FeatureFlag;
 import com.launchdarkly.sdk.server.TestComponents.ContextCapturingFactory;
+import com.launchdarkly.sdk.server.integrations.InMemoryNotifyingPersistentDataStore;
 import com.launchdarkly.sdk.server.integrations.MockPersistentDataStore;
 import com.launchdarkly.sdk.server.integrations.TestData;
 import com.launchdarkly.sdk.server.interfaces.BigSegmentStoreStatusProvider;
@@ -15,6 +17,8 @@ import com.launchdarkly.sdk.server.subsystems.BigSegmentStore;
 import com.launchdarkly.sdk.server.subsystems.BigSegmentStoreTypes;
 import com.launchdarkly.sdk.server.subsystems.ComponentConfigurer;
 import com.launchdarkly.sdk.server.subsystems.DataStore;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.SerializedItemDescriptor;
 import com.launchdarkly.sdk.server.subsystems.PersistentDataStore;
 
 import org.easymock.EasyMockSupport;
@@ -27,6 +31,8 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import static com.launchdarkly.sdk.server.DataModel.FEATURES;
+import static com.launchdarkly.sdk.server.ModelBuilders.flagBuilder;
 import static com.launchdarkly.sdk.server.TestComponents.specificComponent;
 import static com.launchdarkly.testhelpers.ConcurrentHelpers.assertNoMoreValues;
 import static com.launchdarkly.testhelpers.ConcurrentHelpers.awaitValue;
@@ -96,6 +102,39 @@ public class LDClientListenersTest extends BaseTest {
     }
   }
 
+  @Test
+  public void clientSendsFlagChangeEventsForChangesReportedByPersistentStore() throws Exception {
+    String flagKey = "flagkey";
+    InMemoryNotifyingPersistentDataStore.Database db = new InMemoryNotifyingPersistentDataStore.Database();
+    FeatureFlag flag = flagBuilder(flagKey).version(1).on(true).build();
+    db.forceSet(FEATURES, flagKey, serializedFlag(flag));
+    LDConfig config = baseConfig()
+        .dataSource(Components.externalUpdatesOnly())
+        .dataStore(Components.persistentDataStore(
+            TestComponents.<PersistentDataStore>specificComponent(new InMemoryNotifyingPersistentDataStore(db))
+            ).cacheForever())
+        .events(Components.noEvents())
+        .build();
+
+    try (LDClient client = new LDClient(SDK_KEY, config)) {
+      BlockingQueue<FlagChangeEvent> eventSink = new LinkedBlockingQueue<>();
+      client.getFlagTracker().addFlagChangeListener(eventSink::add);
+
+      // some other process, such as the Relay Proxy, updates the flag
+      db.forceSet(FEATURES, flagKey, serializedFlag(flagBuilder(flagKey).version(2).on(false).build()));
+      db.notifyItemChanged(FEATURES, flagKey);
+
+      FlagChangeEvent event = awaitValue(eventSink, 1, TimeUnit.SECONDS);
+      assertThat(event.getKey(), equalTo(flagKey));
+      assertNoMoreValues(eventSink, 100, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private static SerializedItemDescriptor serializedFlag(FeatureFlag flag) {
+    return new SerializedItemDescriptor(flag.getVersion(), false,
+        FEATURES.serialize(new ItemDescriptor(flag.getVersion(), flag)));
+  }
+
   @Test
   public void clientSendsFlagValueChangeEvents() throws Exception {
     String flagKey = "important-flag";
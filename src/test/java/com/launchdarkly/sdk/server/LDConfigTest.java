@@ -3,6 +3,7 @@ package com.launchdarkly.sdk.server;
 import com.google.common.collect.ImmutableMap;
 import com.launchdarkly.sdk.server.integrations.ApplicationInfoBuilder;
 import com.launchdarkly.sdk.server.integrations.BigSegmentsConfigurationBuilder;
+import com.launchdarkly.sdk.server.integrations.DataSnapshotBuilder;
 import com.launchdarkly.sdk.server.integrations.HooksConfigurationBuilder;
 import com.launchdarkly.sdk.server.integrations.HttpConfigurationBuilder;
 import com.launchdarkly.sdk.server.integrations.LoggingConfigurationBuilder;
@@ -20,6 +21,7 @@ import com.launchdarkly.sdk.server.subsystems.LoggingConfiguration;
 import org.junit.Test;
 
 import java.net.URI;
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.util.Collections;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -48,6 +50,7 @@ public class LDConfigTest {
     assertNotNull(config.dataStore);
     assertEquals(Components.inMemoryDataStore().getClass(), config.dataStore.getClass());
     assertFalse(config.diagnosticOptOut);
+    assertFalse(config.incrementalInit);
     assertNotNull(config.events);
     assertEquals(Components.sendEvents().getClass(), config.events.getClass());
     assertFalse(config.offline);
@@ -96,6 +99,25 @@ public class LDConfigTest {
     assertFalse(config1.diagnosticOptOut);
   }
 
+  @Test
+  public void incrementalInit() {
+    LDConfig config = new LDConfig.Builder().incrementalInit(true).build();
+    assertTrue(config.incrementalInit);
+
+    LDConfig config1 = new LDConfig.Builder().incrementalInit(true).incrementalInit(false).build();
+    assertFalse(config1.incrementalInit);
+  }
+
+  @Test
+  public void dataSnapshot() {
+    LDConfig config = new LDConfig.Builder().build();
+    assertNull(config.dataSnapshot);
+
+    DataSnapshotBuilder f = Components.dataSnapshot(Paths.get("snapshot"));
+    LDConfig config1 = new LDConfig.Builder().dataSnapshot(f).build();
+    assertSame(f, config1.dataSnapshot);
+  }
+
   @Test
   public void eventProcessorFactory() {
     ComponentConfigurer<EventProcessor> f = specificComponent(null);
@@ -194,6 +216,7 @@ public class LDConfigTest {
   public void fromConfig() {
     BigSegmentsConfigurationBuilder bigSegments = Components.bigSegments(null);
     ComponentConfigurer<DataSource> dataSource = specificComponent(null);
+    DataSnapshotBuilder dataSnapshot = Components.dataSnapshot(Paths.get("snapshot"));
     ComponentConfigurer<EventProcessor> eventProcessor = specificComponent(null);
     Hook mockHook = mock(Hook.class);
     HooksConfigurationBuilder hooksBuilder = Components.hooks().setHooks(Collections.singletonList(mockHook));
@@ -207,8 +230,10 @@ public class LDConfigTest {
       .applicationInfo(applicationInfo)
       .bigSegments(bigSegments)
       .dataSource(dataSource)
+      .dataSnapshot(dataSnapshot)
       .events(eventProcessor)
       .diagnosticOptOut(true)
+      .incrementalInit(true)
       .offline(false) // To keep the data source from being removed in the build.
       .hooks(hooksBuilder)
       .http(http)
@@ -219,10 +244,12 @@ public class LDConfigTest {
 
     assertSame(bigSegments, config2.bigSegments);
     assertSame(dataSource, config2.dataSource);
+    assertSame(dataSnapshot, config2.dataSnapshot);
     assertSame(eventProcessor, config2.events);
     assertSame(http, config2.http);
     assertFalse(config2.offline);
     assertTrue(config2.diagnosticOptOut);
+    assertTrue(config2.incrementalInit);
     assertEquals("test", config2.applicationInfo.getApplicationId());
     assertEquals("version", config2.applicationInfo.getApplicationVersion());
     assertEquals("the-name", config2.wrapperInfo.getWrapperName());
@@ -245,6 +272,7 @@ public class LDConfigTest {
     assertNotNull(config.dataStore);
     assertEquals(Components.inMemoryDataStore().getClass(), config.dataStore.getClass());
     assertFalse(config.diagnosticOptOut);
+    assertFalse(config.incrementalInit);
     assertNotNull(config.events);
     assertEquals(Components.sendEvents().getClass(), config.events.getClass());
     assertFalse(config.offline);
@@ -0,0 +1,147 @@
+package com.launchdarkly.sdk.server;
+
+import com.google.common.collect.Iterables;
+import com.launchdarkly.logging.LDLogger;
+import com.launchdarkly.sdk.server.DataModel.FeatureFlag;
+import com.launchdarkly.sdk.server.DataStoreTestTypes.DataBuilder;
+import com.launchdarkly.sdk.server.DataStoreTestTypes.TestItem;
+import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.CacheStats;
+import com.launchdarkly.sdk.server.subsystems.DataStore;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static com.launchdarkly.sdk.server.DataModel.FEATURES;
+import static com.launchdarkly.sdk.server.DataStoreTestTypes.TEST_ITEMS;
+import static com.launchdarkly.sdk.server.ModelBuilders.flagBuilder;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+@SuppressWarnings("javadoc")
+public class OffHeapDataStoreTest extends DataStoreTestBase {
+  private static final int SMALL_SEGMENT_SIZE = 1024;
+
+  @Override
+  protected DataStore makeStore() {
+    return new OffHeapDataStore(null, 10, SMALL_SEGMENT_SIZE, LDLogger.none());
+  }
+
+  @Test
+  public void parsedItemIsReusedUntilItIsReplaced() {
+    store.init(new DataBuilder().add(TEST_ITEMS, item1).build());
+    ItemDescriptor first = store.get(TEST_ITEMS, item1.key);
+    assertThat(store.get(TEST_ITEMS, item1.key), sameInstance(first));
+
+    TestItem item1v2 = item1.withVersion(item1.version + 1);
+    store.upsert(TEST_ITEMS, item1.key, item1v2.toItemDescriptor());
+    assertThat(store.get(TEST_ITEMS, item1.key), equalTo(item1v2.toItemDescriptor()));
+
+    CacheStats stats = store.getCacheStats();
+    assertThat(stats.getHitCount(), equalTo(1L));
+    assertThat(stats.getMissCount(), equalTo(2L));
+    assertThat(stats.getLoadSuccessCount(), equalTo(2L));
+  }
+
+  @Test
+  public void parsedItemFromReplacedDataIsNotReusedEvenWithSameVersion() {
+    store.init(new DataBuilder().add(TEST_ITEMS, item1).build());
+    store.get(TEST_ITEMS, item1.key);
+
+    TestItem otherItem1 = new TestItem(item1.key, "other", item1.version);
+    store.init(new DataBuilder().add(TEST_ITEMS, otherItem1).build());
+    assertThat(store.get(TEST_ITEMS, item1.key), equalTo(otherItem1.toItemDescriptor()));
+  }
+
+  @Test
+  public void leastRecentlyUsedItemsAreEvictedWhenCacheIsFull() {
+    DataBuilder data = new DataBuilder();
+    for (int i = 0; i < 20; i++) {
+      data.add(TEST_ITEMS, new TestItem("key" + i, "name" + i, 1));
+    }
+    store.init(data.build());
+    for (int i = 0; i < 20; i++) {
+      store.get(TEST_ITEMS, "key" + i);
+    }
+    assertThat(store.getCacheStats().getEvictionCount(), not(equalTo(0L)));
+    assertThat(store.get(TEST_ITEMS, "key0"), equalTo(new TestItem("key0", "name0", 1).toItemDescriptor()));
+  }
+
+  @Test
+  public void cacheCanBeDisabled() throws Exception {
+    try (DataStore s = new OffHeapDataStore(null, 0, SMALL_SEGMENT_SIZE, LDLogger.none())) {
+      s.init(new DataBuilder().add(TEST_ITEMS, item1).build());
+      ItemDescriptor first = s.get(TEST_ITEMS, item1.key);
+      assertThat(s.get(TEST_ITEMS, item1.key), not(sameInstance(first)));
+      assertThat(s.get(TEST_ITEMS, item1.key), equalTo(first));
+      assertThat(s.getCacheStats().getHitCount(), equalTo(0L));
+    }
+  }
+
+  @Test
+  public void itemsCanSpanManySegments() {
+    DataBuilder data = new DataBuilder();
+    for (int i = 0; i < 500; i++) {
+      data.add(TEST_ITEMS, new TestItem("key" + i, "name" + i, 1));
+    }
+    store.init(data.build());
+    TestItem large = new TestItem("large", new String(new char[SMALL_SEGMENT_SIZE * 2]).replace('\0', 'x'), 1);
+    store.upsert(TEST_ITEMS, large.key, large.toItemDescriptor());
+
+    for (int i = 0; i < 500; i++) {
+      assertThat(store.get(TEST_ITEMS, "key" + i), equalTo(new TestItem("key" + i, "name" + i, 1).toItemDescriptor()));
+    }
+    assertThat(store.get(TEST_ITEMS, large.key), equalTo(large.toItemDescriptor()));
+    assertThat(Iterables.size(store.getAll(TEST_ITEMS).getItems()), equalTo(501));
+  }
+
+  @Test
+  public void replacedItemsAreCompacted() {
+    store.init(new DataBuilder().add(TEST_ITEMS, item1, item2).build());
+    for (int version = item1.version + 1; version < item1.version + 200; version++) {
+      store.upsert(TEST_ITEMS, item1.key, item1.withVersion(version).toItemDescriptor());
+    }
+    OffHeapDataStore s = (OffHeapDataStore)store;
+    assertThat(s.getArenaUsedBytes(), lessThan(SMALL_SEGMENT_SIZE * 3L));
+    assertThat(store.get(TEST_ITEMS, item1.key), equalTo(item1.withVersion(item1.version + 199).toItemDescriptor()));
+    assertThat(store.get(TEST_ITEMS, item2.key), equalTo(item2.toItemDescriptor()));
+  }
+
+  @Test
+  public void flagsAreStoredInBinaryFormat() {
+    FeatureFlag flag = flagBuilder("flag").version(3).on(true).variations(true, false).offVariation(1).build();
+    store.init(new DataBuilder().addAny(FEATURES, flag).build());
+
+    ItemDescriptor result = store.get(FEATURES, flag.getKey());
+    assertThat(result.getVersion(), equalTo(3));
+    assertThat(((FeatureFlag)result.getItem()).getKey(), equalTo(flag.getKey()));
+    assertThat(((FeatureFlag)result.getItem()).isOn(), equalTo(true));
+  }
+
+  @Test
+  public void fileIsDeletedWhenStoreIsClosed() throws Exception {
+    Path dir = Files.createTempDirectory("ld-offheap-test");
+    try {
+      DataStore s = new OffHeapDataStore(dir, 10, SMALL_SEGMENT_SIZE, LDLogger.none());
+      s.init(new DataBuilder().add(TEST_ITEMS, item1).build());
+      assertThat(countFiles(dir), equalTo(1L));
+      s.close();
+      assertThat(countFiles(dir), equalTo(0L));
+    } finally {
+      Files.delete(dir);
+    }
+  }
+
+  private static long countFiles(Path dir) throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.count();
+    }
+  }
+}
@@ -0,0 +1,150 @@
+package com.launchdarkly.sdk.server;
+
+import com.launchdarkly.sdk.server.PersistentDataStoreReadGuard.ReadRejectedException;
+import com.launchdarkly.sdk.server.PersistentDataStoreReadGuard.ReadTimeoutException;
+import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.StoreReadStats;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.fail;
+
+@SuppressWarnings("javadoc")
+public class PersistentDataStoreReadGuardTest extends BaseTest {
+  private static String sleepThenReturn(long millis, String value) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+    return value;
+  }
+
+  @Test
+  public void isEnabledOnlyIfSomeLimitIsSet() {
+    assertThat(PersistentDataStoreReadGuard.isEnabled(null, 0, null), equalTo(false));
+    assertThat(PersistentDataStoreReadGuard.isEnabled(Duration.ZERO, -1, Duration.ofMillis(-1)), equalTo(false));
+    assertThat(PersistentDataStoreReadGuard.isEnabled(Duration.ofMillis(1), 0, null), equalTo(true));
+    assertThat(PersistentDataStoreReadGuard.isEnabled(null, 1, null), equalTo(true));
+    assertThat(PersistentDataStoreReadGuard.isEnabled(null, 0, Duration.ofMillis(1)), equalTo(true));
+  }
+
+  @Test
+  public void readWithinTimeoutReturnsResult() {
+    try (PersistentDataStoreReadGuard guard = new PersistentDataStoreReadGuard(Duration.ofSeconds(1), 0, null)) {
+      assertThat(guard.read(() -> "a"), equalTo("a"));
+      assertThat(guard.getStats(), equalTo(new StoreReadStats(0, 0, 0, 0, 0)));
+    }
+  }
+
+  @Test
+  public void readErrorIsRethrown() {
+    RuntimeException error = new RuntimeException("sorry");
+    try (PersistentDataStoreReadGuard guard = new PersistentDataStoreReadGuard(Duration.ofSeconds(1), 0, null)) {
+      try {
+        guard.read(() -> { throw error; });
+        fail("expected exception");
+      } catch (RuntimeException e) {
+        assertThat(e, equalTo(error));
+      }
+    }
+  }
+
+  @Test
+  public void slowReadTimesOut() {
+    try (PersistentDataStoreReadGuard guard = new PersistentDataStoreReadGuard(Duration.ofMillis(20), 0, null)) {
+      long startTime = System.nanoTime();
+      try {
+        guard.read(() -> sleepThenReturn(1000, "a"));
+        fail("expected exception");
+      } catch (ReadTimeoutException e) {}
+      assertThat(System.nanoTime() - startTime, lessThan(TimeUnit.MILLISECONDS.toNanos(500)));
+      StoreReadStats stats = guard.getStats();
+      assertThat(stats.getTimeoutCount(), equalTo(1L));
+      assertThat(stats.getInFlightCount(), equalTo(1)); // the read itself is still going
+    }
+  }
+
+  @Test
+  public void readIsRejectedWhenConcurrencyLimitIsReached() throws Exception {
+    CountDownLatch blocked = new CountDownLatch(1), release = new CountDownLatch(1);
+    try (PersistentDataStoreReadGuard guard = new PersistentDataStoreReadGuard(null, 1, null)) {
+      Thread t = new Thread(() -> guard.read(() -> {
+        blocked.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {}
+        return "a";
+      }));
+      t.start();
+      blocked.await();
+      try {
+        guard.read(() -> "b");
+        fail("expected exception");
+      } catch (ReadRejectedException e) {}
+      assertThat(guard.getStats().getRejectedCount(), equalTo(1L));
+      assertThat(guard.getStats().getInFlightCount(), equalTo(1));
+
+      release.countDown();
+      t.join();
+      assertThat(guard.read(() -> "c"), equalTo("c"));
+    }
+  }
+
+  @Test
+  public void timedOutReadStillCountsTowardConcurrencyLimit() {
+    try (PersistentDataStoreReadGuard guard = new PersistentDataStoreReadGuard(Duration.ofMillis(10), 1, null)) {
+      try {
+        guard.read(() -> sleepThenReturn(1000, "a"));
+        fail("expected exception");
+      } catch (ReadTimeoutException e) {}
+      try {
+        guard.read(() -> "b");
+        fail("expected exception");
+      } catch (ReadRejectedException e) {}
+    }
+  }
+
+  @Test
+  public void slowReadIsHedged() {
+    AtomicInteger attempts = new AtomicInteger();
+    try (PersistentDataStoreReadGuard guard = new PersistentDataStoreReadGuard(Duration.ofSeconds(1), 0, Duration.ofMillis(10))) {
+      String result = guard.read(() -> attempts.incrementAndGet() == 1 ? sleepThenReturn(2000, "slow") : "fast");
+      assertThat(result, equalTo("fast"));
+      StoreReadStats stats = guard.getStats();
+      assertThat(stats.getHedgedCount(), equalTo(1L));
+      assertThat(stats.getHedgeWinCount(), equalTo(1L));
+      assertThat(stats.getTimeoutCount(), equalTo(0L));
+    }
+  }
+
+  @Test
+  public void fastReadIsNotHedged() {
+    try (PersistentDataStoreReadGuard guard = new PersistentDataStoreReadGuard(null, 0, Duration.ofSeconds(1))) {
+      assertThat(guard.read(() -> "a"), equalTo("a"));
+      assertThat(guard.getStats().getHedgedCount(), equalTo(0L));
+    }
+  }
+
+  @Test
+  public void hedgedReadFailsOnlyIfBothAttemptsFail() {
+    AtomicInteger attempts = new AtomicInteger();
+    try (PersistentDataStoreReadGuard guard = new PersistentDataStoreReadGuard(Duration.ofSeconds(1), 0, Duration.ofMillis(10))) {
+      String result = guard.read(() -> {
+        if (attempts.incrementAndGet() == 1) {
+          sleepThenReturn(50, null);
+          throw new RuntimeException("first attempt failed");
+        }
+        return sleepThenReturn(100, "second");
+      });
+      assertThat(result, equalTo("second"));
+    }
+  }
+}
@@ -0,0 +1,189 @@
+package com.launchdarkly.sdk.server;
+
+import com.launchdarkly.sdk.server.DataStoreTestTypes.DataBuilder;
+import com.launchdarkly.sdk.server.DataStoreTestTypes.TestItem;
+import com.launchdarkly.sdk.server.integrations.InMemoryNotifyingPersistentDataStore;
+import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
+import com.launchdarkly.sdk.server.subsystems.DataStoreUpdateSink;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.launchdarkly.sdk.server.DataStoreTestTypes.TEST_ITEMS;
+import static com.launchdarkly.sdk.server.TestComponents.sharedExecutor;
+import static com.launchdarkly.testhelpers.ConcurrentHelpers.assertNoMoreValues;
+import static com.launchdarkly.testhelpers.ConcurrentHelpers.awaitValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Tests of how PersistentDataStoreWrapper handles notifications from a store that implements
+ * PersistentDataStoreChangeNotifications, using the in-memory reference implementation.
+ */
+@SuppressWarnings("javadoc")
+public class PersistentDataStoreWrapperChangeNotificationsTest extends BaseTest {
+  private static final Duration CACHE_FOREVER = Duration.ofMillis(-1);
+
+  private final InMemoryNotifyingPersistentDataStore.Database db = new InMemoryNotifyingPersistentDataStore.Database();
+  private final BlockingQueue<String> changes = new LinkedBlockingQueue<>();
+  private final List<PersistentDataStoreWrapper> wrappers = new ArrayList<>();
+
+  private PersistentDataStoreWrapper makeWrapper(Duration cacheTtl, BlockingQueue<String> changesOut) {
+    return makeWrapper(new PersistentDataStoreWrapper.Options().cacheTtl(cacheTtl), changesOut);
+  }
+
+  private PersistentDataStoreWrapper makeWrapper(PersistentDataStoreWrapper.Options options,
+      BlockingQueue<String> changesOut) {
+    DataStoreUpdateSink sink = new DataStoreUpdateSink() {
+      @Override
+      public void updateStatus(DataStoreStatusProvider.Status newStatus) {}
+
+      @Override
+      public void itemChanged(DataKind kind, String key, ItemDescriptor item) {
+        changesOut.add(key + ":" + (item == null ? "null" : item.getVersion()));
+      }
+    };
+    PersistentDataStoreWrapper w = new PersistentDataStoreWrapper(new InMemoryNotifyingPersistentDataStore(db),
+        options.initChunkSize(1), sink, sharedExecutor, testLogger);
+    wrappers.add(w);
+    return w;
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    for (PersistentDataStoreWrapper w: wrappers) {
+      w.close();
+    }
+  }
+
+  private void forceSet(TestItem item) {
+    db.forceSet(TEST_ITEMS, item.key, item.toSerializedItemDescriptor());
+  }
+
+  @Test
+  public void changedItemIsReloadedAndReported() throws Exception {
+    PersistentDataStoreWrapper wrapper = makeWrapper(CACHE_FOREVER, changes);
+    TestItem item1 = new TestItem("key1", "name1", 1);
+    wrapper.init(new DataBuilder().add(TEST_ITEMS, item1).build());
+    assertThat(wrapper.get(TEST_ITEMS, item1.key), equalTo(item1.toItemDescriptor()));
+
+    TestItem item1v2 = item1.withVersion(2).withName("name2");
+    forceSet(item1v2);
+    assertThat(wrapper.get(TEST_ITEMS, item1.key), equalTo(item1.toItemDescriptor())); // still cached
+
+    db.notifyItemChanged(TEST_ITEMS, item1.key);
+    assertThat(awaitValue(changes, 1, TimeUnit.SECONDS), equalTo("key1:2"));
+    assertThat(wrapper.get(TEST_ITEMS, item1.key), equalTo(item1v2.toItemDescriptor()));
+    assertThat(wrapper.getAll(TEST_ITEMS).getItems().iterator().next().getValue(), equalTo(item1v2.toItemDescriptor()));
+  }
+
+  @Test
+  public void changedItemIsReloadedAndReportedWithSizeBoundedCache() throws Exception {
+    PersistentDataStoreWrapper wrapper = makeWrapper(
+        new PersistentDataStoreWrapper.Options().cacheTtl(CACHE_FOREVER).cacheMaximumWeight(100000), changes);
+    TestItem item1 = new TestItem("key1", "name1", 1), item2 = new TestItem("key2", "name2", 1);
+    wrapper.init(new DataBuilder().add(TEST_ITEMS, item1, item2).build());
+    assertThat(wrapper.get(TEST_ITEMS, item1.key), equalTo(item1.toItemDescriptor()));
+
+    TestItem item1v2 = item1.withVersion(2).withName("name2");
+    forceSet(item1v2);
+    db.notifyItemChanged(TEST_ITEMS, item1.key);
+    assertThat(awaitValue(changes, 1, TimeUnit.SECONDS), equalTo("key1:2"));
+    assertThat(wrapper.get(TEST_ITEMS, item1.key), equalTo(item1v2.toItemDescriptor()));
+
+    // all cached items are reloaded, using the size-bounded cache's map view to find them
+    forceSet(item2.withVersion(2));
+    db.notifyAllItemsChanged();
+    assertThat(awaitValue(changes, 1, TimeUnit.SECONDS), equalTo("key2:2"));
+    assertNoMoreValues(changes, 100, TimeUnit.MILLISECONDS);
+    assertThat(wrapper.get(TEST_ITEMS, item2.key).getVersion(), equalTo(2));
+  }
+
+  @Test
+  public void notificationOfOwnUpdateIsIgnored() throws Exception {
+    PersistentDataStoreWrapper wrapper = makeWrapper(CACHE_FOREVER, changes);
+    TestItem item1 = new TestItem("key1", "name1", 1);
+    wrapper.init(new DataBuilder().add(TEST_ITEMS, item1).build());
+    wrapper.upsert(TEST_ITEMS, item1.key, item1.withVersion(2).toItemDescriptor());
+
+    // the store has already sent notifications for init and upsert; this one should be the first we see
+    forceSet(item1.withVersion(3));
+    db.notifyItemChanged(TEST_ITEMS, item1.key);
+    assertThat(awaitValue(changes, 1, TimeUnit.SECONDS), equalTo("key1:3"));
+  }
+
+  @Test
+  public void notificationWithoutChangeIsIgnored() throws Exception {
+    PersistentDataStoreWrapper wrapper = makeWrapper(CACHE_FOREVER, changes);
+    TestItem item1 = new TestItem("key1", "name1", 1);
+    wrapper.init(new DataBuilder().add(TEST_ITEMS, item1).build());
+
+    db.notifyItemChanged(TEST_ITEMS, item1.key);
+    db.notifyAllItemsChanged();
+    assertNoMoreValues(changes, 100, TimeUnit.MILLISECONDS);
+  }
+
+  @Test
+  public void updateFromAnotherInstanceIsReported() throws Exception {
+    PersistentDataStoreWrapper wrapper1 = makeWrapper(CACHE_FOREVER, changes);
+    PersistentDataStoreWrapper wrapper2 = makeWrapper(CACHE_FOREVER, new LinkedBlockingQueue<>());
+    TestItem item1 = new TestItem("key1", "name1", 1);
+    wrapper1.init(new DataBuilder().add(TEST_ITEMS, item1).build());
+    assertThat(wrapper1.get(TEST_ITEMS, item1.key), equalTo(item1.toItemDescriptor()));
+
+    TestItem item1v2 = item1.withVersion(2);
+    wrapper2.upsert(TEST_ITEMS, item1.key, item1v2.toItemDescriptor());
+    assertThat(awaitValue(changes, 1, TimeUnit.SECONDS), equalTo("key1:2"));
+    assertThat(wrapper1.get(TEST_ITEMS, item1.key), equalTo(item1v2.toItemDescriptor()));
+  }
+
+  @Test
+  public void allItemsChangedReloadsCachedItems() throws Exception {
+    PersistentDataStoreWrapper wrapper = makeWrapper(CACHE_FOREVER, changes);
+    TestItem item1 = new TestItem("key1", "name1", 1), item2 = new TestItem("key2", "name2", 1);
+    wrapper.init(new DataBuilder().add(TEST_ITEMS, item1, item2).build());
+
+    forceSet(item2.withVersion(2));
+    TestItem item3 = new TestItem("key3", "name3", 1);
+    forceSet(item3);
+    db.notifyAllItemsChanged();
+
+    List<String> received = new ArrayList<>();
+    received.add(awaitValue(changes, 1, TimeUnit.SECONDS));
+    received.add(awaitValue(changes, 1, TimeUnit.SECONDS));
+    received.sort(null);
+    assertThat(received.toString(), equalTo("[key2:2, key3:1]"));
+    assertNoMoreValues(changes, 100, TimeUnit.MILLISECONDS);
+    assertThat(wrapper.get(TEST_ITEMS, item2.key).getVersion(), equalTo(2));
+    assertThat(wrapper.getAll(TEST_ITEMS).getItems().iterator().hasNext(), equalTo(true));
+  }
+
+  @Test
+  public void changeIsReportedWithoutCache() throws Exception {
+    PersistentDataStoreWrapper wrapper = makeWrapper(Duration.ZERO, changes);
+    TestItem item1 = new TestItem("key1", "name1", 1);
+    forceSet(item1);
+    db.notifyItemChanged(TEST_ITEMS, item1.key);
+    assertThat(awaitValue(changes, 1, TimeUnit.SECONDS), equalTo("key1:1"));
+    assertThat(wrapper.get(TEST_ITEMS, item1.key), equalTo(item1.toItemDescriptor()));
+  }
+
+  @Test
+  public void noNotificationsAreProcessedAfterClose() throws Exception {
+    PersistentDataStoreWrapper wrapper = makeWrapper(CACHE_FOREVER, changes);
+    wrappers.remove(wrapper);
+    wrapper.close();
+    forceSet(new TestItem("key1", "name1", 1));
+    db.notifyItemChanged(TEST_ITEMS, "key1");
+    assertNoMoreValues(changes, 100, TimeUnit.MILLISECONDS);
+  }
+}
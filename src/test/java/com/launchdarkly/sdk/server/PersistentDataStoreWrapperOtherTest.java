@@ -1,10 +1,22 @@
 package com.launchdarkly.sdk.server;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ImmutableMap;
+import com.launchdarkly.sdk.server.DataModel.VersionedData;
+import com.launchdarkly.sdk.server.DataStoreTestTypes.DataBuilder;
 import com.launchdarkly.sdk.server.DataStoreTestTypes.TestItem;
 import com.launchdarkly.sdk.server.integrations.MockPersistentDataStore;
+import com.launchdarkly.sdk.server.integrations.PersistentDataStoreBuilder.SerializationFormat;
 import com.launchdarkly.sdk.server.integrations.PersistentDataStoreBuilder.StaleValuesPolicy;
+import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.CacheStats;
+import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.CacheStats.ReadPath;
+import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.WriteQueueStats;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.KeyedItems;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.SerializedItemDescriptor;
 import com.launchdarkly.testhelpers.TypeBehavior;
 
 import org.junit.Test;
@@ -12,12 +24,28 @@ import org.junit.Test;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import static com.launchdarkly.sdk.server.DataModel.FEATURES;
+import static com.launchdarkly.sdk.server.DataModel.SEGMENTS;
 import static com.launchdarkly.sdk.server.DataStoreTestTypes.TEST_ITEMS;
+import static com.launchdarkly.sdk.server.ModelBuilders.clauseMatchingSegment;
+import static com.launchdarkly.sdk.server.ModelBuilders.flagBuilder;
+import static com.launchdarkly.sdk.server.ModelBuilders.prerequisite;
+import static com.launchdarkly.sdk.server.ModelBuilders.ruleBuilder;
+import static com.launchdarkly.sdk.server.ModelBuilders.segmentBuilder;
 import static com.launchdarkly.sdk.server.TestComponents.sharedExecutor;
+import static com.launchdarkly.sdk.server.TestUtil.assertItemEquals;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 /**
  * These tests are for PersistentDataStoreWrapper functionality that doesn't fit into the parameterized
@@ -34,11 +62,24 @@ public class PersistentDataStoreWrapperOtherTest extends BaseTest {
   }
 
   private PersistentDataStoreWrapper makeWrapper(Duration cacheTtl, StaleValuesPolicy policy) {
+    return makeWrapper(cacheTtl, policy, false, 0);
+  }
+
+  private PersistentDataStoreWrapper makeWrapper(Duration cacheTtl, StaleValuesPolicy policy,
+      boolean recordCacheStats, long cacheMaximumWeight) {
+    return makeWrapper(cacheTtl, policy, recordCacheStats, cacheMaximumWeight, 0);
+  }
+
+  private PersistentDataStoreWrapper makeWrapper(Duration cacheTtl, StaleValuesPolicy policy,
+      boolean recordCacheStats, long cacheMaximumWeight, double cacheRefreshAheadRatio) {
     return new PersistentDataStoreWrapper(
         core,
-        cacheTtl,
-        policy,
-        false,
+        new PersistentDataStoreWrapper.Options()
+          .cacheTtl(cacheTtl)
+          .staleValuesPolicy(policy)
+          .recordCacheStats(recordCacheStats)
+          .cacheMaximumWeight(cacheMaximumWeight)
+          .cacheRefreshAheadRatio(cacheRefreshAheadRatio),
         status -> {},
         sharedExecutor,
         testLogger
@@ -112,4 +153,596 @@ public class PersistentDataStoreWrapperOtherTest extends BaseTest {
       assertThat(result2, equalTo(item.toItemDescriptor()));
     }
   }
+
+  @Test
+  public void cacheMissForFlagPrefetchesDependenciesWithGetMany() throws Exception {
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(Duration.ofMinutes(1), StaleValuesPolicy.EVICT)) {
+      forceSetItem(FEATURES, flagBuilder("flag1").version(1)
+          .prerequisites(prerequisite("flag2", 0))
+          .rules(ruleBuilder().clauses(clauseMatchingSegment("segment1")).build())
+          .build());
+      forceSetItem(FEATURES, flagBuilder("flag2").version(1)
+          .rules(ruleBuilder().clauses(clauseMatchingSegment("segment2")).build())
+          .build());
+      forceSetItem(SEGMENTS, segmentBuilder("segment1").version(1).build());
+      forceSetItem(SEGMENTS, segmentBuilder("segment2").version(1).build());
+
+      assertThat(wrapper.get(FEATURES, "flag1").getVersion(), equalTo(1));
+      assertEquals(1, core.getQueryCount);
+      // one query for each kind at the first level of dependencies, and one for segment2 at the second level
+      assertEquals(3, core.getManyQueryCount);
+
+      assertThat(wrapper.get(FEATURES, "flag2").getVersion(), equalTo(1));
+      assertThat(wrapper.get(SEGMENTS, "segment1").getVersion(), equalTo(1));
+      assertThat(wrapper.get(SEGMENTS, "segment2").getVersion(), equalTo(1));
+      assertEquals(1, core.getQueryCount);
+      assertEquals(3, core.getManyQueryCount);
+    }
+  }
+
+  @Test
+  public void missingDependencyIsCachedAsUnknown() throws Exception {
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(Duration.ofMinutes(1), StaleValuesPolicy.EVICT)) {
+      forceSetItem(FEATURES, flagBuilder("flag1").version(1).prerequisites(prerequisite("flag2", 0)).build());
+
+      wrapper.get(FEATURES, "flag1");
+      assertThat(wrapper.get(FEATURES, "flag2"), nullValue());
+      assertEquals(1, core.getQueryCount);
+      assertEquals(1, core.getManyQueryCount);
+    }
+  }
+
+  @Test
+  public void alreadyCachedDependencyIsNotPrefetched() throws Exception {
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(Duration.ofMinutes(1), StaleValuesPolicy.EVICT)) {
+      forceSetItem(FEATURES, flagBuilder("flag1").version(1).prerequisites(prerequisite("flag2", 0)).build());
+      forceSetItem(FEATURES, flagBuilder("flag2").version(1).build());
+
+      wrapper.get(FEATURES, "flag2");
+      wrapper.get(FEATURES, "flag1");
+      assertEquals(2, core.getQueryCount);
+      assertEquals(0, core.getManyQueryCount);
+    }
+  }
+
+  @Test
+  public void prefetchedDependencyDoesNotReplaceNewerCachedItem() throws Exception {
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(Duration.ofMinutes(1), StaleValuesPolicy.EVICT)) {
+      forceSetItem(FEATURES, flagBuilder("flag1").version(1).prerequisites(prerequisite("flag2", 0)).build());
+      forceSetItem(FEATURES, flagBuilder("flag2").version(1).build());
+      ItemDescriptor flag2v2 = new ItemDescriptor(2, flagBuilder("flag2").version(2).build());
+
+      // simulates an update that is received while the prefetch query is in progress
+      core.getManyHook = () -> {
+        core.getManyHook = null;
+        wrapper.upsert(FEATURES, "flag2", flag2v2);
+      };
+      wrapper.get(FEATURES, "flag1");
+      assertEquals(1, core.getManyQueryCount);
+
+      assertThat(wrapper.get(FEATURES, "flag2").getVersion(), equalTo(2));
+      assertEquals(1, core.getQueryCount);
+    }
+  }
+
+  @Test
+  public void dependenciesAreNotPrefetchedIfCacheIsDisabled() throws Exception {
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(Duration.ZERO, StaleValuesPolicy.EVICT)) {
+      forceSetItem(FEATURES, flagBuilder("flag1").version(1).prerequisites(prerequisite("flag2", 0)).build());
+      forceSetItem(FEATURES, flagBuilder("flag2").version(1).build());
+
+      wrapper.get(FEATURES, "flag1");
+      assertEquals(1, core.getQueryCount);
+      assertEquals(0, core.getManyQueryCount);
+    }
+  }
+
+  @Test
+  public void defaultGetManyImplementationGetsEachItem() throws Exception {
+    core.useDefaultGetMany = true;
+    TestItem item1 = new TestItem("key1", 1);
+    TestItem item2 = new TestItem("key2", 1);
+    core.forceSet(TEST_ITEMS, item1);
+    core.forceSet(TEST_ITEMS, item2);
+
+    KeyedItems<SerializedItemDescriptor> result = core.getMany(TEST_ITEMS, ImmutableList.of("key1", "key2", "unknown"));
+    assertThat(ImmutableMap.copyOf(result.getItems()), equalTo(ImmutableMap.of(
+        "key1", item1.toSerializedItemDescriptor(),
+        "key2", item2.toSerializedItemDescriptor())));
+    assertEquals(3, core.getQueryCount);
+  }
+
+  private void forceSetItem(DataKind kind, VersionedData item) {
+    ItemDescriptor itemDesc = new ItemDescriptor(item.getVersion(), item);
+    core.forceSet(kind, item.getKey(), new SerializedItemDescriptor(item.getVersion(), false, kind.serialize(itemDesc)));
+  }
+
+  @Test
+  public void cacheStatsAreReportedByKind() throws Exception {
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(Duration.ofMinutes(1), StaleValuesPolicy.EVICT, true, 0)) {
+      core.forceSet(TEST_ITEMS, new TestItem("key1", 1));
+      wrapper.get(TEST_ITEMS, "key1");
+      wrapper.get(TEST_ITEMS, "key1");
+
+      CacheStats stats = wrapper.getCacheStats().getStatsByKind().get(TEST_ITEMS.getName());
+      assertThat(stats.getHitCount(), equalTo(1L));
+      assertThat(stats.getMissCount(), equalTo(1L));
+      assertThat(stats.getLoadSuccessCount(), equalTo(1L));
+      assertThat(stats.getEvictionCount(), equalTo(0L));
+    }
+  }
+
+  @Test
+  public void sizeBoundedCacheEvictsItems() throws Exception {
+    // each of these items has an estimated weight of a few hundred bytes, so only a few will fit
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(Duration.ofMillis(-1), StaleValuesPolicy.EVICT, true, 1000)) {
+      for (int i = 0; i < 10; i++) {
+        core.forceSet(TEST_ITEMS, new TestItem("key" + i, 1));
+      }
+      for (int i = 0; i < 10; i++) {
+        assertThat(wrapper.get(TEST_ITEMS, "key" + i), equalTo(new TestItem("key" + i, 1).toItemDescriptor()));
+      }
+      assertEquals(10, core.getQueryCount);
+
+      CacheStats stats = wrapper.getCacheStats();
+      assertThat(stats.getEvictionCount(), greaterThan(0L));
+      assertThat(stats.getStatsByKind().get(TEST_ITEMS.getName()).getEvictionCount(), equalTo(stats.getEvictionCount()));
+
+      // the most recent item was not admitted to the cache, since it has not been used more often than
+      // the ones already there, so it is reloaded from the store
+      wrapper.get(TEST_ITEMS, "key9");
+      assertEquals(11, core.getQueryCount);
+    }
+  }
+
+  @Test
+  public void sizeBoundedCacheDoesNotCacheAllItems() throws Exception {
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(Duration.ofMillis(-1), StaleValuesPolicy.EVICT, false, 100000)) {
+      core.forceSet(TEST_ITEMS, new TestItem("key1", 1));
+      assertThat(Iterables.size(wrapper.getAll(TEST_ITEMS).getItems()), equalTo(1));
+
+      core.forceSet(TEST_ITEMS, new TestItem("key2", 1));
+      assertThat(Iterables.size(wrapper.getAll(TEST_ITEMS).getItems()), equalTo(2));
+    }
+  }
+
+  @Test
+  public void refreshAheadInRefreshModeReturnsCachedValueWhileReloading() throws Exception {
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(Duration.ofMillis(20), StaleValuesPolicy.REFRESH, false, 0, 1.0)) {
+      TestItem itemv1 = new TestItem("key", 1);
+      TestItem itemv2 = new TestItem(itemv1.key, 2);
+      core.forceSet(TEST_ITEMS, itemv1);
+      assertThat(wrapper.get(TEST_ITEMS, itemv1.key), equalTo(itemv1.toItemDescriptor()));
+
+      core.forceSet(TEST_ITEMS, itemv2);
+      Thread.sleep(50);
+
+      // the item is due to be refreshed, but we get the cached value while that happens in the background
+      assertThat(wrapper.get(TEST_ITEMS, itemv1.key), equalTo(itemv1.toItemDescriptor()));
+
+      long deadline = System.currentTimeMillis() + 5000;
+      while (!wrapper.get(TEST_ITEMS, itemv1.key).equals(itemv2.toItemDescriptor())) {
+        assertThat("timed out waiting for refresh", System.currentTimeMillis(), lessThanOrEqualTo(deadline));
+        Thread.sleep(10);
+      }
+    }
+  }
+
+  @Test
+  public void refreshAheadSpreadsRefreshesOfInitializedItemsOverTtl() throws Exception {
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(Duration.ofSeconds(2), StaleValuesPolicy.EVICT, false, 0, 1.0)) {
+      TestItem[] items = new TestItem[100];
+      for (int i = 0; i < items.length; i++) {
+        items[i] = new TestItem("key" + i, 1);
+      }
+      wrapper.init(new DataBuilder().add(TEST_ITEMS, items).build());
+
+      // halfway through the TTL, about half of the items should be due for a refresh; reading them
+      // returns the cached values either way
+      Thread.sleep(1000);
+      for (TestItem item: items) {
+        assertThat(wrapper.get(TEST_ITEMS, item.key), equalTo(item.toItemDescriptor()));
+      }
+
+      long deadline = System.currentTimeMillis() + 5000;
+      while (core.getQueryCount == 0) {
+        assertThat("timed out waiting for refresh", System.currentTimeMillis(), lessThanOrEqualTo(deadline));
+        Thread.sleep(10);
+      }
+      Thread.sleep(100);
+      assertThat(core.getQueryCount, lessThan(items.length));
+    }
+  }
+
+  @Test
+  public void getAllPopulatesItemCache() throws Exception {
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(Duration.ofMinutes(1), StaleValuesPolicy.EVICT, true, 0)) {
+      TestItem item1 = new TestItem("key1", 1);
+      TestItem item2 = new TestItem("key2", 1);
+      core.forceSet(TEST_ITEMS, item1);
+      core.forceSet(TEST_ITEMS, item2);
+      assertThat(Iterables.size(wrapper.getAll(TEST_ITEMS).getItems()), equalTo(2));
+
+      assertThat(wrapper.get(TEST_ITEMS, item1.key), equalTo(item1.toItemDescriptor()));
+      assertThat(wrapper.get(TEST_ITEMS, item2.key), equalTo(item2.toItemDescriptor()));
+      assertEquals(0, core.getQueryCount);
+
+      CacheStats stats = wrapper.getCacheStats();
+      assertThat(stats.getReadCount(ReadPath.ITEM_CACHE), equalTo(2L));
+      assertThat(stats.getReadCount(ReadPath.STORE), equalTo(0L));
+    }
+  }
+
+  @Test
+  public void getAllDoesNotReplaceNewerCachedItem() throws Exception {
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(Duration.ofMinutes(1), StaleValuesPolicy.EVICT, true, 0)) {
+      TestItem itemv1 = new TestItem("key1", 1);
+      TestItem itemv2 = itemv1.withVersion(2);
+      core.forceSet(TEST_ITEMS, itemv2);
+      assertThat(wrapper.get(TEST_ITEMS, itemv1.key), equalTo(itemv2.toItemDescriptor()));
+
+      core.forceSet(TEST_ITEMS, itemv1); // simulates a getAll query that saw older data
+      wrapper.getAll(TEST_ITEMS);
+
+      assertThat(wrapper.get(TEST_ITEMS, itemv1.key), equalTo(itemv2.toItemDescriptor()));
+    }
+  }
+
+  @Test
+  public void getAllWithSizeBoundedCacheKeepsCachedItems() throws Exception {
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(Duration.ofMinutes(1), StaleValuesPolicy.EVICT, true, 100000)) {
+      TestItem item1v1 = new TestItem("key1", 1);
+      TestItem item1v2 = item1v1.withVersion(2);
+      TestItem item2 = new TestItem("key2", 1);
+      core.forceSet(TEST_ITEMS, item1v2);
+      assertThat(wrapper.get(TEST_ITEMS, item1v1.key), equalTo(item1v2.toItemDescriptor()));
+
+      core.forceSet(TEST_ITEMS, item1v1); // simulates a getAll query that saw older data
+      core.forceSet(TEST_ITEMS, item2);
+      assertThat(Iterables.size(wrapper.getAll(TEST_ITEMS).getItems()), equalTo(2));
+
+      assertThat(wrapper.get(TEST_ITEMS, item1v1.key), equalTo(item1v2.toItemDescriptor()));
+      assertThat(wrapper.get(TEST_ITEMS, item2.key), equalTo(item2.toItemDescriptor()));
+      assertEquals(2, core.getQueryCount);
+    }
+  }
+
+  @Test
+  public void itemCacheMissIsAnsweredFromAllItemsCache() throws Exception {
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(Duration.ofMinutes(1), StaleValuesPolicy.EVICT, true, 0)) {
+      core.forceSet(TEST_ITEMS, new TestItem("key1", 1));
+      wrapper.getAll(TEST_ITEMS);
+
+      // we know that this item doesn't exist, because we have a current copy of all the items
+      assertThat(wrapper.get(TEST_ITEMS, "key2"), nullValue());
+      assertEquals(0, core.getQueryCount);
+
+      CacheStats stats = wrapper.getCacheStats();
+      assertThat(stats.getReadCount(ReadPath.ALL_ITEMS_CACHE), equalTo(1L));
+      assertThat(stats.getReadCount(ReadPath.STORE), equalTo(0L));
+    }
+  }
+
+  @Test
+  public void itemCacheMissIsAnsweredFromStoreIfAllItemsAreNotCached() throws Exception {
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(Duration.ofMinutes(1), StaleValuesPolicy.EVICT, true, 0)) {
+      TestItem item = new TestItem("key1", 1);
+      core.forceSet(TEST_ITEMS, item);
+      assertThat(wrapper.get(TEST_ITEMS, item.key), equalTo(item.toItemDescriptor()));
+      assertThat(wrapper.get(TEST_ITEMS, item.key), equalTo(item.toItemDescriptor()));
+      assertEquals(1, core.getQueryCount);
+
+      CacheStats stats = wrapper.getCacheStats();
+      assertThat(stats.getReadCount(ReadPath.ITEM_CACHE), equalTo(1L));
+      assertThat(stats.getReadCount(ReadPath.ALL_ITEMS_CACHE), equalTo(0L));
+      assertThat(stats.getReadCount(ReadPath.STORE), equalTo(1L));
+    }
+  }
+
+  @Test
+  public void largeItemsAreCompressedIfCompressionIsEnabled() throws Exception {
+    String[] targetKeys = new String[1000];
+    for (int i = 0; i < targetKeys.length; i++) {
+      targetKeys[i] = "user" + i;
+    }
+    DataModel.FeatureFlag largeFlag = flagBuilder("large").version(1).addTarget(0, targetKeys).build();
+    DataModel.FeatureFlag smallFlag = flagBuilder("small").version(1).build();
+    try (PersistentDataStoreWrapper wrapper = new PersistentDataStoreWrapper(core,
+        new PersistentDataStoreWrapper.Options().cacheTtl(Duration.ZERO).compressionMinimumLength(1000), status -> {}, sharedExecutor, testLogger)) {
+      wrapper.upsert(FEATURES, "large", new ItemDescriptor(1, largeFlag));
+      wrapper.upsert(FEATURES, "small", new ItemDescriptor(1, smallFlag));
+
+      String storedLarge = core.data.get(FEATURES).get("large").getSerializedItem();
+      assertThat(storedLarge.startsWith(SerializedItemCompression.COMPRESSED_PREFIX), equalTo(true));
+      assertThat(storedLarge.length(), lessThan(FEATURES.serialize(new ItemDescriptor(1, largeFlag)).length()));
+      assertThat(core.data.get(FEATURES).get("small").getSerializedItem(),
+          equalTo(FEATURES.serialize(new ItemDescriptor(1, smallFlag))));
+
+      assertItemEquals(largeFlag, wrapper.get(FEATURES, "large"));
+      assertItemEquals(smallFlag, wrapper.get(FEATURES, "small"));
+    }
+  }
+
+  @Test
+  public void compressedItemsCanBeReadIfCompressionIsNotEnabled() throws Exception {
+    DataModel.FeatureFlag flag = flagBuilder("flag").version(1).build();
+    String compressed = SerializedItemCompression.compress(FEATURES.serialize(new ItemDescriptor(1, flag)));
+    core.forceSet(FEATURES, "flag", new SerializedItemDescriptor(1, false, compressed));
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(Duration.ZERO, StaleValuesPolicy.EVICT)) {
+      assertItemEquals(flag, wrapper.get(FEATURES, "flag"));
+    }
+  }
+
+  @Test
+  public void itemsAreStoredInBinaryFormatIfConfigured() throws Exception {
+    DataModel.FeatureFlag flag = flagBuilder("flag").version(1).build();
+    try (PersistentDataStoreWrapper wrapper = new PersistentDataStoreWrapper(core,
+        new PersistentDataStoreWrapper.Options().cacheTtl(Duration.ZERO).serializationFormat(SerializationFormat.BINARY),
+        status -> {}, sharedExecutor, testLogger)) {
+      wrapper.upsert(FEATURES, "flag", new ItemDescriptor(1, flag));
+      wrapper.upsert(FEATURES, "deleted", ItemDescriptor.deletedItem(2));
+
+      assertThat(BinaryItemFormat.isEncoded(core.data.get(FEATURES).get("flag").getSerializedItem()), equalTo(true));
+      assertItemEquals(flag, wrapper.get(FEATURES, "flag"));
+      assertThat(wrapper.get(FEATURES, "deleted"), equalTo(ItemDescriptor.deletedItem(2)));
+    }
+  }
+
+  @Test
+  public void binaryItemsCanBeReadIfJsonFormatIsConfigured() throws Exception {
+    DataModel.FeatureFlag flag = flagBuilder("flag").version(1).build();
+    core.forceSet(FEATURES, "flag", new SerializedItemDescriptor(1, false, BinaryItemFormat.encode(flag)));
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(Duration.ZERO, StaleValuesPolicy.EVICT)) {
+      assertItemEquals(flag, wrapper.get(FEATURES, "flag"));
+    }
+  }
+
+  private PersistentDataStoreWrapper makeWriteBehindWrapper(Duration cacheTtl, Duration flushInterval) {
+    return new PersistentDataStoreWrapper(core,
+        new PersistentDataStoreWrapper.Options().cacheTtl(cacheTtl).writeBehindInterval(flushInterval), status -> {}, sharedExecutor, testLogger);
+  }
+
+  @Test
+  public void writeBehindUpsertDoesNotWriteToStoreUntilFlushed() throws Exception {
+    TestItem item = new TestItem("key", 1);
+    PersistentDataStoreWrapper wrapper = makeWriteBehindWrapper(Duration.ZERO, Duration.ofHours(1));
+    try {
+      assertThat(wrapper.upsert(TEST_ITEMS, item.key, item.toItemDescriptor()), equalTo(true));
+      assertThat(core.data.get(TEST_ITEMS), nullValue());
+
+      // Even with no cache, reads see the queued update
+      assertThat(wrapper.get(TEST_ITEMS, item.key), equalTo(item.toItemDescriptor()));
+      assertThat(wrapper.getAll(TEST_ITEMS).getItems(), contains(item.toKeyedItemDescriptor()));
+      assertThat(wrapper.getWriteQueueStats().getQueueDepth(), equalTo(1));
+    } finally {
+      wrapper.close();
+    }
+    assertThat(core.data.get(TEST_ITEMS).get(item.key), equalTo(item.toSerializedItemDescriptor()));
+  }
+
+  @Test
+  public void writeBehindCoalescesUpdatesOfSameItem() throws Exception {
+    TestItem item = new TestItem("key", 1);
+    PersistentDataStoreWrapper wrapper = makeWriteBehindWrapper(Duration.ofMinutes(1), Duration.ofHours(1));
+    try {
+      assertThat(wrapper.upsert(TEST_ITEMS, item.key, item.toItemDescriptor()), equalTo(true));
+      assertThat(wrapper.upsert(TEST_ITEMS, item.key, item.withVersion(3).toItemDescriptor()), equalTo(true));
+      assertThat(wrapper.upsert(TEST_ITEMS, item.key, item.withVersion(2).toItemDescriptor()), equalTo(false));
+      assertThat(wrapper.get(TEST_ITEMS, item.key), equalTo(item.withVersion(3).toItemDescriptor()));
+
+      WriteQueueStats stats = wrapper.getWriteQueueStats();
+      assertThat(stats.getQueueDepth(), equalTo(1));
+      assertThat(stats.getCoalescedCount(), equalTo(1L));
+    } finally {
+      wrapper.close();
+    }
+    assertThat(core.data.get(TEST_ITEMS).get(item.key), equalTo(item.withVersion(3).toSerializedItemDescriptor()));
+    assertThat(wrapper.getWriteQueueStats().getWriteCount(), equalTo(1L));
+  }
+
+  @Test
+  public void writeBehindUpsertWorksWithSizeBoundedCache() throws Exception {
+    TestItem item = new TestItem("key", 1);
+    PersistentDataStoreWrapper wrapper = new PersistentDataStoreWrapper(core,
+        new PersistentDataStoreWrapper.Options().cacheTtl(Duration.ofMinutes(1)).cacheMaximumWeight(100000)
+          .writeBehindInterval(Duration.ofHours(1)),
+        status -> {}, sharedExecutor, testLogger);
+    try {
+      core.forceSet(TEST_ITEMS, item);
+      assertThat(wrapper.get(TEST_ITEMS, item.key), equalTo(item.toItemDescriptor()));
+
+      // the cached item is used to reject an older update, even though it is not in the queue
+      assertThat(wrapper.upsert(TEST_ITEMS, item.key, item.toItemDescriptor()), equalTo(false));
+      assertThat(wrapper.upsert(TEST_ITEMS, item.key, item.withVersion(2).toItemDescriptor()), equalTo(true));
+      assertThat(wrapper.get(TEST_ITEMS, item.key), equalTo(item.withVersion(2).toItemDescriptor()));
+      assertThat(wrapper.getWriteQueueStats().getQueueDepth(), equalTo(1));
+    } finally {
+      wrapper.close();
+    }
+    assertThat(core.data.get(TEST_ITEMS).get(item.key), equalTo(item.withVersion(2).toSerializedItemDescriptor()));
+  }
+
+  @Test
+  public void writeBehindWorkerWritesUpdatesInBackground() throws Exception {
+    TestItem item = new TestItem("key", 1);
+    try (PersistentDataStoreWrapper wrapper = makeWriteBehindWrapper(Duration.ofMinutes(1), Duration.ofMillis(10))) {
+      wrapper.upsert(TEST_ITEMS, item.key, item.toItemDescriptor());
+      long deadline = System.currentTimeMillis() + 1000;
+      while (wrapper.getWriteQueueStats().getQueueDepth() > 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(5);
+      }
+      assertThat(wrapper.getWriteQueueStats().getQueueDepth(), equalTo(0));
+      assertThat(core.data.get(TEST_ITEMS).get(item.key), equalTo(item.toSerializedItemDescriptor()));
+    }
+  }
+
+  @Test
+  public void writeBehindInitDiscardsQueuedUpdates() throws Exception {
+    TestItem item1 = new TestItem("key1", 1);
+    TestItem item2 = new TestItem("key2", 1);
+    PersistentDataStoreWrapper wrapper = makeWriteBehindWrapper(Duration.ofMinutes(1), Duration.ofHours(1));
+    try {
+      wrapper.upsert(TEST_ITEMS, item1.key, item1.toItemDescriptor());
+      FullDataSet<ItemDescriptor> allData = new DataBuilder().add(TEST_ITEMS, item2).build();
+      wrapper.init(allData);
+      assertThat(wrapper.getWriteQueueStats().getQueueDepth(), equalTo(0));
+    } finally {
+      wrapper.close();
+    }
+    assertThat(core.data.get(TEST_ITEMS).containsKey(item1.key), equalTo(false));
+    assertThat(core.data.get(TEST_ITEMS).get(item2.key), equalTo(item2.toSerializedItemDescriptor()));
+  }
+
+  @Test
+  public void writeQueueStatsAreNullIfWriteBehindIsNotEnabled() throws Exception {
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(Duration.ofMinutes(1), StaleValuesPolicy.EVICT)) {
+      assertThat(wrapper.getWriteQueueStats(), nullValue());
+    }
+  }
+
+  private PersistentDataStoreWrapper makeBulkRefreshWrapper(Duration cacheTtl, Duration refreshInterval) {
+    return new PersistentDataStoreWrapper(core,
+        new PersistentDataStoreWrapper.Options().cacheTtl(cacheTtl).initChunkSize(1).bulkRefreshInterval(refreshInterval),
+        status -> {}, sharedExecutor, testLogger);
+  }
+
+  @Test
+  public void bulkRefreshLoadsWholeKindOnFirstRead() throws Exception {
+    TestItem item1 = new TestItem("key1", 1);
+    TestItem item2 = new TestItem("key2", 1);
+    core.forceSet(TEST_ITEMS, item1);
+    core.forceSet(TEST_ITEMS, item2);
+    try (PersistentDataStoreWrapper wrapper = makeBulkRefreshWrapper(Duration.ofMinutes(1), Duration.ofHours(1))) {
+      assertThat(wrapper.get(TEST_ITEMS, item1.key), equalTo(item1.toItemDescriptor()));
+      assertThat(wrapper.get(TEST_ITEMS, item2.key), equalTo(item2.toItemDescriptor()));
+      assertThat(wrapper.get(TEST_ITEMS, "unknown-key"), nullValue());
+      assertThat(core.getQueryCount, equalTo(0));
+    }
+  }
+
+  @Test
+  public void cachedItemsDoNotExpireInBulkRefreshMode() throws Exception {
+    TestItem item = new TestItem("key", 1);
+    core.forceSet(TEST_ITEMS, item);
+    try (PersistentDataStoreWrapper wrapper = makeBulkRefreshWrapper(Duration.ofMillis(1), Duration.ofHours(1))) {
+      assertThat(wrapper.get(TEST_ITEMS, item.key), equalTo(item.toItemDescriptor()));
+      core.forceSet(TEST_ITEMS, item.withVersion(2));
+      Thread.sleep(10);
+      assertThat(wrapper.get(TEST_ITEMS, item.key), equalTo(item.toItemDescriptor()));
+    }
+  }
+
+  @Test
+  public void bulkRefreshReloadsDataInBackground() throws Exception {
+    TestItem item1 = new TestItem("key1", 1);
+    TestItem item2 = new TestItem("key2", 1);
+    core.forceSet(TEST_ITEMS, item1);
+    try (PersistentDataStoreWrapper wrapper = makeBulkRefreshWrapper(Duration.ofMinutes(1), Duration.ofMillis(10))) {
+      assertThat(wrapper.get(TEST_ITEMS, item1.key), equalTo(item1.toItemDescriptor()));
+      core.forceSet(TEST_ITEMS, item1.withVersion(2));
+      core.forceSet(TEST_ITEMS, item2);
+
+      long deadline = System.currentTimeMillis() + 1000;
+      while (wrapper.get(TEST_ITEMS, item1.key).getVersion() == 1 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(5);
+      }
+      assertThat(wrapper.get(TEST_ITEMS, item1.key), equalTo(item1.withVersion(2).toItemDescriptor()));
+      assertThat(wrapper.get(TEST_ITEMS, item2.key), equalTo(item2.toItemDescriptor()));
+      assertThat(Iterables.size(wrapper.getAll(TEST_ITEMS).getItems()), equalTo(2));
+      assertThat(core.getQueryCount, equalTo(0));
+    }
+  }
+
+  @Test
+  public void bulkRefreshDoesNotBlockOrOverwriteUpdates() throws Exception {
+    TestItem item1 = new TestItem("key1", 1);
+    TestItem item2 = new TestItem("key2", 1);
+    core.forceSet(TEST_ITEMS, item1);
+    core.forceSet(TEST_ITEMS, item2);
+    try (PersistentDataStoreWrapper wrapper = makeBulkRefreshWrapper(Duration.ofMinutes(1), Duration.ofMillis(10))) {
+      assertThat(wrapper.get(TEST_ITEMS, item1.key), equalTo(item1.toItemDescriptor()));
+      core.forceSet(TEST_ITEMS, item1.withVersion(2));
+      core.forceSet(TEST_ITEMS, item2.withVersion(2));
+
+      CountDownLatch refreshStarted = new CountDownLatch(1), upsertDone = new CountDownLatch(1);
+      core.getAllHook = () -> {
+        core.getAllHook = null;
+        refreshStarted.countDown();
+        try {
+          upsertDone.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {}
+      };
+      assertThat(refreshStarted.await(5, TimeUnit.SECONDS), equalTo(true));
+
+      // the refresher has read version 2 of item1 from the store, but this update is newer than that
+      long startTime = System.nanoTime();
+      wrapper.upsert(TEST_ITEMS, item1.key, item1.withVersion(3).toItemDescriptor());
+      assertThat(System.nanoTime() - startTime, lessThan(Duration.ofSeconds(1).toNanos()));
+      upsertDone.countDown();
+
+      long deadline = System.currentTimeMillis() + 1000;
+      while (wrapper.get(TEST_ITEMS, item2.key).getVersion() == 1 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(5);
+      }
+      assertThat(wrapper.get(TEST_ITEMS, item2.key), equalTo(item2.withVersion(2).toItemDescriptor()));
+      assertThat(wrapper.get(TEST_ITEMS, item1.key), equalTo(item1.withVersion(3).toItemDescriptor()));
+      assertThat(ImmutableMap.copyOf(wrapper.getAll(TEST_ITEMS).getItems()).get(item1.key),
+          equalTo(item1.withVersion(3).toItemDescriptor()));
+    }
+  }
+
+  private PersistentDataStoreWrapper makeWrapperWithReadTimeout(Duration cacheTtl, StaleValuesPolicy policy,
+      Duration readTimeout) {
+    return new PersistentDataStoreWrapper(core,
+        new PersistentDataStoreWrapper.Options().cacheTtl(cacheTtl).staleValuesPolicy(policy).initChunkSize(1)
+          .readTimeout(readTimeout),
+        status -> {}, sharedExecutor, testLogger);
+  }
+
+  private void makeStoreReadsSlow() {
+    core.getHook = () -> {
+      try {
+        Thread.sleep(1000);
+      } catch (InterruptedException e) {}
+    };
+  }
+
+  @Test
+  public void readTimeoutUsesStaleCachedValueIfAvailable() throws Exception {
+    TestItem item = new TestItem("key", 1);
+    core.forceSet(TEST_ITEMS, item);
+    try (PersistentDataStoreWrapper wrapper = makeWrapperWithReadTimeout(Duration.ofMillis(20), StaleValuesPolicy.REFRESH,
+        Duration.ofMillis(50))) {
+      assertThat(wrapper.get(TEST_ITEMS, item.key), equalTo(item.toItemDescriptor()));
+      makeStoreReadsSlow();
+      Thread.sleep(30);
+
+      long startTime = System.nanoTime();
+      assertThat(wrapper.get(TEST_ITEMS, item.key), equalTo(item.toItemDescriptor()));
+      assertThat(System.nanoTime() - startTime, lessThan(Duration.ofMillis(500).toNanos()));
+      assertThat(wrapper.getStoreReadStats().getTimeoutCount(), equalTo(1L));
+    }
+  }
+
+  @Test
+  public void readTimeoutThrowsExceptionIfNoCachedValue() throws Exception {
+    TestItem item = new TestItem("key", 1);
+    core.forceSet(TEST_ITEMS, item);
+    makeStoreReadsSlow();
+    try (PersistentDataStoreWrapper wrapper = makeWrapperWithReadTimeout(Duration.ZERO, StaleValuesPolicy.EVICT,
+        Duration.ofMillis(20))) {
+      try {
+        wrapper.get(TEST_ITEMS, item.key);
+        fail("expected exception");
+      } catch (PersistentDataStoreReadGuard.ReadTimeoutException e) {}
+      assertThat(wrapper.getStoreReadStats().getTimeoutCount(), equalTo(1L));
+    }
+  }
+
+  @Test
+  public void storeReadStatsAreNullIfNoLimitsAreSet() throws Exception {
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(Duration.ofMinutes(1), StaleValuesPolicy.EVICT)) {
+      assertThat(wrapper.getStoreReadStats(), nullValue());
+    }
+  }
 }
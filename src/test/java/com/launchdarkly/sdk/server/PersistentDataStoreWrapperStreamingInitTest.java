@@ -0,0 +1,303 @@
+package com.launchdarkly.sdk.server;
+
+import com.launchdarkly.sdk.server.DataStoreTestTypes.DataBuilder;
+import com.launchdarkly.sdk.server.DataStoreTestTypes.TestItem;
+import com.launchdarkly.sdk.server.integrations.MockPersistentDataStore;
+import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.InitProgress;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.KeyedItems;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.SerializedItemDescriptor;
+import com.launchdarkly.sdk.server.subsystems.PersistentDataStore;
+import com.launchdarkly.sdk.server.subsystems.PersistentDataStoreStreamingInit;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static com.launchdarkly.sdk.server.DataStoreTestTypes.TEST_ITEMS;
+import static com.launchdarkly.sdk.server.TestComponents.sharedExecutor;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of how PersistentDataStoreWrapper uses PersistentDataStoreStreamingInit, with a simple in-memory
+ * store that can simulate the latency of each request.
+ */
+@SuppressWarnings("javadoc")
+public class PersistentDataStoreWrapperStreamingInitTest extends BaseTest {
+  private final StreamingInitStore core = new StreamingInitStore();
+
+  private PersistentDataStoreWrapper makeWrapper(PersistentDataStore core, int chunkSize, int parallelism) {
+    return new PersistentDataStoreWrapper(core, new PersistentDataStoreWrapper.Options()
+        .cacheTtl(Duration.ZERO).initChunkSize(chunkSize).initParallelism(parallelism), status -> {}, sharedExecutor, testLogger);
+  }
+
+  private static FullDataSet<ItemDescriptor> makeItems(int count) {
+    TestItem[] items = new TestItem[count];
+    for (int i = 0; i < count; i++) {
+      items[i] = new TestItem("key" + i, 1);
+    }
+    return new DataBuilder().add(TEST_ITEMS, items).build();
+  }
+
+  @Test
+  public void dataIsWrittenInChunksOfConfiguredSize() throws Exception {
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(core, 10, 1)) {
+      wrapper.init(makeItems(25));
+
+      assertThat(core.chunkSizes, contains(10, 10, 5));
+      assertThat(core.commitCount.get(), equalTo(1));
+      assertThat(core.initCount.get(), equalTo(0));
+      assertThat(core.data.get(TEST_ITEMS).size(), equalTo(25));
+      assertThat(wrapper.isInitialized(), equalTo(true));
+    }
+  }
+
+  @Test
+  public void commitReplacesPreviousData() throws Exception {
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(core, 10, 1)) {
+      wrapper.init(makeItems(25));
+      TestItem item = new TestItem("other", 1);
+      wrapper.init(new DataBuilder().add(TEST_ITEMS, item).build());
+
+      assertThat(core.data.get(TEST_ITEMS).keySet(), contains(item.key));
+    }
+  }
+
+  @Test
+  public void chunksAreWrittenInParallel() throws Exception {
+    core.latencyMillis = 50;
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(core, 10, 4)) {
+      wrapper.init(makeItems(80));
+
+      assertThat(core.maxConcurrentWrites.get(), equalTo(4));
+      assertThat(core.data.get(TEST_ITEMS).size(), equalTo(80));
+      assertThat(core.commitCount.get(), equalTo(1));
+    }
+  }
+
+  @Test
+  public void failedChunkAbortsSession() throws Exception {
+    core.failOnChunk = 2;
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(core, 10, 1)) {
+      try {
+        wrapper.init(makeItems(30));
+        fail("expected exception");
+      } catch (RuntimeException e) {
+        assertThat(e.getMessage(), equalTo("fake error"));
+      }
+
+      assertThat(core.abortCount.get(), equalTo(1));
+      assertThat(core.commitCount.get(), equalTo(0));
+      assertThat(core.data.get(TEST_ITEMS), nullValue());
+
+      InitProgress progress = wrapper.getInitProgress();
+      assertThat(progress.isInProgress(), equalTo(false));
+      assertThat(progress.getItemsWritten(), equalTo(10));
+      assertThat(progress.getTotalItems(), equalTo(30));
+    }
+  }
+
+  @Test
+  public void failedChunkAbortsSessionAfterOtherParallelWritesFinish() throws Exception {
+    core.latencyMillis = 20;
+    core.failOnChunk = 1;
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(core, 10, 4)) {
+      try {
+        wrapper.init(makeItems(80));
+        fail("expected exception");
+      } catch (RuntimeException e) {}
+
+      assertThat(core.abortCount.get(), equalTo(1));
+      assertThat(core.writesAfterAbort.get(), equalTo(0));
+      assertThat(core.commitCount.get(), equalTo(0));
+    }
+  }
+
+  @Test
+  public void progressIsReportedWhileWriting() throws Exception {
+    List<InitProgress> progressDuringWrites = Collections.synchronizedList(new ArrayList<>());
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(core, 10, 1)) {
+      assertThat(wrapper.getInitProgress(), nullValue());
+
+      core.onWriteChunk = kind -> progressDuringWrites.add(wrapper.getInitProgress());
+      wrapper.init(makeItems(25));
+
+      assertThat(progressDuringWrites.size(), equalTo(3));
+      for (int i = 0; i < 3; i++) {
+        InitProgress p = progressDuringWrites.get(i);
+        assertThat(p.isInProgress(), equalTo(true));
+        assertThat(p.getItemsWritten(), equalTo(i * 10));
+        assertThat(p.getTotalItems(), equalTo(25));
+      }
+      InitProgress finalProgress = wrapper.getInitProgress();
+      assertThat(finalProgress.isInProgress(), equalTo(false));
+      assertThat(finalProgress.getItemsWritten(), equalTo(25));
+      assertThat(finalProgress.getElapsedTime(), equalTo(wrapper.getInitProgress().getElapsedTime()));
+    }
+  }
+
+  @Test
+  public void parallelWritesAreFasterWithLatency() throws Exception {
+    core.latencyMillis = 20;
+    Duration sequential, parallel;
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(core, 10, 1)) {
+      wrapper.init(makeItems(100));
+      sequential = wrapper.getInitProgress().getElapsedTime();
+    }
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(core, 10, 5)) {
+      wrapper.init(makeItems(100));
+      parallel = wrapper.getInitProgress().getElapsedTime();
+    }
+    assertThat(sequential, greaterThan(Duration.ofMillis(200)));
+    assertThat(parallel, lessThan(sequential));
+  }
+
+  @Test
+  public void storeWithoutStreamingInitIsInitializedAllAtOnce() throws Exception {
+    MockPersistentDataStore mockCore = new MockPersistentDataStore();
+    try (PersistentDataStoreWrapper wrapper = makeWrapper(mockCore, 10, 4)) {
+      assertThat(wrapper.getInitProgress(), nullValue());
+
+      wrapper.init(makeItems(25));
+
+      assertThat(mockCore.initedCount.get(), equalTo(1));
+      InitProgress progress = wrapper.getInitProgress();
+      assertThat(progress.isInProgress(), equalTo(false));
+      assertThat(progress.getItemsWritten(), equalTo(25));
+      assertThat(progress.getTotalItems(), equalTo(25));
+    }
+  }
+
+  // An in-memory store that supports streaming init, sleeping for latencyMillis in each request to
+  // simulate a remote database. New data is kept separately until it is committed.
+  private static final class StreamingInitStore implements PersistentDataStore, PersistentDataStoreStreamingInit {
+    final Map<DataKind, Map<String, SerializedItemDescriptor>> data = new ConcurrentHashMap<>();
+    final List<Integer> chunkSizes = Collections.synchronizedList(new ArrayList<>());
+    final AtomicInteger initCount = new AtomicInteger();
+    final AtomicInteger commitCount = new AtomicInteger();
+    final AtomicInteger abortCount = new AtomicInteger();
+    final AtomicInteger concurrentWrites = new AtomicInteger();
+    final AtomicInteger maxConcurrentWrites = new AtomicInteger();
+    final AtomicInteger writesAfterAbort = new AtomicInteger();
+    volatile long latencyMillis;
+    volatile int failOnChunk = -1; // zero-based index of a chunk that should fail
+    volatile Consumer<DataKind> onWriteChunk;
+
+    private void simulateLatency() {
+      if (latencyMillis > 0) {
+        try {
+          Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }
+
+    @Override
+    public InitSession beginInit() {
+      simulateLatency();
+      Map<DataKind, Map<String, SerializedItemDescriptor>> newData = new ConcurrentHashMap<>();
+      AtomicInteger chunkCount = new AtomicInteger();
+      AtomicInteger aborted = new AtomicInteger();
+      return new InitSession() {
+        @Override
+        public void writeChunk(DataKind kind, KeyedItems<SerializedItemDescriptor> items) {
+          int index = chunkCount.getAndIncrement();
+          int concurrent = concurrentWrites.incrementAndGet();
+          maxConcurrentWrites.accumulateAndGet(concurrent, Math::max);
+          try {
+            if (onWriteChunk != null) {
+              onWriteChunk.accept(kind);
+            }
+            simulateLatency();
+            if (index == failOnChunk) {
+              throw new RuntimeException("fake error");
+            }
+            int size = 0;
+            Map<String, SerializedItemDescriptor> itemsOfKind = newData.computeIfAbsent(kind, k -> new ConcurrentHashMap<>());
+            for (Map.Entry<String, SerializedItemDescriptor> e: items.getItems()) {
+              itemsOfKind.put(e.getKey(), e.getValue());
+              size++;
+            }
+            chunkSizes.add(size);
+          } finally {
+            if (aborted.get() != 0) {
+              writesAfterAbort.incrementAndGet();
+            }
+            concurrentWrites.decrementAndGet();
+          }
+        }
+
+        @Override
+        public void commit() {
+          simulateLatency();
+          data.clear();
+          data.putAll(newData);
+          commitCount.incrementAndGet();
+        }
+
+        @Override
+        public void abort() {
+          aborted.set(1);
+          abortCount.incrementAndGet();
+        }
+      };
+    }
+
+    @Override
+    public void init(FullDataSet<SerializedItemDescriptor> allData) {
+      initCount.incrementAndGet();
+    }
+
+    @Override
+    public SerializedItemDescriptor get(DataKind kind, String key) {
+      simulateLatency();
+      Map<String, SerializedItemDescriptor> items = data.get(kind);
+      return items == null ? null : items.get(key);
+    }
+
+    @Override
+    public KeyedItems<SerializedItemDescriptor> getAll(DataKind kind) {
+      simulateLatency();
+      Map<String, SerializedItemDescriptor> items = data.get(kind);
+      return new KeyedItems<>(items == null ? null : new HashMap<>(items).entrySet());
+    }
+
+    @Override
+    public boolean upsert(DataKind kind, String key, SerializedItemDescriptor item) {
+      simulateLatency();
+      data.computeIfAbsent(kind, k -> new ConcurrentHashMap<>()).put(key, item);
+      return true;
+    }
+
+    @Override
+    public boolean isInitialized() {
+      return commitCount.get() > 0;
+    }
+
+    @Override
+    public boolean isStoreAvailable() {
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {}
+  }
+}
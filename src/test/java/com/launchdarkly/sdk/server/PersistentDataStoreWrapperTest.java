@@ -5,7 +5,6 @@ import com.google.common.collect.ImmutableMap;
 import com.launchdarkly.sdk.server.DataStoreTestTypes.DataBuilder;
 import com.launchdarkly.sdk.server.DataStoreTestTypes.TestItem;
 import com.launchdarkly.sdk.server.integrations.MockPersistentDataStore;
-import com.launchdarkly.sdk.server.integrations.PersistentDataStoreBuilder;
 import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider;
 import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.CacheStats;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
@@ -55,11 +54,17 @@ public class PersistentDataStoreWrapperTest extends BaseTest {
     final boolean cached;
     final boolean cachedIndefinitely;
     final boolean persistOnlyAsString;
+    final boolean sizeBounded;
     
     TestMode(boolean cached, boolean cachedIndefinitely, boolean persistOnlyAsString) {
+      this(cached, cachedIndefinitely, persistOnlyAsString, false);
+    }
+
+    TestMode(boolean cached, boolean cachedIndefinitely, boolean persistOnlyAsString, boolean sizeBounded) {
       this.cached = cached;
       this.cachedIndefinitely = cachedIndefinitely;
       this.persistOnlyAsString = persistOnlyAsString;
+      this.sizeBounded = sizeBounded;
     }
     
     boolean isCached() {
@@ -73,6 +78,11 @@ public class PersistentDataStoreWrapperTest extends BaseTest {
     boolean isCachedIndefinitely() {
       return cached && cachedIndefinitely;
     }
+
+    // A size-bounded cache does not cache the results of getAll, so getAll always reads from the store.
+    boolean isCachingAllData() {
+      return cached && !sizeBounded;
+    }
     
     Duration getCacheTtl() {
       return cached ? (cachedIndefinitely ? Duration.ofMillis(-1) : Duration.ofSeconds(30)) : Duration.ZERO;
@@ -82,7 +92,8 @@ public class PersistentDataStoreWrapperTest extends BaseTest {
     public String toString() {
       return "TestMode(" +
           (cached ? (cachedIndefinitely ? "CachedIndefinitely" : "Cached") : "Uncached") +
-          (persistOnlyAsString ? ",persistOnlyAsString" : "") + ")";
+          (persistOnlyAsString ? ",persistOnlyAsString" : "") +
+          (sizeBounded ? ",sizeBounded" : "") + ")";
     }
   }
   
@@ -93,6 +104,8 @@ public class PersistentDataStoreWrapperTest extends BaseTest {
         new TestMode(true, false, true),
         new TestMode(true, true, false),
         new TestMode(true, true, true),
+        new TestMode(true, false, false, true),
+        new TestMode(true, true, false, true),
         new TestMode(false, false, false),
         new TestMode(false, false, true)
         );
@@ -104,9 +117,8 @@ public class PersistentDataStoreWrapperTest extends BaseTest {
     this.core.persistOnlyAsString = testMode.persistOnlyAsString;
     this.wrapper = new PersistentDataStoreWrapper(
         core,
-        testMode.getCacheTtl(),
-        PersistentDataStoreBuilder.StaleValuesPolicy.EVICT,
-        false,
+        new PersistentDataStoreWrapper.Options().cacheTtl(testMode.getCacheTtl())
+          .cacheMaximumWeight(testMode.sizeBounded ? 1_000_000 : 0),
         this::updateStatus,
         sharedExecutor,
         testLogger
@@ -198,7 +210,7 @@ public class PersistentDataStoreWrapperTest extends BaseTest {
     
     core.forceRemove(TEST_ITEMS, item2.key);
     items = toItemsMap(wrapper.getAll(TEST_ITEMS));
-    if (testMode.isCached()) {
+    if (testMode.isCachingAllData()) {
       assertThat(items, equalTo(expected));
     } else {
       Map<String, ItemDescriptor> expected1 = ImmutableMap.<String, ItemDescriptor>of(item1.key, item1.toItemDescriptor());
@@ -221,7 +233,7 @@ public class PersistentDataStoreWrapperTest extends BaseTest {
   
   @Test
   public void cachedAllUsesValuesFromInit() {
-    assumeThat(testMode.isCached(), is(true));
+    assumeThat(testMode.isCachingAllData(), is(true));
     
     TestItem item1 = new TestItem("key1", 1);
     TestItem item2 = new TestItem("key2", 1);
@@ -255,7 +267,7 @@ public class PersistentDataStoreWrapperTest extends BaseTest {
 
   @Test
   public void cachedStoreWithInfiniteTtlUpdatesCacheEvenIfCoreInitFails() {
-    assumeThat(testMode.isCachedIndefinitely(), is(true));
+    assumeThat(testMode.isCachedIndefinitely() && testMode.isCachingAllData(), is(true));
     
     TestItem item = new TestItem("key", 1);
     
@@ -387,7 +399,7 @@ public class PersistentDataStoreWrapperTest extends BaseTest {
 
   @Test
   public void cachedStoreWithInfiniteTtlUpdatesCachedAllDataIfOneItemIsUpdated() {
-    assumeThat(testMode.isCachedIndefinitely(), is(true));
+    assumeThat(testMode.isCachedIndefinitely() && testMode.isCachingAllData(), is(true));
     
     TestItem item1v1 = new TestItem("key1", 1);
     TestItem item1v2 = item1v1.withVersion(2);
@@ -469,9 +481,7 @@ public class PersistentDataStoreWrapperTest extends BaseTest {
     // We need to create a different object for this test so we can set a short cache TTL
     try (PersistentDataStoreWrapper wrapper1 = new PersistentDataStoreWrapper(
         core,
-        Duration.ofMillis(500),
-        PersistentDataStoreBuilder.StaleValuesPolicy.EVICT,
-        false,
+        new PersistentDataStoreWrapper.Options().cacheTtl(Duration.ofMillis(500)),
         this::updateStatus,
         sharedExecutor,
         testLogger
@@ -504,9 +514,7 @@ public class PersistentDataStoreWrapperTest extends BaseTest {
   public void canGetCacheStats() throws Exception {
     try (PersistentDataStoreWrapper w = new PersistentDataStoreWrapper(
         core,
-        testMode.getCacheTtl(),
-        PersistentDataStoreBuilder.StaleValuesPolicy.EVICT,
-        true,
+        new PersistentDataStoreWrapper.Options().cacheTtl(testMode.getCacheTtl()).recordCacheStats(true),
         this::updateStatus,
         sharedExecutor,
         testLogger
@@ -589,12 +597,12 @@ public class PersistentDataStoreWrapperTest extends BaseTest {
     makeStoreAvailable(core);
     DataStoreStatusProvider.Status status2 = statuses.take();
     assertThat(status2.isAvailable(), is(true));
-    assertThat(status2.isRefreshNeeded(), is(!testMode.isCachedIndefinitely()));
+    assertThat(status2.isRefreshNeeded(), is(!testMode.isCachedIndefinitely() || testMode.sizeBounded));
   }
   
   @Test
   public void cacheIsWrittenToStoreAfterRecoveryIfTtlIsInfinite() throws Exception {
-    assumeThat(testMode.isCachedIndefinitely(), is(true));
+    assumeThat(testMode.isCachedIndefinitely() && testMode.isCachingAllData(), is(true));
 
     final BlockingQueue<DataStoreStatusProvider.Status> statuses = new LinkedBlockingQueue<>();
     dataStoreStatusProvider.addStatusListener(statuses::add);
@@ -648,7 +656,7 @@ public class PersistentDataStoreWrapperTest extends BaseTest {
   
   @Test
   public void statusRemainsUnavailableIfStoreSaysItIsAvailableButInitFails() throws Exception {
-    assumeThat(testMode.isCachedIndefinitely(), is(true));
+    assumeThat(testMode.isCachedIndefinitely() && testMode.isCachingAllData(), is(true));
 
     // Most of this test is identical to cacheIsWrittenToStoreAfterRecoveryIfTtlIsInfinite() except as noted below.
     
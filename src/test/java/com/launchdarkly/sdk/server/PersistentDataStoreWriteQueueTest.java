@@ -0,0 +1,183 @@
+package com.launchdarkly.sdk.server;
+
+import com.launchdarkly.sdk.server.DataStoreTestTypes.TestItem;
+import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.WriteQueueStats;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.ItemDescriptor;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.launchdarkly.sdk.server.DataModel.FEATURES;
+import static com.launchdarkly.sdk.server.DataStoreTestTypes.TEST_ITEMS;
+import static com.launchdarkly.testhelpers.ConcurrentHelpers.awaitValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+
+@SuppressWarnings("javadoc")
+public class PersistentDataStoreWriteQueueTest extends BaseTest {
+  private static final Duration LONG_INTERVAL = Duration.ofHours(1); // the worker never runs during a test
+
+  private final List<String> writes = new ArrayList<>();
+  private volatile RuntimeException fakeError;
+
+  private PersistentDataStoreWriteQueue makeQueue(Duration flushInterval) {
+    return new PersistentDataStoreWriteQueue((kind, key, item) -> {
+      if (fakeError != null) {
+        throw fakeError;
+      }
+      writes.add(key + ":" + item.getVersion());
+    }, flushInterval, testLogger);
+  }
+
+  private static ItemDescriptor item(String key, int version) {
+    return new TestItem(key, version).toItemDescriptor();
+  }
+
+  @Test
+  public void flushWritesUpdatesInOrderQueued() {
+    try (PersistentDataStoreWriteQueue queue = makeQueue(LONG_INTERVAL)) {
+      queue.enqueue(TEST_ITEMS, "b", item("b", 1));
+      queue.enqueue(TEST_ITEMS, "a", item("a", 1));
+      queue.enqueue(TEST_ITEMS, "c", item("c", 1));
+      assertThat(writes, empty());
+
+      assertThat(queue.flush(), equalTo(true));
+      assertThat(writes, contains("b:1", "a:1", "c:1"));
+      assertThat(queue.getStats().getQueueDepth(), equalTo(0));
+      assertThat(queue.getStats().getWriteCount(), equalTo(3L));
+    }
+  }
+
+  @Test
+  public void updatesOfSameItemAreCoalesced() {
+    try (PersistentDataStoreWriteQueue queue = makeQueue(LONG_INTERVAL)) {
+      queue.enqueue(TEST_ITEMS, "a", item("a", 1));
+      queue.enqueue(TEST_ITEMS, "b", item("b", 1));
+      queue.enqueue(TEST_ITEMS, "a", item("a", 3));
+      queue.enqueue(TEST_ITEMS, "a", item("a", 2)); // older than the queued update, so it is ignored
+
+      assertThat(queue.getPendingItem(TEST_ITEMS, "a").getVersion(), equalTo(3));
+      WriteQueueStats stats = queue.getStats();
+      assertThat(stats.getQueueDepth(), equalTo(2));
+      assertThat(stats.getCoalescedCount(), equalTo(1L)); // only the update that replaced a queued one
+
+      queue.flush();
+      assertThat(writes, contains("a:3", "b:1")); // "a" keeps its original place in the queue
+    }
+  }
+
+  @Test
+  public void itemsOfDifferentKindsWithSameKeyAreNotCoalesced() {
+    try (PersistentDataStoreWriteQueue queue = makeQueue(LONG_INTERVAL)) {
+      queue.enqueue(TEST_ITEMS, "a", item("a", 1));
+      queue.enqueue(FEATURES, "a", item("a", 2));
+
+      assertThat(queue.getPendingItem(TEST_ITEMS, "a").getVersion(), equalTo(1));
+      assertThat(queue.getPendingItem(FEATURES, "a").getVersion(), equalTo(2));
+      assertThat(queue.getPendingItems(TEST_ITEMS).keySet(), contains("a"));
+      assertThat(queue.getStats().getQueueDepth(), equalTo(2));
+    }
+  }
+
+  @Test
+  public void pendingItemIsRemovedAfterItIsWritten() {
+    try (PersistentDataStoreWriteQueue queue = makeQueue(LONG_INTERVAL)) {
+      queue.enqueue(TEST_ITEMS, "a", item("a", 1));
+      queue.flush();
+      assertThat(queue.getPendingItem(TEST_ITEMS, "a"), nullValue());
+      assertThat(queue.getPendingItems(TEST_ITEMS).isEmpty(), equalTo(true));
+    }
+  }
+
+  @Test
+  public void largeQueueIsWrittenInSeveralBatches() {
+    int count = PersistentDataStoreWriteQueue.BATCH_SIZE * 2 + 1;
+    try (PersistentDataStoreWriteQueue queue = makeQueue(LONG_INTERVAL)) {
+      for (int i = 0; i < count; i++) {
+        queue.enqueue(TEST_ITEMS, "key" + i, item("key" + i, 1));
+      }
+      assertThat(queue.flush(), equalTo(true));
+      assertThat(writes, hasSize(count));
+      assertThat(writes.get(count - 1), equalTo("key" + (count - 1) + ":1"));
+    }
+  }
+
+  @Test
+  public void failedWriteLeavesUpdatesInQueue() {
+    try (PersistentDataStoreWriteQueue queue = makeQueue(LONG_INTERVAL)) {
+      queue.enqueue(TEST_ITEMS, "a", item("a", 1));
+      queue.enqueue(TEST_ITEMS, "b", item("b", 1));
+      fakeError = new RuntimeException("sorry");
+
+      assertThat(queue.flush(), equalTo(false));
+      WriteQueueStats stats = queue.getStats();
+      assertThat(stats.getQueueDepth(), equalTo(2));
+      assertThat(stats.getFailedWriteCount(), equalTo(1L));
+      assertThat(stats.getWriteCount(), equalTo(0L));
+
+      fakeError = null;
+      assertThat(queue.flush(), equalTo(true));
+      assertThat(writes, contains("a:1", "b:1"));
+    }
+  }
+
+  @Test
+  public void writeLagIsAgeOfOldestQueuedUpdate() throws Exception {
+    try (PersistentDataStoreWriteQueue queue = makeQueue(LONG_INTERVAL)) {
+      assertThat(queue.getStats().getWriteLag(), equalTo(Duration.ZERO));
+
+      queue.enqueue(TEST_ITEMS, "a", item("a", 1));
+      Thread.sleep(20);
+      queue.enqueue(TEST_ITEMS, "b", item("b", 1));
+      queue.enqueue(TEST_ITEMS, "a", item("a", 2)); // coalescing does not reset the age
+
+      assertThat(queue.getStats().getWriteLag(), greaterThan(Duration.ofMillis(19)));
+
+      queue.flush();
+      assertThat(queue.getStats().getWriteLag(), equalTo(Duration.ZERO));
+    }
+  }
+
+  @Test
+  public void discardAllRemovesQueuedUpdates() {
+    try (PersistentDataStoreWriteQueue queue = makeQueue(LONG_INTERVAL)) {
+      queue.enqueue(TEST_ITEMS, "a", item("a", 1));
+      queue.discardAll();
+      assertThat(queue.getStats().getQueueDepth(), equalTo(0));
+      queue.flush();
+      assertThat(writes, empty());
+    }
+  }
+
+  @Test
+  public void closeWritesQueuedUpdates() {
+    PersistentDataStoreWriteQueue queue = makeQueue(LONG_INTERVAL);
+    queue.enqueue(TEST_ITEMS, "a", item("a", 1));
+    queue.close();
+    assertThat(writes, contains("a:1"));
+  }
+
+  @Test
+  public void workerWritesUpdatesAfterInterval() throws Exception {
+    BlockingQueue<String> written = new LinkedBlockingQueue<>();
+    try (PersistentDataStoreWriteQueue queue = new PersistentDataStoreWriteQueue(
+        (kind, key, item) -> written.add(key + ":" + item.getVersion()), Duration.ofMillis(10), testLogger)) {
+      queue.enqueue(TEST_ITEMS, "a", item("a", 1));
+      assertThat(awaitValue(written, 1, TimeUnit.SECONDS), equalTo("a:1"));
+
+      queue.enqueue(TEST_ITEMS, "b", item("b", 1));
+      assertThat(awaitValue(written, 1, TimeUnit.SECONDS), equalTo("b:1"));
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package com.launchdarkly.sdk.server;
+
+import com.launchdarkly.sdk.server.subsystems.SerializationException;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+
+@SuppressWarnings("javadoc")
+public class SerializedItemCompressionTest {
+  private static String largeJson() {
+    StringBuilder sb = new StringBuilder("{\"key\":\"flag\",\"values\":[");
+    for (int i = 0; i < 1000; i++) {
+      sb.append(i == 0 ? "" : ",").append("\"user").append(i).append("\"");
+    }
+    return sb.append("]}").toString();
+  }
+
+  @Test
+  public void itemAboveMinimumLengthIsCompressed() {
+    String json = largeJson();
+    String encoded = new SerializedItemCompression(100).encode(json);
+    assertThat(encoded, startsWith(SerializedItemCompression.COMPRESSED_PREFIX));
+    assertThat(encoded.length(), lessThan(json.length()));
+    assertThat(SerializedItemCompression.decode(encoded), equalTo(json));
+  }
+
+  @Test
+  public void itemBelowMinimumLengthIsNotCompressed() {
+    String json = largeJson();
+    assertThat(new SerializedItemCompression(json.length() + 1).encode(json), equalTo(json));
+  }
+
+  @Test
+  public void nothingIsCompressedIfDisabled() {
+    String json = largeJson();
+    assertThat(new SerializedItemCompression(0).encode(json), equalTo(json));
+  }
+
+  @Test
+  public void itemIsNotCompressedIfThatWouldNotMakeItSmaller() {
+    String json = "{\"key\":\"x\"}";
+    assertThat(new SerializedItemCompression(1).encode(json), equalTo(json));
+  }
+
+  @Test
+  public void uncompressedValueIsDecodedAsIs() {
+    assertThat(SerializedItemCompression.decode("{\"key\":\"x\"}"), equalTo("{\"key\":\"x\"}"));
+    assertThat(SerializedItemCompression.decode(null), nullValue());
+  }
+
+  @Test
+  public void nonAsciiCharactersArePreserved() {
+    String json = "{\"name\":\"\u00e9\u4e2d\ud83d\ude00\"}";
+    assertThat(SerializedItemCompression.decode(SerializedItemCompression.compress(json)), equalTo(json));
+  }
+
+  @Test(expected=SerializationException.class)
+  public void invalidCompressedValueCausesSerializationException() {
+    SerializedItemCompression.decode(SerializedItemCompression.COMPRESSED_PREFIX + "AAAA");
+  }
+
+  @Test(expected=SerializationException.class)
+  public void truncatedCompressedValueCausesSerializationException() {
+    String compressed = SerializedItemCompression.compress(largeJson());
+    SerializedItemCompression.decode(compressed.substring(0, compressed.length() / 2));
+  }
+}
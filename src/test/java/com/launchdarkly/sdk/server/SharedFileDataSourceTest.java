@@ -0,0 +1,125 @@
+package com.launchdarkly.sdk.server;
+
+import com.launchdarkly.sdk.server.DataStoreTestTypes.DataBuilder;
+import com.launchdarkly.sdk.server.TestComponents.MockDataSourceUpdates;
+import com.launchdarkly.sdk.server.interfaces.DataSourceStatusProvider.State;
+import com.launchdarkly.sdk.server.subsystems.ComponentConfigurer;
+import com.launchdarkly.sdk.server.subsystems.DataSource;
+import com.launchdarkly.sdk.server.subsystems.DataStore;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.launchdarkly.sdk.server.DataStoreTestTypes.TEST_ITEMS;
+import static com.launchdarkly.sdk.server.TestComponents.clientContext;
+import static com.launchdarkly.sdk.server.TestComponents.dataSourceUpdates;
+import static com.launchdarkly.sdk.server.TestComponents.nullLogger;
+import static com.launchdarkly.sdk.server.TestComponents.sharedExecutor;
+import static com.launchdarkly.sdk.server.TestValues.SDK_KEY;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+@SuppressWarnings("javadoc")
+public class SharedFileDataSourceTest {
+  private static final Duration POLL_INTERVAL = Duration.ofMillis(10);
+
+  private final DataStoreTestTypes.TestItem item1 = new DataStoreTestTypes.TestItem("key1", "first", 10);
+  private final AtomicInteger leaderSourcesStarted = new AtomicInteger();
+  private final Path dir;
+  private final Path file;
+
+  public SharedFileDataSourceTest() throws IOException {
+    dir = Files.createTempDirectory("ld-shared-file-source-test");
+    file = dir.resolve("flags");
+  }
+
+  @After
+  public void teardown() throws IOException {
+    try (Stream<Path> files = Files.walk(dir)) {
+      for (Path p: files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(p);
+      }
+    }
+  }
+
+  // A leader data source that provides the same data every time it starts
+  private final ComponentConfigurer<DataSource> leaderDataSource = context -> new DataSource() {
+    private volatile boolean initialized;
+
+    @Override
+    public Future<Void> start() {
+      leaderSourcesStarted.incrementAndGet();
+      context.getDataSourceUpdateSink().init(new DataBuilder().add(TEST_ITEMS, item1).build());
+      context.getDataSourceUpdateSink().updateStatus(State.VALID, null);
+      initialized = true;
+      return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public boolean isInitialized() {
+      return initialized;
+    }
+
+    @Override
+    public void close() {}
+  };
+
+  private SharedFileDataSource makeDataSource(MockDataSourceUpdates updates) {
+    return new SharedFileDataSource(file, leaderDataSource,
+        clientContext(SDK_KEY, new LDConfig.Builder().build(), updates),
+        sharedExecutor, POLL_INTERVAL, nullLogger);
+  }
+
+  @Test
+  public void firstInstanceBecomesLeaderAndOthersReadItsData() throws Exception {
+    try (DataStore leaderStore = new SharedFileDataStore(file, 10, nullLogger);
+        DataStore followerStore = new SharedFileDataStore(file, 10, nullLogger);
+        SharedFileDataSource leader = makeDataSource(dataSourceUpdates(leaderStore))) {
+      leader.start().get(5, TimeUnit.SECONDS);
+      assertThat(leader.isLeader(), equalTo(true));
+      assertThat(leader.isInitialized(), equalTo(true));
+
+      MockDataSourceUpdates followerUpdates = dataSourceUpdates(followerStore);
+      try (SharedFileDataSource follower = makeDataSource(followerUpdates)) {
+        follower.start().get(5, TimeUnit.SECONDS);
+        assertThat(follower.isLeader(), equalTo(false));
+        assertThat(follower.isInitialized(), equalTo(true));
+        assertThat(followerUpdates.getLastStatus().getState(), equalTo(State.VALID));
+        assertThat(followerStore.get(TEST_ITEMS, item1.key), equalTo(item1.toItemDescriptor()));
+        assertThat(leaderSourcesStarted.get(), equalTo(1));
+      }
+    }
+  }
+
+  @Test
+  public void followerTakesOverWhenLeaderIsClosed() throws Exception {
+    try (DataStore leaderStore = new SharedFileDataStore(file, 10, nullLogger);
+        DataStore followerStore = new SharedFileDataStore(file, 10, nullLogger);
+        SharedFileDataSource follower = makeDataSource(dataSourceUpdates(followerStore))) {
+      SharedFileDataSource leader = makeDataSource(dataSourceUpdates(leaderStore));
+      leader.start().get(5, TimeUnit.SECONDS);
+      follower.start().get(5, TimeUnit.SECONDS);
+      assertThat(follower.isLeader(), equalTo(false));
+
+      leader.close();
+      long deadline = System.currentTimeMillis() + 5000;
+      while (!follower.isLeader() && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertThat(follower.isLeader(), equalTo(true));
+      assertThat(leaderSourcesStarted.get(), equalTo(2));
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package com.launchdarkly.sdk.server;
+
+import com.launchdarkly.sdk.server.DataStoreTestTypes.DataBuilder;
+import com.launchdarkly.sdk.server.DataStoreTestTypes.TestItem;
+import com.launchdarkly.sdk.server.subsystems.DataStore;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.launchdarkly.sdk.server.DataStoreTestTypes.TEST_ITEMS;
+import static com.launchdarkly.sdk.server.TestComponents.nullLogger;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+
+@SuppressWarnings("javadoc")
+public class SharedFileDataStoreTest extends DataStoreTestBase {
+  private final Path dir = makeTempDir();
+  private final Path file = dir.resolve("flags");
+
+  @Override
+  protected DataStore makeStore() {
+    return new SharedFileDataStore(file, 10, nullLogger);
+  }
+
+  private static Path makeTempDir() {
+    try {
+      return Files.createTempDirectory("ld-shared-file-store-test");
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void teardown() throws Exception {
+    super.teardown();
+    try (Stream<Path> files = Files.walk(dir)) {
+      for (Path p: files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(p);
+      }
+    }
+  }
+
+  @Test
+  public void otherInstanceIsNotInitializedUntilDataIsPublished() throws Exception {
+    try (DataStore other = makeStore()) {
+      assertThat(other.isInitialized(), equalTo(false));
+      store.init(new DataBuilder().add(TEST_ITEMS, item1).build());
+      assertThat(other.isInitialized(), equalTo(true));
+    }
+  }
+
+  @Test
+  public void otherInstanceSeesUpdates() throws Exception {
+    try (DataStore other = makeStore()) {
+      store.init(new DataBuilder().add(TEST_ITEMS, item1).build());
+      assertThat(other.get(TEST_ITEMS, item1.key), equalTo(item1.toItemDescriptor()));
+
+      TestItem item1v2 = item1.withVersion(item1.version + 1);
+      store.upsert(TEST_ITEMS, item1.key, item1v2.toItemDescriptor());
+      store.upsert(TEST_ITEMS, item2.key, item2.toItemDescriptor());
+      assertThat(other.get(TEST_ITEMS, item1.key), equalTo(item1v2.toItemDescriptor()));
+      assertThat(other.get(TEST_ITEMS, item2.key), equalTo(item2.toItemDescriptor()));
+    }
+  }
+
+  @Test
+  public void upsertIsAppliedToLatestPublishedData() throws Exception {
+    try (DataStore other = makeStore()) {
+      store.init(new DataBuilder().add(TEST_ITEMS, item1).build());
+      other.upsert(TEST_ITEMS, item2.key, item2.toItemDescriptor());
+      assertThat(store.get(TEST_ITEMS, item1.key), equalTo(item1.toItemDescriptor()));
+      assertThat(store.get(TEST_ITEMS, item2.key), equalTo(item2.toItemDescriptor()));
+
+      assertThat(other.upsert(TEST_ITEMS, item1.key, item1.withVersion(item1.version - 1).toItemDescriptor()),
+          equalTo(false));
+    }
+  }
+
+  @Test
+  public void cachedItemsAreDiscardedWhenOtherInstanceReplacesAllData() throws Exception {
+    try (DataStore other = makeStore()) {
+      store.init(new DataBuilder().add(TEST_ITEMS, item1).build());
+      assertThat(store.get(TEST_ITEMS, item1.key), equalTo(item1.toItemDescriptor()));
+
+      TestItem sameVersionDifferentItem = new TestItem(item1.key, "different", item1.version);
+      other.init(new DataBuilder().add(TEST_ITEMS, sameVersionDifferentItem).build());
+      assertThat(store.get(TEST_ITEMS, item1.key), equalTo(sameVersionDifferentItem.toItemDescriptor()));
+    }
+  }
+
+  @Test
+  public void defaultFileDependsOnSdkKey() {
+    assertThat(SharedFileDataStore.defaultFile("key1"), equalTo(SharedFileDataStore.defaultFile("key1")));
+    assertThat(SharedFileDataStore.defaultFile("key1"), not(equalTo(SharedFileDataStore.defaultFile("key2"))));
+  }
+}
@@ -101,6 +101,18 @@ public class StreamProcessorEventsTest {
         () -> parsePatchData(jsonReaderFrom(inputWithMissingData)));
   }
   
+  @Test
+  public void parsingPatchDataKeepsOriginalJsonIfRequested() throws Exception {
+    String flagJson = "{\"key\":\"flag1\",\"version\":1000,\"unknownProperty\":1}";
+    PatchData result = parsePatchData(
+        jsonReaderFrom("{\"path\":\"/flags/flag1\", \"data\":" + flagJson + "}"), true);
+    assertThat(FEATURES.serialize(result.item), equalTo(flagJson));
+
+    PatchData resultWithDataFirst = parsePatchData(
+        jsonReaderFrom("{\"data\":" + flagJson + ", \"path\":\"/flags/flag1\"}"), true);
+    assertThat(FEATURES.serialize(resultWithDataFirst.item), equalTo(flagJson));
+  }
+
   @Test
   public void parsingDeleteData() {
     String validFlagInput = "{\"path\":\"/flags/flag1\", \"version\": 3}";
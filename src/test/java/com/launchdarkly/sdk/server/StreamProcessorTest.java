@@ -15,6 +15,7 @@ import com.launchdarkly.sdk.server.TestComponents.MockDataSourceUpdates.UpsertPa
 import com.launchdarkly.sdk.server.TestComponents.MockDataStoreStatusProvider;
 import com.launchdarkly.sdk.server.integrations.StreamingDataSourceBuilder;
 import com.launchdarkly.sdk.server.interfaces.DataSourceStatusProvider.ErrorKind;
+import com.launchdarkly.sdk.server.interfaces.DataSourceStatusProvider.PipelineStats;
 import com.launchdarkly.sdk.server.interfaces.DataSourceStatusProvider.State;
 import com.launchdarkly.sdk.server.interfaces.DataSourceStatusProvider.Status;
 import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider;
@@ -50,6 +51,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.launchdarkly.sdk.server.DataModel.FEATURES;
 import static com.launchdarkly.sdk.server.DataModel.SEGMENTS;
+import static com.launchdarkly.sdk.server.DataStoreTestTypes.toDataMap;
 import static com.launchdarkly.sdk.server.ModelBuilders.flagBuilder;
 import static com.launchdarkly.sdk.server.ModelBuilders.segmentBuilder;
 import static com.launchdarkly.sdk.server.TestComponents.basicDiagnosticStore;
@@ -60,10 +62,12 @@ import static com.launchdarkly.testhelpers.ConcurrentHelpers.assertFutureIsCompl
 import static com.launchdarkly.testhelpers.ConcurrentHelpers.assertNoMoreValues;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.endsWith;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
@@ -353,6 +357,152 @@ public class StreamProcessorTest extends BaseTest {
     }
   }
   
+  @Test
+  public void updatesWithinBatchWindowAreAppliedTogether() throws Exception {
+    BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    events.add(EMPTY_DATA_EVENT);
+    FeatureFlag flag2 = flagBuilder("flag2").version(1).build();
+    
+    try (HttpServer server = HttpServer.start(streamResponseFromQueue(events))) {
+      try (StreamProcessor sp = createBatchingStreamProcessor(server.getUri(), Duration.ofMillis(500), 100)) {
+        sp.start();
+        dataSourceUpdates.awaitInit();
+        
+        events.add(makePatchEvent("/flags/" + FEATURE.getKey(), FEATURES, FEATURE));
+        events.add(makePatchEvent("/flags/" + flag2.getKey(), FEATURES, flag2));
+        events.add(makeDeleteEvent("/flags/" + flag2.getKey(), flag2.getVersion() + 1));
+        events.add(makePatchEvent("/segments/" + SEGMENT.getKey(), SEGMENTS, SEGMENT));
+        
+        Map<DataKind, Map<String, ItemDescriptor>> batch = toDataMap(dataSourceUpdates.awaitBatch());
+        assertThat(batch.get(FEATURES).keySet(), containsInAnyOrder(FEATURE.getKey(), flag2.getKey()));
+        assertThat(batch.get(FEATURES).get(flag2.getKey()), equalTo(ItemDescriptor.deletedItem(flag2.getVersion() + 1)));
+        assertThat(batch.get(SEGMENTS).keySet(), containsInAnyOrder(SEGMENT.getKey()));
+        assertThat(dataSourceUpdates.receivedUpserts.isEmpty(), is(true));
+        
+        assertFeatureInStore(FEATURE);
+        assertSegmentInStore(SEGMENT);
+        assertThat(dataStore.get(FEATURES, flag2.getKey()).getItem(), nullValue());
+      }
+    }
+  }
+
+  @Test
+  public void batchIsAppliedImmediatelyWhenMaxItemsIsReached() throws Exception {
+    BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    events.add(EMPTY_DATA_EVENT);
+    FeatureFlag flag2 = flagBuilder("flag2").version(1).build();
+    
+    try (HttpServer server = HttpServer.start(streamResponseFromQueue(events))) {
+      try (StreamProcessor sp = createBatchingStreamProcessor(server.getUri(), Duration.ofMinutes(1), 2)) {
+        sp.start();
+        dataSourceUpdates.awaitInit();
+        
+        events.add(makePatchEvent("/flags/" + FEATURE.getKey(), FEATURES, FEATURE));
+        events.add(makePatchEvent("/flags/" + flag2.getKey(), FEATURES, flag2));
+        
+        Map<DataKind, Map<String, ItemDescriptor>> batch = toDataMap(dataSourceUpdates.awaitBatch());
+        assertThat(batch.get(FEATURES).keySet(), containsInAnyOrder(FEATURE.getKey(), flag2.getKey()));
+        assertFeatureInStore(FEATURE);
+      }
+    }
+  }
+
+  @Test
+  public void pendingBatchIsAppliedBeforePut() throws Exception {
+    BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    events.add(EMPTY_DATA_EVENT);
+    FeatureFlag newerFeature = flagBuilder(FEATURE1_KEY).version(FEATURE1_VERSION + 1).build();
+    
+    try (HttpServer server = HttpServer.start(streamResponseFromQueue(events))) {
+      try (StreamProcessor sp = createBatchingStreamProcessor(server.getUri(), Duration.ofMinutes(1), 100)) {
+        sp.start();
+        dataSourceUpdates.awaitInit();
+        
+        events.add(makePatchEvent("/flags/" + FEATURE1_KEY, FEATURES, newerFeature));
+        events.add(makePutEvent(new DataBuilder().addAny(FEATURES, FEATURE).addAny(SEGMENTS)));
+        
+        dataSourceUpdates.awaitBatch();
+        dataSourceUpdates.awaitInit();
+        assertFeatureInStore(FEATURE); // the put was applied after the patch, so it overwrote it
+      }
+    }
+  }
+
+  @Test
+  public void pipelinedUpdatesAreAppliedInOrder() throws Exception {
+    BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    events.add(EMPTY_DATA_EVENT);
+    FeatureFlag newerFeature = flagBuilder(FEATURE1_KEY).version(FEATURE1_VERSION + 1).build();
+    
+    try (HttpServer server = HttpServer.start(streamResponseFromQueue(events))) {
+      try (StreamProcessor sp = createPipelinedStreamProcessor(server.getUri(), 10)) {
+        sp.start();
+        dataSourceUpdates.awaitInit();
+        
+        events.add(makePatchEvent("/flags/" + FEATURE1_KEY, FEATURES, FEATURE));
+        events.add(makePatchEvent("/flags/" + FEATURE1_KEY, FEATURES, newerFeature));
+        events.add(makeDeleteEvent("/flags/" + FEATURE1_KEY, FEATURE1_VERSION + 2));
+        
+        assertThat(dataSourceUpdates.awaitUpsert().item.getVersion(), equalTo(FEATURE1_VERSION));
+        assertThat(dataSourceUpdates.awaitUpsert().item.getVersion(), equalTo(FEATURE1_VERSION + 1));
+        UpsertParams delete = dataSourceUpdates.awaitUpsert();
+        assertThat(delete.item, equalTo(ItemDescriptor.deletedItem(FEATURE1_VERSION + 2)));
+        assertThat(dataStore.get(FEATURES, FEATURE1_KEY).getItem(), nullValue());
+        assertThat(dataSourceUpdates.getLastStatus().getState(), equalTo(State.VALID));
+        
+        PipelineStats stats = awaitPipelineAppliedCount(sp, 4);
+        assertThat(stats.getQueueCapacity(), equalTo(10));
+        assertThat(stats.getFullQueueCount(), equalTo(0L));
+        assertThat(stats.getMaxApplyTime(), lessThanOrEqualTo(stats.getTotalApplyTime()));
+      }
+    }
+  }
+
+  @Test
+  public void fullPipelineQueuePausesStreamUntilUpdatesAreApplied() throws Exception {
+    BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    events.add(EMPTY_DATA_EVENT);
+    AtomicInteger updateCount = new AtomicInteger(0);
+    Semaphore unblockStore = new Semaphore(0);
+    Runnable preUpdateHook = () -> {
+      if (updateCount.incrementAndGet() > 1) {
+        // let the initial "put" through, but then make the store stall until the test releases it
+        try {
+          unblockStore.acquire();
+        } catch (InterruptedException e) {}
+      }
+    };
+    dataSourceUpdates = TestComponents.dataSourceUpdates(new DelegatingDataStore(dataStore, preUpdateHook),
+        dataStoreStatusProvider);
+    
+    try (HttpServer server = HttpServer.start(streamResponseFromQueue(events))) {
+      try (StreamProcessor sp = createPipelinedStreamProcessor(server.getUri(), 1)) {
+        sp.start();
+        dataSourceUpdates.awaitInit();
+        
+        for (int i = 1; i <= 4; i++) {
+          FeatureFlag flag = flagBuilder("flag" + i).version(1).build();
+          events.add(makePatchEvent("/flags/" + flag.getKey(), FEATURES, flag));
+        }
+        
+        // The 1st patch is blocked in the store, the 2nd fills the queue, so the 3rd has to wait
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sp.getPipelineStats().getFullQueueCount() == 0) {
+          assertThat("timed out waiting for queue to fill up", System.currentTimeMillis(), lessThanOrEqualTo(deadline));
+          Thread.sleep(10);
+        }
+        assertThat(dataSourceUpdates.receivedUpserts.isEmpty(), is(true));
+        
+        unblockStore.release(4);
+        for (int i = 1; i <= 4; i++) {
+          assertThat(dataSourceUpdates.awaitUpsert().key, equalTo("flag" + i));
+        }
+        PipelineStats stats = awaitPipelineAppliedCount(sp, 5);
+        assertThat(stats.getQueueDepth(), equalTo(0));
+      }
+    }
+  }
+
   @Test
   public void deleteDeletesFeature() throws Exception {
     doDeleteSuccessTest(FEATURES, FEATURE, "/flags/" + FEATURE.getKey());
@@ -850,6 +1000,54 @@ public class StreamProcessorTest extends BaseTest {
         );
   }
 
+  private StreamProcessor createBatchingStreamProcessor(URI streamUri, Duration batchWindow, int batchMaxItems) {
+    return new StreamProcessor(
+        ComponentsImpl.toHttpProperties(clientContext(SDK_KEY, baseConfig().build()).getHttp()),
+        dataSourceUpdates,
+        Thread.MIN_PRIORITY,
+        null,
+        streamUri,
+        null,
+        BRIEF_RECONNECT_DELAY,
+        batchWindow,
+        batchMaxItems,
+        0,
+        TestComponents.sharedExecutor,
+        testLogger
+        );
+  }
+
+  // The stats are updated just after each update is applied, so they can lag slightly behind the data store
+  private static PipelineStats awaitPipelineAppliedCount(StreamProcessor sp, long count) throws Exception {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (true) {
+      PipelineStats stats = sp.getPipelineStats();
+      if (stats.getAppliedCount() >= count) {
+        assertThat(stats.getAppliedCount(), equalTo(count));
+        return stats;
+      }
+      assertThat("timed out waiting for updates to be applied", System.currentTimeMillis(), lessThanOrEqualTo(deadline));
+      Thread.sleep(10);
+    }
+  }
+
+  private StreamProcessor createPipelinedStreamProcessor(URI streamUri, int queueCapacity) {
+    return new StreamProcessor(
+        ComponentsImpl.toHttpProperties(clientContext(SDK_KEY, baseConfig().build()).getHttp()),
+        dataSourceUpdates,
+        Thread.MIN_PRIORITY,
+        null,
+        streamUri,
+        null,
+        BRIEF_RECONNECT_DELAY,
+        Duration.ZERO,
+        0,
+        queueCapacity,
+        null,
+        testLogger
+        );
+  }
+
   private StreamProcessor createStreamProcessor(LDConfig config, URI streamUri) {
     return createStreamProcessor(config, streamUri, null);
   }
@@ -204,6 +204,7 @@ public class TestComponents {
       statusBroadcaster;
     public final BlockingQueue<FullDataSet<ItemDescriptor>> receivedInits = new LinkedBlockingQueue<>();
     public final BlockingQueue<UpsertParams> receivedUpserts = new LinkedBlockingQueue<>();
+    public final BlockingQueue<FullDataSet<ItemDescriptor>> receivedBatches = new LinkedBlockingQueue<>();
     
     public MockDataSourceUpdates(DataStore store, DataStoreStatusProvider dataStoreStatusProvider) {
       this.dataStoreStatusProvider = dataStoreStatusProvider;
@@ -234,6 +235,13 @@ public class TestComponents {
       return result;
     }
 
+    @Override
+    public boolean upsertAll(FullDataSet<ItemDescriptor> items) {
+      boolean result = wrappedInstance.upsertAll(items);
+      receivedBatches.add(items);
+      return result;
+    }
+
     @Override
     public DataStoreStatusProvider getDataStoreStatusProvider() {
       return dataStoreStatusProvider;
@@ -260,6 +268,10 @@ public class TestComponents {
     public UpsertParams awaitUpsert() {
       return awaitValue(receivedUpserts, 5, TimeUnit.SECONDS);
     }
+    
+    public FullDataSet<ItemDescriptor> awaitBatch() {
+      return awaitValue(receivedBatches, 5, TimeUnit.SECONDS);
+    }
   }
   
   public static class ContextCapturingFactory<T> implements ComponentConfigurer<T> {
@@ -0,0 +1,271 @@
+package com.launchdarkly.sdk.server;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheLoader;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
+
+@SuppressWarnings("javadoc")
+public class WindowTinyLfuCacheTest {
+  private final AtomicLong time = new AtomicLong(0);
+  private final Ticker ticker = new Ticker() {
+    @Override
+    public long read() {
+      return time.get();
+    }
+  };
+  private final AtomicInteger loadCount = new AtomicInteger(0);
+  private volatile RuntimeException loadError = null;
+  private final CacheLoader<String, String> loader = new CacheLoader<String, String>() {
+    @Override
+    public String load(String key) throws Exception {
+      loadCount.incrementAndGet();
+      if (loadError != null) {
+        throw loadError;
+      }
+      return key + "-value" + loadCount.get();
+    }
+  };
+
+  private WindowTinyLfuCache<String, String> makeCache(long maximumWeight, Duration ttl, boolean refreshAfterWrite) {
+    return new WindowTinyLfuCache<>(maximumWeight, (k, v) -> 1, ttl, refreshAfterWrite, loader, null, ticker);
+  }
+
+  @Test
+  public void loadsValueOnMissAndCachesIt() throws Exception {
+    WindowTinyLfuCache<String, String> cache = makeCache(100, Duration.ofMillis(-1), false);
+    assertThat(cache.get("a"), equalTo("a-value1"));
+    assertThat(cache.get("a"), equalTo("a-value1"));
+    assertThat(loadCount.get(), equalTo(1));
+    assertThat(cache.stats().hitCount(), equalTo(1L));
+    assertThat(cache.stats().missCount(), equalTo(1L));
+    assertThat(cache.stats().loadSuccessCount(), equalTo(1L));
+  }
+
+  @Test
+  public void loadErrorIsThrownAndNotCached() throws Exception {
+    WindowTinyLfuCache<String, String> cache = makeCache(100, Duration.ofMillis(-1), false);
+    loadError = new RuntimeException("sorry");
+    try {
+      cache.get("a");
+      fail("expected exception");
+    } catch (UncheckedExecutionException e) {
+      assertThat(e.getCause(), equalTo((Throwable)loadError));
+    }
+    assertThat(cache.getIfPresent("a"), nullValue());
+    assertThat(cache.stats().loadExceptionCount(), equalTo(1L));
+  }
+
+  @Test
+  public void totalWeightDoesNotExceedMaximum() throws Exception {
+    List<String> evicted = new ArrayList<>();
+    WindowTinyLfuCache<String, String> cache = new WindowTinyLfuCache<>(100, (k, v) -> 3,
+        Duration.ofMillis(-1), false, loader, evicted::add, ticker);
+    for (int i = 0; i < 1000; i++) {
+      cache.get("key" + i);
+      assertThat(cache.weightedSize(), lessThanOrEqualTo(100L));
+    }
+    assertThat(cache.size(), equalTo(33L));
+    assertThat((long)evicted.size(), equalTo(1000L - 33L));
+    assertThat(cache.stats().evictionCount(), equalTo(1000L - 33L));
+  }
+
+  @Test
+  public void frequentlyUsedEntriesSurviveScan() throws Exception {
+    WindowTinyLfuCache<String, String> cache = makeCache(100, Duration.ofMillis(-1), false);
+    // fill the cache first, so the frequency sketch has already grown to its full size
+    for (int i = 0; i < 100; i++) {
+      cache.get("filler" + i);
+    }
+    for (int n = 0; n < 5; n++) {
+      for (int i = 0; i < 50; i++) {
+        cache.get("hot" + i);
+      }
+    }
+    for (int i = 0; i < 1000; i++) {
+      cache.get("cold" + i);
+    }
+    for (int i = 0; i < 50; i++) {
+      assertThat(cache.getIfPresent("hot" + i), not(nullValue()));
+    }
+  }
+
+  @Test
+  public void entryIsReloadedAfterTtlInEvictMode() throws Exception {
+    WindowTinyLfuCache<String, String> cache = makeCache(100, Duration.ofSeconds(10), false);
+    assertThat(cache.get("a"), equalTo("a-value1"));
+    time.addAndGet(TimeUnit.SECONDS.toNanos(11));
+    assertThat(cache.getIfPresent("a"), nullValue());
+    assertThat(cache.get("a"), equalTo("a-value2"));
+  }
+
+  @Test
+  public void entryIsRefreshedAfterTtlInRefreshMode() throws Exception {
+    WindowTinyLfuCache<String, String> cache = makeCache(100, Duration.ofSeconds(10), true);
+    assertThat(cache.get("a"), equalTo("a-value1"));
+    time.addAndGet(TimeUnit.SECONDS.toNanos(11));
+    assertThat(cache.getIfPresent("a"), equalTo("a-value1")); // stale value is still available
+    assertThat(cache.get("a"), equalTo("a-value2"));
+  }
+
+  @Test
+  public void staleEntryIsKeptIfRefreshFails() throws Exception {
+    WindowTinyLfuCache<String, String> cache = makeCache(100, Duration.ofSeconds(10), true);
+    assertThat(cache.get("a"), equalTo("a-value1"));
+    time.addAndGet(TimeUnit.SECONDS.toNanos(11));
+    loadError = new RuntimeException("sorry");
+    assertThat(cache.get("a"), equalTo("a-value1"));
+    assertThat(cache.stats().loadExceptionCount(), equalTo(1L));
+  }
+
+  @Test
+  public void putReplacesValue() throws Exception {
+    WindowTinyLfuCache<String, String> cache = makeCache(100, Duration.ofMillis(-1), false);
+    cache.get("a");
+    cache.put("a", "new");
+    assertThat(cache.get("a"), equalTo("new"));
+    assertThat(cache.size(), equalTo(1L));
+    assertThat(cache.weightedSize(), equalTo(1L));
+  }
+
+  @Test
+  public void asMapReadsDoNotCountInStats() throws Exception {
+    WindowTinyLfuCache<String, String> cache = makeCache(100, Duration.ofMillis(-1), false);
+    cache.get("a");
+    assertThat(cache.asMap().get("a"), equalTo("a-value1"));
+    assertThat(cache.asMap().get("b"), nullValue());
+    assertThat(cache.asMap().containsKey("a"), equalTo(true));
+    assertThat(cache.asMap().keySet(), equalTo(ImmutableSet.of("a")));
+    assertThat(cache.stats().hitCount(), equalTo(0L));
+    assertThat(cache.stats().missCount(), equalTo(1L));
+  }
+
+  @Test
+  public void asMapDoesNotReturnExpiredEntriesInEvictMode() throws Exception {
+    WindowTinyLfuCache<String, String> cache = makeCache(100, Duration.ofSeconds(10), false);
+    cache.get("a");
+    time.addAndGet(TimeUnit.SECONDS.toNanos(11));
+    assertThat(cache.asMap().get("a"), nullValue());
+    assertThat(cache.asMap().keySet(), equalTo(ImmutableSet.of()));
+  }
+
+  @Test
+  public void asMapReturnsStaleEntriesInRefreshMode() throws Exception {
+    WindowTinyLfuCache<String, String> cache = makeCache(100, Duration.ofSeconds(10), true);
+    cache.get("a");
+    time.addAndGet(TimeUnit.SECONDS.toNanos(11));
+    assertThat(cache.asMap().get("a"), equalTo("a-value1"));
+  }
+
+  @Test
+  public void asMapWritesUpdateCache() throws Exception {
+    List<String> evicted = new ArrayList<>();
+    WindowTinyLfuCache<String, String> cache = new WindowTinyLfuCache<>(2, (k, v) -> 1,
+        Duration.ofMillis(-1), false, loader, evicted::add, ticker);
+    Map<String, String> map = cache.asMap();
+    assertThat(map.put("a", "1"), nullValue());
+    assertThat(map.put("a", "2"), equalTo("1"));
+    assertThat(cache.asMap().putIfAbsent("a", "3"), equalTo("2"));
+    assertThat(cache.asMap().putIfAbsent("b", "3"), nullValue());
+    assertThat(cache.getIfPresent("b"), equalTo("3"));
+    assertThat(map.remove("a"), equalTo("2"));
+    assertThat(cache.getIfPresent("a"), nullValue());
+    assertThat(cache.weightedSize(), equalTo(1L));
+    map.put("c", "4");
+    map.put("d", "5");
+    assertThat(evicted.size(), equalTo(1));
+    assertThat(cache.weightedSize(), equalTo(2L));
+  }
+
+  @Test
+  public void invalidateAllRemovesEverything() throws Exception {
+    WindowTinyLfuCache<String, String> cache = makeCache(100, Duration.ofMillis(-1), false);
+    cache.get("a");
+    cache.get("b");
+    cache.invalidateAll();
+    assertThat(cache.size(), equalTo(0L));
+    assertThat(cache.weightedSize(), equalTo(0L));
+    assertThat(cache.getIfPresent("a"), nullValue());
+  }
+
+  @Test
+  public void concurrentLoadsOfSameKeyAreCoalesced() throws Exception {
+    CountDownLatch loadStarted = new CountDownLatch(1);
+    CountDownLatch canFinishLoad = new CountDownLatch(1);
+    CacheLoader<String, String> slowLoader = new CacheLoader<String, String>() {
+      @Override
+      public String load(String key) throws Exception {
+        loadCount.incrementAndGet();
+        loadStarted.countDown();
+        canFinishLoad.await();
+        return "value";
+      }
+    };
+    WindowTinyLfuCache<String, String> cache = new WindowTinyLfuCache<>(100, (k, v) -> 1,
+        Duration.ofMillis(-1), false, slowLoader, null, ticker);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<String> first = executor.submit(() -> cache.get("a"));
+      loadStarted.await(5, TimeUnit.SECONDS);
+      Future<String> second = executor.submit(() -> cache.get("a"));
+      Thread.sleep(100); // give the second request time to start waiting for the first load
+      canFinishLoad.countDown();
+      assertThat(first.get(5, TimeUnit.SECONDS), equalTo("value"));
+      assertThat(second.get(5, TimeUnit.SECONDS), equalTo("value"));
+      assertThat(loadCount.get(), equalTo(1));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void evictionListenerReceivesEvictedKeys() throws Exception {
+    List<String> evicted = new ArrayList<>();
+    WindowTinyLfuCache<String, String> cache = new WindowTinyLfuCache<>(2, (k, v) -> 1,
+        Duration.ofMillis(-1), false, loader, evicted::add, ticker);
+    cache.put("a", "1");
+    cache.put("b", "2");
+    cache.put("c", "3");
+    assertThat(evicted.size(), equalTo(1));
+    assertThat(cache.size(), equalTo(2L));
+    cache.invalidateAll();
+    assertThat(evicted.size(), equalTo(1)); // explicit invalidation is not an eviction
+  }
+
+  @Test
+  public void frequencySketchCountsAndAges() {
+    WindowTinyLfuCache.FrequencySketch sketch = new WindowTinyLfuCache.FrequencySketch();
+    for (int i = 0; i < 5; i++) {
+      sketch.increment(1);
+    }
+    sketch.increment(2);
+    assertThat(sketch.frequency(1), equalTo(5));
+    assertThat(sketch.frequency(2), equalTo(1));
+    assertThat(sketch.frequency(3), equalTo(0));
+    for (int i = 0; i < 20; i++) {
+      sketch.increment(1); // counters saturate at 15
+    }
+    assertThat(sketch.frequency(1), equalTo(15));
+  }
+}
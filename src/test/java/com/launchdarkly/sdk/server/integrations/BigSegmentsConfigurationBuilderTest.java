@@ -79,4 +79,45 @@ public class BigSegmentsConfigurationBuilderTest {
     prop.assertSetIsChangedTo(null, BigSegmentsConfigurationBuilder.DEFAULT_STALE_AFTER);
     prop.assertSetIsChangedTo(Duration.ofSeconds(-1), BigSegmentsConfigurationBuilder.DEFAULT_STALE_AFTER);
   }
+
+  @Test
+  public void batchWindow() {
+    BuilderPropertyTester<Duration> prop = tester.property(BigSegmentsConfiguration::getBatchWindow,
+                                                           BigSegmentsConfigurationBuilder::batchWindow);
+    prop.assertDefault(BigSegmentsConfigurationBuilder.DEFAULT_BATCH_WINDOW);
+    prop.assertCanSet(Duration.ofMillis(2));
+    prop.assertCanSet(Duration.ZERO);
+    prop.assertSetIsChangedTo(null, BigSegmentsConfigurationBuilder.DEFAULT_BATCH_WINDOW);
+    prop.assertSetIsChangedTo(Duration.ofMillis(-1), BigSegmentsConfigurationBuilder.DEFAULT_BATCH_WINDOW);
+  }
+
+  @Test
+  public void maxBatchSize() {
+    BuilderPropertyTester<Integer> prop = tester.property(BigSegmentsConfiguration::getMaxBatchSize,
+                                                          BigSegmentsConfigurationBuilder::maxBatchSize);
+    prop.assertDefault(BigSegmentsConfigurationBuilder.DEFAULT_MAX_BATCH_SIZE);
+    prop.assertCanSet(500);
+    prop.assertSetIsChangedTo(0, BigSegmentsConfigurationBuilder.DEFAULT_MAX_BATCH_SIZE);
+    prop.assertSetIsChangedTo(-1, BigSegmentsConfigurationBuilder.DEFAULT_MAX_BATCH_SIZE);
+  }
+
+  @Test
+  public void userCacheRefreshAhead() {
+    BuilderPropertyTester<Double> prop = tester.property(BigSegmentsConfiguration::getUserCacheRefreshAheadRatio,
+                                                         BigSegmentsConfigurationBuilder::userCacheRefreshAhead);
+    prop.assertDefault(0.0);
+    prop.assertCanSet(0.25);
+    prop.assertSetIsChangedTo(-0.5, 0.0);
+    prop.assertSetIsChangedTo(2.0, 1.0);
+  }
+
+  @Test
+  public void userCacheStaleWhileRevalidate() {
+    BuilderPropertyTester<Duration> prop = tester.property(BigSegmentsConfiguration::getUserCacheStaleWhileRevalidate,
+                                                           BigSegmentsConfigurationBuilder::userCacheStaleWhileRevalidate);
+    prop.assertDefault(Duration.ZERO);
+    prop.assertCanSet(Duration.ofSeconds(30));
+    prop.assertSetIsChangedTo(null, Duration.ZERO);
+    prop.assertSetIsChangedTo(Duration.ofSeconds(-1), Duration.ZERO);
+  }
 }
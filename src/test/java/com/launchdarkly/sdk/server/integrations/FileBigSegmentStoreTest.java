@@ -0,0 +1,231 @@
+package com.launchdarkly.sdk.server.integrations;
+
+import com.google.common.hash.Hashing;
+import com.launchdarkly.logging.LDLogLevel;
+import com.launchdarkly.sdk.server.subsystems.BigSegmentStore;
+import com.launchdarkly.sdk.server.subsystems.BigSegmentStoreTypes.Membership;
+import com.launchdarkly.sdk.server.subsystems.BigSegmentStoreTypes.StoreMetadata;
+import com.launchdarkly.sdk.server.subsystems.ComponentConfigurer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.launchdarkly.sdk.server.TestComponents.clientContext;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+
+/**
+ * Runs the standard Big Segment store tests against the file-based store, plus some tests of the file
+ * format and of reloading.
+ */
+@SuppressWarnings("javadoc")
+public class FileBigSegmentStoreTest extends BigSegmentStoreTestBase {
+  private final Path dir = makeTempDir();
+  private final Map<String, Map<String, TreeSet<String>>> fileContents = new HashMap<>();
+
+  @Override
+  protected ComponentConfigurer<BigSegmentStore> makeStore(String prefix) {
+    return FileData.bigSegmentStore().directory(dir.resolve(prefix)).reloadInterval(Duration.ZERO);
+  }
+
+  @Override
+  protected void clearData(String prefix) {
+    fileContents.remove(prefix);
+    deleteRecursively(dir.resolve(prefix));
+    createDirectory(dir.resolve(prefix));
+  }
+
+  @Override
+  protected void setMetadata(String prefix, StoreMetadata metadata) {
+    try {
+      Path file = dir.resolve(prefix).resolve(FileBigSegmentStoreImpl.SYNCHRONIZED_FILE_NAME);
+      Files.write(file, new byte[0]);
+      Files.setLastModifiedTime(file, FileTime.fromMillis(metadata.getLastUpToDate()));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  protected void setSegments(String prefix, String userHashKey, Iterable<String> includedSegmentRefs,
+      Iterable<String> excludedSegmentRefs) {
+    Map<String, TreeSet<String>> files = fileContents.computeIfAbsent(prefix, p -> new HashMap<>());
+    for (String segmentRef: includedSegmentRefs) {
+      files.computeIfAbsent(segmentRef + FileBigSegmentStoreImpl.INCLUDED_SUFFIX, f -> new TreeSet<>())
+          .add(userHashKey);
+    }
+    for (String segmentRef: excludedSegmentRefs) {
+      files.computeIfAbsent(segmentRef + FileBigSegmentStoreImpl.EXCLUDED_SUFFIX, f -> new TreeSet<>())
+          .add(userHashKey);
+    }
+    for (Map.Entry<String, TreeSet<String>> e: files.entrySet()) {
+      writeFile(dir.resolve(prefix).resolve(e.getKey()), String.join("\n", e.getValue()) + "\n");
+    }
+  }
+
+  @After
+  public void deleteTempDir() {
+    deleteRecursively(dir);
+  }
+
+  @Test
+  public void usersAreFoundInLargeFiles() throws Exception {
+    List<String> users = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      users.add(userHash("user" + i));
+    }
+    Collections.sort(users);
+    writeFile(dir.resolve("seg.g1.included"), String.join("\n", users.subList(0, 5000)) + "\n");
+    writeFile(dir.resolve("seg.g1.excluded"), String.join("\n", users.subList(5000, 10000)) + "\n");
+
+    try (BigSegmentStore store = makeStoreInDir()) {
+      for (int i = 0; i < users.size(); i++) {
+        Membership m = store.getMembership(users.get(i));
+        assertThat(users.get(i), m.checkMembership("seg.g1"), equalTo(i < 5000));
+      }
+      for (int i = 0; i < 1000; i++) {
+        Membership m = store.getMembership(userHash("other" + i));
+        assertThat(m == null ? null : m.checkMembership("seg.g1"), nullValue());
+      }
+    }
+  }
+
+  @Test
+  public void firstAndLastLinesAndWindowsLineEndingsAreHandled() throws Exception {
+    writeFile(dir.resolve("seg.g1.included"), "a\r\nb\r\nc");
+
+    try (BigSegmentStore store = makeStoreInDir()) {
+      assertThat(store.getMembership("a").checkMembership("seg.g1"), equalTo(true));
+      assertThat(store.getMembership("c").checkMembership("seg.g1"), equalTo(true));
+      assertThat(store.getMembership("bb").checkMembership("seg.g1"), nullValue());
+      assertThat(store.getMembership("").checkMembership("seg.g1"), nullValue());
+    }
+  }
+
+  @Test
+  public void changedFileIsReloaded() throws Exception {
+    writeFile(dir.resolve("seg.g1.included"), "a\nb\n");
+
+    try (BigSegmentStore store = makeStoreInDir()) {
+      assertThat(store.getMembership("a").checkMembership("seg.g1"), equalTo(true));
+      assertThat(store.getMembership("c").checkMembership("seg.g1"), nullValue());
+
+      writeFile(dir.resolve("seg.g1.included"), "b\nc\n");
+      assertThat(store.getMembership("a").checkMembership("seg.g1"), nullValue());
+      assertThat(store.getMembership("c").checkMembership("seg.g1"), equalTo(true));
+
+      Files.delete(dir.resolve("seg.g1.included"));
+      assertThat(store.getMembership("c"), nullValue());
+    }
+  }
+
+  @Test
+  public void unsortedFileIsNotLoaded() throws Exception {
+    writeFile(dir.resolve("seg.g1.included"), "a\nb\n");
+
+    try (BigSegmentStore store = makeStoreInDir()) {
+      writeFile(dir.resolve("seg.g1.included"), "c\nb\n");
+      // The previous version of the file is still used
+      assertThat(store.getMembership("a").checkMembership("seg.g1"), equalTo(true));
+      assertThat(store.getMembership("c").checkMembership("seg.g1"), nullValue());
+      assertThat(logCapture.requireMessage(LDLogLevel.ERROR, 0).getText(), startsWith("Could not load Big Segment file"));
+    }
+  }
+
+  @Test
+  public void metadataIsMostRecentModificationTime() throws Exception {
+    long time = System.currentTimeMillis() - 60000;
+    writeFile(dir.resolve("seg1.g1.included"), "a\n");
+    writeFile(dir.resolve("seg2.g1.excluded"), "a\n");
+    writeFile(dir.resolve("unrelated.txt"), "a\n");
+    Files.setLastModifiedTime(dir.resolve("seg1.g1.included"), FileTime.fromMillis(time));
+    Files.setLastModifiedTime(dir.resolve("seg2.g1.excluded"), FileTime.fromMillis(time + 1000));
+    Files.setLastModifiedTime(dir.resolve("unrelated.txt"), FileTime.fromMillis(time + 2000));
+
+    try (BigSegmentStore store = makeStoreInDir()) {
+      assertThat(store.getMetadata().getLastUpToDate(), equalTo(time + 1000));
+
+      Files.setLastModifiedTime(dir.resolve("seg1.g1.included"), FileTime.fromMillis(time + 3000));
+      assertThat(store.getMetadata().getLastUpToDate(), equalTo(time + 3000));
+    }
+  }
+
+  @Test
+  public void missingDirectoryHasNoData() throws Exception {
+    try (BigSegmentStore store = FileData.bigSegmentStore().directory(dir.resolve("missing"))
+        .build(clientContext("", baseConfig().build()))) {
+      assertThat(store.getMetadata(), nullValue());
+      assertThat(store.getMembership("a"), nullValue());
+    }
+  }
+
+  private BigSegmentStore makeStoreInDir() {
+    return FileData.bigSegmentStore().directory(dir).reloadInterval(Duration.ZERO)
+        .build(clientContext("", baseConfig().build()));
+  }
+
+  private static String userHash(String userKey) {
+    return Base64.getEncoder().encodeToString(Hashing.sha256().hashString(userKey, UTF_8).asBytes());
+  }
+
+  // Files are replaced by renaming, as the store's documentation requires.
+  private static void writeFile(Path path, String content) {
+    try {
+      Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+      Files.write(temp, content.getBytes(UTF_8));
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static Path makeTempDir() {
+    try {
+      return Files.createTempDirectory("ld-file-big-segment-store-test");
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void createDirectory(Path path) {
+    try {
+      Files.createDirectories(path);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void deleteRecursively(Path path) {
+    if (!Files.exists(path)) {
+      return;
+    }
+    try (Stream<Path> files = Files.walk(path)) {
+      for (Path p: files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(p);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
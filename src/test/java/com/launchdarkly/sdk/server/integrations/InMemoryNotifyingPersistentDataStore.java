@@ -0,0 +1,132 @@
+package com.launchdarkly.sdk.server.integrations;
+
+import com.google.common.collect.ImmutableList;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.DataKind;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.FullDataSet;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.KeyedItems;
+import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.SerializedItemDescriptor;
+import com.launchdarkly.sdk.server.subsystems.PersistentDataStore;
+import com.launchdarkly.sdk.server.subsystems.PersistentDataStoreChangeNotifications;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A reference implementation of {@link PersistentDataStoreChangeNotifications}: an in-memory database
+ * that can be shared by several store instances, as if they were in different processes, and that notifies
+ * all of them of every change, the way a store backed by pub/sub or keyspace notifications would. Like
+ * such a store, it also notifies the instance that made the change.
+ */
+@SuppressWarnings("javadoc")
+public final class InMemoryNotifyingPersistentDataStore implements PersistentDataStore, PersistentDataStoreChangeNotifications {
+  public static final class Database {
+    private final Map<DataKind, Map<String, SerializedItemDescriptor>> data = new HashMap<>();
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private boolean inited;
+
+    /**
+     * Simulates a change made by something other than an SDK instance. This does not send a notification;
+     * use {@link #notifyItemChanged(DataKind, String)} for that.
+     */
+    public synchronized void forceSet(DataKind kind, String key, SerializedItemDescriptor item) {
+      data.computeIfAbsent(kind, k -> new HashMap<>()).put(key, item);
+    }
+
+    public void notifyItemChanged(DataKind kind, String key) {
+      for (ChangeListener listener: listeners) {
+        listener.itemChanged(kind, key);
+      }
+    }
+
+    /**
+     * Simulates a notification that doesn't say what changed, as after a pub/sub reconnect.
+     */
+    public void notifyAllItemsChanged() {
+      for (ChangeListener listener: listeners) {
+        listener.allItemsChanged();
+      }
+    }
+  }
+
+  private final Database db;
+  private volatile ChangeListener listener;
+
+  public InMemoryNotifyingPersistentDataStore(Database db) {
+    this.db = db;
+  }
+
+  @Override
+  public void subscribe(ChangeListener listener) {
+    this.listener = listener;
+    db.listeners.add(listener);
+  }
+
+  @Override
+  public void close() throws IOException {
+    ChangeListener l = listener;
+    if (l != null) {
+      db.listeners.remove(l);
+    }
+  }
+
+  @Override
+  public SerializedItemDescriptor get(DataKind kind, String key) {
+    synchronized (db) {
+      Map<String, SerializedItemDescriptor> items = db.data.get(kind);
+      return items == null ? null : items.get(key);
+    }
+  }
+
+  @Override
+  public KeyedItems<SerializedItemDescriptor> getAll(DataKind kind) {
+    synchronized (db) {
+      Map<String, SerializedItemDescriptor> items = db.data.get(kind);
+      return new KeyedItems<>(items == null ? null : ImmutableList.copyOf(items.entrySet()));
+    }
+  }
+
+  @Override
+  public void init(FullDataSet<SerializedItemDescriptor> allData) {
+    synchronized (db) {
+      db.data.clear();
+      for (Map.Entry<DataKind, KeyedItems<SerializedItemDescriptor>> e0: allData.getData()) {
+        Map<String, SerializedItemDescriptor> items = new HashMap<>();
+        for (Map.Entry<String, SerializedItemDescriptor> e1: e0.getValue().getItems()) {
+          items.put(e1.getKey(), e1.getValue());
+        }
+        db.data.put(e0.getKey(), items);
+      }
+      db.inited = true;
+    }
+    db.notifyAllItemsChanged();
+  }
+
+  @Override
+  public boolean upsert(DataKind kind, String key, SerializedItemDescriptor item) {
+    synchronized (db) {
+      Map<String, SerializedItemDescriptor> items = db.data.computeIfAbsent(kind, k -> new HashMap<>());
+      SerializedItemDescriptor oldItem = items.get(key);
+      if (oldItem != null && oldItem.getVersion() >= item.getVersion()) {
+        return false;
+      }
+      items.put(key, item);
+    }
+    db.notifyItemChanged(kind, key);
+    return true;
+  }
+
+  @Override
+  public boolean isInitialized() {
+    synchronized (db) {
+      return db.inited;
+    }
+  }
+
+  @Override
+  public boolean isStoreAvailable() {
+    return true;
+  }
+}
@@ -0,0 +1,219 @@
+package com.launchdarkly.sdk.server.integrations;
+
+import com.launchdarkly.sdk.server.DataStoreTestTypes.DataBuilder;
+import com.launchdarkly.sdk.server.DataStoreTestTypes.TestItem;
+import com.launchdarkly.sdk.server.subsystems.ComponentConfigurer;
+import com.launchdarkly.sdk.server.subsystems.PersistentDataStore;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.launchdarkly.sdk.server.DataStoreTestTypes.TEST_ITEMS;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Runs the standard persistent data store tests against the local disk data store, plus some tests of
+ * how it behaves across restarts and when its files are damaged.
+ */
+@SuppressWarnings("javadoc")
+public class LocalDiskDataStoreTest extends PersistentDataStoreTestBase<LocalDiskDataStoreImpl> {
+  private static final String PREFIX = "test";
+
+  private final Path dir = makeTempDir();
+
+  @Override
+  protected ComponentConfigurer<PersistentDataStore> buildStore(String prefix) {
+    return LocalDisk.dataStore().directory(dir).prefix(prefix);
+  }
+
+  private static Path makeTempDir() {
+    try {
+      return Files.createTempDirectory("ld-local-disk-store-test");
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  protected void clearAllData() {
+    try (Stream<Path> files = Files.walk(dir)) {
+      for (Path p: files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        if (!p.equals(dir)) {
+          Files.delete(p);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  protected boolean setUpdateHook(LocalDiskDataStoreImpl storeUnderTest, Runnable hook) {
+    storeUnderTest.updateHook = hook;
+    return true;
+  }
+
+  @After
+  @Override
+  public void teardown() throws Exception {
+    super.teardown();
+    clearAllData();
+    Files.delete(dir);
+  }
+
+  private LocalDiskDataStoreImpl openStore(int compactionThreshold) {
+    return new LocalDiskDataStoreImpl(dir, PREFIX, compactionThreshold, false, testLogger);
+  }
+
+  private List<String> fileNames() throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.map(p -> p.getFileName().toString()).collect(Collectors.toList());
+    }
+  }
+
+  private String getItem(PersistentDataStore s, String key) {
+    return s.get(TEST_ITEMS, key) == null ? null : s.get(TEST_ITEMS, key).getSerializedItem();
+  }
+
+  @Test
+  public void dataIsRetainedAfterStoreIsReopened() throws Exception {
+    try (LocalDiskDataStoreImpl s = openStore(1000)) {
+      s.init(new DataBuilder().add(TEST_ITEMS, item1).buildSerialized());
+      s.upsert(TEST_ITEMS, item2.key, item2.toSerializedItemDescriptor());
+    }
+    try (LocalDiskDataStoreImpl s = openStore(1000)) {
+      assertThat(s.isInitialized(), equalTo(true));
+      assertThat(getItem(s, item1.key), equalTo(item1.toSerializedItemDescriptor().getSerializedItem()));
+      assertThat(getItem(s, item2.key), equalTo(item2.toSerializedItemDescriptor().getSerializedItem()));
+    }
+  }
+
+  @Test
+  public void logIsCompactedIntoNewSnapshotAfterThreshold() throws Exception {
+    try (LocalDiskDataStoreImpl s = openStore(3)) {
+      s.init(new DataBuilder().add(TEST_ITEMS, item1).buildSerialized());
+      assertThat(fileNames(), containsInAnyOrder("test.1.snapshot", "test.1.log", "test.lock", "test.control"));
+
+      for (int version = 11; version <= 13; version++) {
+        s.upsert(TEST_ITEMS, item1.key, item1.withVersion(version).toSerializedItemDescriptor());
+      }
+      assertThat(fileNames(), containsInAnyOrder("test.2.snapshot", "test.2.log", "test.lock", "test.control"));
+      assertThat(s.get(TEST_ITEMS, item1.key).getVersion(), equalTo(13));
+    }
+    try (LocalDiskDataStoreImpl s = openStore(3)) {
+      assertThat(s.isInitialized(), equalTo(true));
+      assertThat(s.get(TEST_ITEMS, item1.key).getVersion(), equalTo(13));
+    }
+  }
+
+  @Test
+  public void otherInstanceSeesUpdatesAndCompaction() throws Exception {
+    try (LocalDiskDataStoreImpl writer = openStore(2); LocalDiskDataStoreImpl reader = openStore(2)) {
+      writer.init(new DataBuilder().add(TEST_ITEMS, item1).buildSerialized());
+      assertThat(reader.get(TEST_ITEMS, item1.key).getVersion(), equalTo(item1.version));
+
+      writer.upsert(TEST_ITEMS, item2.key, item2.toSerializedItemDescriptor());
+      assertThat(getItem(reader, item2.key), equalTo(item2.toSerializedItemDescriptor().getSerializedItem()));
+
+      TestItem item2v2 = item2.withVersion(item2.version + 1);
+      writer.upsert(TEST_ITEMS, item2.key, item2v2.toSerializedItemDescriptor()); // causes compaction
+      assertThat(reader.get(TEST_ITEMS, item2.key).getVersion(), equalTo(item2v2.version));
+      assertThat(reader.get(TEST_ITEMS, item1.key).getVersion(), equalTo(item1.version));
+    }
+  }
+
+  @Test
+  public void incompleteRecordAtEndOfLogIsDiscarded() throws Exception {
+    try (LocalDiskDataStoreImpl s = openStore(1000)) {
+      s.init(new DataBuilder().add(TEST_ITEMS, item1).buildSerialized());
+      s.upsert(TEST_ITEMS, item2.key, item2.toSerializedItemDescriptor());
+    }
+    // simulate a crash in the middle of writing a record, after which the control file was lost
+    long logEnd = LocalDiskDataStoreImpl.HEADER_SIZE + LocalDiskDataStoreImpl.encodeRecord(TEST_ITEMS.getName(),
+        item2.key, item2.version, false, item2.toSerializedItemDescriptor().getSerializedItem().getBytes(UTF_8)).length;
+    byte[] record = LocalDiskDataStoreImpl.encodeRecord(TEST_ITEMS.getName(), "key3", 1, false, new byte[100]);
+    try (FileChannel log = FileChannel.open(dir.resolve("test.1.log"), StandardOpenOption.WRITE)) {
+      log.write(ByteBuffer.wrap(Arrays.copyOf(record, 50)), logEnd);
+    }
+    Files.delete(dir.resolve("test.control"));
+
+    try (LocalDiskDataStoreImpl s = openStore(1000)) {
+      assertThat(s.get(TEST_ITEMS, "key3"), nullValue());
+      assertThat(getItem(s, item2.key), equalTo(item2.toSerializedItemDescriptor().getSerializedItem()));
+
+      TestItem item3 = new TestItem("key3", "third", 1);
+      s.upsert(TEST_ITEMS, item3.key, item3.toSerializedItemDescriptor());
+    }
+    try (LocalDiskDataStoreImpl s = openStore(1000)) {
+      assertThat(s.get(TEST_ITEMS, "key3").getVersion(), equalTo(1));
+    }
+  }
+
+  @Test
+  public void logIsExtendedInChunks() throws Exception {
+    try (LocalDiskDataStoreImpl s = openStore(1000)) {
+      s.init(new DataBuilder().add(TEST_ITEMS, item1).buildSerialized());
+      s.upsert(TEST_ITEMS, item2.key, item2.toSerializedItemDescriptor());
+      Path log = dir.resolve("test.1.log");
+      assertThat(Files.size(log), equalTo((long)LocalDiskDataStoreImpl.MIN_LOG_ALLOCATION));
+
+      for (int version = item2.version + 1; version <= item2.version + 10; version++) {
+        s.upsert(TEST_ITEMS, item2.key, item2.withVersion(version).toSerializedItemDescriptor());
+      }
+      assertThat(Files.size(log), equalTo((long)LocalDiskDataStoreImpl.MIN_LOG_ALLOCATION));
+      assertThat(s.get(TEST_ITEMS, item2.key).getVersion(), equalTo(item2.version + 10));
+    }
+    try (LocalDiskDataStoreImpl s = openStore(1000)) {
+      assertThat(s.get(TEST_ITEMS, item2.key).getVersion(), equalTo(item2.version + 10));
+    }
+  }
+
+  @Test
+  public void storeWithDamagedSnapshotIsNotInitialized() throws Exception {
+    try (LocalDiskDataStoreImpl s = openStore(1000)) {
+      s.init(new DataBuilder().add(TEST_ITEMS, item1, item2).buildSerialized());
+    }
+    Path snapshot = dir.resolve("test.1.snapshot");
+    byte[] data = Files.readAllBytes(snapshot);
+    data[data.length - 1] ^= 1;
+    Files.write(snapshot, data);
+
+    try (LocalDiskDataStoreImpl s = openStore(1000)) {
+      assertThat(s.isInitialized(), equalTo(false));
+
+      s.init(new DataBuilder().add(TEST_ITEMS, item1).buildSerialized());
+      assertThat(s.isInitialized(), equalTo(true));
+      assertThat(s.get(TEST_ITEMS, item1.key).getVersion(), equalTo(item1.version));
+    }
+  }
+
+  @Test
+  public void storeIsUnavailableIfDirectoryCannotBeUsed() throws Exception {
+    Path notADirectory = dir.resolve("file");
+    Files.write(notADirectory, new byte[0]);
+    try (LocalDiskDataStoreImpl s = new LocalDiskDataStoreImpl(notADirectory, PREFIX, 1000, false, testLogger)) {
+      assertThat(s.isStoreAvailable(), equalTo(false));
+
+      Files.delete(notADirectory);
+      assertThat(s.isStoreAvailable(), equalTo(true));
+      assertThat(s.isInitialized(), equalTo(false));
+    }
+  }
+}
@@ -9,6 +9,7 @@ import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.KeyedItems;
 import com.launchdarkly.sdk.server.subsystems.DataStoreTypes.SerializedItemDescriptor;
 
 import java.io.IOException;
+import java.util.AbstractMap;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -27,10 +28,15 @@ public final class MockPersistentDataStore implements PersistentDataStore {
   public final AtomicInteger initedCount = new AtomicInteger(0);
   public volatile int initedQueryCount;
   public volatile int getQueryCount;
+  public volatile int getManyQueryCount;
+  public volatile boolean useDefaultGetMany;
   public volatile boolean persistOnlyAsString;
   public volatile boolean unavailable;
   public volatile RuntimeException fakeError;
   public volatile Runnable updateHook;
+  public volatile Runnable getHook;
+  public volatile Runnable getManyHook; // runs after the items have been read
+  public volatile Runnable getAllHook; // runs after the items have been read
   
   public MockPersistentDataStore() {
     this.data = new HashMap<>();
@@ -59,6 +65,9 @@ public final class MockPersistentDataStore implements PersistentDataStore {
   public SerializedItemDescriptor get(DataKind kind, String key) {
     getQueryCount++;
     maybeThrow();
+    if (getHook != null) {
+      getHook.run();
+    }
     if (data.containsKey(kind)) {
       SerializedItemDescriptor item = data.get(kind).get(key);
       if (item != null) {
@@ -73,10 +82,36 @@ public final class MockPersistentDataStore implements PersistentDataStore {
     return null;
   }
 
+  @Override
+  public KeyedItems<SerializedItemDescriptor> getMany(DataKind kind, Iterable<String> keys) {
+    if (useDefaultGetMany) {
+      return PersistentDataStore.super.getMany(kind, keys);
+    }
+    getManyQueryCount++;
+    maybeThrow();
+    ImmutableList.Builder<Map.Entry<String, SerializedItemDescriptor>> builder = ImmutableList.builder();
+    for (String key: keys) {
+      SerializedItemDescriptor item = data.containsKey(kind) ? data.get(kind).get(key) : null;
+      if (item != null) {
+        builder.add(new AbstractMap.SimpleEntry<>(key,
+            persistOnlyAsString ? new SerializedItemDescriptor(0, false, item.getSerializedItem()) : item));
+      }
+    }
+    if (getManyHook != null) {
+      getManyHook.run();
+    }
+    return new KeyedItems<>(builder.build());
+  }
+
   @Override
   public KeyedItems<SerializedItemDescriptor> getAll(DataKind kind) {
     maybeThrow();
-    return data.containsKey(kind) ? new KeyedItems<>(ImmutableList.copyOf(data.get(kind).entrySet())) : new KeyedItems<>(null);
+    KeyedItems<SerializedItemDescriptor> ret = data.containsKey(kind) ?
+        new KeyedItems<>(ImmutableList.copyOf(data.get(kind).entrySet())) : new KeyedItems<>(null);
+    if (getAllHook != null) {
+      getAllHook.run();
+    }
+    return ret;
   }
 
   @Override
@@ -1,5 +1,6 @@
 package com.launchdarkly.sdk.server.integrations;
 
+import com.launchdarkly.sdk.server.integrations.PersistentDataStoreBuilder.SerializationFormat;
 import com.launchdarkly.sdk.server.integrations.PersistentDataStoreBuilder.StaleValuesPolicy;
 import com.launchdarkly.sdk.server.subsystems.ComponentConfigurer;
 import com.launchdarkly.sdk.server.subsystems.PersistentDataStore;
@@ -12,6 +13,7 @@ import static com.launchdarkly.sdk.server.Components.persistentDataStore;
 import static com.launchdarkly.sdk.server.integrations.PersistentDataStoreBuilder.DEFAULT_CACHE_TTL;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
@@ -61,4 +63,120 @@ public class PersistentDataStoreBuilderTest {
 
     assertFalse(persistentDataStore(factory).recordCacheStats(true).recordCacheStats(false).recordCacheStats);
   }
+
+  @Test
+  public void cacheMaximumWeight() {
+    assertEquals(0, persistentDataStore(factory).cacheMaximumWeight);
+
+    assertEquals(1000, persistentDataStore(factory).cacheMaximumWeight(1000).cacheMaximumWeight);
+
+    assertEquals(0, persistentDataStore(factory).cacheMaximumWeight(-1).cacheMaximumWeight);
+  }
+
+  @Test
+  public void cacheRefreshAhead() {
+    assertEquals(0, persistentDataStore(factory).cacheRefreshAheadRatio, 0);
+
+    assertEquals(0.25, persistentDataStore(factory).cacheRefreshAhead(0.25).cacheRefreshAheadRatio, 0);
+
+    assertEquals(1.0, persistentDataStore(factory).cacheRefreshAhead(2).cacheRefreshAheadRatio, 0);
+
+    assertEquals(0, persistentDataStore(factory).cacheRefreshAhead(-1).cacheRefreshAheadRatio, 0);
+  }
+
+  @Test
+  public void compressItemsLargerThan() {
+    assertEquals(0, persistentDataStore(factory).compressionMinimumLength);
+
+    assertEquals(10000, persistentDataStore(factory).compressItemsLargerThan(10000).compressionMinimumLength);
+
+    assertEquals(0, persistentDataStore(factory).compressItemsLargerThan(-1).compressionMinimumLength);
+  }
+
+  @Test
+  public void serializationFormat() {
+    assertEquals(SerializationFormat.JSON, persistentDataStore(factory).serializationFormat);
+
+    assertEquals(SerializationFormat.BINARY,
+        persistentDataStore(factory).serializationFormat(SerializationFormat.BINARY).serializationFormat);
+
+    assertEquals(SerializationFormat.JSON,
+        persistentDataStore(factory).serializationFormat(SerializationFormat.BINARY).serializationFormat(null)
+        .serializationFormat);
+  }
+
+  @Test
+  public void writeBehind() {
+    assertNull(persistentDataStore(factory).writeBehindInterval);
+
+    assertEquals(Duration.ofMillis(100), persistentDataStore(factory).writeBehind(Duration.ofMillis(100)).writeBehindInterval);
+
+    assertNull(persistentDataStore(factory).writeBehind(Duration.ofMillis(100)).writeBehind(null).writeBehindInterval);
+
+    assertNull(persistentDataStore(factory).writeBehind(Duration.ZERO).writeBehindInterval);
+
+    assertNull(persistentDataStore(factory).writeBehind(Duration.ofMillis(-1)).writeBehindInterval);
+  }
+
+  @Test
+  public void bulkRefresh() {
+    assertNull(persistentDataStore(factory).bulkRefreshInterval);
+
+    assertEquals(Duration.ofSeconds(30), persistentDataStore(factory).bulkRefresh(Duration.ofSeconds(30)).bulkRefreshInterval);
+
+    assertNull(persistentDataStore(factory).bulkRefresh(Duration.ofSeconds(30)).bulkRefresh(null).bulkRefreshInterval);
+
+    assertNull(persistentDataStore(factory).bulkRefresh(Duration.ZERO).bulkRefreshInterval);
+
+    assertNull(persistentDataStore(factory).bulkRefresh(Duration.ofMillis(-1)).bulkRefreshInterval);
+  }
+
+  @Test
+  public void readTimeout() {
+    assertNull(persistentDataStore(factory).readTimeout);
+
+    assertEquals(Duration.ofMillis(50), persistentDataStore(factory).readTimeout(Duration.ofMillis(50)).readTimeout);
+
+    assertNull(persistentDataStore(factory).readTimeout(Duration.ofMillis(50)).readTimeout(null).readTimeout);
+
+    assertNull(persistentDataStore(factory).readTimeout(Duration.ZERO).readTimeout);
+  }
+
+  @Test
+  public void maxConcurrentReads() {
+    assertEquals(0, persistentDataStore(factory).maxConcurrentReads);
+
+    assertEquals(10, persistentDataStore(factory).maxConcurrentReads(10).maxConcurrentReads);
+
+    assertEquals(0, persistentDataStore(factory).maxConcurrentReads(-1).maxConcurrentReads);
+  }
+
+  @Test
+  public void hedgedReads() {
+    assertNull(persistentDataStore(factory).hedgeDelay);
+
+    assertEquals(Duration.ofMillis(5), persistentDataStore(factory).hedgedReads(Duration.ofMillis(5)).hedgeDelay);
+
+    assertNull(persistentDataStore(factory).hedgedReads(Duration.ofMillis(5)).hedgedReads(null).hedgeDelay);
+
+    assertNull(persistentDataStore(factory).hedgedReads(Duration.ofMillis(-1)).hedgeDelay);
+  }
+
+  @Test
+  public void initChunkSize() {
+    assertEquals(PersistentDataStoreBuilder.DEFAULT_INIT_CHUNK_SIZE, persistentDataStore(factory).initChunkSize);
+
+    assertEquals(100, persistentDataStore(factory).initChunkSize(100).initChunkSize);
+
+    assertEquals(1, persistentDataStore(factory).initChunkSize(0).initChunkSize);
+  }
+
+  @Test
+  public void initParallelism() {
+    assertEquals(1, persistentDataStore(factory).initParallelism);
+
+    assertEquals(4, persistentDataStore(factory).initParallelism(4).initParallelism);
+
+    assertEquals(1, persistentDataStore(factory).initParallelism(-1).initParallelism);
+  }
 }
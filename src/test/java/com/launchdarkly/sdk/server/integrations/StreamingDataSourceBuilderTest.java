@@ -5,6 +5,8 @@ import org.junit.Test;
 import java.time.Duration;
 
 import static com.launchdarkly.sdk.server.Components.streamingDataSource;
+import static com.launchdarkly.sdk.server.integrations.StreamingDataSourceBuilder.DEFAULT_BATCH_MAX_ITEMS;
+import static com.launchdarkly.sdk.server.integrations.StreamingDataSourceBuilder.DEFAULT_PIPELINE_QUEUE_CAPACITY;
 import static com.launchdarkly.sdk.server.integrations.StreamingDataSourceBuilder.DEFAULT_INITIAL_RECONNECT_DELAY;
 import static org.junit.Assert.assertEquals;
 
@@ -31,4 +33,27 @@ public class StreamingDataSourceBuilderTest {
     assertEquals(null,
       streamingDataSource().payloadFilter("aFilter").payloadFilter(null).payloadFilter);
   }
+
+  @Test
+  public void batchUpdates() {
+    assertEquals(Duration.ZERO, streamingDataSource().batchWindow);
+    assertEquals(DEFAULT_BATCH_MAX_ITEMS, streamingDataSource().batchMaxItems);
+    
+    StreamingDataSourceBuilder b = streamingDataSource().batchUpdates(Duration.ofMillis(50), 20);
+    assertEquals(Duration.ofMillis(50), b.batchWindow);
+    assertEquals(20, b.batchMaxItems);
+    
+    b = streamingDataSource().batchUpdates(null, 0);
+    assertEquals(Duration.ZERO, b.batchWindow);
+    assertEquals(DEFAULT_BATCH_MAX_ITEMS, b.batchMaxItems);
+  }
+
+  @Test
+  public void pipelinedUpdates() {
+    assertEquals(0, streamingDataSource().pipelineQueueCapacity);
+    assertEquals(DEFAULT_PIPELINE_QUEUE_CAPACITY,
+        streamingDataSource().pipelinedUpdates(DEFAULT_PIPELINE_QUEUE_CAPACITY).pipelineQueueCapacity);
+    assertEquals(50, streamingDataSource().pipelinedUpdates(50).pipelineQueueCapacity);
+    assertEquals(0, streamingDataSource().pipelinedUpdates(-1).pipelineQueueCapacity);
+  }
 }
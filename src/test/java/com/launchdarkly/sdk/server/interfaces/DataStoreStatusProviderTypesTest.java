@@ -1,11 +1,17 @@
 package com.launchdarkly.sdk.server.interfaces;
 
+import com.google.common.collect.ImmutableMap;
 import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.CacheStats;
+import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.CacheStats.ReadPath;
+import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.InitProgress;
+import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.StoreReadStats;
 import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.Status;
+import com.launchdarkly.sdk.server.interfaces.DataStoreStatusProvider.WriteQueueStats;
 import com.launchdarkly.testhelpers.TypeBehavior;
 
 import org.junit.Test;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -76,4 +82,121 @@ public class DataStoreStatusProviderTypesTest {
     CacheStats stats = new CacheStats(1, 2, 3, 4, 5, 6);
     assertThat(stats.toString(), equalTo("{hit=1, miss=2, loadSuccess=3, loadException=4, totalLoadTime=5, evictionCount=6}"));
   }
+
+  @Test
+  public void cacheStatsReadCounts() {
+    CacheStats stats = new CacheStats(1, 2, 3, 4, 5, 6, null,
+        ImmutableMap.of(ReadPath.ITEM_CACHE, 7L, ReadPath.STORE, 8L));
+    assertThat(stats.getReadCount(ReadPath.ITEM_CACHE), equalTo(7L));
+    assertThat(stats.getReadCount(ReadPath.ALL_ITEMS_CACHE), equalTo(0L));
+    assertThat(stats.getReadCount(ReadPath.STORE), equalTo(8L));
+    assertThat(stats.toString(), equalTo(
+        "{hit=1, miss=2, loadSuccess=3, loadException=4, totalLoadTime=5, evictionCount=6, reads={ITEM_CACHE=7, STORE=8}}"));
+
+    // a zero count is the same as no count
+    assertThat(new CacheStats(1, 2, 3, 4, 5, 6, null, ImmutableMap.of(ReadPath.STORE, 0L)),
+        equalTo(new CacheStats(1, 2, 3, 4, 5, 6)));
+  }
+
+  @Test
+  public void writeQueueStatsProperties() {
+    WriteQueueStats stats = new WriteQueueStats(1, Duration.ofMillis(2), 3, 4, 5);
+    assertThat(stats.getQueueDepth(), equalTo(1));
+    assertThat(stats.getWriteLag(), equalTo(Duration.ofMillis(2)));
+    assertThat(stats.getWriteCount(), equalTo(3L));
+    assertThat(stats.getCoalescedCount(), equalTo(4L));
+    assertThat(stats.getFailedWriteCount(), equalTo(5L));
+
+    assertThat(new WriteQueueStats(0, null, 0, 0, 0).getWriteLag(), equalTo(Duration.ZERO));
+  }
+
+  @Test
+  public void writeQueueStatsEquality() {
+    List<TypeBehavior.ValueFactory<WriteQueueStats>> allPermutations = new ArrayList<>();
+    int[] values = new int[] { 0, 1 };
+    for (int depth: values) {
+      for (int lag: values) {
+        for (int writes: values) {
+          for (int coalesced: values) {
+            for (int failed: values) {
+              allPermutations.add(() -> new WriteQueueStats(depth, Duration.ofMillis(lag), writes, coalesced, failed));
+            }
+          }
+        }
+      }
+    }
+    TypeBehavior.checkEqualsAndHashCode(allPermutations);
+  }
+
+  @Test
+  public void writeQueueStatsStringRepresentation() {
+    WriteQueueStats stats = new WriteQueueStats(1, Duration.ofMillis(2), 3, 4, 5);
+    assertThat(stats.toString(), equalTo("{queueDepth=1, writeLag=PT0.002S, writes=3, coalesced=4, failedWrites=5}"));
+  }
+
+  @Test
+  public void initProgressProperties() {
+    InitProgress progress = new InitProgress(true, 1, 2, Duration.ofMillis(3));
+    assertThat(progress.isInProgress(), equalTo(true));
+    assertThat(progress.getItemsWritten(), equalTo(1));
+    assertThat(progress.getTotalItems(), equalTo(2));
+    assertThat(progress.getElapsedTime(), equalTo(Duration.ofMillis(3)));
+
+    assertThat(new InitProgress(false, 0, 0, null).getElapsedTime(), equalTo(Duration.ZERO));
+  }
+
+  @Test
+  public void initProgressEquality() {
+    List<TypeBehavior.ValueFactory<InitProgress>> allPermutations = new ArrayList<>();
+    for (boolean inProgress: new boolean[] { false, true }) {
+      for (int written: new int[] { 0, 1 }) {
+        for (int total: new int[] { 0, 1 }) {
+          for (int elapsed: new int[] { 0, 1 }) {
+            allPermutations.add(() -> new InitProgress(inProgress, written, total, Duration.ofMillis(elapsed)));
+          }
+        }
+      }
+    }
+    TypeBehavior.checkEqualsAndHashCode(allPermutations);
+  }
+
+  @Test
+  public void initProgressStringRepresentation() {
+    assertThat(new InitProgress(true, 1, 2, Duration.ofMillis(3)).toString(),
+        equalTo("{inProgress=true, written=1, total=2, elapsed=PT0.003S}"));
+  }
+
+  @Test
+  public void storeReadStatsProperties() {
+    StoreReadStats stats = new StoreReadStats(1, 2, 3, 4, 5);
+    assertThat(stats.getInFlightCount(), equalTo(1));
+    assertThat(stats.getTimeoutCount(), equalTo(2L));
+    assertThat(stats.getRejectedCount(), equalTo(3L));
+    assertThat(stats.getHedgedCount(), equalTo(4L));
+    assertThat(stats.getHedgeWinCount(), equalTo(5L));
+  }
+
+  @Test
+  public void storeReadStatsEquality() {
+    List<TypeBehavior.ValueFactory<StoreReadStats>> allPermutations = new ArrayList<>();
+    int[] values = new int[] { 0, 1 };
+    for (int inFlight: values) {
+      for (int timeouts: values) {
+        for (int rejected: values) {
+          for (int hedged: values) {
+            for (int hedgeWins: values) {
+              allPermutations.add(() -> new StoreReadStats(inFlight, timeouts, rejected, hedged, hedgeWins));
+            }
+          }
+        }
+      }
+    }
+    TypeBehavior.checkEqualsAndHashCode(allPermutations);
+  }
+
+  @Test
+  public void storeReadStatsStringRepresentation() {
+    assertThat(new StoreReadStats(1, 2, 3, 4, 5).toString(),
+        equalTo("{inFlight=1, timeouts=2, rejected=3, hedged=4, hedgeWins=5}"));
+  }
 }